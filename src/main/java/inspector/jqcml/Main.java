@@ -24,7 +24,9 @@ import inspector.jqcml.io.QcMLReader;
 import inspector.jqcml.io.db.QcDBManagerFactory;
 import inspector.jqcml.io.db.QcDBReader;
 import inspector.jqcml.io.xml.QcMLFileReader;
+import inspector.jqcml.io.xml.index.IndexConfiguration;
 import inspector.jqcml.model.AttachmentParameter;
+import inspector.jqcml.model.QualityAssessment;
 import inspector.jqcml.model.QualityParameter;
 import inspector.jqcml.model.Threshold;
 import org.apache.commons.cli.*;
@@ -63,7 +65,11 @@ public class Main {
                 QcMLReader reader;
                 EntityManagerFactory emf = null;
                 if(cmd.hasOption("f")) {
-                    reader = new QcMLFileReader();
+                    IndexConfiguration indexConfiguration = new IndexConfiguration();
+                    indexConfiguration.setPersistent(cmd.hasOption("idx"));
+                    // index the individual parameters, so only the requested parameter needs to be read
+                    indexConfiguration.setParameterIndex(true);
+                    reader = new QcMLFileReader(indexConfiguration);
                 } else if(cmd.hasOption("db")) {
                     emf = createEntityManagerFactory(cmd);
                     reader = new QcDBReader(emf);
@@ -122,6 +128,7 @@ public class Main {
         db.addOption(new Option("mysql", true, "connect to the MySQL database with the given url \'username[:password]@host:port/db\'"));
         db.addOption(new Option("sqlite", true, "connect to the SQLite database with the given path"));
         options.addOptionGroup(db);
+        options.addOption("idx", "index", false, "store the index of the qcML file alongside it to speed up subsequent reads");
         // output
         options.addOption("qcml", "qcml", true, "read from the given qcML source (either file name or name in the database)");
         options.addOption("qa", "qualityAssessment", true, "get parameters from the qualityAssessment (runQuality or setQuality) with the given ID");
@@ -155,14 +162,20 @@ public class Main {
 
     private static void printQualityParameter(CommandLine cmd, QcMLReader reader, String qcmlStr, String qaStr) {
         StringBuilder sb = new StringBuilder();
-        if(reader.getQualityAssessment(qcmlStr, qaStr) == null) {
+        QualityParameter param;
+        if(reader instanceof QcMLFileReader) {
+            param = ((QcMLFileReader) reader).getQualityParameter(qcmlStr, qaStr, cmd.getOptionValue("qp"));
+        } else {
+            QualityAssessment qa = reader.getQualityAssessment(qcmlStr, qaStr);
+            param = qa != null ? qa.getQualityParameter(cmd.getOptionValue("qp")) : null;
+        }
+        if(param == null && reader.getQualityAssessment(qcmlStr, qaStr) == null) {
             LOGGER.error("Invalid qualityAssessment specified: <{}>", qaStr);
             throw new IllegalArgumentException("Invalid qualityAssessment specified");
-        } else if(reader.getQualityAssessment(qcmlStr, qaStr).getQualityParameter(cmd.getOptionValue("qp")) == null) {
+        } else if(param == null) {
             LOGGER.error("Invalid qualityParameter specified: <{}>", cmd.getOptionValue("qp"));
             throw new IllegalArgumentException("Invalid qualityParameter specified");
         } else {
-            QualityParameter param = reader.getQualityAssessment(qcmlStr, qaStr).getQualityParameter(cmd.getOptionValue("qp"));
             sb.append("qualityParameter <ID=").append(param.getId()).append(">\n");
             sb.append("\tname = ").append(param.getName()).append("\n");
             sb.append("\taccession = ").append(param.getAccession()).append("\n");
@@ -197,14 +210,20 @@ public class Main {
 
     private static void printAttachmentParameter(CommandLine cmd, QcMLReader reader, String qcmlStr, String qaStr) {
         StringBuilder sb = new StringBuilder();
-        if(reader.getQualityAssessment(qcmlStr, qaStr) == null) {
+        AttachmentParameter param;
+        if(reader instanceof QcMLFileReader) {
+            param = ((QcMLFileReader) reader).getAttachmentParameter(qcmlStr, qaStr, cmd.getOptionValue("ap"));
+        } else {
+            QualityAssessment qa = reader.getQualityAssessment(qcmlStr, qaStr);
+            param = qa != null ? qa.getAttachmentParameter(cmd.getOptionValue("ap")) : null;
+        }
+        if(param == null && reader.getQualityAssessment(qcmlStr, qaStr) == null) {
             LOGGER.error("Invalid qualityAssessment specified: <{}>", qaStr);
             throw new IllegalArgumentException("Invalid qualityAssessment specified");
-        } else if(reader.getQualityAssessment(qcmlStr, qaStr).getAttachmentParameter(cmd.getOptionValue("ap")) == null) {
+        } else if(param == null) {
             LOGGER.error("Invalid attachmentParameter specified: <{}>", cmd.getOptionValue("ap"));
             throw new IllegalArgumentException("Invalid attachmentParameter specified");
         } else {
-            AttachmentParameter param = reader.getQualityAssessment(qcmlStr, qaStr).getAttachmentParameter(cmd.getOptionValue("ap"));
             sb.append("attachmentParameter <ID=").append(param.getId()).append(">\n");
             sb.append("\tname = ").append(param.getName()).append("\n");
             sb.append("\taccession = ").append(param.getAccession()).append("\n");
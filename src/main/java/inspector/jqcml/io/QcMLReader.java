@@ -25,6 +25,7 @@ import inspector.jqcml.model.QcML;
 import inspector.jqcml.model.QualityAssessment;
 
 import java.util.Iterator;
+import java.util.stream.Stream;
 
 /**
  * A qcML input reader.
@@ -63,6 +64,16 @@ public interface QcMLReader {
      */
     public Iterator<Cv> getCvIterator(String qcmlFile);
 
+    /**
+     * Returns a {@link Stream} over all {@link Cv} objects in the given file.
+     *
+     * The stream should be closed after use to release the underlying resources.
+     *
+     * @param qcmlFile  The file name of the qcML file from which the Reader will read
+     * @return A sequential {@link Stream} over all {@link Cv} objects
+     */
+    public Stream<Cv> getCvStream(String qcmlFile);
+
     /**
      * Returns the {@link QualityAssessment} object with the given id from the given file.
      *
@@ -79,4 +90,15 @@ public interface QcMLReader {
      * @return An {@link Iterator} over all {@link QualityAssessment} objects
      */
     public Iterator<QualityAssessment> getQualityAssessmentIterator(String qcmlFile);
+
+    /**
+     * Returns a {@link Stream} over all {@link QualityAssessment} objects in the given file.
+     *
+     * The stream is sequential, but can be made parallel using {@link Stream#parallel()}.
+     * The stream should be closed after use to release the underlying resources.
+     *
+     * @param qcmlFile  The file name of the qcML file from which the Reader will read
+     * @return A sequential {@link Stream} over all {@link QualityAssessment} objects
+     */
+    public Stream<QualityAssessment> getQualityAssessmentStream(String qcmlFile);
 }
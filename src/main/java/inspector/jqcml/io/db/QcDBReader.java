@@ -36,6 +36,11 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A qcML input reader which takes its input from a qcDB RDBMS.
@@ -44,6 +49,9 @@ public class QcDBReader implements QcMLReader {
 
     private static final Logger LOGGER = LogManager.getLogger(QcDBReader.class);
 
+    /** The number of objects read from a database cursor after which they are released from the cursor */
+    private static final int CURSOR_PAGE_SIZE = 1000;
+
     /** EntityManagerFactory used to set up connections to the database */
     private EntityManagerFactory factory;
 
@@ -138,22 +146,57 @@ public class QcDBReader implements QcMLReader {
         EntityManager entityManager = createEntityManager();
 
         try {
-            TypedQuery<?> query;
-            if(qcmlFile == null) {
-                query = entityManager.createQuery("SELECT cv FROM Cv cv", Cv.class);
-            } else {
-                query = entityManager.createQuery("SELECT cv FROM QcML qcml, IN(qcml.cvList) cv " +
-                        "WHERE qcml.fileName = :fileName", Cv.class);
-                query.setParameter("fileName", qcmlFile);
-            }
-
-            query.setHint("eclipselink.cursor", true);
-            return (CursoredStream) query.getSingleResult();
+            return openCvCursor(entityManager, qcmlFile);
         } finally {
             entityManager.close();
         }
     }
 
+    /**
+     * Returns a {@link Stream} over all {@link Cv} objects.
+     *
+     * If a specific qcML object is specified, the stream returns all Cv objects referenced by this qcML object.
+     * If no qcML object is specified, the stream returns all Cv objects in the full qcDB.
+     *
+     * The Cv objects are read from a database cursor, which is closed when the stream is closed.
+     *
+     * @param qcmlFile  the (optional) qcML identifier by which the Cv objects are referenced
+     * @return a stream over all Cv objects
+     */
+    @Override
+    public Stream<Cv> getCvStream(String qcmlFile) {
+        LOGGER.info("Retrieve a CV stream from qcML {}", qcmlFile);
+
+        EntityManager entityManager = createEntityManager();
+        try {
+            return createStream(openCvCursor(entityManager, qcmlFile), Cv.class, entityManager);
+        } catch(RuntimeException e) {
+            entityManager.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a database cursor over all {@link Cv} objects, optionally restricted to those referenced by the given qcML object.
+     *
+     * @param entityManager  the EntityManager used to execute the query
+     * @param qcmlFile  the (optional) qcML identifier by which the Cv objects are referenced
+     * @return a cursor over the Cv objects
+     */
+    private CursoredStream openCvCursor(EntityManager entityManager, String qcmlFile) {
+        TypedQuery<?> query;
+        if(qcmlFile == null) {
+            query = entityManager.createQuery("SELECT cv FROM Cv cv", Cv.class);
+        } else {
+            query = entityManager.createQuery("SELECT cv FROM QcML qcml, IN(qcml.cvList) cv " +
+                    "WHERE qcml.fileName = :fileName", Cv.class);
+            query.setParameter("fileName", qcmlFile);
+        }
+
+        query.setHint("eclipselink.cursor", true);
+        return (CursoredStream) query.getSingleResult();
+    }
+
     @Override
     public QualityAssessment getQualityAssessment(String qcmlFile, String id) {
         LOGGER.info("Retrieve QualityAssessment (id={}) from qcML {}", id, qcmlFile);
@@ -206,23 +249,94 @@ public class QcDBReader implements QcMLReader {
         EntityManager entityManager = createEntityManager();
 
         try {
-            TypedQuery<?> query;
-            if(qcmlFile == null) {
-                query = entityManager.createQuery("SELECT qa FROM QualityAssessment qa", QualityAssessment.class);
-            } else {
-                query = entityManager.createQuery("SELECT qa FROM QualityAssessment qa " +
-                        "WHERE qa.id IN (SELECT rq.id FROM QcML qcml, IN(qcml.runQuality) rq WHERE qcml.fileName = :fileName) OR " +
-                        "qa.id IN (SELECT sq.id FROM QcML qcml, IN(qcml.setQuality) sq WHERE qcml.fileName = :fileName)", QualityAssessment.class);
-                query.setParameter("fileName", qcmlFile);
-            }
-
-            query.setHint("eclipselink.cursor", true);
-            return (CursoredStream) query.getSingleResult();
+            return openQualityAssessmentCursor(entityManager, qcmlFile);
         } finally {
             entityManager.close();
         }
     }
 
+    /**
+     * Returns a {@link Stream} over all {@link QualityAssessment} objects.
+     *
+     * If a specific qcML object is specified, the stream returns all QualityAssessment objects referenced by this qcML object.
+     * If no qcML object is specified, the stream returns all QualityAssessment objects in the full qcDB.
+     *
+     * The QualityAssessment objects are read from a database cursor, which is closed when the stream is closed.
+     * If the stream is made parallel, batches of rows read from the cursor are processed on multiple threads.
+     *
+     * @param qcmlFile  the (optional) qcML identifier by which the QualityAssessment objects are referenced
+     * @return a stream over all QualityAssessment objects
+     */
+    @Override
+    public Stream<QualityAssessment> getQualityAssessmentStream(String qcmlFile) {
+        LOGGER.info("Retrieve a QualityAssessment stream from qcML {}", qcmlFile);
+
+        EntityManager entityManager = createEntityManager();
+        try {
+            return createStream(openQualityAssessmentCursor(entityManager, qcmlFile), QualityAssessment.class, entityManager);
+        } catch(RuntimeException e) {
+            entityManager.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a database cursor over all {@link QualityAssessment} objects, optionally restricted to those referenced by the given qcML object.
+     *
+     * @param entityManager  the EntityManager used to execute the query
+     * @param qcmlFile  the (optional) qcML identifier by which the QualityAssessment objects are referenced
+     * @return a cursor over the QualityAssessment objects
+     */
+    private CursoredStream openQualityAssessmentCursor(EntityManager entityManager, String qcmlFile) {
+        TypedQuery<?> query;
+        if(qcmlFile == null) {
+            query = entityManager.createQuery("SELECT qa FROM QualityAssessment qa", QualityAssessment.class);
+        } else {
+            query = entityManager.createQuery("SELECT qa FROM QualityAssessment qa " +
+                    "WHERE qa.id IN (SELECT rq.id FROM QcML qcml, IN(qcml.runQuality) rq WHERE qcml.fileName = :fileName) OR " +
+                    "qa.id IN (SELECT sq.id FROM QcML qcml, IN(qcml.setQuality) sq WHERE qcml.fileName = :fileName)", QualityAssessment.class);
+            query.setParameter("fileName", qcmlFile);
+        }
+
+        query.setHint("eclipselink.cursor", true);
+        return (CursoredStream) query.getSingleResult();
+    }
+
+    /**
+     * Creates a {@link Stream} over the objects read from the given database cursor.
+     *
+     * The objects that have been read are released from the cursor in pages, so the cursor doesn't retain all objects.
+     * When the stream is closed, the cursor and the EntityManager are closed as well.
+     *
+     * @param cursor  the cursor from which the objects are read
+     * @param clss  the class type of the objects
+     * @param entityManager  the EntityManager used to open the cursor
+     * @param <T>  the type of the objects
+     * @return a sequential stream over the objects read from the cursor
+     */
+    private <T> Stream<T> createStream(final CursoredStream cursor, final Class<T> clss, final EntityManager entityManager) {
+        Spliterator<T> spliterator = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            private int read = 0;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                if(!cursor.hasNext()) {
+                    return false;
+                }
+                action.accept(clss.cast(cursor.next()));
+                if(++read % CURSOR_PAGE_SIZE == 0) {
+                    cursor.releasePrevious();
+                }
+                return true;
+            }
+        };
+
+        return StreamSupport.stream(spliterator, false).onClose(() -> {
+            cursor.close();
+            entityManager.close();
+        });
+    }
+
     /**
      * Returns arbitrary data retrieved by a custom JPQL query.
      *
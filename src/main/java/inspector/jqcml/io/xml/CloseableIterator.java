@@ -0,0 +1,39 @@
+package inspector.jqcml.io.xml;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.util.Iterator;
+
+/**
+ * An {@link Iterator} that holds on to resources, which are released when it's closed.
+ *
+ * The iterator should be closed after use, also when it isn't exhausted, preferably through a try-with-resources statement.
+ *
+ * @param <T> The type of the elements returned by the iterator
+ */
+public interface CloseableIterator<T> extends Iterator<T>, AutoCloseable {
+
+    /**
+     * Releases the resources held by this iterator. Closing an iterator that has already been closed has no effect.
+     */
+    @Override
+    void close();
+}
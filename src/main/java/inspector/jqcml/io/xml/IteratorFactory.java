@@ -29,14 +29,14 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import psidev.psi.tools.xxindex.index.IndexElement;
 
-import javax.xml.bind.JAXBIntrospector;
 import javax.xml.bind.annotation.adapters.XmlAdapter;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Spliterator;
 
 /**
- * A factory to create an {@link Iterator} over a specific qcML (sub)object.
+ * A factory to create an {@link Iterator} or a {@link Spliterator} over a specific qcML (sub)object.
  */
 public class IteratorFactory {
 
@@ -63,7 +63,45 @@ public class IteratorFactory {
      * @return An iterator over all QualityAssessment objects in the given qcML file
      */
     public static Iterator<QualityAssessment> createQualityAssessmentIterator(QcMLIndexer index, QcMLUnmarshaller unmarshaller) {
-        return new QualityAssessmentIterator(index, unmarshaller, QualityAssessmentList.class, QualityAssessment.class, new QualityAssessmentAdapter());
+        return createQualityAssessmentIterator(index, unmarshaller, null);
+    }
+
+    /**
+     * Create an {@link Iterator} over the {@link QualityAssessment} objects with the given IDs.
+     *
+     * Only the requested QualityAssessments are unmarshalled, in the order in which they occur in the qcML file.
+     *
+     * @param index  The {@link QcMLIndexer} constructed from the qcML file
+     * @param unmarshaller  The {@link QcMLUnmarshaller} used to unmarshal the qcML file
+     * @param ids  The IDs of the requested QualityAssessments, or {@code null} to iterate over all QualityAssessments
+     * @return An iterator over the requested QualityAssessment objects in the given qcML file
+     */
+    public static Iterator<QualityAssessment> createQualityAssessmentIterator(QcMLIndexer index, QcMLUnmarshaller unmarshaller, Collection<String> ids) {
+        return new QualityAssessmentIterator(index, unmarshaller, QualityAssessmentList.class, QualityAssessment.class, new QualityAssessmentAdapter(), ids);
+    }
+
+    /**
+     * Creates a {@link Spliterator} over all {@link Cv} objects, which can be split to unmarshal them in parallel.
+     *
+     * @param index  The {@link QcMLIndexer} constructed from the qcML file
+     * @param unmarshaller  The {@link QcMLUnmarshaller} used to unmarshal the qcML file
+     * @return A spliterator over all Cv objects in the given qcML file
+     */
+    public static Spliterator<Cv> createCvSpliterator(QcMLIndexer index, QcMLUnmarshaller unmarshaller) {
+        return new QcMLSpliterator<>(index, Cv.class, xml -> unmarshaller.unmarshal(xml, Cv.class));
+    }
+
+    /**
+     * Creates a {@link Spliterator} over all {@link QualityAssessment} objects, which can be split to unmarshal them in parallel.
+     *
+     * @param index  The {@link QcMLIndexer} constructed from the qcML file
+     * @param unmarshaller  The {@link QcMLUnmarshaller} used to unmarshal the qcML file
+     * @return A spliterator over all QualityAssessment objects in the given qcML file
+     */
+    public static Spliterator<QualityAssessment> createQualityAssessmentSpliterator(QcMLIndexer index, QcMLUnmarshaller unmarshaller) {
+        // the cache of unmarshalled Cv's is shared by all splits
+        Map<String, Cv> cvCache = unmarshaller.getCvCache(index);
+        return new QcMLSpliterator<>(index, QualityAssessment.class, xml -> unmarshaller.unmarshalQualityAssessment(xml, cvCache, index));
     }
 }
 
@@ -88,14 +126,15 @@ class QualityAssessmentIterator extends QcMLAdapterIterator<QualityAssessmentLis
      * @param preClass  The class type of the unmarshalled object prior to conversion with the adapter
      * @param postClass  The class type of the unmarshalled object after the conversion with the adapter
      * @param adapter  The {@link XmlAdapter} used to convert the unmarshalled object
+     * @param ids  The IDs of the QualityAssessments returned by the iterator, or {@code null} to iterate over all QualityAssessments
      */
     public QualityAssessmentIterator(QcMLIndexer index, QcMLUnmarshaller unmarshaller,
             Class<QualityAssessmentList> preClass, Class<QualityAssessment> postClass,
-            XmlAdapter<QualityAssessmentList, QualityAssessment> adapter) {
-        super(index, unmarshaller, preClass, postClass, adapter);
+            XmlAdapter<QualityAssessmentList, QualityAssessment> adapter, Collection<String> ids) {
+        super(index, unmarshaller, preClass, postClass, adapter, ids);
 
         // use a cache of unmarshalled Cv's because we might encounter the same Cv multiple times
-        cvCache = new HashMap<>();
+        cvCache = unmarshaller.getCvCache(index);
     }
 
     @Override
@@ -104,26 +143,8 @@ class QualityAssessmentIterator extends QcMLAdapterIterator<QualityAssessmentLis
 
         // get the next index element
         IndexElement elem = iterator.next().getValue();
-        // read the xml snippet
-        String xmlSnippet = index.readXML(elem);
-        try {
-            // unmarshal this element
-            Object temp = unmarshaller.unmarshal(xmlSnippet);
-            QualityAssessmentList qaList = (QualityAssessmentList) JAXBIntrospector.getValue(temp);
-            QualityAssessmentAdapter adapter = new QualityAssessmentAdapter();
-            QualityAssessment result = adapter.unmarshal(qaList);
-
-            // resolve references to Cv's (unmarshal them if required)
-            unmarshaller.resolveCvReferences(result, cvCache, index);
-
-            // set the isSet flag based on the element name
-            result.setSet("setQuality".equals(unmarshaller.getIntrospector().getElementName(temp).getLocalPart()));
-
-            return result;
-        } catch (Exception e) {
-            LOGGER.error("Unable to manually call adapter {} for XML snippet: {}\n{}", adapter, xmlSnippet.substring(0, xmlSnippet.indexOf('>')+1), e);
-            throw new IllegalStateException("Unable to manually call the XmlAdapter: " + e);
-        }
+        // unmarshal this element directly from the file contents
+        return unmarshaller.unmarshalQualityAssessment(reader.openXML(elem), cvCache, index);
     }
 
 }
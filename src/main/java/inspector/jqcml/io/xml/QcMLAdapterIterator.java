@@ -26,6 +26,7 @@ import org.apache.logging.log4j.Logger;
 import psidev.psi.tools.xxindex.index.IndexElement;
 
 import javax.xml.bind.annotation.adapters.XmlAdapter;
+import java.util.Collection;
 import java.util.Iterator;
 
 /**
@@ -58,7 +59,22 @@ public class QcMLAdapterIterator<S, T> extends QcMLIterator<T> {
      * @param adapter  The {@link XmlAdapter} used to convert the unmarshalled object
      */
     public QcMLAdapterIterator(QcMLIndexer index, QcMLUnmarshaller unmarshaller, Class<S> preClass, Class<T> postClass, XmlAdapter<S, T> adapter) {
-        super(index, unmarshaller, postClass);
+        this(index, unmarshaller, preClass, postClass, adapter, null);
+    }
+
+    /**
+     * Create a QcMLAdapterIterator that will iterate over the qcML (sub)objects of the specified class type with the given IDs.
+     *
+     * @param index  The {@link QcMLIndexer} used to index the qcML file
+     * @param unmarshaller  The {@link QcMLUnmarshaller} to unmarshal the qcML file
+     * @param preClass  The class type of the unmarshalled object prior to conversion with the adapter
+     * @param postClass  The class type of the unmarshalled object after the conversion with the adapter
+     * @param adapter  The {@link XmlAdapter} used to convert the unmarshalled object
+     * @param ids  The IDs of the objects returned by the iterator, or {@code null} to iterate over all objects of the specified class type
+     */
+    public QcMLAdapterIterator(QcMLIndexer index, QcMLUnmarshaller unmarshaller, Class<S> preClass, Class<T> postClass, XmlAdapter<S, T> adapter,
+                               Collection<String> ids) {
+        super(index, unmarshaller, postClass, ids);
 
         this.preClass = preClass;
         this.adapter = adapter;
@@ -70,15 +86,13 @@ public class QcMLAdapterIterator<S, T> extends QcMLIterator<T> {
 
         // get the next index element
         IndexElement elem = iterator.next().getValue();
-        // read the xml snippet
-        String xmlSnippet = index.readXML(elem);
-        // unmarshal this element
-        S temp = unmarshaller.unmarshal(xmlSnippet, preClass);
+        // unmarshal this element directly from the file contents
+        S temp = unmarshaller.unmarshal(reader.openXML(elem), preClass);
         // manually call the adapter
         try {
             return adapter.unmarshal(temp);
         } catch (Exception e) {
-            LOGGER.error("Unable to manually call adapter {} for XML snippet: {}\n{}", adapter, xmlSnippet.substring(0, xmlSnippet.indexOf('>')+1), e);
+            LOGGER.error("Unable to manually call adapter {} for XML element at offset {}\n{}", adapter, elem.getStart(), e);
             throw new IllegalStateException("Unable to manually call the XmlAdapter: " + e);
         }
     }
@@ -23,57 +23,133 @@ package inspector.jqcml.io.xml;
  * #L%
  */
 
+import com.google.common.base.Predicate;
+import com.google.common.collect.Iterators;
 import inspector.jqcml.io.QcMLReader;
+import inspector.jqcml.io.xml.index.GzipFile;
+import inspector.jqcml.io.xml.index.IndexCache;
+import inspector.jqcml.io.xml.index.IndexConfiguration;
+import inspector.jqcml.io.xml.index.MetaDataIndex;
+import inspector.jqcml.io.xml.index.QcMLCatalog;
 import inspector.jqcml.io.xml.index.QcMLIndexer;
-import inspector.jqcml.jaxb.adapters.QualityAssessmentAdapter;
+import inspector.jqcml.io.xml.index.QcMLStatistics;
+import inspector.jqcml.model.AttachmentParameter;
 import inspector.jqcml.model.Cv;
+import inspector.jqcml.model.CvParameter;
+import inspector.jqcml.model.MetaDataParameter;
 import inspector.jqcml.model.QcML;
 import inspector.jqcml.model.QualityAssessment;
-import inspector.jqcml.model.QualityAssessmentList;
+import inspector.jqcml.model.QualityParameter;
+import inspector.jqcml.model.TableAttachment;
+import inspector.jqcml.model.TableColumn;
+import inspector.jqcml.model.TableRow;
+import inspector.jqcml.model.TableValue;
+import org.apache.commons.codec.binary.Base64;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 
 import javax.xml.XMLConstants;
-import javax.xml.bind.JAXBIntrospector;
 import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URL;
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A qcML input reader which takes its input from an XML-based qcML file.
+ *
+ * The indexes of the most recently read qcML files are kept in an {@link IndexCache}, so alternating between several files
+ * doesn't require them to be indexed anew. Because the cached indexes keep their files open, the reader should be closed after use.
+ *
+ * A single QcMLFileReader can be shared by multiple threads: the cached indexes are shared,
+ * and the JAXB Unmarshallers are taken from a pool for each unmarshal operation (see {@link QcMLUnmarshaller}).
+ * An index that is evicted from the cache while it's still in use keeps its file open until it's no longer used:
+ * until the call that uses it returns, the iterator has returned all elements, or the stream is closed.
+ * The Cv's of a qcML file are unmarshalled once for all calls, but each call, iterator, or stream refers to its own copies of them,
+ * so the Cv's referenced by the returned objects can be modified independently.
  */
-public class QcMLFileReader implements QcMLReader {
+public class QcMLFileReader implements QcMLReader, Closeable {
 
     private static final Logger LOGGER = LogManager.getLogger(QcMLFileReader.class);
 
     /** A {@link Schema} representing the qcML XML schema, which can be used to validate a qcML file */
     private static final Schema SCHEMA = createSchema();
 
+    /** A pattern for extracting the qualityParameterRef attribute from an attachment */
+    private static final Pattern QUALITY_PARAMETER_REF_PATTERN = Pattern.compile("\\squalityParameterRef\\s*=\\s*['\"]([^'\"]*)['\"]");
+
     /**
-     * The current qcML file from which we are reading.
-     * Used to prevent having to create the index over again when performing several reads from the same file.
+     * The indexes of the most recently read qcML files.
+     * Used to prevent having to create the index over again when performing several reads from the same files.
      */
-    private File currentFile;
+    private final IndexCache indexCache;
 
-    /** An indexer used to record the offset of the elements within the current qcML file */
-    private QcMLIndexer index;
+    /** The settings used to create the index for each qcML file */
+    private final IndexConfiguration indexConfiguration;
+    /** The catalog used to find the qcML file containing a requested element, {@code null} if no catalog is used */
+    private QcMLCatalog catalog;
     /** The unmarshaller used to read the current qcML file through JAXB */
-    private QcMLUnmarshaller unmarshaller;
+    private final QcMLUnmarshaller unmarshaller;
 
     /**
      * Creates a QcMLFileReader by initializing a {@link QcMLUnmarshaller}.
      */
     public QcMLFileReader() {
+        this(new IndexConfiguration());
+    }
+
+    /**
+     * Creates a QcMLFileReader by initializing a {@link QcMLUnmarshaller}.
+     *
+     * @param indexConfiguration  The {@link IndexConfiguration} specifying how qcML files are indexed
+     */
+    public QcMLFileReader(IndexConfiguration indexConfiguration) {
+        this(indexConfiguration, new IndexCache());
+    }
+
+    /**
+     * Creates a QcMLFileReader which keeps the indexes of the qcML files it reads in the given {@link IndexCache}.
+     *
+     * @param indexConfiguration  The {@link IndexConfiguration} specifying how qcML files are indexed
+     * @param indexCache  The {@link IndexCache} in which the indexes of the most recently read qcML files are kept
+     */
+    public QcMLFileReader(IndexConfiguration indexConfiguration, IndexCache indexCache) {
+        if(indexCache == null) {
+            LOGGER.error("The index cache is not allowed to be <null>");
+            throw new NullPointerException("The index cache is not allowed to be <null>");
+        }
+        this.indexConfiguration = indexConfiguration;
+        this.indexCache = indexCache;
         unmarshaller = new QcMLUnmarshaller(SCHEMA);
     }
 
+    /**
+     * Creates a QcMLFileReader which uses the given {@link QcMLCatalog} to index the qcML files.
+     *
+     * When no qcML file is specified to retrieve a {@link Cv} or {@link QualityAssessment}, it is retrieved from the
+     * first qcML file in the catalog that contains it.
+     *
+     * @param catalog  The {@link QcMLCatalog} containing the index of the qcML files
+     */
+    public QcMLFileReader(QcMLCatalog catalog) {
+        this(catalog.getConfiguration());
+        this.catalog = catalog;
+    }
+
     /**
      * Creates a {@link Schema} representing the qcML XML schema, which can be used to validate a qcML file.
      *
@@ -93,12 +169,26 @@ public class QcMLFileReader implements QcMLReader {
         }
     }
 
+    /**
+     * Returns the {@link IndexCache} containing the indexes of the most recently read qcML files.
+     *
+     * @return The IndexCache used by this reader
+     */
+    public IndexCache getIndexCache() {
+        return indexCache;
+    }
+
     /**
      * Sets the file from which the Reader will read, and creates an index.
      *
+     * If the file was read recently, its cached index is refreshed to reflect any modifications to the file.
+     * The returned index is retained, so it remains usable even if it's subsequently evicted from the cache by another thread,
+     * and should be released after use (see {@link QcMLIndexer#release()}).
+     *
      * @param fileName  The file name of the qcML file from which the Reader will read
+     * @return The retained index of the qcML file
      */
-    private void setFile(String fileName) {
+    private QcMLIndexer setFile(String fileName) {
         // check whether the file name is valid
         if(fileName == null) {
             LOGGER.error("Invalid file name <null>");
@@ -106,55 +196,143 @@ public class QcMLFileReader implements QcMLReader {
         }
 
         File file = new File(fileName);
+        // check whether the file exists
+        if(!file.exists()) {
+            LOGGER.error("The qcML file <{}> does not exist", file.getAbsolutePath());
+            throw new IllegalArgumentException("The qcML file to read does not exist: " + file.getAbsolutePath());
+        }
 
         // verify whether the same file was previously checked
         // in that case, assume all checks have been done and the index can be reused
-        if(!file.equals(currentFile)) {
-            // check whether the file exists
-            if(!file.exists()) {
-                LOGGER.error("The qcML file <{}> does not exist", file.getAbsolutePath());
-                throw new IllegalArgumentException("The qcML file to read does not exist: " + file.getAbsolutePath());
+        // (after it has been updated for any data that was appended to the file in the meantime)
+        // otherwise the index is created without blocking the threads that read other files
+        QcMLIndexer result = indexCache.acquire(file, this::createIndex);
+
+        try {
+            if(result.refresh()) {
+                // the memory used by the index has changed
+                indexCache.put(file, result);
             }
+        } catch(RuntimeException e) {
+            result.release();
+            throw e;
+        }
 
-            currentFile = file;
-            LOGGER.info("Read from qcML file <{}>", currentFile.getAbsoluteFile());
+        return result;
+    }
+
+    /**
+     * Creates the index of the given qcML file, reusing the catalog index if possible.
+     *
+     * @param file  The qcML file from which the Reader will read
+     * @return The index of the qcML file
+     */
+    private QcMLIndexer createIndex(File file) {
+        LOGGER.info("Read from qcML file <{}>", file.getAbsoluteFile());
+
+        QcMLIndexer result = catalog != null ? catalog.getIndexer(file) : null;
+        if(result == null) {
+            if(indexConfiguration.isValidating()) {
+                // validate the file in the same pass in which it's indexed
+                result = new QcMLIndexer(file, indexConfiguration, SCHEMA);
+            } else {
+                result = new QcMLIndexer(file, indexConfiguration);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Closes the qcML files that have been read, and removes their indexes from the cache.
+     *
+     * The reader can still be used afterwards, in which case the requested qcML files are indexed anew.
+     */
+    @Override
+    public void close() {
+        indexCache.clear();
+    }
 
-            // create the XML file index
-            index = new QcMLIndexer(currentFile);
+    /**
+     * Finds the first qcML file in the catalog that contains the requested element.
+     *
+     * @param cls  The class type of the requested element
+     * @param id  The identifier of the requested element
+     * @return The file name of the first qcML file containing the requested element, or {@code null} if no file in the catalog contains it
+     */
+    private String findFile(Class<?> cls, String id) {
+        List<File> files = catalog.find(cls, id);
+        if(files.isEmpty()) {
+            LOGGER.info("No {} <{}> found in the catalog of <{}>", cls.getSimpleName(), id, catalog.getDirectory().getAbsolutePath());
+            return null;
         }
+        return files.get(0).getPath();
     }
 
     /**
      * Validates the given file against the qcML XML schema.
      *
+     * If validation while indexing is enabled (see {@link IndexConfiguration#setValidating(boolean)}),
+     * the file is validated in the same pass in which it is indexed, and the result is reused until the file is modified.
+     *
      * @param qcmlFile  The (qcML) file to be validated
      * @return True if the given file is a valid qcML file, false otherwise
      */
     public boolean validate(String qcmlFile) {
-        try {
-            setFile(qcmlFile);
-            SCHEMA.newValidator().validate(new StreamSource(currentFile));
+        QcMLIndexer index = setFile(qcmlFile);
+        File file = new File(qcmlFile);
+
+        if(indexConfiguration.isValidating()) {
+            try {
+                if(!index.isValidated()) {
+                    // re-index the file to validate it in a single pass
+                    QcMLIndexer validated = new QcMLIndexer(file, indexConfiguration, SCHEMA);
+                    validated.retain();
+                    indexCache.put(file, validated);
+                    index.release();
+                    index = validated;
+                }
+                if(index.getValidationError() != null) {
+                    LOGGER.error("File <{}> does not contain valid qcML content: ", file.getAbsolutePath(), index.getValidationError());
+                }
+                return index.getValidationError() == null;
+            } finally {
+                index.release();
+            }
+        }
+        index.release();
+
+        try(InputStream in = GzipFile.openInputStream(file)) {
+            SCHEMA.newValidator().validate(new StreamSource(in, file.toURI().toString()));
 
             // validated successfully
             return true;
 
         } catch(SAXException e) {
-            LOGGER.error("File <{}> does not contain valid qcML content: ", currentFile.getAbsolutePath(), e);
+            LOGGER.error("File <{}> does not contain valid qcML content: ", file.getAbsolutePath(), e);
 
             // validated unsuccessfully
             return false;
 
         } catch(IOException e) {
-            LOGGER.error("The qcML file <{}> could not be read for validation", currentFile.getAbsolutePath(), e);
-            throw new IllegalArgumentException("The qcML file could not be read for validation: " + currentFile.getAbsolutePath());
+            LOGGER.error("The qcML file <{}> could not be read for validation", file.getAbsolutePath(), e);
+            throw new IllegalArgumentException("The qcML file could not be read for validation: " + file.getAbsolutePath());
         }
     }
 
     @Override
     public QcML getQcML(String qcmlFile) {
         try {
-            setFile(qcmlFile);
-            QcML qcml = unmarshaller.unmarshal(currentFile);
+            QcMLIndexer index = setFile(qcmlFile);
+
+            // skip validation if the file was already validated while it was indexed
+            boolean validated = index.isValidated();
+            SAXException validationError = index.getValidationError();
+            index.release();
+            if(validated && validationError != null) {
+                LOGGER.info("Unable to unmarshal invalid file <{}>: {}", qcmlFile, validationError.getMessage());
+                return null;
+            }
+            QcML qcml = unmarshaller.unmarshal(new File(qcmlFile), !validated);
 
             if(!qcml.getVersion().equals(QCML_VERSION)) {
                 LOGGER.warn("The qcML version <{}> doesn't correspond to the qcML XML schema version <{}>", qcml.getVersion(), QCML_VERSION);
@@ -171,63 +349,515 @@ public class QcMLFileReader implements QcMLReader {
 
     @Override
     public Cv getCv(String qcmlFile, String id) {
-        setFile(qcmlFile);
+        if(qcmlFile == null && catalog != null) {
+            qcmlFile = findFile(Cv.class, id);
+            if(qcmlFile == null) {
+                return null;
+            }
+        }
+        QcMLIndexer index = setFile(qcmlFile);
+        try {
+            // retrieve the XML snippet pertaining to this CVType
+            InputSource xml = index.getXMLSource(Cv.class, id);
 
-        // retrieve the XML snippet pertaining to this CVType
-        String xmlSnippet = index.getXMLSnippet(Cv.class, id);
+            // unmarshal the XML element
+            return xml != null ? unmarshaller.unmarshal(xml, Cv.class) : null;
+        } finally {
+            index.release();
+        }
+    }
+
+    /**
+     * Returns an iterator over all {@link Cv} objects in the given file.
+     *
+     * The iterator retains the index of the qcML file, which is released once the iterator is exhausted, fails, or is closed.
+     * Close the iterator after use if it might not be exhausted, or use {@link #getCvStream(String)} instead.
+     *
+     * @param qcmlFile  The file name of the qcML file from which the Reader will read
+     * @return A {@link CloseableIterator} over all {@link Cv} objects, in the order in which they occur in the qcML file
+     */
+    @Override
+    public CloseableIterator<Cv> getCvIterator(String qcmlFile) {
+        QcMLIndexer index = setFile(qcmlFile);
 
-        // unmarshal the XML snippet
-        return xmlSnippet != null ? unmarshaller.unmarshal(xmlSnippet, Cv.class) : null;
+        return new ReleasingIterator<>(IteratorFactory.createCvIterator(index, unmarshaller), index);
     }
 
+    /**
+     * Returns a {@link Stream} over all {@link Cv} objects in the given file.
+     *
+     * The stream runs over the index entries of the qcML file, and unmarshals the Cv's in parallel if it's made parallel.
+     * The stream should be closed after use, so the index of the qcML file is released.
+     *
+     * @param qcmlFile  The file name of the qcML file from which the Reader will read
+     * @return A sequential {@link Stream} over all {@link Cv} objects, in the order in which they occur in the qcML file
+     */
     @Override
-    public Iterator<Cv> getCvIterator(String qcmlFile) {
-        setFile(qcmlFile);
+    public Stream<Cv> getCvStream(String qcmlFile) {
+        QcMLIndexer index = setFile(qcmlFile);
 
-        return IteratorFactory.createCvIterator(index, unmarshaller);
+        return StreamSupport.stream(IteratorFactory.createCvSpliterator(index, unmarshaller), false).onClose(index::release);
     }
 
     @Override
     public QualityAssessment getQualityAssessment(String qcmlFile, String id) {
-        setFile(qcmlFile);
-
-        // retrieve the XML snippet
-        String xmlSnippet = index.getXMLSnippet(QualityAssessment.class, id);
+        if(qcmlFile == null && catalog != null) {
+            qcmlFile = findFile(QualityAssessment.class, id);
+            if(qcmlFile == null) {
+                return null;
+            }
+        }
+        QcMLIndexer index = setFile(qcmlFile);
+        try {
+            // retrieve the XML snippet
+            InputSource xml = index.getXMLSource(QualityAssessment.class, id);
 
-        // unmarshal the XML snippet if it exists
-        if(xmlSnippet != null) {
-            try {
-                // unmarshal to a QualityAssessmentList, and subsequently call the QualityAssessmentAdapter manually
-                // manually calling the adapter is required because XmlJavaTypeAdapter can't be used on XmlRootElement
-                // see: https://java.net/jira/browse/JAXB-117
-                Object temp = unmarshaller.unmarshal(xmlSnippet);
-                QualityAssessmentList qaList = (QualityAssessmentList) JAXBIntrospector.getValue(temp);
-                QualityAssessmentAdapter adapter = new QualityAssessmentAdapter();
-                QualityAssessment result = adapter.unmarshal(qaList);
-
-                // resolve references to Cv's (unmarshal them if required)
+            // unmarshal the XML element if it exists
+            if(xml != null) {
                 // use a cache of unmarshalled Cv's because we might encounter the same Cv multiple times
-                Map<String, Cv> cvCache = new HashMap<>();
-                unmarshaller.resolveCvReferences(result, cvCache, index);
+                return unmarshaller.unmarshalQualityAssessment(xml, unmarshaller.getCvCache(index), index);
+            }
+
+            // no runQuality or setQuality with the specified ID found
+            return null;
+        } finally {
+            index.release();
+        }
+    }
+
+    /**
+     * Returns an iterator over all {@link QualityAssessment} objects in the given file.
+     *
+     * The iterator retains the index of the qcML file, which is released once the iterator is exhausted, fails, or is closed.
+     * Close the iterator after use if it might not be exhausted, or use {@link #getQualityAssessmentStream(String)} instead.
+     *
+     * @param qcmlFile  The file name of the qcML file from which the Reader will read
+     * @return A {@link CloseableIterator} over all {@link QualityAssessment} objects, in the order in which they occur in the qcML file
+     */
+    @Override
+    public CloseableIterator<QualityAssessment> getQualityAssessmentIterator(String qcmlFile) {
+        QcMLIndexer index = setFile(qcmlFile);
+
+        return new ReleasingIterator<>(IteratorFactory.createQualityAssessmentIterator(index, unmarshaller), index);
+    }
+
+    /**
+     * Returns a {@link Stream} over all {@link QualityAssessment} objects in the given file.
+     *
+     * The stream runs over the index entries of the qcML file, and unmarshals the QualityAssessments in parallel if it's made parallel.
+     * The stream should be closed after use, so the index of the qcML file is released.
+     *
+     * @param qcmlFile  The file name of the qcML file from which the Reader will read
+     * @return A sequential {@link Stream} over all {@link QualityAssessment} objects, in the order in which they occur in the qcML file
+     */
+    @Override
+    public Stream<QualityAssessment> getQualityAssessmentStream(String qcmlFile) {
+        QcMLIndexer index = setFile(qcmlFile);
+
+        return StreamSupport.stream(IteratorFactory.createQualityAssessmentSpliterator(index, unmarshaller), false).onClose(index::release);
+    }
+
+    /**
+     * Returns an iterator over the quality assessments containing a metaDataParameter with the given accession number and value.
+     *
+     * If the values of the metaDataParameters with the given accession number are indexed (see {@link IndexConfiguration#setMetaDataAccessions(java.util.Set)}),
+     * the matching quality assessments are selected using the {@link MetaDataIndex}, and only these are unmarshalled.
+     * Otherwise all quality assessments are unmarshalled and filtered subsequently.
+     * The iterator should be closed after use if it might not be exhausted (see {@link CloseableIterator}).
+     *
+     * @param qcmlFile  The file name of the qcML file
+     * @param accession  The accession number of the metaDataParameter
+     * @param value  The requested value of the metaDataParameter
+     * @return A {@link CloseableIterator} over the matching quality assessments, in the order in which they occur in the qcML file
+     */
+    public CloseableIterator<QualityAssessment> getQualityAssessmentIterator(String qcmlFile, String accession, final String value) {
+        if(value == null) {
+            LOGGER.error("The metaDataParameter value is not allowed to be <null>");
+            throw new NullPointerException("The metaDataParameter value is not allowed to be <null>");
+        }
+
+        return getQualityAssessmentIterator(qcmlFile, accession, new Predicate<String>() {
+            @Override
+            public boolean apply(String input) {
+                return value.equals(input);
+            }
+        });
+    }
+
+    /**
+     * Returns an iterator over the quality assessments containing a metaDataParameter with the given accession number whose value satisfies the given predicate.
+     *
+     * If the values of the metaDataParameters with the given accession number are indexed (see {@link IndexConfiguration#setMetaDataAccessions(java.util.Set)}),
+     * the matching quality assessments are selected using the {@link MetaDataIndex}, and only these are unmarshalled.
+     * Otherwise all quality assessments are unmarshalled and filtered subsequently.
+     * The iterator should be closed after use if it might not be exhausted (see {@link CloseableIterator}).
+     *
+     * @param qcmlFile  The file name of the qcML file
+     * @param accession  The accession number of the metaDataParameter
+     * @param predicate  The condition the value of the metaDataParameter should satisfy
+     * @return A {@link CloseableIterator} over the matching quality assessments, in the order in which they occur in the qcML file
+     */
+    public CloseableIterator<QualityAssessment> getQualityAssessmentIterator(String qcmlFile, final String accession, final Predicate<String> predicate) {
+        if(accession == null) {
+            LOGGER.error("The metaDataParameter accession is not allowed to be <null>");
+            throw new NullPointerException("The metaDataParameter accession is not allowed to be <null>");
+        }
+        if(predicate == null) {
+            LOGGER.error("The predicate is not allowed to be <null>");
+            throw new NullPointerException("The predicate is not allowed to be <null>");
+        }
+
+        QcMLIndexer index = setFile(qcmlFile);
+
+        MetaDataIndex metaDataIndex = index.getMetaDataIndex();
+        if(metaDataIndex != null && metaDataIndex.isIndexed(accession)) {
+            return new ReleasingIterator<>(IteratorFactory.createQualityAssessmentIterator(index, unmarshaller,
+                    metaDataIndex.getQualityAssessmentIds(accession, predicate)), index);
+        } else {
+            LOGGER.warn("The metaDataParameter accession <{}> is not indexed, all quality assessments are unmarshalled to filter them", accession);
+            Iterator<QualityAssessment> iterator = IteratorFactory.createQualityAssessmentIterator(index, unmarshaller);
+            return new ReleasingIterator<>(Iterators.filter(iterator, new Predicate<QualityAssessment>() {
+                @Override
+                public boolean apply(QualityAssessment qa) {
+                    MetaDataParameter param = qa.getMetaDataParameter(accession);
+                    return param != null && param.getValue() != null && predicate.apply(param.getValue());
+                }
+            }), index);
+        }
+    }
+
+    /**
+     * Returns statistics about the contents of the given qcML file.
+     *
+     * The statistics are derived from the index of the qcML file, without unmarshalling any of its elements.
+     *
+     * @param qcmlFile  The file name of the qcML file from which the Reader will read
+     * @return The {@link QcMLStatistics} for the given qcML file
+     */
+    public QcMLStatistics getStatistics(String qcmlFile) {
+        QcMLIndexer index = setFile(qcmlFile);
+        try {
+            return index.getStatistics();
+        } finally {
+            index.release();
+        }
+    }
+
+    /**
+     * Returns the {@link MetaDataParameter} with the given accession number from the specified {@link QualityAssessment}.
+     *
+     * If the parameters are indexed (see {@link IndexConfiguration#setParameterIndex(boolean)}), only the requested parameter is unmarshalled,
+     * in which case the parent QualityAssessment of the returned parameter isn't set.
+     * Otherwise the full QualityAssessment is unmarshalled to retrieve the parameter.
+     *
+     * @param qcmlFile  The file name of the qcML file from which the Reader will read, or {@code null} to search the catalog (if available)
+     * @param qaId  The identifier of the QualityAssessment containing the requested parameter
+     * @param accession  The accession number of the requested parameter
+     * @return The {@link MetaDataParameter} specified by the given accession number if present, else {@code null}
+     */
+    public MetaDataParameter getMetaDataParameter(String qcmlFile, String qaId, String accession) {
+        if(qcmlFile == null && catalog != null) {
+            qcmlFile = findFile(QualityAssessment.class, qaId);
+            if(qcmlFile == null) {
+                return null;
+            }
+        }
+        QcMLIndexer index = setFile(qcmlFile);
+        try {
+            if(index.hasParameterIndex()) {
+                return getParameter(index, qaId, accession, MetaDataParameter.class, unmarshaller.getCvCache(index));
+            } else {
+                QualityAssessment qa = getQualityAssessment(qcmlFile, qaId);
+                return qa != null ? qa.getMetaDataParameter(accession) : null;
+            }
+        } finally {
+            index.release();
+        }
+    }
+
+    /**
+     * Returns the {@link QualityParameter} with the given accession number from the specified {@link QualityAssessment}.
+     *
+     * If the parameters are indexed (see {@link IndexConfiguration#setParameterIndex(boolean)}), only the requested parameter is unmarshalled,
+     * in which case the parent QualityAssessment of the returned parameter isn't set.
+     * Otherwise the full QualityAssessment is unmarshalled to retrieve the parameter.
+     *
+     * @param qcmlFile  The file name of the qcML file from which the Reader will read, or {@code null} to search the catalog (if available)
+     * @param qaId  The identifier of the QualityAssessment containing the requested parameter
+     * @param accession  The accession number of the requested parameter
+     * @return The {@link QualityParameter} specified by the given accession number if present, else {@code null}
+     */
+    public QualityParameter getQualityParameter(String qcmlFile, String qaId, String accession) {
+        if(qcmlFile == null && catalog != null) {
+            qcmlFile = findFile(QualityAssessment.class, qaId);
+            if(qcmlFile == null) {
+                return null;
+            }
+        }
+        QcMLIndexer index = setFile(qcmlFile);
+        try {
+            if(index.hasParameterIndex()) {
+                return getParameter(index, qaId, accession, QualityParameter.class, unmarshaller.getCvCache(index));
+            } else {
+                QualityAssessment qa = getQualityAssessment(qcmlFile, qaId);
+                return qa != null ? qa.getQualityParameter(accession) : null;
+            }
+        } finally {
+            index.release();
+        }
+    }
+
+    /**
+     * Returns the {@link AttachmentParameter} with the given accession number from the specified {@link QualityAssessment}.
+     *
+     * If the parameters are indexed (see {@link IndexConfiguration#setParameterIndex(boolean)}), only the requested parameter
+     * (and the {@link QualityParameter} it refers to) is unmarshalled, in which case the parent QualityAssessment of the returned parameter isn't set.
+     * Otherwise the full QualityAssessment is unmarshalled to retrieve the parameter.
+     *
+     * @param qcmlFile  The file name of the qcML file from which the Reader will read, or {@code null} to search the catalog (if available)
+     * @param qaId  The identifier of the QualityAssessment containing the requested parameter
+     * @param accession  The accession number of the requested parameter
+     * @return The {@link AttachmentParameter} specified by the given accession number if present, else {@code null}
+     */
+    public AttachmentParameter getAttachmentParameter(String qcmlFile, String qaId, String accession) {
+        if(qcmlFile == null && catalog != null) {
+            qcmlFile = findFile(QualityAssessment.class, qaId);
+            if(qcmlFile == null) {
+                return null;
+            }
+        }
+        QcMLIndexer index = setFile(qcmlFile);
+        try {
+            if(index.hasParameterIndex()) {
+                Map<String, Cv> cvCache = unmarshaller.getCvCache(index);
+                AttachmentParameter attachment = getParameter(index, qaId, accession, AttachmentParameter.class, cvCache);
+
+                // resolve the reference to the QualityParameter, which can't be resolved by JAXB when unmarshalling only the attachment
+                if(attachment != null && attachment.getQualityParameterRef() == null) {
+                    Matcher match = QUALITY_PARAMETER_REF_PATTERN.matcher(index.getStartTag(AttachmentParameter.class, qaId, accession));
+                    if(match.find()) {
+                        InputSource paramXml = index.getXMLSource(QualityParameter.class, match.group(1));
+                        if(paramXml != null) {
+                            QualityParameter param = unmarshaller.unmarshal(paramXml, QualityParameter.class);
+                            unmarshaller.resolveCvReferences(param, cvCache, index);
+                            attachment.setQualityParameterRef(param);
+                        }
+                    }
+                }
+
+                return attachment;
+            } else {
+                QualityAssessment qa = getQualityAssessment(qcmlFile, qaId);
+                return qa != null ? qa.getAttachmentParameter(accession) : null;
+            }
+        } finally {
+            index.release();
+        }
+    }
 
-                // set the isSet flag based on the element name
-                result.setSet("setQuality".equals(unmarshaller.getIntrospector().getElementName(temp).getLocalPart()));
+    /**
+     * Writes the decoded binary data of the {@link AttachmentParameter} with the given accession number to the given stream.
+     *
+     * If the parameters are indexed (see {@link IndexConfiguration#setParameterIndex(boolean)}), the base64-encoded data
+     * is decoded directly from the qcML file in blocks, without unmarshalling the attachment.
+     * Otherwise the attachment is retrieved through {@link #getAttachmentParameter(String, String, String)} first.
+     *
+     * @param qcmlFile  The file name of the qcML file from which the Reader will read, or {@code null} to search the catalog (if available)
+     * @param qaId  The identifier of the QualityAssessment containing the requested attachment
+     * @param accession  The accession number of the requested attachment
+     * @param out  The stream to which the decoded binary data is written, which isn't closed
+     * @return The number of bytes written to the stream, or -1 if the attachment isn't present or doesn't contain binary data
+     */
+    public long writeAttachmentBinary(String qcmlFile, String qaId, String accession, OutputStream out) {
+        if(out == null) {
+            LOGGER.error("The output stream is not allowed to be <null>");
+            throw new NullPointerException("The output stream is not allowed to be <null>");
+        }
+        if(qcmlFile == null && catalog != null) {
+            qcmlFile = findFile(QualityAssessment.class, qaId);
+            if(qcmlFile == null) {
+                return -1;
+            }
+        }
+        QcMLIndexer index = setFile(qcmlFile);
+        try {
+            if(index.hasParameterIndex()) {
+                return index.writeBinary(qaId, accession, out);
+            } else {
+                AttachmentParameter attachment = getAttachmentParameter(qcmlFile, qaId, accession);
+                if(attachment == null || attachment.getBinary() == null) {
+                    return -1;
+                }
+                byte[] binary = Base64.decodeBase64(attachment.getBinary());
+                try {
+                    out.write(binary);
+                } catch(IOException e) {
+                    LOGGER.error("Could not write the binary data of attachment <{}>: ", accession, e);
+                    throw new IllegalStateException("Could not write the binary data of attachment " + accession + ": " + e);
+                }
+                return binary.length;
+            }
+        } finally {
+            index.release();
+        }
+    }
 
-                return result;
-            } catch (Exception e) {
-                LOGGER.error("Unable to manually call the QualityAssessmentAdapter for XML snippet: {}\n{}", xmlSnippet.substring(0, xmlSnippet.indexOf('>') + 1), e);
-                throw new IllegalStateException("Unable to manually call the QualityAssessmentAdapter: " + e);
+    /**
+     * Returns the specified rows of the table of the {@link AttachmentParameter} with the given accession number.
+     *
+     * If the parameters are indexed (see {@link IndexConfiguration#setParameterIndex(boolean)}), only the requested rows are read from the qcML file,
+     * using the offsets of the rows which are determined the first time the table is accessed.
+     * Otherwise the attachment is retrieved through {@link #getAttachmentParameter(String, String, String)} first.
+     *
+     * The returned table only contains the requested rows, which retain their index in the full table.
+     *
+     * @param qcmlFile  The file name of the qcML file from which the Reader will read, or {@code null} to search the catalog (if available)
+     * @param qaId  The identifier of the QualityAssessment containing the requested attachment
+     * @param accession  The accession number of the requested attachment
+     * @param fromRow  The index of the first requested row (inclusive), starting from 0
+     * @param toRow  The index of the last requested row (exclusive), rows beyond the end of the table are ignored
+     * @return A {@link TableAttachment} containing the requested rows, or {@code null} if the attachment isn't present or doesn't contain a table
+     */
+    public TableAttachment getAttachmentTableRows(String qcmlFile, String qaId, String accession, int fromRow, int toRow) {
+        if(fromRow < 0 || toRow < fromRow) {
+            LOGGER.error("Invalid table row range: [{}, {})", fromRow, toRow);
+            throw new IllegalArgumentException("Invalid table row range: [" + fromRow + ", " + toRow + ")");
+        }
+        if(qcmlFile == null && catalog != null) {
+            qcmlFile = findFile(QualityAssessment.class, qaId);
+            if(qcmlFile == null) {
+                return null;
             }
         }
+        QcMLIndexer index = setFile(qcmlFile);
+        try {
+            if(index.hasParameterIndex()) {
+                String[] columns = index.readTableColumns(qaId, accession);
+                if(columns == null) {
+                    return null;
+                }
+                TableAttachment table = new TableAttachment(columns);
+                List<String[]> rows = index.readTableRows(qaId, accession, fromRow, toRow);
+                for(int row = 0; row < rows.size(); row++) {
+                    String[] values = rows.get(row);
+                    for(int column = 0; column < values.length && column < columns.length; column++) {
+                        table.addValue(columns[column], fromRow + row, values[column]);
+                    }
+                }
+                return table;
+            } else {
+                AttachmentParameter attachment = getAttachmentParameter(qcmlFile, qaId, accession);
+                if(attachment == null || attachment.getTable() == null) {
+                    return null;
+                }
+                TableAttachment table = new TableAttachment();
+                for(TableColumn column : attachment.getTable().getColumns()) {
+                    table.addColumn(column.getColumn());
+                }
+                for(TableRow row : attachment.getTable().getRows()) {
+                    if(row.getRow() >= fromRow && row.getRow() < toRow) {
+                        for(TableValue value : row.getValues()) {
+                            table.addValue(value.getColumn().getColumn(), row.getRow(), value.getValue());
+                        }
+                    }
+                }
+                return table;
+            }
+        } finally {
+            index.release();
+        }
+    }
+
+    /**
+     * Unmarshals the specified parameter using the secondary index.
+     *
+     * @param index  The index of the qcML file containing the requested parameter
+     * @param qaId  The identifier of the QualityAssessment containing the requested parameter
+     * @param accession  The accession number of the requested parameter
+     * @param type  The class of the requested parameter
+     * @param cvCache  A cache containing the previously unmarshalled Cv's
+     * @return The requested parameter if present, else {@code null}
+     */
+    private <T extends CvParameter> T getParameter(QcMLIndexer index, String qaId, String accession, Class<T> type, Map<String, Cv> cvCache) {
+        // retrieve the XML snippet
+        InputSource xml = index.getXMLSource(type, qaId, accession);
+
+        // unmarshal the XML element if it exists
+        if(xml != null) {
+            T param = unmarshaller.unmarshal(xml, type);
+
+            // resolve references to Cv's (unmarshal them if required)
+            unmarshaller.resolveCvReferences(param, cvCache, index);
+
+            return param;
+        }
 
-        // no runQuality or setQuality with the specified ID found
+        // no parameter with the specified accession number found
         return null;
     }
 
-    @Override
-    public Iterator<QualityAssessment> getQualityAssessmentIterator(String qcmlFile) {
-        setFile(qcmlFile);
+    /**
+     * A {@link CloseableIterator} that releases the retained index of the qcML file once it has returned all elements,
+     * once it fails to return an element, or once it's closed, whichever comes first.
+     *
+     * @param <T> The type of the elements returned by the iterator
+     */
+    private static class ReleasingIterator<T> implements CloseableIterator<T> {
+
+        /** The iterator over the elements in the qcML file */
+        private final Iterator<T> iterator;
+        /** The retained index of the qcML file, {@code null} after it has been released */
+        private QcMLIndexer index;
+
+        ReleasingIterator(Iterator<T> iterator, QcMLIndexer index) {
+            this.iterator = iterator;
+            this.index = index;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if(index == null) {
+                return false;
+            }
+            boolean hasNext = false;
+            try {
+                hasNext = iterator.hasNext();
+            } finally {
+                if(!hasNext) {
+                    close();
+                }
+            }
+            return hasNext;
+        }
 
-        return IteratorFactory.createQualityAssessmentIterator(index, unmarshaller);
+        @Override
+        public T next() {
+            if(index == null) {
+                throw new NoSuchElementException();
+            }
+            boolean success = false;
+            try {
+                T next = iterator.next();
+                success = true;
+                return next;
+            } finally {
+                if(!success) {
+                    close();
+                }
+            }
+        }
+
+        @Override
+        public void remove() {
+            iterator.remove();
+        }
+
+        @Override
+        public void close() {
+            if(index != null) {
+                index.release();
+                index = null;
+            }
+        }
     }
 }
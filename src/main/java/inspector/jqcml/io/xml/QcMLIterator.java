@@ -21,17 +21,27 @@ package inspector.jqcml.io.xml;
  */
 
 import inspector.jqcml.io.xml.index.QcMLIndexer;
+import inspector.jqcml.io.xml.index.SequentialXmlReader;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import psidev.psi.tools.xxindex.index.IndexElement;
 
+import java.io.IOException;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 
 /**
  * An {@link Iterator} over a specified object in a qcML file.
  * 
+ * The objects are returned in the order in which they occur in the qcML file, so the file is read sequentially.
+ * 
  * @param <T> The qcML (sub)object over which the iterator runs.
  *           If this subobject is included in the {@link QcMLIndexer}, the iterator will run over all indexed items.
  *           Else, the iterator will be empty.
@@ -44,6 +54,8 @@ public class QcMLIterator<T> implements Iterator<T> {
     protected Class<T> clss;
     /** The index for the current qcML file, recording the offsets of the individual elements */
     protected QcMLIndexer index;
+    /** The reader used to read the consecutive XML snippets from the qcML file */
+    protected SequentialXmlReader reader;
     /** The unmarshaller used to read the qcML file through JAXB */
     protected QcMLUnmarshaller unmarshaller;
 
@@ -58,22 +70,63 @@ public class QcMLIterator<T> implements Iterator<T> {
      * @param clss  The class type of the object returned by the iterator
      */
     public QcMLIterator(QcMLIndexer index, QcMLUnmarshaller unmarshaller, Class<T> clss) {
+        this(index, unmarshaller, clss, null);
+    }
+
+    /**
+     * Creates a QcMLIterator that will iterate over the qcML (sub)objects of the specified class type with the given IDs.
+     *
+     * The objects are returned in the order in which they occur in the qcML file, IDs that aren't present in the index are ignored.
+     *
+     * @param index  The {@link QcMLIndexer} used to index the qcML file
+     * @param unmarshaller  The {@link QcMLUnmarshaller} to unmarshal the qcML file
+     * @param clss  The class type of the object returned by the iterator
+     * @param ids  The IDs of the objects returned by the iterator, or {@code null} to iterate over all objects of the specified class type
+     */
+    public QcMLIterator(QcMLIndexer index, QcMLUnmarshaller unmarshaller, Class<T> clss, Collection<String> ids) {
         this.clss = clss;
         this.index = index;
         this.unmarshaller = unmarshaller;
+        this.reader = index.createSequentialReader();
 
         // check whether the given class type has some mappings in the index
-        if(index.getIDMapping(clss) != null) {
-            iterator = index.getIDMapping(clss).entrySet().iterator();
-        } else {
+        Map<String, IndexElement> mapping = index.getIDMapping(clss);
+        if(mapping == null) {
             // no mappings found for the given element -> empty iterator
             iterator = Collections.emptyIterator();
+        } else if(ids == null) {
+            iterator = mapping.entrySet().iterator();
+        } else {
+            // only retain the requested elements, in the order in which they occur in the qcML file
+            List<Entry<String, IndexElement>> selected = new ArrayList<>(ids.size());
+            for(String id : ids) {
+                IndexElement elem = mapping.get(id);
+                if(elem != null) {
+                    selected.add(new SimpleImmutableEntry<>(id, elem));
+                }
+            }
+            Collections.sort(selected, new Comparator<Entry<String, IndexElement>>() {
+                @Override
+                public int compare(Entry<String, IndexElement> o1, Entry<String, IndexElement> o2) {
+                    return Long.compare(o1.getValue().getStart(), o2.getValue().getStart());
+                }
+            });
+            iterator = selected.iterator();
         }
     }
 
     @Override
     public boolean hasNext() {
-        return iterator.hasNext();
+        boolean hasNext = iterator.hasNext();
+        if(!hasNext) {
+            // release the stream of a compressed qcML file once all elements have been read
+            try {
+                reader.close();
+            } catch(IOException e) {
+                LOGGER.warn("Could not close the reader for type <{}>: {}", clss, e);
+            }
+        }
+        return hasNext;
     }
 
     @Override
@@ -82,10 +135,8 @@ public class QcMLIterator<T> implements Iterator<T> {
 
         // get the next index element
         IndexElement elem = iterator.next().getValue();
-        // read the xml snippet
-        String xmlSnippet = index.readXML(elem);
-        // unmarshal this element
-        return unmarshaller.unmarshal(xmlSnippet, clss);
+        // unmarshal this element directly from the file contents
+        return unmarshaller.unmarshal(reader.openXML(elem), clss);
     }
 
     @Override
@@ -0,0 +1,142 @@
+package inspector.jqcml.io.xml;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import inspector.jqcml.io.xml.index.ElementOffsets;
+import inspector.jqcml.io.xml.index.QcMLIndexer;
+import inspector.jqcml.io.xml.index.SequentialXmlReader;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.xml.sax.InputSource;
+
+import java.io.IOException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A {@link Spliterator} over a specified object in a qcML file.
+ *
+ * The spliterator runs over the entries of the specified class in the {@link QcMLIndexer}, in the order in which they occur in the qcML file.
+ * It splits by halving the remaining positions in the {@link ElementOffsets}, so a parallel stream unmarshals the objects on multiple threads,
+ * without creating an offset range object per element up front.
+ * Each split reads its (contiguous) part of the qcML file sequentially when it's traversed in bulk.
+ *
+ * @param <T> The qcML (sub)object over which the spliterator runs.
+ *           If this subobject is included in the {@link QcMLIndexer}, the spliterator will run over all indexed items.
+ *           Else, the spliterator will be empty.
+ */
+public class QcMLSpliterator<T> implements Spliterator<T> {
+
+    private static final Logger LOGGER = LogManager.getLogger(QcMLSpliterator.class);
+
+    /** The index for the current qcML file, recording the offsets of the individual elements */
+    private final QcMLIndexer index;
+    /** The offsets of the elements in the qcML file, in ascending order */
+    private final ElementOffsets elements;
+    /** The function that unmarshals an XML element to the resulting object */
+    private final Function<InputSource, T> unmarshal;
+
+    /** The position of the next element */
+    private int position;
+    /** The position after the last element covered by this spliterator */
+    private final int end;
+
+    /**
+     * Creates a QcMLSpliterator that will run over all qcML (sub)objects of the specified class type.
+     *
+     * @param index  The {@link QcMLIndexer} used to index the qcML file
+     * @param clss  The class type of the indexed elements
+     * @param unmarshal  The function used to unmarshal the XML element read from the qcML file. It should be thread-safe to support parallel streams.
+     */
+    public QcMLSpliterator(QcMLIndexer index, Class<?> clss, Function<InputSource, T> unmarshal) {
+        this.index = index;
+        this.unmarshal = unmarshal;
+
+        // the elements are read sequentially by each split
+        // if no mappings are found for the given element, the spliterator is empty
+        elements = index.getOffsets(clss);
+
+        position = 0;
+        end = elements.size();
+    }
+
+    private QcMLSpliterator(QcMLSpliterator<T> parent, int position, int end) {
+        this.index = parent.index;
+        this.elements = parent.elements;
+        this.unmarshal = parent.unmarshal;
+        this.position = position;
+        this.end = end;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if(position < end) {
+            action.accept(unmarshal.apply(index.openXML(elements.get(position++))));
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super T> action) {
+        if(position >= end) {
+            return;
+        }
+
+        // read the consecutive elements of this split sequentially
+        SequentialXmlReader reader = index.createSequentialReader();
+        try {
+            while(position < end) {
+                action.accept(unmarshal.apply(reader.openXML(elements.get(position++))));
+            }
+        } finally {
+            try {
+                reader.close();
+            } catch(IOException e) {
+                LOGGER.warn("Could not close the sequential reader: {}", e);
+            }
+        }
+    }
+
+    @Override
+    public Spliterator<T> trySplit() {
+        int mid = (position + end) >>> 1;
+        if(mid <= position) {
+            return null;
+        }
+
+        // the prefix is split off to keep the encounter order
+        QcMLSpliterator<T> prefix = new QcMLSpliterator<>(this, position, mid);
+        position = mid;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return end - position;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+    }
+}
@@ -0,0 +1,351 @@
+package inspector.jqcml.io.xml;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import inspector.jqcml.io.QcMLReader;
+import inspector.jqcml.io.xml.index.GzipFile;
+import inspector.jqcml.jaxb.adapters.QualityAssessmentAdapter;
+import inspector.jqcml.model.Cv;
+import inspector.jqcml.model.CvParameter;
+import inspector.jqcml.model.QualityAssessment;
+import inspector.jqcml.model.QualityAssessmentList;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A qcML input reader which reads an XML-based qcML file in a single sequential pass, without creating an index.
+ *
+ * The file is traversed using StAX, and each runQuality, setQuality, and cv element is unmarshalled through JAXB as it is encountered,
+ * so only a single element is kept in memory at a time.
+ * This is suited for jobs that process every element exactly once (e.g. converting or exporting a qcML file),
+ * whereas a {@link QcMLFileReader} is more efficient for random access to individual elements.
+ *
+ * The elements are returned in the order in which they occur in the qcML file:
+ * first the {@link QualityAssessment}s through {@link #nextQualityAssessment()}, subsequently the {@link Cv}s through {@link #nextCv()}.
+ * Because the cvList follows the quality assessments, the references to Cv's of the returned QualityAssessments can't be resolved:
+ * only the IDs of the referenced Cv's are available (see {@link CvParameter#getCvRefId()}).
+ *
+ * A QcMLStreamReader isn't thread-safe, and should be closed after use.
+ */
+public class QcMLStreamReader implements Closeable {
+
+    private static final Logger LOGGER = LogManager.getLogger(QcMLStreamReader.class);
+
+    /** The qcML namespace, which is injected for elements without a namespace */
+    private static final String QCML_NAMESPACE = "http://www.prime-xs.eu/ms/qcml";
+
+    /** The factory used to create the XML stream readers */
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    /** The qcML file from which is read */
+    private final File file;
+    /** The unmarshaller used to unmarshal the individual elements through JAXB */
+    private final QcMLUnmarshaller unmarshaller;
+
+    /** The stream from which the qcML file is read */
+    private final InputStream in;
+    /** The XML stream reader traversing the qcML file */
+    private final XMLStreamReader reader;
+    /** The version of the qcML file */
+    private final String version;
+
+    /** Flag indicating whether the current event of the reader has been processed already */
+    private boolean consumed = true;
+
+    /**
+     * Opens the given qcML file to read it sequentially.
+     *
+     * @param file  The (optionally gzip-compressed) qcML file that will be read
+     */
+    public QcMLStreamReader(File file) {
+        this(file, new QcMLUnmarshaller());
+    }
+
+    /**
+     * Opens the given qcML file to read it sequentially, using the given {@link QcMLUnmarshaller}.
+     *
+     * @param file  The (optionally gzip-compressed) qcML file that will be read
+     * @param unmarshaller  The QcMLUnmarshaller used to unmarshal the individual elements
+     */
+    public QcMLStreamReader(File file, QcMLUnmarshaller unmarshaller) {
+        if(file == null) {
+            LOGGER.error("Invalid file <null>");
+            throw new NullPointerException("Invalid file");
+        } else if(!file.exists()) {
+            LOGGER.error("The qcML file <{}> does not exist", file.getAbsolutePath());
+            throw new IllegalArgumentException("The qcML file to read does not exist: " + file.getAbsolutePath());
+        }
+
+        LOGGER.info("Read sequentially from qcML file <{}>", file.getAbsolutePath());
+
+        this.file = file;
+        this.unmarshaller = unmarshaller;
+
+        InputStream stream = null;
+        try {
+            stream = new BufferedInputStream(GzipFile.openInputStream(file));
+            reader = new NamespaceDelegate(INPUT_FACTORY.createXMLStreamReader(stream));
+            in = stream;
+
+            // read the root element
+            if(reader.nextTag() != XMLStreamConstants.START_ELEMENT || !"qcML".equals(reader.getLocalName())) {
+                LOGGER.error("File <{}> doesn't contain a qcML root element", file.getAbsolutePath());
+                throw new IllegalArgumentException("No qcML root element in file: " + file.getAbsolutePath());
+            }
+            version = reader.getAttributeValue(null, "version");
+            if(!QcMLReader.QCML_VERSION.equals(version)) {
+                LOGGER.warn("The qcML version <{}> doesn't correspond to the qcML XML schema version <{}>", version, QcMLReader.QCML_VERSION);
+            }
+        } catch(IOException | XMLStreamException | RuntimeException e) {
+            closeQuietly(stream);
+            if(e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            LOGGER.error("Could not read qcML file <{}>: ", file.getAbsolutePath(), e);
+            throw new IllegalArgumentException("Could not read qcML file: " + file.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Creates the factory used to create the XML stream readers, which doesn't resolve external entities.
+     *
+     * @return An XMLInputFactory to read qcML files
+     */
+    private static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return factory;
+    }
+
+    /**
+     * Returns the version of the qcML file.
+     *
+     * @return The version attribute of the qcML root element
+     */
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the next {@link QualityAssessment} in the qcML file.
+     *
+     * The references to {@link Cv}s of the returned QualityAssessment aren't resolved, only the IDs of the referenced Cv's are available.
+     *
+     * @return The next QualityAssessment, or {@code null} if all runQuality and setQuality elements have been read
+     */
+    public QualityAssessment nextQualityAssessment() {
+        try {
+            while(nextStartElement()) {
+                String name = reader.getLocalName();
+                if("runQuality".equals(name) || "setQuality".equals(name)) {
+                    QualityAssessmentList qaList = unmarshaller.unmarshal(reader, QualityAssessmentList.class).getValue();
+                    consumed = false;
+                    return toQualityAssessment(qaList, "setQuality".equals(name));
+                } else if("cv".equals(name)) {
+                    // the quality assessments precede the cvList, retain the cv element for nextCv
+                    consumed = false;
+                    return null;
+                }
+            }
+            return null;
+        } catch(XMLStreamException e) {
+            LOGGER.error("Could not read the next quality assessment from qcML file <{}>: ", file.getAbsolutePath(), e);
+            throw new IllegalStateException("Could not read the next quality assessment from qcML file <" + file.getAbsolutePath() + ">: " + e);
+        }
+    }
+
+    /**
+     * Converts the unmarshalled {@link QualityAssessmentList} to a {@link QualityAssessment}.
+     *
+     * Manually calling the adapter is required because XmlJavaTypeAdapter can't be used on XmlRootElement.
+     *
+     * @param qaList  The QualityAssessmentList unmarshalled from a runQuality or setQuality element
+     * @param isSet  Flag indicating whether the QualityAssessment was unmarshalled from a setQuality element
+     * @return The QualityAssessment
+     */
+    private QualityAssessment toQualityAssessment(QualityAssessmentList qaList, boolean isSet) {
+        try {
+            QualityAssessment result = new QualityAssessmentAdapter().unmarshal(qaList);
+            result.setSet(isSet);
+            return result;
+        } catch(Exception e) {
+            LOGGER.error("Unable to manually call the QualityAssessmentAdapter for quality assessment <{}>: {}", qaList.getId(), e);
+            throw new IllegalStateException("Unable to manually call the QualityAssessmentAdapter: " + e);
+        }
+    }
+
+    /**
+     * Returns the next {@link Cv} in the qcML file.
+     *
+     * Any remaining quality assessments preceding the cvList are skipped without unmarshalling them.
+     *
+     * @return The next Cv, or {@code null} if all cv elements have been read
+     */
+    public Cv nextCv() {
+        try {
+            while(nextStartElement()) {
+                String name = reader.getLocalName();
+                if("cv".equals(name)) {
+                    Cv result = unmarshaller.unmarshal(reader, Cv.class).getValue();
+                    consumed = false;
+                    return result;
+                } else if("runQuality".equals(name) || "setQuality".equals(name)) {
+                    skipElement();
+                }
+            }
+            return null;
+        } catch(XMLStreamException e) {
+            LOGGER.error("Could not read the next cv from qcML file <{}>: ", file.getAbsolutePath(), e);
+            throw new IllegalStateException("Could not read the next cv from qcML file <" + file.getAbsolutePath() + ">: " + e);
+        }
+    }
+
+    /**
+     * Returns a {@link Stream} over the remaining {@link QualityAssessment}s in the qcML file.
+     *
+     * @return A sequential stream over the QualityAssessments, in the order in which they occur in the qcML file
+     */
+    public Stream<QualityAssessment> getQualityAssessmentStream() {
+        return StreamSupport.stream(new Spliterators.AbstractSpliterator<QualityAssessment>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super QualityAssessment> action) {
+                QualityAssessment qa = nextQualityAssessment();
+                if(qa != null) {
+                    action.accept(qa);
+                }
+                return qa != null;
+            }
+        }, false);
+    }
+
+    /**
+     * Returns a {@link Stream} over the remaining {@link Cv}s in the qcML file.
+     *
+     * @return A sequential stream over the Cv's, in the order in which they occur in the qcML file
+     */
+    public Stream<Cv> getCvStream() {
+        return StreamSupport.stream(new Spliterators.AbstractSpliterator<Cv>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super Cv> action) {
+                Cv cv = nextCv();
+                if(cv != null) {
+                    action.accept(cv);
+                }
+                return cv != null;
+            }
+        }, false);
+    }
+
+    /**
+     * Advances the reader to the next start tag.
+     *
+     * @return true if the reader is positioned at a start tag, false if the end of the document has been reached
+     * @throws XMLStreamException if the qcML file couldn't be read
+     */
+    private boolean nextStartElement() throws XMLStreamException {
+        int event = consumed ? reader.next() : reader.getEventType();
+        consumed = true;
+        while(event != XMLStreamConstants.START_ELEMENT) {
+            if(event == XMLStreamConstants.END_DOCUMENT) {
+                consumed = false;
+                return false;
+            }
+            event = reader.next();
+        }
+        return true;
+    }
+
+    /**
+     * Skips the element at the current start tag, including all its descendants.
+     *
+     * @throws XMLStreamException if the qcML file couldn't be read
+     */
+    private void skipElement() throws XMLStreamException {
+        int depth = 1;
+        while(depth > 0) {
+            int event = reader.next();
+            if(event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if(event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Closes the qcML file.
+     */
+    @Override
+    public void close() {
+        try {
+            reader.close();
+        } catch(XMLStreamException e) {
+            LOGGER.warn("Could not close the XML stream reader for qcML file <{}>: {}", file.getAbsolutePath(), e);
+        }
+        closeQuietly(in);
+    }
+
+    private void closeQuietly(InputStream stream) {
+        if(stream != null) {
+            try {
+                stream.close();
+            } catch(IOException e) {
+                LOGGER.warn("Could not close qcML file <{}>: {}", file.getAbsolutePath(), e);
+            }
+        }
+    }
+
+    /**
+     * Injects the qcML namespace for elements without a namespace, analogous to the {@link inspector.jqcml.jaxb.NamespaceFilter}.
+     */
+    private static class NamespaceDelegate extends StreamReaderDelegate {
+
+        NamespaceDelegate(XMLStreamReader reader) {
+            super(reader);
+        }
+
+        @Override
+        public String getNamespaceURI() {
+            String namespace = super.getNamespaceURI();
+            if((namespace == null || namespace.isEmpty()) && (isStartElement() || isEndElement())) {
+                return QCML_NAMESPACE;
+            }
+            return namespace;
+        }
+    }
+}
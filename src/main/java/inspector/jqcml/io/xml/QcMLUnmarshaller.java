@@ -20,8 +20,10 @@ package inspector.jqcml.io.xml;
  * #L%
  */
 
+import inspector.jqcml.io.xml.index.GzipFile;
 import inspector.jqcml.io.xml.index.QcMLIndexer;
 import inspector.jqcml.jaxb.NamespaceFilter;
+import inspector.jqcml.jaxb.adapters.QualityAssessmentAdapter;
 import inspector.jqcml.jaxb.listener.QcMLListener;
 import inspector.jqcml.model.*;
 import org.apache.logging.log4j.LogManager;
@@ -32,48 +34,84 @@ import org.xml.sax.XMLReader;
 import org.xml.sax.helpers.XMLReaderFactory;
 
 import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.JAXBIntrospector;
 import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.sax.SAXSource;
 import javax.xml.validation.Schema;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.StringReader;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A JAXB {@link Unmarshaller} specified with the required context to deserialize an XML-based qcML file into Java objects.
+ *
+ * Because a JAXB Unmarshaller isn't thread-safe, each unmarshal operation borrows an Unmarshaller from a pool,
+ * so a single QcMLUnmarshaller can be used by multiple threads concurrently.
+ * Separate pools are kept for Unmarshallers that validate against the {@link Schema} and for Unmarshallers that don't,
+ * so the validation doesn't need to be toggled on a shared Unmarshaller.
  */
 public class QcMLUnmarshaller {
 
     private static final Logger LOGGER = LogManager.getLogger(QcMLUnmarshaller.class);
 
-    /** The unmarshaller used to deserialize XML files */
-    private Unmarshaller unmarshaller;
+    /** The maximum number of idle Unmarshallers retained in each pool */
+    private static final int POOL_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    /** Idle Unmarshallers that don't validate */
+    private final BlockingQueue<PooledUnmarshaller> plainPool = new ArrayBlockingQueue<>(POOL_SIZE);
+    /** Idle Unmarshallers that validate against the schema */
+    private final BlockingQueue<PooledUnmarshaller> validatingPool = new ArrayBlockingQueue<>(POOL_SIZE);
     /** Introspector used to retrieve additional details during unmarshalling */
-    private JAXBIntrospector introspector;
-    /** Filter to handle the qcML namespace when unmarshalling only a section of a qcML file */
-    private NamespaceFilter namespaceFilter;
-    /** Schema used to validate during unmarshalling */
-    private Schema schema;
+    private final JAXBIntrospector introspector;
+    /** Schema used to validate during unmarshalling, {@code null} if no validation is performed */
+    private final Schema schema;
 
     /**
-     * Creates a JAXB {@link Unmarshaller} using the required {@link JAXBContext} required for unmarshalling a qcML file.
+     * Creates a QcMLUnmarshaller using the required {@link JAXBContext} required for unmarshalling a qcML file.
      */
     public QcMLUnmarshaller() {
-        // create the JAXB Unmarshaller
+        this(null);
+    }
+
+    /**
+     * Creates a QcMLUnmarshaller validated by the provided {@link Schema},
+     * using the required {@link JAXBContext} required for unmarshalling a qcML file.
+     *
+     * @param schema  the {@link Schema} used to perform validation during unmarshalling, or {@code null} to skip validation
+     */
+    public QcMLUnmarshaller(Schema schema) {
+        this.schema = schema;
+        introspector = QcMLJAXBContext.INSTANCE.context.createJAXBIntrospector();
+
+        // create an initial Unmarshaller, so that any problems with the JAXB context surface immediately
+        plainPool.offer(createUnmarshaller(null));
+    }
+
+    /**
+     * Creates a JAXB {@link Unmarshaller} with a {@link NamespaceFilter} to handle the qcML namespace.
+     *
+     * @param validationSchema  the {@link Schema} used to validate, or {@code null} to skip validation
+     * @return a new PooledUnmarshaller
+     */
+    private PooledUnmarshaller createUnmarshaller(Schema validationSchema) {
         LOGGER.info("Create the JAXB Unmarshaller");
 
         try {
-            unmarshaller = QcMLJAXBContext.INSTANCE.context.createUnmarshaller();
+            Unmarshaller unmarshaller = QcMLJAXBContext.INSTANCE.context.createUnmarshaller();
             // register the listener
             unmarshaller.setListener(new QcMLListener());
-            introspector = QcMLJAXBContext.INSTANCE.context.createJAXBIntrospector();
+            unmarshaller.setSchema(validationSchema);
             // create a filter to deal with (missing) namespaces
-            namespaceFilter = createNamespaceFilter();
+            return new PooledUnmarshaller(unmarshaller, createNamespaceFilter(), validationSchema != null);
 
         } catch (JAXBException e) {
             LOGGER.error("Error while creating the JAXB Unmarshaller: {}", e);
@@ -82,16 +120,27 @@ public class QcMLUnmarshaller {
     }
 
     /**
-     * Creates a JAXB {@link Unmarshaller} validated by the provided {@link Schema},
-     * using the required {@link JAXBContext} required for unmarshalling a qcML file.
+     * Takes an idle Unmarshaller from the pool, or creates a new Unmarshaller if none is available.
      *
-     * @param schema  the {@link Schema} used to perform validation during unmarshalling
+     * @param validate  flag indicating whether the Unmarshaller should validate (if a {@link Schema} was specified)
+     * @return an Unmarshaller that can be used exclusively until it is returned through {@link #release(PooledUnmarshaller)}
      */
-    public QcMLUnmarshaller(Schema schema) {
-        this();
+    private PooledUnmarshaller acquire(boolean validate) {
+        boolean validating = validate && schema != null;
+        PooledUnmarshaller unmarshaller = (validating ? validatingPool : plainPool).poll();
+        if(unmarshaller == null) {
+            unmarshaller = createUnmarshaller(validating ? schema : null);
+        }
+        return unmarshaller;
+    }
 
-        this.schema = schema;
-        unmarshaller.setSchema(schema);
+    /**
+     * Returns an Unmarshaller to its pool, or discards it if the pool is full.
+     *
+     * @param unmarshaller  the Unmarshaller that is no longer used
+     */
+    private void release(PooledUnmarshaller unmarshaller) {
+        (unmarshaller.validating ? validatingPool : plainPool).offer(unmarshaller);
     }
 
     /**
@@ -133,10 +182,24 @@ public class QcMLUnmarshaller {
      * @return The {@link QcML} object unmarshalled from the given file
      */
     public QcML unmarshal(File file) {
+        return unmarshal(file, true);
+    }
+
+    /**
+     * Returns the full {@link QcML} object specified by the given file.
+     *
+     * Validation can be skipped if the file has been validated previously.
+     *
+     * @param file  The file that will be unmarshalled. This should be a valid file.
+     * @param validate  Flag indicating whether the file is validated while it is unmarshalled (if a {@link Schema} was specified)
+     * @return The {@link QcML} object unmarshalled from the given file
+     */
+    public QcML unmarshal(File file, boolean validate) {
         LOGGER.info("Unmarshal full file <{}>", file.getAbsolutePath());
 
+        PooledUnmarshaller unmarshaller = acquire(validate);
         try {
-            QcML result = (QcML) unmarshaller.unmarshal(createSource(file));
+            QcML result = (QcML) unmarshaller.unmarshaller.unmarshal(unmarshaller.createSource(file));
             result.setFileName(file.getName());
 
             return result;
@@ -144,9 +207,14 @@ public class QcMLUnmarshaller {
         } catch(FileNotFoundException e) {
             LOGGER.error("The specified file to unmarshal doesn't exist: <{}>", file.getAbsolutePath(), e);
             throw new IllegalStateException("The specified file to unmarshal doesn't exist <" + file.getAbsolutePath() + ">");
+        } catch(IOException e) {
+            LOGGER.error("The specified file to unmarshal could not be read: <{}>", file.getAbsolutePath(), e);
+            throw new IllegalStateException("The specified file to unmarshal could not be read <" + file.getAbsolutePath() + ">");
         } catch(JAXBException e) {
             LOGGER.error("Error while unmarshalling file <{}>: {}", file.getAbsolutePath(), e);
             throw new IllegalStateException("Error while unmarshalling file <" + file.getAbsolutePath() + ">: " + e);
+        } finally {
+            release(unmarshaller);
         }
     }
 
@@ -161,12 +229,9 @@ public class QcMLUnmarshaller {
     public <T> T unmarshal(String xmlSnippet, Class<T> type) {
         LOGGER.info("Unmarshal type <{}> from XML snippet: {}", type, xmlSnippet.substring(0, xmlSnippet.indexOf('>') + 1));
 
+        PooledUnmarshaller unmarshaller = acquire(false);
         try {
-            // disable validation
-            unmarshaller.setSchema(null);
-
-            // unmarshal
-            Object temp = unmarshaller.unmarshal(createSource(xmlSnippet));
+            Object temp = unmarshaller.unmarshaller.unmarshal(unmarshaller.createSource(xmlSnippet));
 
             return type.cast(JAXBIntrospector.getValue(temp));
 
@@ -174,8 +239,7 @@ public class QcMLUnmarshaller {
             LOGGER.error("Error while unmarshalling XML snippet {}\n{}", xmlSnippet.substring(0, xmlSnippet.indexOf('>') + 1), e);
             throw new IllegalStateException("Error while unmarshalling XML snippet " + xmlSnippet.substring(0, xmlSnippet.indexOf('>')+1) + ": " + e);
         } finally {
-            // re-enable validation
-            unmarshaller.setSchema(schema);
+            release(unmarshaller);
         }
     }
 
@@ -190,49 +254,167 @@ public class QcMLUnmarshaller {
     public Object unmarshal(String xmlSnippet) {
         LOGGER.info("Unmarshal general object from XML snippet: {}", xmlSnippet.substring(0, xmlSnippet.indexOf('>') + 1));
 
+        PooledUnmarshaller unmarshaller = acquire(false);
         try {
-            // disable validation
-            unmarshaller.setSchema(null);
-
-            // unmarshal
-            return unmarshaller.unmarshal(createSource(xmlSnippet));
+            return unmarshaller.unmarshaller.unmarshal(unmarshaller.createSource(xmlSnippet));
 
         } catch (JAXBException e) {
             LOGGER.error("Error while unmarshalling XML snippet {}\n{}", xmlSnippet.substring(0, xmlSnippet.indexOf('>') + 1), e);
             throw new IllegalStateException("Error while unmarshalling XML snippet " + xmlSnippet.substring(0, xmlSnippet.indexOf('>')+1) + ": " + e);
         } finally {
-            // re-enable validation
-            unmarshaller.setSchema(schema);
+            release(unmarshaller);
+        }
+    }
+
+    /**
+     * Returns the specified object from the given XML element.
+     *
+     * Unlike {@link #unmarshal(String, Class)}, the XML element can be parsed directly from its raw bytes
+     * (see {@link QcMLIndexer#openXML(psidev.psi.tools.xxindex.index.IndexElement)}), without decoding it to a String first.
+     *
+     * @param <T>  The class of the object unmarshalled from the given XML element
+     * @param xml  The InputSource reading the XML element that will be unmarshalled. This should be valid XML content.
+     * @param type  The class of the object unmarshalled from the given XML element
+     * @return The object unmarshalled from the given XML element
+     */
+    public <T> T unmarshal(InputSource xml, Class<T> type) {
+        return type.cast(JAXBIntrospector.getValue(unmarshal(xml)));
+    }
+
+    /**
+     * Returns the specified object from the given XML element.
+     *
+     * The return value is a JAXB element. This allows f.e. retrieving the element name and value using the {@link JAXBIntrospector}.
+     *
+     * @param xml  The InputSource reading the XML element that will be unmarshalled. This should be valid XML content.
+     * @return The object unmarshalled from the given XML element
+     */
+    public Object unmarshal(InputSource xml) {
+        LOGGER.info("Unmarshal general object from XML source");
+
+        PooledUnmarshaller unmarshaller = acquire(false);
+        try {
+            return unmarshaller.unmarshaller.unmarshal(unmarshaller.createSource(xml));
+
+        } catch (JAXBException e) {
+            LOGGER.error("Error while unmarshalling XML source: {}", e);
+            throw new IllegalStateException("Error while unmarshalling XML source: " + e);
+        } finally {
+            release(unmarshaller);
         }
     }
 
     /**
-     * Converts the given file to a {@link SAXSource}.
+     * Returns the specified object from the element at the current position of the given {@link XMLStreamReader}.
+     *
+     * After unmarshalling, the reader is positioned at the event directly following the end tag of the element.
      *
-     * @param file  The file to convert
-     * @return A SAXSource representing the given file
-     * @throws FileNotFoundException
+     * @param <T>  The class of the object unmarshalled from the current element
+     * @param reader  The XMLStreamReader, positioned at the start tag of the element that will be unmarshalled
+     * @param type  The class of the object unmarshalled from the current element
+     * @return The JAXB element unmarshalled from the current element, containing the element name and the unmarshalled object
      */
-    private SAXSource createSource(File file) throws FileNotFoundException {
-        // convert the input to an InputSource
-        InputSource is = new InputSource(new FileInputStream(file));
+    public <T> JAXBElement<T> unmarshal(XMLStreamReader reader, Class<T> type) {
+        LOGGER.info("Unmarshal type <{}> from XML element <{}>", type, reader.getLocalName());
+
+        PooledUnmarshaller unmarshaller = acquire(false);
+        try {
+            return unmarshaller.unmarshaller.unmarshal(reader, type);
 
-        // create a SAXSource specifying the namespace filter
-        return new SAXSource(namespaceFilter, is);
+        } catch (JAXBException e) {
+            LOGGER.error("Error while unmarshalling XML element <{}>: {}", reader.getLocalName(), e);
+            throw new IllegalStateException("Error while unmarshalling XML element <" + reader.getLocalName() + ">: " + e);
+        } finally {
+            release(unmarshaller);
+        }
     }
 
     /**
-     * Converts the given XML snippet to a {@link SAXSource}.
+     * Returns a cache of all {@link Cv}'s in the qcML file of the given index, to be used by a single lookup, iterator, or stream.
      *
-     * @param xmlSnippet  The XML snippet to convert
-     * @return A SAXSource representing the given XML snippet
+     * The Cv's are unmarshalled only once and shared by all lookups in this file (see {@link QcMLIndexer#getCvCache}),
+     * but the returned cache contains copies of these Cv's. As such, the objects returned by a lookup only share their Cv's with
+     * the objects returned by the same lookup, and modifying such a Cv doesn't affect the objects returned by other lookups.
+     *
+     * @param index  The {@link QcMLIndexer} of the qcML file
+     * @return A thread-safe map containing copies of the Cv's in the qcML file by their ID
      */
-    private SAXSource createSource(String xmlSnippet) {
-        // convert the input to an InputSource
-        InputSource is = new InputSource(new StringReader(xmlSnippet));
+    public Map<String, Cv> getCvCache(QcMLIndexer index) {
+        Map<String, Cv> cvCache = new ConcurrentHashMap<>();
+        for(Map.Entry<String, Cv> entry : index.getCvCache(xml -> unmarshal(xml, Cv.class)).entrySet()) {
+            Cv cv = entry.getValue();
+            // an invalid Cv that can't be copied is unmarshalled anew when it is referenced
+            if(cv.getFullName() != null && cv.getUri() != null && cv.getId() != null) {
+                Cv copy = new Cv(cv.getFullName(), cv.getUri(), cv.getId());
+                copy.setVersion(cv.getVersion());
+                cvCache.put(entry.getKey(), copy);
+            }
+        }
+        return cvCache;
+    }
 
-        // create a SAXSource specifying the namespace filter
-        return new SAXSource(namespaceFilter, is);
+    /**
+     * Returns the {@link QualityAssessment} from the given runQuality or setQuality XML snippet.
+     *
+     * The references to {@link Cv}'s are resolved, and the isSet flag is set based on the element name.
+     *
+     * @param xmlSnippet  The runQuality or setQuality XML snippet that will be unmarshalled
+     * @param cvCache  A cache containing the previously unmarshalled Cv's, which is updated with the newly resolved Cv's
+     * @param index  The {@link QcMLIndexer} used to unmarshal the referenced Cv's
+     * @return The QualityAssessment unmarshalled from the given XML snippet
+     */
+    public QualityAssessment unmarshalQualityAssessment(String xmlSnippet, Map<String, Cv> cvCache, QcMLIndexer index) {
+        try {
+            return toQualityAssessment(unmarshal(xmlSnippet), cvCache, index);
+        } catch (Exception e) {
+            LOGGER.error("Unable to manually call the QualityAssessmentAdapter for XML snippet: {}\n{}", xmlSnippet.substring(0, xmlSnippet.indexOf('>') + 1), e);
+            throw new IllegalStateException("Unable to manually call the QualityAssessmentAdapter: " + e);
+        }
+    }
+
+    /**
+     * Returns the {@link QualityAssessment} from the given runQuality or setQuality XML element.
+     *
+     * The references to {@link Cv}'s are resolved, and the isSet flag is set based on the element name.
+     *
+     * @param xml  The InputSource reading the runQuality or setQuality XML element that will be unmarshalled
+     * @param cvCache  A cache containing the previously unmarshalled Cv's, which is updated with the newly resolved Cv's
+     * @param index  The {@link QcMLIndexer} used to unmarshal the referenced Cv's
+     * @return The QualityAssessment unmarshalled from the given XML element
+     */
+    public QualityAssessment unmarshalQualityAssessment(InputSource xml, Map<String, Cv> cvCache, QcMLIndexer index) {
+        try {
+            return toQualityAssessment(unmarshal(xml), cvCache, index);
+        } catch (Exception e) {
+            LOGGER.error("Unable to manually call the QualityAssessmentAdapter for XML source: {}", e);
+            throw new IllegalStateException("Unable to manually call the QualityAssessmentAdapter: " + e);
+        }
+    }
+
+    /**
+     * Converts the unmarshalled runQuality or setQuality element to a {@link QualityAssessment}.
+     *
+     * @param temp  The JAXB element unmarshalled from a runQuality or setQuality element
+     * @param cvCache  A cache containing the previously unmarshalled Cv's
+     * @param index  The {@link QcMLIndexer} used to unmarshal the referenced Cv's
+     * @return The QualityAssessment
+     * @throws Exception if the QualityAssessmentAdapter failed
+     */
+    private QualityAssessment toQualityAssessment(Object temp, Map<String, Cv> cvCache, QcMLIndexer index) throws Exception {
+        // unmarshal to a QualityAssessmentList, and subsequently call the QualityAssessmentAdapter manually
+        // manually calling the adapter is required because XmlJavaTypeAdapter can't be used on XmlRootElement
+        // see: https://java.net/jira/browse/JAXB-117
+        QualityAssessmentList qaList = (QualityAssessmentList) JAXBIntrospector.getValue(temp);
+        QualityAssessmentAdapter adapter = new QualityAssessmentAdapter();
+        QualityAssessment result = adapter.unmarshal(qaList);
+
+        // resolve references to Cv's (unmarshal them if required)
+        resolveCvReferences(result, cvCache, index);
+
+        // set the isSet flag based on the element name
+        result.setSet("setQuality".equals(getIntrospector().getElementName(temp).getLocalPart()));
+
+        return result;
     }
 
     /**
@@ -256,7 +438,17 @@ public class QcMLUnmarshaller {
         }
     }
 
-    private void resolveCvReferences(CvParameter param, Map<String, Cv> cvCache, QcMLIndexer index) {
+    /**
+     * Resolves references to a {@link Cv} for the given {@link CvParameter}.
+     *
+     * If the referenced Cv has already been unmarshalled in the past and is available in the Cv cache, it isn't unmarshalled again.
+     * If the referenced Cv isn't available in the cache, it is unmarshalled using the {@link QcMLUnmarshaller}.
+     *
+     * @param param  the CvParameter for which the references will be resolved
+     * @param cvCache  a cache containing the previously unmarshalled Cv's
+     * @param index  the {@link QcMLIndexer} used to unmarshal
+     */
+    public void resolveCvReferences(CvParameter param, Map<String, Cv> cvCache, QcMLIndexer index) {
         // cvRef
         String cvId = param.getCvRefId();
         Cv cvRef = resolveCvReference(cvId, cvCache, index);
@@ -269,15 +461,18 @@ public class QcMLUnmarshaller {
     }
 
     private Cv resolveCvReference(String id, Map<String, Cv> cvCache, QcMLIndexer index) {
+        if(id == null) {
+            return null;
+        }
         // Cv already unmarshalled and found in cache
         if(cvCache.containsKey(id)) {
             return cvCache.get(id);
         } else {
             // unmarshal the Cv
-            String xmlSnippet = index.getXMLSnippet(Cv.class, id);
+            InputSource xml = index.getXMLSource(Cv.class, id);
             // can be null if the Cv isn't found in the file
-            if(xmlSnippet != null) {
-                Cv cv = unmarshal(xmlSnippet, Cv.class);
+            if(xml != null) {
+                Cv cv = unmarshal(xml, Cv.class);
                 // if this is a viable Cv, store it in the cache
                 if(cv != null) {
                     cvCache.put(id, cv);
@@ -287,4 +482,62 @@ public class QcMLUnmarshaller {
         }
         return null;
     }
+
+    /**
+     * A JAXB {@link Unmarshaller} together with the {@link NamespaceFilter} it uses, neither of which is thread-safe.
+     */
+    private static class PooledUnmarshaller {
+
+        /** The unmarshaller used to deserialize XML files */
+        private final Unmarshaller unmarshaller;
+        /** Filter to handle the qcML namespace when unmarshalling only a section of a qcML file */
+        private final NamespaceFilter namespaceFilter;
+        /** Flag indicating whether the unmarshaller validates against the schema */
+        private final boolean validating;
+
+        PooledUnmarshaller(Unmarshaller unmarshaller, NamespaceFilter namespaceFilter, boolean validating) {
+            this.unmarshaller = unmarshaller;
+            this.namespaceFilter = namespaceFilter;
+            this.validating = validating;
+        }
+
+        /**
+         * Converts the given file to a {@link SAXSource}.
+         *
+         * A gzip-compressed file is decompressed while it is read.
+         *
+         * @param file  The file to convert
+         * @return A SAXSource representing the given file
+         * @throws IOException
+         */
+        SAXSource createSource(File file) throws IOException {
+            // convert the input to an InputSource
+            InputSource is = new InputSource(GzipFile.openInputStream(file));
+
+            // create a SAXSource specifying the namespace filter
+            return new SAXSource(namespaceFilter, is);
+        }
+
+        /**
+         * Converts the given XML snippet to a {@link SAXSource}.
+         *
+         * @param xmlSnippet  The XML snippet to convert
+         * @return A SAXSource representing the given XML snippet
+         */
+        SAXSource createSource(String xmlSnippet) {
+            // convert the input to an InputSource
+            return createSource(new InputSource(new StringReader(xmlSnippet)));
+        }
+
+        /**
+         * Converts the given InputSource to a {@link SAXSource}.
+         *
+         * @param is  The InputSource to convert
+         * @return A SAXSource reading the given InputSource
+         */
+        SAXSource createSource(InputSource is) {
+            // create a SAXSource specifying the namespace filter
+            return new SAXSource(namespaceFilter, is);
+        }
+    }
 }
@@ -0,0 +1,282 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.google.common.collect.Iterators;
+import psidev.psi.tools.xxindex.index.IndexElement;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * An immutable mapping that has been extended with the elements appended to an XML file, without copying the previous elements.
+ *
+ * The mapping consists of segments that are shared with the mapping it was extended from.
+ * Each segment covers the elements of a single scan of the XML file, up to the checkpoint at the end of that scan:
+ * the elements of a segment that are located after its checkpoint (such as the Cv's following the quality assessments)
+ * are scanned anew when the XML file is extended, so they're excluded from the segment without having to remove them.
+ * Only the latest segment is included completely, until the mapping is extended again.
+ *
+ * To keep the number of segments that is consulted by a lookup logarithmic, a segment is merged with its predecessor
+ * when it isn't considerably smaller, so each element is copied only a logarithmic number of times.
+ * The mappings that constitute the segments should not be modified after they have been added.
+ *
+ * The mapping retains the order of the elements in the XML file, assuming that the IDs in the XML file are unique.
+ *
+ * @param <V> The type of the mapped values
+ */
+class AppendedMap<V> extends AbstractMap<String, V> {
+
+    /** Value indicating that all elements of a segment are included */
+    private static final long UNBOUNDED = Long.MAX_VALUE;
+
+    /** The segments preceding the latest segment, from old to new */
+    private final List<Segment<V>> segments;
+    /** The latest segment, which is included completely */
+    private final Map<String, V> latest;
+    /** The checkpoint of the latest segment, beyond which its elements are excluded once the mapping is extended */
+    private final long latestBound;
+    /** The function giving the stop offset of a value, or {@code null} if all elements are included regardless of the checkpoints */
+    private final ToLongFunction<V> stop;
+    /** The factory of the mappings in which segments are merged */
+    private final Supplier<Map<String, V>> factory;
+
+    private AppendedMap(List<Segment<V>> segments, Map<String, V> latest, long latestBound, ToLongFunction<V> stop, Supplier<Map<String, V>> factory) {
+        this.segments = segments;
+        this.latest = latest;
+        this.latestBound = latestBound;
+        this.stop = stop;
+        this.factory = factory;
+    }
+
+    /**
+     * Creates an AppendedMap for the given ID mapping, which can subsequently be extended.
+     *
+     * @param mapping  the ID mapping created by a scan of the XML file, or extended before
+     * @param checkpoint  the offset up to which the elements in the mapping remain valid when the XML file is extended
+     * @param factory  the factory of the ID mappings in which segments are merged
+     * @return an AppendedMap containing the same elements as the given mapping
+     */
+    @SuppressWarnings("unchecked")
+    static AppendedMap<IndexElement> ofIdMapping(Map<String, IndexElement> mapping, long checkpoint, Supplier<Map<String, IndexElement>> factory) {
+        if(mapping instanceof AppendedMap) {
+            return (AppendedMap<IndexElement>) mapping;
+        }
+        return new AppendedMap<>(Collections.<Segment<IndexElement>>emptyList(), mapping, checkpoint, IndexElement::getStop, factory);
+    }
+
+    /**
+     * Creates an AppendedMap for the given mapping, whose elements all remain valid when the XML file is extended.
+     *
+     * @param map  the mapping created by a scan of the XML file, or extended before
+     * @param factory  the factory of the mappings in which segments are merged
+     * @param <V> The type of the mapped values
+     * @return an AppendedMap containing the same elements as the given mapping
+     */
+    @SuppressWarnings("unchecked")
+    static <V> AppendedMap<V> of(Map<String, V> map, Supplier<Map<String, V>> factory) {
+        if(map instanceof AppendedMap) {
+            return (AppendedMap<V>) map;
+        }
+        return new AppendedMap<>(Collections.<Segment<V>>emptyList(), map, UNBOUNDED, null, factory);
+    }
+
+    /**
+     * Creates a new mapping that is extended with the elements of a scan of the appended data.
+     *
+     * The elements of the current latest segment that are located after its checkpoint are excluded.
+     * This mapping isn't modified, and shares its segments with the extended mapping.
+     *
+     * @param appended  the mapping containing the elements of the scan of the appended data, which shouldn't be modified afterwards
+     * @param checkpoint  the offset up to which the appended elements remain valid when the XML file is extended again
+     * @return the extended mapping
+     */
+    AppendedMap<V> append(Map<String, V> appended, long checkpoint) {
+        List<Segment<V>> extended = new ArrayList<>(segments.size() + 1);
+        extended.addAll(segments);
+        Segment<V> segment = new Segment<>(latest, stop != null ? latestBound : UNBOUNDED);
+        // merge the segments of a comparable size, so the number of segments remains logarithmic
+        while(!extended.isEmpty() && extended.get(extended.size() - 1).map.size() <= 2 * segment.map.size()) {
+            Segment<V> previous = extended.remove(extended.size() - 1);
+            Map<String, V> merged = factory.get();
+            previous.putAllTo(merged, stop);
+            segment.putAllTo(merged, stop);
+            segment = new Segment<>(merged, UNBOUNDED);
+        }
+        if(!segment.map.isEmpty()) {
+            extended.add(segment);
+        }
+        return new AppendedMap<>(extended, appended, stop != null ? checkpoint : UNBOUNDED, stop, factory);
+    }
+
+    /**
+     * Returns the mappings that constitute the segments of this mapping, including the excluded elements.
+     *
+     * @return the mappings of the segments, from old to new
+     */
+    List<Map<String, V>> getSegments() {
+        List<Map<String, V>> maps = new ArrayList<>(segments.size() + 1);
+        for(Segment<V> segment : segments) {
+            maps.add(segment.map);
+        }
+        maps.add(latest);
+        return maps;
+    }
+
+    @Override
+    public int size() {
+        int size = latest.size();
+        for(Segment<V> segment : segments) {
+            size += segment.size(stop);
+        }
+        return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public V get(Object key) {
+        V value = latest.get(key);
+        for(int i = segments.size() - 1; value == null && i >= 0; i--) {
+            value = segments.get(i).get(key, stop);
+        }
+        return value;
+    }
+
+    @Override
+    public Set<Map.Entry<String, V>> entrySet() {
+        return new AbstractSet<Map.Entry<String, V>>() {
+            @Override
+            public int size() {
+                return AppendedMap.this.size();
+            }
+
+            @Override
+            public Iterator<Map.Entry<String, V>> iterator() {
+                return new SegmentIterator();
+            }
+        };
+    }
+
+    /**
+     * Iterates over the included elements of the segments in order, followed by the elements of the latest segment.
+     */
+    private class SegmentIterator implements Iterator<Map.Entry<String, V>> {
+
+        /** The index of the segment over which is iterated, equal to the number of segments for the latest segment */
+        private int segment;
+        private Iterator<Map.Entry<String, V>> iterator = Collections.emptyIterator();
+
+        @Override
+        public boolean hasNext() {
+            while(!iterator.hasNext() && segment <= segments.size()) {
+                iterator = segment < segments.size() ? segments.get(segment).iterator(stop) : latest.entrySet().iterator();
+                segment++;
+            }
+            return iterator.hasNext();
+        }
+
+        @Override
+        public Map.Entry<String, V> next() {
+            if(!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return iterator.next();
+        }
+    }
+
+    /**
+     * A mapping created by a single scan, of which only the elements up to its checkpoint are included.
+     */
+    private static class Segment<V> {
+
+        /** The mapping containing the elements of the scan */
+        private final Map<String, V> map;
+        /** The checkpoint after which the elements are excluded, or {@link #UNBOUNDED} if all elements are included */
+        private final long bound;
+        /** The number of included elements, or -1 if it hasn't been counted yet */
+        private volatile int size = -1;
+
+        Segment(Map<String, V> map, long bound) {
+            this.map = map;
+            this.bound = bound;
+        }
+
+        boolean includes(V value, ToLongFunction<V> stop) {
+            return bound == UNBOUNDED || stop.applyAsLong(value) <= bound;
+        }
+
+        V get(Object key, ToLongFunction<V> stop) {
+            V value = map.get(key);
+            return value != null && includes(value, stop) ? value : null;
+        }
+
+        /**
+         * Counts the included elements the first time it's requested, so extending the mapping doesn't require a pass over the elements.
+         */
+        int size(ToLongFunction<V> stop) {
+            int result = size;
+            if(result < 0) {
+                if(bound == UNBOUNDED) {
+                    result = map.size();
+                } else if(map instanceof CompactIdMapping) {
+                    result = ((CompactIdMapping) map).countUpTo(bound);
+                } else {
+                    result = 0;
+                    for(V value : map.values()) {
+                        if(includes(value, stop)) {
+                            result++;
+                        }
+                    }
+                }
+                size = result;
+            }
+            return result;
+        }
+
+        Iterator<Map.Entry<String, V>> iterator(final ToLongFunction<V> stop) {
+            Iterator<Map.Entry<String, V>> iterator = map.entrySet().iterator();
+            if(bound == UNBOUNDED) {
+                return iterator;
+            }
+            return Iterators.filter(iterator, entry -> includes(entry.getValue(), stop));
+        }
+
+        void putAllTo(Map<String, V> target, ToLongFunction<V> stop) {
+            for(Iterator<Map.Entry<String, V>> it = iterator(stop); it.hasNext(); ) {
+                Map.Entry<String, V> entry = it.next();
+                target.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes data in the block-compressed gzip (BGZF) format.
+ *
+ * The data is split into blocks of at most {@link #BLOCK_SIZE} bytes, which are each compressed as a separate gzip member.
+ * The header of each member contains a 'BC' extra subfield that records the compressed size of the member,
+ * so that the blocks can be located without decompressing the data.
+ * Such a file is a valid gzip file, and can be accessed randomly through a {@link GzipFile}.
+ */
+public class BlockCompressedOutputStream extends OutputStream {
+
+    private static final Logger LOGGER = LogManager.getLogger(BlockCompressedOutputStream.class);
+
+    /** The maximum uncompressed size of a block, which guarantees that the compressed block doesn't exceed 64 KB */
+    public static final int BLOCK_SIZE = 0xff00;
+    /** The maximum compressed size of a block */
+    private static final int MAX_BLOCK_SIZE = 0x10000;
+
+    /** The gzip header of a block, up to the compressed block size */
+    private static final byte[] BLOCK_HEADER = new byte[] {
+            0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0 };
+    /** An empty block, which marks the end of the file */
+    private static final byte[] EOF_BLOCK = new byte[] {
+            0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0, 0x1b, 0, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0 };
+
+    /** The stream to which the compressed blocks are written */
+    private final OutputStream out;
+
+    /** The uncompressed data of the current block */
+    private final byte[] buffer = new byte[BLOCK_SIZE];
+    /** The number of bytes in the current block */
+    private int count;
+    /** The compressed data of the current block */
+    private final byte[] compressed = new byte[MAX_BLOCK_SIZE];
+
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final CRC32 crc = new CRC32();
+
+    private boolean closed;
+
+    /**
+     * Creates a BlockCompressedOutputStream that writes to the given stream.
+     *
+     * @param out  the stream to which the compressed data is written
+     */
+    public BlockCompressedOutputStream(OutputStream out) {
+        if(out == null) {
+            LOGGER.error("The output stream is not allowed to be <null>");
+            throw new NullPointerException("The output stream is not allowed to be <null>");
+        }
+        this.out = out;
+    }
+
+    /**
+     * Compresses the given file in the block-compressed gzip format, so that it can be accessed randomly.
+     *
+     * @param source  the file to compress, e.g. a qcML file written by a {@link inspector.jqcml.io.xml.QcMLFileWriter}
+     * @param target  the compressed file to write
+     * @throws IOException if the source file could not be read or the target file could not be written
+     */
+    public static void compress(File source, File target) throws IOException {
+        LOGGER.info("Compress file <{}> to <{}>", source.getAbsolutePath(), target.getAbsolutePath());
+
+        try(InputStream in = GzipFile.openInputStream(source);
+            OutputStream out = new BlockCompressedOutputStream(new BufferedOutputStream(new FileOutputStream(target)))) {
+            byte[] data = new byte[BLOCK_SIZE];
+            int n;
+            while((n = in.read(data)) != -1) {
+                out.write(data, 0, n);
+            }
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if(count == buffer.length) {
+            writeBlock();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while(len > 0) {
+            if(count == buffer.length) {
+                writeBlock();
+            }
+            int n = Math.min(len, buffer.length - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Writes the current block, and flushes the underlying stream.
+     */
+    @Override
+    public void flush() throws IOException {
+        if(count > 0) {
+            writeBlock();
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes the remaining data and the end-of-file marker, and closes the underlying stream.
+     */
+    @Override
+    public void close() throws IOException {
+        if(!closed) {
+            closed = true;
+            try {
+                if(count > 0) {
+                    writeBlock();
+                }
+                out.write(EOF_BLOCK);
+            } finally {
+                deflater.end();
+                out.close();
+            }
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        deflater.reset();
+        deflater.setInput(buffer, 0, count);
+        deflater.finish();
+        int size = 0;
+        while(!deflater.finished() && size < compressed.length) {
+            size += deflater.deflate(compressed, size, compressed.length - size);
+        }
+        if(!deflater.finished()) {
+            throw new IOException("Compressed block exceeds the maximum block size");
+        }
+        crc.reset();
+        crc.update(buffer, 0, count);
+
+        int blockSize = BLOCK_HEADER.length + 2 + size + 8;
+        out.write(BLOCK_HEADER);
+        writeShort(blockSize - 1);
+        out.write(compressed, 0, size);
+        writeInt((int) crc.getValue());
+        writeInt(count);
+
+        count = 0;
+    }
+
+    private void writeShort(int value) throws IOException {
+        out.write(value & 0xff);
+        out.write((value >>> 8) & 0xff);
+    }
+
+    private void writeInt(int value) throws IOException {
+        writeShort(value & 0xffff);
+        writeShort((value >>> 16) & 0xffff);
+    }
+}
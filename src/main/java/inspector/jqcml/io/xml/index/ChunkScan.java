@@ -0,0 +1,232 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The scan of a single chunk of a qcML file, which is performed independently of the preceding chunks.
+ *
+ * Because the depth at which the chunk starts is unknown during the scan, the relevant element boundaries are recorded
+ * with a depth relative to the start of the chunk.
+ * When the depth at the start of the chunk becomes known, the recorded boundaries are replayed to a {@link QcMLScanHandler}.
+ * Afterwards, the scan can be continued over the following chunk, in which case the boundaries are passed on directly.
+ *
+ * Only the boundaries that might affect the {@link QcMLScanHandler} are recorded:
+ *  - start and end tags of elements that can be part of the path of an indexed element,
+ *  - start tags of other elements that might be at a tracked depth, as these change the path.
+ */
+class ChunkScan implements XmlScanHandler {
+
+    /** The encoding of the scanned file */
+    private final Charset charset;
+    /** The scanner that processes the bytes of the chunk */
+    private final XmlScanner scanner;
+
+    /** The absolute offset at which the chunk starts */
+    private final long start;
+    /** The absolute offset at which the chunk ends */
+    private final long stop;
+
+    /** The local names of the elements that can be part of the path of an indexed element */
+    private final Set<String> indexedNames;
+
+    /** The lowest relative depth encountered in the chunk */
+    private int minDepth;
+
+    /** The recorded element boundaries */
+    private final List<Boundary> boundaries = new ArrayList<>();
+
+    /** The handler to which the element boundaries are passed on directly, after the recorded boundaries have been replayed */
+    private QcMLScanHandler target;
+    /** The absolute depth at the start of the chunk */
+    private int base;
+
+    /**
+     * Creates a ChunkScan for the given byte range, which should start outside of any markup.
+     *
+     * @param charset  the encoding of the scanned file
+     * @param start  the absolute offset at which the chunk starts
+     * @param stop  the absolute offset at which the chunk ends
+     * @param indexedNames  the local names of the elements that can be part of the path of an indexed element
+     */
+    ChunkScan(Charset charset, long start, long stop, Set<String> indexedNames) {
+        this.charset = charset;
+        this.indexedNames = indexedNames;
+        this.scanner = new XmlScanner(this, charset, start, 0);
+        this.start = start;
+        this.stop = stop;
+    }
+
+    long getStart() {
+        return start;
+    }
+
+    long getStop() {
+        return stop;
+    }
+
+    /**
+     * Indicates whether the scan ended outside of any markup.
+     *
+     * Only if this is the case, the scan of the following chunk (which assumes it starts outside of any markup) is valid.
+     *
+     * @return true if the scan ended in character data
+     */
+    boolean isInText() {
+        return scanner.isInText();
+    }
+
+    /**
+     * Returns the depth at the end of the scan, relative to the start of the chunk.
+     *
+     * @return the depth at the end of the scan relative to the start of the chunk
+     */
+    int getDepth() {
+        return scanner.getDepth();
+    }
+
+    /**
+     * Scans the bytes of the chunk from the given file.
+     *
+     * @param channel  the scanned file
+     * @throws IOException
+     */
+    void scan(FileChannel channel) throws IOException {
+        feed(channel, start, stop);
+    }
+
+    /**
+     * Scans the given byte range, which should directly follow the bytes that were previously scanned.
+     *
+     * @param channel  the scanned file
+     * @param from  the absolute offset of the first byte to scan
+     * @param to  the absolute offset after the last byte to scan
+     * @throws IOException
+     */
+    void feed(FileChannel channel, long from, long to) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(XmlScanner.BUFFER_SIZE, Math.max(to - from, 0)));
+        long position = from;
+        while(position < to) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), to - position));
+            int read = channel.read(buffer, position);
+            if(read <= 0) {
+                throw new IOException("Unexpected end of file at offset " + position);
+            }
+            scanner.feed(buffer.array(), 0, read);
+            position += read;
+        }
+    }
+
+    /**
+     * Indicates whether the recorded boundaries are complete when the chunk starts at the given absolute depth.
+     *
+     * The recorded boundaries are selected assuming that the absolute depth doesn't become negative within the chunk,
+     * which is the case for all well-formed XML.
+     *
+     * @param base  the absolute depth at the start of the chunk
+     * @return true if the recorded boundaries are complete
+     */
+    boolean isComplete(int base) {
+        return base + minDepth >= 0;
+    }
+
+    /**
+     * Passes the recorded boundaries to the given handler, and all subsequently scanned boundaries as well.
+     *
+     * @param handler  the handler to which the boundaries are passed
+     * @param base  the absolute depth at the start of the chunk
+     */
+    void replay(QcMLScanHandler handler, int base) {
+        this.target = handler;
+        this.base = base;
+        for(Boundary boundary : boundaries) {
+            if(boundary.tag != null) {
+                handler.startElement(boundary.name, base + boundary.depth, boundary.start, boundary.stop, new StartTag(charset, boundary.tag));
+            } else {
+                handler.endElement(boundary.name, base + boundary.depth, boundary.start, boundary.stop);
+            }
+        }
+        boundaries.clear();
+    }
+
+    @Override
+    public void startElement(String name, int depth, long start, long contentStart, StartTag tag) {
+        if(target != null) {
+            target.startElement(name, base + depth, start, contentStart, tag);
+        } else if(depth <= QcMLScanHandler.MAX_TRACKED_DEPTH + minDepth) {
+            // this element might be at a tracked depth
+            if(indexedNames.contains(name)) {
+                boundaries.add(new Boundary(name, depth, start, contentStart, tag.copyBytes()));
+            } else {
+                // only the last start tag at a certain depth determines the path
+                Boundary last = boundaries.isEmpty() ? null : boundaries.get(boundaries.size() - 1);
+                Boundary boundary = new Boundary(name, depth, start, contentStart, new byte[0]);
+                if(last != null && last.depth == depth && last.tag != null && !indexedNames.contains(last.name)) {
+                    boundaries.set(boundaries.size() - 1, boundary);
+                } else {
+                    boundaries.add(boundary);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void endElement(String name, int depth, long contentStop, long stop) {
+        if(target != null) {
+            target.endElement(name, base + depth, contentStop, stop);
+        } else {
+            minDepth = Math.min(minDepth, depth);
+            if(depth <= QcMLScanHandler.MAX_TRACKED_DEPTH + minDepth && indexedNames.contains(name)) {
+                boundaries.add(new Boundary(name, depth, contentStop, stop, null));
+            }
+        }
+    }
+
+    /**
+     * A recorded start tag or end tag.
+     */
+    private static class Boundary {
+
+        private final String name;
+        /** The depth relative to the start of the chunk */
+        private final int depth;
+        private final long start;
+        private final long stop;
+        /** The raw start tag, or {@code null} for an end tag */
+        private final byte[] tag;
+
+        Boundary(String name, int depth, long start, long stop, byte[] tag) {
+            this.name = name;
+            this.depth = depth;
+            this.start = start;
+            this.stop = stop;
+            this.tag = tag;
+        }
+    }
+}
@@ -0,0 +1,441 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import psidev.psi.tools.xxindex.index.ByteRange;
+import psidev.psi.tools.xxindex.index.IndexElement;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A memory-efficient mapping between element IDs and their offsets in an XML file.
+ *
+ * Instead of an entry, a String, and an {@link IndexElement} object per element, the IDs are stored as concatenated UTF-8 bytes
+ * and the offsets as primitive {@code long} arrays, which are looked up through an open addressing hash table.
+ * The {@link IndexElement}s are only created when they are requested.
+ *
+ * The mapping retains the insertion order of the IDs.
+ * The hash table is kept up to date by all modifications, so lookups never modify the mapping and can be performed concurrently
+ * once the mapping has been safely published.
+ */
+class CompactIdMapping extends AbstractMap<String, IndexElement> {
+
+    /** The initial number of entries for which space is allocated */
+    private static final int INITIAL_CAPACITY = 8;
+    /** Marker for the start offset of removed entries */
+    private static final long REMOVED = -1;
+
+    /** The UTF-8 encoded IDs of all entries, concatenated */
+    private byte[] idBytes;
+    /** The number of used bytes in {@link #idBytes} */
+    private int idBytesLength;
+    /** The offset of the ID of each entry in {@link #idBytes}, the ID of entry i ends at the offset of entry i+1 */
+    private int[] idOffsets;
+    /** The start offset of each entry, or {@link #REMOVED} if the entry was removed */
+    private long[] starts;
+    /** The stop offset of each entry */
+    private long[] stops;
+
+    /** The number of entries, including the removed entries */
+    private int entries;
+    /** The number of removed entries */
+    private int removed;
+
+    /** Hash table containing the entry index + 1 for each ID, 0 for empty slots */
+    private int[] table;
+
+    /** The number of structural modifications, to detect concurrent modifications while iterating */
+    private int modCount;
+
+    /**
+     * Creates an empty CompactIdMapping.
+     */
+    CompactIdMapping() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Creates an empty CompactIdMapping with space for the given number of entries.
+     *
+     * @param capacity  the number of entries for which space is allocated
+     */
+    CompactIdMapping(int capacity) {
+        capacity = Math.max(capacity, 1);
+        idBytes = new byte[capacity * 8];
+        idOffsets = new int[capacity + 1];
+        starts = new long[capacity];
+        stops = new long[capacity];
+        table = new int[tableSize(capacity)];
+    }
+
+    /**
+     * Creates a CompactIdMapping containing the entries of the given mapping, in the same order.
+     *
+     * @param mapping  the mapping whose entries are copied
+     */
+    CompactIdMapping(Map<String, IndexElement> mapping) {
+        this(mapping.size());
+        putAll(mapping);
+    }
+
+    @Override
+    public int size() {
+        return entries - removed;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof String && indexOf(encode((String) key)) >= 0;
+    }
+
+    @Override
+    public IndexElement get(Object key) {
+        if(!(key instanceof String)) {
+            return null;
+        }
+        int index = indexOf(encode((String) key));
+        return index >= 0 ? new ByteRange(starts[index], stops[index]) : null;
+    }
+
+    @Override
+    public IndexElement put(String key, IndexElement value) {
+        byte[] id = encode(key);
+
+        int index = indexOf(id);
+        if(index >= 0) {
+            // replace the offsets of an existing entry
+            IndexElement old = new ByteRange(starts[index], stops[index]);
+            starts[index] = value.getStart();
+            stops[index] = value.getStop();
+            return old;
+        }
+
+        // discard the removed entries prior to expanding the arrays
+        if(entries == starts.length && removed > 0) {
+            compact();
+        }
+        ensureCapacity(entries + 1, idBytesLength + id.length);
+
+        // append the new entry
+        System.arraycopy(id, 0, idBytes, idBytesLength, id.length);
+        idBytesLength += id.length;
+        starts[entries] = value.getStart();
+        stops[entries] = value.getStop();
+        idOffsets[++entries] = idBytesLength;
+        modCount++;
+
+        if(table.length < tableSize(entries)) {
+            rebuildTable();
+        } else {
+            table[findSlot(id)] = entries;
+        }
+
+        return null;
+    }
+
+    @Override
+    public IndexElement remove(Object key) {
+        if(!(key instanceof String)) {
+            return null;
+        }
+        int index = indexOf(encode((String) key));
+        if(index < 0) {
+            return null;
+        }
+        IndexElement old = new ByteRange(starts[index], stops[index]);
+        removeEntry(index);
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        idBytesLength = 0;
+        entries = 0;
+        removed = 0;
+        Arrays.fill(table, 0);
+        modCount++;
+    }
+
+    @Override
+    public Set<Map.Entry<String, IndexElement>> entrySet() {
+        return new AbstractSet<Map.Entry<String, IndexElement>>() {
+            @Override
+            public int size() {
+                return CompactIdMapping.this.size();
+            }
+
+            @Override
+            public Iterator<Map.Entry<String, IndexElement>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public void clear() {
+                CompactIdMapping.this.clear();
+            }
+        };
+    }
+
+    /**
+     * Returns the offsets of the entries, without creating an {@link IndexElement} per entry.
+     *
+     * @return a copy of the offsets of the entries, in ascending order of their start offsets
+     */
+    ElementOffsets getOffsets() {
+        int size = size();
+        long[] offsetStarts = new long[size];
+        long[] offsetStops = new long[size];
+        if(removed == 0) {
+            System.arraycopy(starts, 0, offsetStarts, 0, size);
+            System.arraycopy(stops, 0, offsetStops, 0, size);
+        } else {
+            int count = 0;
+            for(int i = 0; i < entries; i++) {
+                if(starts[i] != REMOVED) {
+                    offsetStarts[count] = starts[i];
+                    offsetStops[count] = stops[i];
+                    count++;
+                }
+            }
+        }
+        return new ElementOffsets(offsetStarts, offsetStops, size).sorted();
+    }
+
+    /**
+     * Counts the entries that end at or before the given offset, without creating an {@link IndexElement} per entry.
+     *
+     * @param offset  the offset up to which the entries are counted
+     * @return the number of entries whose stop offset doesn't exceed the given offset
+     */
+    int countUpTo(long offset) {
+        int count = 0;
+        for(int i = 0; i < entries; i++) {
+            if(starts[i] != REMOVED && stops[i] <= offset) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns the number of bytes used by this mapping, excluding the object headers.
+     *
+     * @return the number of bytes used by this mapping
+     */
+    long estimateMemory() {
+        return idBytes.length + 4L * idOffsets.length + 8L * starts.length + 8L * stops.length + 4L * table.length;
+    }
+
+    /**
+     * Marks the entry with the given index as removed and removes it from the hash table.
+     *
+     * Because the hash table uses linear probing, the entries following the emptied slot in the same cluster are shifted back,
+     * so that they remain reachable without having to rebuild the hash table.
+     *
+     * @param index  the index of the removed entry
+     */
+    private void removeEntry(int index) {
+        int mask = table.length - 1;
+        int slot = hash(idBytes, idOffsets[index], idOffsets[index + 1]) & mask;
+        while(table[slot] != index + 1) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = 0;
+        for(int next = (slot + 1) & mask; table[next] != 0; next = (next + 1) & mask) {
+            int entry = table[next] - 1;
+            int home = hash(idBytes, idOffsets[entry], idOffsets[entry + 1]) & mask;
+            // move the entry to the emptied slot unless its home slot lies between both slots
+            if(((next - home) & mask) >= ((next - slot) & mask)) {
+                table[slot] = table[next];
+                table[next] = 0;
+                slot = next;
+            }
+        }
+
+        starts[index] = REMOVED;
+        removed++;
+    }
+
+    /**
+     * Gives the index of the entry with the given ID.
+     *
+     * @param id  the UTF-8 encoded ID
+     * @return the index of the entry with the given ID, or -1 if no such entry exists
+     */
+    private int indexOf(byte[] id) {
+        return table[findSlot(id)] - 1;
+    }
+
+    /**
+     * Gives the hash table slot of the given ID.
+     *
+     * @param id  the UTF-8 encoded ID
+     * @return the slot containing the given ID, or the empty slot in which the ID can be inserted
+     */
+    private int findSlot(byte[] id) {
+        int mask = table.length - 1;
+        int slot = hash(id, 0, id.length) & mask;
+        while(table[slot] != 0 && !equalsId(table[slot] - 1, id)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private boolean equalsId(int index, byte[] id) {
+        int offset = idOffsets[index];
+        if(idOffsets[index + 1] - offset != id.length) {
+            return false;
+        }
+        for(int i = 0; i < id.length; i++) {
+            if(idBytes[offset + i] != id[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void rebuildTable() {
+        table = new int[tableSize(entries)];
+        int mask = table.length - 1;
+        for(int i = 0; i < entries; i++) {
+            if(starts[i] != REMOVED) {
+                int slot = hash(idBytes, idOffsets[i], idOffsets[i + 1]) & mask;
+                while(table[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = i + 1;
+            }
+        }
+    }
+
+    /**
+     * Discards the removed entries from the arrays.
+     */
+    private void compact() {
+        int count = 0;
+        int bytes = 0;
+        for(int i = 0; i < entries; i++) {
+            if(starts[i] != REMOVED) {
+                int offset = idOffsets[i];
+                int length = idOffsets[i + 1] - offset;
+                System.arraycopy(idBytes, offset, idBytes, bytes, length);
+                idOffsets[count] = bytes;
+                starts[count] = starts[i];
+                stops[count] = stops[i];
+                bytes += length;
+                count++;
+            }
+        }
+        idOffsets[count] = bytes;
+        idBytesLength = bytes;
+        entries = count;
+        removed = 0;
+        modCount++;
+        rebuildTable();
+    }
+
+    private void ensureCapacity(int nrOfEntries, int nrOfBytes) {
+        if(nrOfEntries > starts.length) {
+            int capacity = Math.max(nrOfEntries, starts.length + (starts.length >> 1));
+            idOffsets = Arrays.copyOf(idOffsets, capacity + 1);
+            starts = Arrays.copyOf(starts, capacity);
+            stops = Arrays.copyOf(stops, capacity);
+        }
+        if(nrOfBytes > idBytes.length) {
+            idBytes = Arrays.copyOf(idBytes, Math.max(nrOfBytes, idBytes.length + (idBytes.length >> 1)));
+        }
+    }
+
+    /**
+     * Gives the hash table size for the given number of entries, which keeps the load factor below 0.5.
+     */
+    private static int tableSize(int nrOfEntries) {
+        return Integer.highestOneBit(Math.max(nrOfEntries, 2) * 2 - 1) << 1;
+    }
+
+    private static int hash(byte[] bytes, int from, int to) {
+        int h = 0;
+        for(int i = from; i < to; i++) {
+            h = 31 * h + bytes[i];
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static byte[] encode(String id) {
+        return id.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Iterates over the entries in insertion order, creating the entries on the fly.
+     */
+    private class EntryIterator implements Iterator<Map.Entry<String, IndexElement>> {
+
+        private int next = advance(0);
+        private int current = -1;
+        private int expectedModCount = modCount;
+
+        private int advance(int index) {
+            while(index < entries && starts[index] == REMOVED) {
+                index++;
+            }
+            return index;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < entries;
+        }
+
+        @Override
+        public Map.Entry<String, IndexElement> next() {
+            if(modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if(next >= entries) {
+                throw new NoSuchElementException();
+            }
+            current = next;
+            next = advance(next + 1);
+
+            String id = new String(idBytes, idOffsets[current], idOffsets[current + 1] - idOffsets[current], StandardCharsets.UTF_8);
+            return new SimpleImmutableEntry<String, IndexElement>(id, new ByteRange(starts[current], stops[current]));
+        }
+
+        @Override
+        public void remove() {
+            if(current < 0 || starts[current] == REMOVED) {
+                throw new IllegalStateException();
+            }
+            if(modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            removeEntry(current);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import psidev.psi.tools.xxindex.index.ByteRange;
+import psidev.psi.tools.xxindex.index.IndexElement;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The offsets of the elements in an ID mapping, in ascending order of their start offsets.
+ *
+ * The offsets are stored in primitive {@code long} arrays, so the elements can be traversed and split by their position
+ * without creating an {@link IndexElement} per element up front.
+ * The offsets are a copy of the ID mapping at the time they were created, so they aren't affected by later changes to the mapping.
+ */
+public class ElementOffsets {
+
+    /** ElementOffsets without any elements */
+    static final ElementOffsets EMPTY = new ElementOffsets(new long[0], new long[0], 0);
+
+    /** The start offset of each element */
+    private final long[] starts;
+    /** The stop offset of each element */
+    private final long[] stops;
+    /** The number of elements */
+    private final int size;
+
+    /**
+     * Creates ElementOffsets from the given offsets, which should be in ascending order of their start offsets.
+     *
+     * @param starts  the start offset of each element
+     * @param stops  the stop offset of each element
+     * @param size  the number of elements
+     */
+    ElementOffsets(long[] starts, long[] stops, int size) {
+        this.starts = starts;
+        this.stops = stops;
+        this.size = size;
+    }
+
+    /**
+     * Creates ElementOffsets for the elements in the given ID mapping.
+     *
+     * The offsets are only sorted if the mapping isn't already in ascending order of the start offsets,
+     * which is usually the case because the elements are indexed in the order in which they occur in the XML file.
+     *
+     * @param mapping  the ID mapping whose element offsets are copied
+     * @return the offsets of the elements in the given mapping, in ascending order of their start offsets
+     */
+    static ElementOffsets of(Map<String, IndexElement> mapping) {
+        if(mapping instanceof CompactIdMapping) {
+            return ((CompactIdMapping) mapping).getOffsets();
+        }
+
+        long[] starts = new long[mapping.size()];
+        long[] stops = new long[mapping.size()];
+        int size = 0;
+        for(IndexElement element : mapping.values()) {
+            starts[size] = element.getStart();
+            stops[size] = element.getStop();
+            size++;
+        }
+        return new ElementOffsets(starts, stops, size).sorted();
+    }
+
+    /**
+     * Returns these offsets in ascending order of their start offsets.
+     *
+     * @return these offsets if they are already in ascending order, sorted copies otherwise
+     */
+    ElementOffsets sorted() {
+        int i = 1;
+        while(i < size && starts[i - 1] <= starts[i]) {
+            i++;
+        }
+        if(i >= size) {
+            return this;
+        }
+
+        List<IndexElement> elements = new ArrayList<>(size);
+        for(int j = 0; j < size; j++) {
+            elements.add(new ByteRange(starts[j], stops[j]));
+        }
+        Collections.sort(elements, Comparator.comparingLong(IndexElement::getStart));
+        long[] sortedStarts = new long[size];
+        long[] sortedStops = new long[size];
+        for(int j = 0; j < size; j++) {
+            sortedStarts[j] = elements.get(j).getStart();
+            sortedStops[j] = elements.get(j).getStop();
+        }
+        return new ElementOffsets(sortedStarts, sortedStops, size);
+    }
+
+    /**
+     * Returns the number of elements.
+     *
+     * @return the number of elements
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the start offset of the element at the given position.
+     *
+     * @param position  the position of the element, in ascending order of the start offsets
+     * @return the start offset of the element
+     */
+    public long getStart(int position) {
+        checkPosition(position);
+        return starts[position];
+    }
+
+    /**
+     * Returns the stop offset of the element at the given position.
+     *
+     * @param position  the position of the element, in ascending order of the start offsets
+     * @return the stop offset of the element
+     */
+    public long getStop(int position) {
+        checkPosition(position);
+        return stops[position];
+    }
+
+    /**
+     * Returns the offset range of the element at the given position.
+     *
+     * @param position  the position of the element, in ascending order of the start offsets
+     * @return a new {@link IndexElement} for the offset range of the element
+     */
+    public IndexElement get(int position) {
+        checkPosition(position);
+        return new ByteRange(starts[position], stops[position]);
+    }
+
+    private void checkPosition(int position) {
+        if(position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("Invalid element position <" + position + "> for size " + size);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A bounded pool of open read-only {@link FileChannel}s of a single file.
+ *
+ * Reading a byte range takes a channel from the pool and reads the range by positional reads,
+ * so the file doesn't have to be opened and closed for each read, and multiple threads can read concurrently.
+ * If all pooled channels are in use, an additional channel is opened, which is closed again after use.
+ * A channel that has been closed while it was in use (e.g. because the reading thread was interrupted) is discarded.
+ *
+ * After the pool has been closed, it can still be used, but the channels are no longer retained.
+ */
+class FileChannelPool implements Closeable {
+
+    private static final Logger LOGGER = LogManager.getLogger(FileChannelPool.class);
+
+    /** The default maximum number of channels that are kept open */
+    static final int DEFAULT_SIZE = 4;
+
+    /** The file that is read */
+    private final File file;
+    /** The maximum number of channels that are kept open */
+    private final int size;
+
+    /** The channels that are open but not in use */
+    private final Deque<FileChannel> idle = new ArrayDeque<>();
+    /** Flag indicating whether the pool has been closed */
+    private boolean closed;
+
+    /**
+     * Creates a pool for the given file that keeps at most {@link #DEFAULT_SIZE} channels open.
+     *
+     * @param file  the file that is read
+     */
+    FileChannelPool(File file) {
+        this(file, DEFAULT_SIZE);
+    }
+
+    /**
+     * Creates a pool for the given file that keeps at most the given number of channels open.
+     *
+     * @param file  the file that is read
+     * @param size  the maximum number of channels that are kept open
+     */
+    FileChannelPool(File file, int size) {
+        this.file = file;
+        this.size = size;
+    }
+
+    /**
+     * Takes an open channel from the pool, or opens a new channel if none is available.
+     *
+     * The channel should only be used for positional reads, and should be returned through {@link #release(FileChannel)}.
+     *
+     * @return an open channel of the file
+     * @throws IOException if the file could not be opened
+     */
+    FileChannel acquire() throws IOException {
+        synchronized(idle) {
+            FileChannel channel = idle.pollFirst();
+            if(channel != null) {
+                return channel;
+            }
+        }
+        return FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    }
+
+    /**
+     * Returns a channel obtained through {@link #acquire()} to the pool.
+     *
+     * If the pool is full or has been closed, the channel is closed instead.
+     *
+     * @param channel  the channel that is no longer used
+     */
+    void release(FileChannel channel) {
+        if(!channel.isOpen()) {
+            return;
+        }
+        synchronized(idle) {
+            if(!closed && idle.size() < size) {
+                idle.addFirst(channel);
+                return;
+            }
+        }
+        try {
+            channel.close();
+        } catch(IOException e) {
+            LOGGER.warn("Could not close file <{}>: {}", file.getAbsolutePath(), e.getMessage());
+        }
+    }
+
+    /**
+     * Reads bytes from the file starting at the given offset, until the buffer is full or the end of the file is reached.
+     *
+     * @param buffer  the buffer into which the bytes are read
+     * @param position  the offset in the file of the first byte that is read
+     * @return the number of bytes read
+     * @throws IOException if the file could not be read
+     */
+    int read(ByteBuffer buffer, long position) throws IOException {
+        FileChannel channel = acquire();
+        try {
+            int total = 0;
+            int read;
+            while(buffer.hasRemaining() && (read = channel.read(buffer, position + total)) != -1) {
+                total += read;
+            }
+            return total;
+        } finally {
+            release(channel);
+        }
+    }
+
+    /**
+     * Opens a stream of the file starting at the given offset.
+     *
+     * The stream reads from a pooled channel, which is returned to the pool when the stream is closed.
+     *
+     * @param offset  the offset of the first byte of the stream
+     * @return a stream of the file starting at the given offset
+     * @throws IOException if the file could not be opened
+     */
+    InputStream openStream(long offset) throws IOException {
+        return new ChannelInputStream(acquire(), offset);
+    }
+
+    /**
+     * Closes all channels that are not in use. Channels that are in use are closed when they are released.
+     *
+     * @throws IOException if a channel could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        synchronized(idle) {
+            closed = true;
+            for(FileChannel channel : idle) {
+                try {
+                    channel.close();
+                } catch(IOException e) {
+                    if(failure == null) {
+                        failure = e;
+                    }
+                }
+            }
+            idle.clear();
+        }
+        if(failure != null) {
+            LOGGER.error("Could not close file <{}>: ", file.getAbsolutePath(), failure);
+            throw failure;
+        }
+    }
+
+    /**
+     * Reads a pooled channel by positional reads, starting at a given offset.
+     */
+    private class ChannelInputStream extends InputStream {
+
+        private FileChannel channel;
+        private long position;
+
+        ChannelInputStream(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if(channel == null) {
+                throw new IOException("Stream closed");
+            }
+            if(len == 0) {
+                return 0;
+            }
+            int read = channel.read(ByteBuffer.wrap(b, off, len), position);
+            if(read > 0) {
+                position += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            if(channel == null) {
+                throw new IOException("Stream closed");
+            }
+            long skipped = Math.max(0, Math.min(n, channel.size() - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public void close() {
+            if(channel != null) {
+                release(channel);
+                channel = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.google.common.base.MoreObjects;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Objects;
+import java.util.zip.CRC32;
+
+/**
+ * A cheap fingerprint of a file, used to detect whether a file has changed since it was indexed.
+ *
+ * The fingerprint consists of the file size, the last modification time, and a checksum over the first bytes of the file.
+ */
+public class FileFingerprint {
+
+    /** The number of bytes at the start of the file that are included in the header checksum */
+    static final int HEADER_SIZE = 4096;
+
+    private final long length;
+    private final long lastModified;
+    private final long headerChecksum;
+
+    /**
+     * Creates a FileFingerprint with the given properties.
+     *
+     * @param length  the size of the file in bytes
+     * @param lastModified  the last modification time of the file
+     * @param headerChecksum  the checksum over the first bytes of the file
+     */
+    public FileFingerprint(long length, long lastModified, long headerChecksum) {
+        this.length = length;
+        this.lastModified = lastModified;
+        this.headerChecksum = headerChecksum;
+    }
+
+    /**
+     * Computes the fingerprint of the given file.
+     *
+     * @param file  the file for which the fingerprint is computed
+     * @return the fingerprint of the given file
+     * @throws IOException if the file could not be read
+     */
+    public static FileFingerprint of(File file) throws IOException {
+        long length = file.length();
+        long lastModified = file.lastModified();
+        return new FileFingerprint(length, lastModified, checksum(file, 0, Math.min(length, HEADER_SIZE)));
+    }
+
+    /**
+     * Computes the checksum over the given byte range of a file.
+     *
+     * @param file  the file for which the checksum is computed
+     * @param start  the offset of the first byte of the range (inclusive)
+     * @param stop  the offset of the end of the range (exclusive)
+     * @return the checksum over the given byte range, excluding the bytes beyond the end of the file
+     * @throws IOException if the file could not be read
+     */
+    public static long checksum(File file, long start, long stop) throws IOException {
+        CRC32 crc = new CRC32();
+        try(RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(start);
+            byte[] buffer = new byte[HEADER_SIZE];
+            long remaining = stop - start;
+            int read;
+            while(remaining > 0 && (read = raf.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+                crc.update(buffer, 0, read);
+                remaining -= read;
+            }
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Reads a fingerprint previously written by {@link #write(DataOutput)}.
+     *
+     * @param in  the input from which the fingerprint is read
+     * @return the fingerprint read from the given input
+     * @throws IOException if the fingerprint could not be read
+     */
+    public static FileFingerprint read(DataInput in) throws IOException {
+        return new FileFingerprint(in.readLong(), in.readLong(), in.readLong());
+    }
+
+    /**
+     * Writes this fingerprint to the given output.
+     *
+     * @param out  the output to which the fingerprint is written
+     * @throws IOException if the fingerprint could not be written
+     */
+    public void write(DataOutput out) throws IOException {
+        out.writeLong(length);
+        out.writeLong(lastModified);
+        out.writeLong(headerChecksum);
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public long getHeaderChecksum() {
+        return headerChecksum;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) {
+            return true;
+        }
+        if(!(o instanceof FileFingerprint)) {
+            return false;
+        }
+        FileFingerprint that = (FileFingerprint) o;
+        return  length == that.length &&
+                lastModified == that.lastModified &&
+                headerChecksum == that.headerChecksum;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(length, lastModified, headerChecksum);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this).add("length", length).add("lastModified", lastModified)
+                .add("headerChecksum", headerChecksum).toString();
+    }
+}
@@ -0,0 +1,377 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Provides access to the decompressed contents of a gzip-compressed qcML file by their uncompressed offsets.
+ *
+ * Block-compressed files (in the BGZF format, see {@link BlockCompressedOutputStream}) consist of a series of independently compressed gzip members,
+ * whose compressed size is recorded in the header of each member. For such files a block table is created
+ * that maps each uncompressed offset to a virtual offset: the compressed offset of the enclosing block, combined with the offset within that block.
+ * This allows to read any range of the uncompressed data by only decompressing the blocks that contain it.
+ *
+ * Regular gzip files can only be decompressed sequentially, so reading a range requires decompressing all preceding data.
+ */
+public class GzipFile {
+
+    private static final Logger LOGGER = LogManager.getLogger(GzipFile.class);
+
+    /** The first byte of the gzip magic number */
+    private static final int GZIP_ID1 = 0x1f;
+    /** The second byte of the gzip magic number */
+    private static final int GZIP_ID2 = 0x8b;
+    /** The flag indicating the presence of an extra field in the gzip header */
+    private static final int FLAG_EXTRA = 4;
+    /** The size of the fixed part of the gzip header, including the length of the extra field */
+    private static final int HEADER_SIZE = 12;
+    /** The size of the gzip footer, containing the CRC32 and the uncompressed size */
+    private static final int FOOTER_SIZE = 8;
+
+    /** The compressed file */
+    private final File file;
+
+    /** The compressed offset of each block with data, or {@code null} if the file isn't block-compressed */
+    private long[] blockOffsets;
+    /** The uncompressed offset of the first byte of each block with data */
+    private long[] blockStarts;
+    /** The compressed size of each block with data */
+    private int[] blockSizes;
+    /** The number of blocks with data */
+    private int nrOfBlocks;
+    /** The uncompressed size of the file, or -1 if unknown */
+    private long length;
+
+    /** The index of the most recently decompressed block, to efficiently read consecutive ranges */
+    private int cachedBlock = -1;
+    /** The data of the most recently decompressed block */
+    private byte[] cachedData;
+
+    /**
+     * Opens the given gzip-compressed file, and creates its block table if it's block-compressed.
+     *
+     * @param file  the gzip-compressed file
+     * @throws IOException if the file isn't a gzip file or could not be read
+     */
+    public GzipFile(File file) throws IOException {
+        this.file = file;
+        this.length = -1;
+
+        if(!isGzip(file)) {
+            throw new IOException("Not a gzip file: " + file.getAbsolutePath());
+        }
+        if(isBlockCompressed(file)) {
+            createBlockTable();
+        }
+    }
+
+    /**
+     * Checks whether the given file is gzip-compressed, based on its magic number.
+     *
+     * @param file  the file to check
+     * @return true if the file starts with the gzip magic number
+     */
+    public static boolean isGzip(File file) {
+        try(InputStream in = new FileInputStream(file)) {
+            return in.read() == GZIP_ID1 && in.read() == GZIP_ID2;
+        } catch(IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Checks whether the given file is block-compressed in the BGZF format.
+     *
+     * @param file  the file to check
+     * @return true if the first gzip member of the file records its compressed size
+     */
+    public static boolean isBlockCompressed(File file) {
+        try(RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            return readBlockSize(raf, 0) > 0;
+        } catch(IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Opens a stream of the decompressed contents of the given file, or of the file itself if it isn't gzip-compressed.
+     *
+     * @param file  the (compressed) file to open
+     * @return a stream of the (decompressed) contents of the file
+     * @throws IOException if the file could not be opened
+     */
+    public static InputStream openInputStream(File file) throws IOException {
+        return isGzip(file) ? new GZIPInputStream(new FileInputStream(file)) : new FileInputStream(file);
+    }
+
+    /**
+     * Indicates whether the file is block-compressed, i.e. whether its data can be accessed randomly.
+     *
+     * @return true if the file is block-compressed in the BGZF format
+     */
+    public boolean isBlockCompressed() {
+        return blockOffsets != null;
+    }
+
+    /**
+     * Returns the uncompressed size of the file.
+     *
+     * @return the uncompressed size of the file, or -1 if unknown because the file isn't block-compressed
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the virtual offset corresponding to the given uncompressed offset in a block-compressed file.
+     *
+     * The virtual offset consists of the compressed offset of the block containing the given offset in the upper 48 bits,
+     * and the offset within the uncompressed block in the lower 16 bits.
+     *
+     * @param offset  the uncompressed offset
+     * @return the virtual offset of the given uncompressed offset
+     */
+    public long getVirtualOffset(long offset) {
+        if(!isBlockCompressed()) {
+            LOGGER.error("Virtual offsets are only available for block-compressed files: <{}>", file.getAbsolutePath());
+            throw new IllegalStateException("Virtual offsets are only available for block-compressed files: " + file.getAbsolutePath());
+        }
+        if(offset < 0 || offset > length) {
+            LOGGER.error("Offset {} is outside of the uncompressed data of file <{}>", offset, file.getAbsolutePath());
+            throw new IllegalArgumentException("Offset " + offset + " is outside of the uncompressed data of file: " + file.getAbsolutePath());
+        }
+        if(offset == length) {
+            return file.length() << 16;
+        }
+        int block = findBlock(offset);
+        return (blockOffsets[block] << 16) | (offset - blockStarts[block]);
+    }
+
+    /**
+     * Reads the uncompressed data in the given range.
+     *
+     * @param start  the uncompressed offset of the first byte to read
+     * @param stop  the uncompressed offset directly after the last byte to read
+     * @return the uncompressed data in the given range, which is shorter if the range exceeds the end of the data
+     * @throws IOException if the file could not be read
+     */
+    public synchronized byte[] read(long start, long stop) throws IOException {
+        if(start < 0 || stop < start || stop - start > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid offset range: " + start + "-" + stop);
+        }
+
+        if(!isBlockCompressed()) {
+            // decompress all data up to the requested range
+            try(InputStream in = openStream(start)) {
+                byte[] data = new byte[(int) (stop - start)];
+                int read = 0;
+                int n;
+                while(read < data.length && (n = in.read(data, read, data.length - read)) != -1) {
+                    read += n;
+                }
+                return read < data.length ? Arrays.copyOf(data, read) : data;
+            }
+        }
+
+        stop = Math.min(stop, length);
+        if(start >= stop) {
+            return new byte[0];
+        }
+        byte[] data = new byte[(int) (stop - start)];
+        try(RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            int read = 0;
+            for(int block = findBlock(start); read < data.length; block++) {
+                byte[] blockData = inflateBlock(raf, block);
+                int offset = (int) (start + read - blockStarts[block]);
+                int count = Math.min(blockData.length - offset, data.length - read);
+                System.arraycopy(blockData, offset, data, read, count);
+                read += count;
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Opens a stream of the uncompressed data starting at the given offset.
+     *
+     * For a block-compressed file the stream starts at the block containing the given offset,
+     * otherwise all data preceding the given offset is decompressed and skipped.
+     *
+     * @param offset  the uncompressed offset of the first byte of the stream
+     * @return a stream of the uncompressed data starting at the given offset
+     * @throws IOException if the file could not be read
+     */
+    public InputStream openStream(long offset) throws IOException {
+        long skip = offset;
+        FileInputStream in = new FileInputStream(file);
+        try {
+            if(isBlockCompressed() && offset > 0 && offset < length) {
+                // consecutive blocks form a valid gzip stream as well
+                int block = findBlock(offset);
+                in.getChannel().position(blockOffsets[block]);
+                skip = offset - blockStarts[block];
+            }
+            InputStream gzip = new GZIPInputStream(in);
+            while(skip > 0) {
+                long skipped = gzip.skip(skip);
+                if(skipped <= 0) {
+                    break;
+                }
+                skip -= skipped;
+            }
+            return gzip;
+        } catch(IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Gives the block containing the given uncompressed offset.
+     */
+    private int findBlock(long offset) {
+        int index = Arrays.binarySearch(blockStarts, 0, nrOfBlocks, offset);
+        return index >= 0 ? index : Math.max(0, -index - 2);
+    }
+
+    /**
+     * Decompresses the given block.
+     */
+    private byte[] inflateBlock(RandomAccessFile raf, int block) throws IOException {
+        if(block == cachedBlock) {
+            return cachedData;
+        }
+
+        byte[] compressed = new byte[blockSizes[block]];
+        raf.seek(blockOffsets[block]);
+        raf.readFully(compressed);
+
+        int extraLength = (compressed[10] & 0xFF) | (compressed[11] & 0xFF) << 8;
+        int uncompressedSize = (int) ((block + 1 < nrOfBlocks ? blockStarts[block + 1] : length) - blockStarts[block]);
+        byte[] data = new byte[uncompressedSize];
+
+        Inflater inflater = new Inflater(true);
+        try {
+            int offset = HEADER_SIZE + extraLength;
+            inflater.setInput(compressed, offset, compressed.length - offset - FOOTER_SIZE);
+            int inflated = 0;
+            while(inflated < data.length) {
+                int n = inflater.inflate(data, inflated, data.length - inflated);
+                if(n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new EOFException("Truncated block at offset " + blockOffsets[block] + " in file " + file.getAbsolutePath());
+                }
+                inflated += n;
+            }
+        } catch(DataFormatException e) {
+            throw new IOException("Invalid block at offset " + blockOffsets[block] + " in file " + file.getAbsolutePath(), e);
+        } finally {
+            inflater.end();
+        }
+
+        cachedBlock = block;
+        cachedData = data;
+        return data;
+    }
+
+    /**
+     * Creates the block table by reading the header and the footer of each block.
+     */
+    private void createBlockTable() throws IOException {
+        LOGGER.info("Create the block table of compressed file <{}>", file.getAbsolutePath());
+
+        blockOffsets = new long[16];
+        blockStarts = new long[16];
+        blockSizes = new int[16];
+        nrOfBlocks = 0;
+
+        long uncompressed = 0;
+        try(RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long offset = 0;
+            long fileLength = raf.length();
+            while(offset < fileLength) {
+                int blockSize = readBlockSize(raf, offset);
+                if(blockSize <= 0 || offset + blockSize > fileLength) {
+                    throw new IOException("Invalid block at offset " + offset + " in file " + file.getAbsolutePath());
+                }
+                // the uncompressed size is recorded in the last four bytes of the block
+                raf.seek(offset + blockSize - 4);
+                long size = Integer.reverseBytes(raf.readInt()) & 0xFFFFFFFFL;
+
+                // skip empty blocks, such as the end-of-file marker
+                if(size > 0) {
+                    if(nrOfBlocks == blockOffsets.length) {
+                        blockOffsets = Arrays.copyOf(blockOffsets, nrOfBlocks * 2);
+                        blockStarts = Arrays.copyOf(blockStarts, nrOfBlocks * 2);
+                        blockSizes = Arrays.copyOf(blockSizes, nrOfBlocks * 2);
+                    }
+                    blockOffsets[nrOfBlocks] = offset;
+                    blockStarts[nrOfBlocks] = uncompressed;
+                    blockSizes[nrOfBlocks] = blockSize;
+                    nrOfBlocks++;
+                }
+
+                uncompressed += size;
+                offset += blockSize;
+            }
+        }
+        length = uncompressed;
+    }
+
+    /**
+     * Reads the compressed size of the block at the given offset from the BGZF extra field in its header.
+     *
+     * @return the compressed size of the block, or -1 if the header doesn't contain a BGZF extra field
+     */
+    private static int readBlockSize(RandomAccessFile raf, long offset) throws IOException {
+        byte[] header = new byte[HEADER_SIZE];
+        raf.seek(offset);
+        if(raf.read(header) != HEADER_SIZE || (header[0] & 0xFF) != GZIP_ID1 || (header[1] & 0xFF) != GZIP_ID2
+                || (header[3] & FLAG_EXTRA) == 0) {
+            return -1;
+        }
+
+        int extraLength = (header[10] & 0xFF) | (header[11] & 0xFF) << 8;
+        byte[] extra = new byte[extraLength];
+        raf.readFully(extra);
+        // find the 'BC' subfield containing the block size
+        for(int i = 0; i + 4 <= extraLength; ) {
+            int subfieldLength = (extra[i + 2] & 0xFF) | (extra[i + 3] & 0xFF) << 8;
+            if(extra[i] == 'B' && extra[i + 1] == 'C' && subfieldLength == 2 && i + 6 <= extraLength) {
+                return ((extra[i + 4] & 0xFF) | (extra[i + 5] & 0xFF) << 8) + 1;
+            }
+            i += 4 + subfieldLength;
+        }
+        return -1;
+    }
+}
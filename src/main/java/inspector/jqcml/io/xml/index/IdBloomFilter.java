@@ -0,0 +1,214 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import psidev.psi.tools.xxindex.index.IndexElement;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * A Bloom filter summarizing the IDs of the elements in an index.
+ *
+ * The filter can be used to determine whether an ID is definitely absent from an index without having to load the full ID mappings.
+ * With 10 bits per ID and 7 hash functions the false positive rate is about 1%.
+ */
+class IdBloomFilter {
+
+    /** The number of bits per ID */
+    private static final int BITS_PER_ID = 10;
+    /** The number of hash functions */
+    private static final int NR_OF_HASHES = 7;
+
+    private final long[] bits;
+
+    /**
+     * Creates an empty IdBloomFilter sized for the given number of IDs.
+     *
+     * @param expectedIds  the number of IDs that will be added to the filter
+     */
+    IdBloomFilter(int expectedIds) {
+        this(new long[Math.max(1, (int) (((long) expectedIds * BITS_PER_ID + 63) / 64))]);
+    }
+
+    private IdBloomFilter(long[] bits) {
+        this.bits = bits;
+    }
+
+    /**
+     * Creates an IdBloomFilter containing the IDs of all elements in the given ID mappings.
+     *
+     * @param idMap  the ID mappings whose IDs are added to the filter
+     * @return a filter containing all IDs in the given ID mappings
+     */
+    @SuppressWarnings("rawtypes")
+    static IdBloomFilter of(Map<Class, Map<String, IndexElement>> idMap) {
+        return of(idMap, 1);
+    }
+
+    /**
+     * Creates an IdBloomFilter containing the IDs of all elements in the given ID mappings,
+     * which is sized to retain its false positive rate when IDs are added subsequently.
+     *
+     * @param idMap  the ID mappings whose IDs are added to the filter
+     * @param growth  the factor by which the number of IDs is expected to grow
+     * @return a filter containing all IDs in the given ID mappings
+     */
+    @SuppressWarnings("rawtypes")
+    static IdBloomFilter of(Map<Class, Map<String, IndexElement>> idMap, int growth) {
+        int nrOfIds = 0;
+        for(Map<String, IndexElement> mapping : idMap.values()) {
+            nrOfIds += mapping.size();
+        }
+
+        IdBloomFilter filter = new IdBloomFilter((int) Math.min(Integer.MAX_VALUE, (long) nrOfIds * growth));
+        for(Map<String, IndexElement> mapping : idMap.values()) {
+            for(String id : mapping.keySet()) {
+                filter.add(id);
+            }
+        }
+        return filter;
+    }
+
+    /**
+     * Adds the given ID to the filter.
+     *
+     * @param id  the ID that is added
+     */
+    void add(String id) {
+        int h1 = mix(id.hashCode());
+        int h2 = secondHash(id);
+        long nrOfBits = bits.length * 64L;
+        for(int i = 0; i < NR_OF_HASHES; i++) {
+            long bit = ((h1 + i * h2) & 0xFFFFFFFFL) % nrOfBits;
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    /**
+     * Checks whether the given ID might have been added to the filter.
+     *
+     * @param id  the ID that is checked
+     * @return false if the ID has definitely not been added to the filter, true if it might have been added
+     */
+    boolean mightContain(String id) {
+        int h1 = mix(id.hashCode());
+        int h2 = secondHash(id);
+        long nrOfBits = bits.length * 64L;
+        for(int i = 0; i < NR_OF_HASHES; i++) {
+            long bit = ((h1 + i * h2) & 0xFFFFFFFFL) % nrOfBits;
+            if((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates a copy of this filter, to which IDs can be added independently of this filter.
+     *
+     * @return a copy of this filter
+     */
+    IdBloomFilter copy() {
+        return new IdBloomFilter(bits.clone());
+    }
+
+    /**
+     * Returns the number of IDs for which this filter is sized, beyond which its false positive rate increases.
+     *
+     * @return the number of IDs this filter can contain
+     */
+    int getCapacity() {
+        return (int) Math.min(Integer.MAX_VALUE, bits.length * 64L / BITS_PER_ID);
+    }
+
+    /**
+     * Returns the number of 64-bit words containing the bits of this filter, which is written before the bits.
+     *
+     * @return the number of words of this filter
+     */
+    int getNumberOfWords() {
+        return bits.length;
+    }
+
+    /**
+     * Returns the number of bytes used by the bits of this filter.
+     *
+     * @return the number of bytes used by this filter
+     */
+    long estimateMemory() {
+        return 8L * bits.length;
+    }
+
+    /**
+     * Reads a filter previously written by {@link #write(DataOutput)}.
+     *
+     * @param in  the input from which the filter is read
+     * @return the filter read from the given input
+     * @throws IOException if the filter could not be read
+     */
+    static IdBloomFilter read(DataInput in) throws IOException {
+        long[] bits = new long[in.readInt()];
+        for(int i = 0; i < bits.length; i++) {
+            bits[i] = in.readLong();
+        }
+        return new IdBloomFilter(bits);
+    }
+
+    /**
+     * Writes this filter to the given output.
+     *
+     * @param out  the output to which the filter is written
+     * @throws IOException if the filter could not be written
+     */
+    void write(DataOutput out) throws IOException {
+        out.writeInt(bits.length);
+        for(long word : bits) {
+            out.writeLong(word);
+        }
+    }
+
+    /**
+     * Computes an FNV-1a hash, which is independent of {@link String#hashCode()}, and ensures it is odd.
+     */
+    private static int secondHash(String id) {
+        int h = 0x811C9DC5;
+        for(int i = 0; i < id.length(); i++) {
+            h ^= id.charAt(i);
+            h *= 0x01000193;
+        }
+        return mix(h) | 1;
+    }
+
+    /**
+     * Spreads the bits of a hash code (MurmurHash3 finalizer).
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
@@ -0,0 +1,300 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import psidev.psi.tools.xxindex.index.IndexElement;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * The creation of a {@link QcMLIndexer} in the background.
+ *
+ * The qcML file is indexed by the byte scanner regardless of the configured {@link IndexEngine},
+ * which allows to report the number of bytes that have been processed,
+ * and to look up elements as soon as the part of the file containing them has been indexed.
+ * Only if a previously stored index can be reused, if the file is gzip-compressed,
+ * or if the encoding isn't supported by the byte scanner, the QcMLIndexer is created as usual,
+ * in which case the progress and the early lookups only become available when the index is complete.
+ *
+ * The build can be aborted through {@link #cancel(boolean)}, which stops the scan at the next block of the file.
+ */
+public class IndexBuild extends FutureTask<QcMLIndexer> {
+
+    private static final Logger LOGGER = LogManager.getLogger(IndexBuild.class);
+
+    /** The qcML file that is indexed */
+    private final File qcmlFile;
+    /** The {@link IndexConfiguration} specifying how the index is created */
+    private final IndexConfiguration configuration;
+    /** The size of the qcML file when the build was created */
+    private final long length;
+
+    /** Lock guarding the partial index, which is notified whenever the scan has progressed */
+    private final Object lock = new Object();
+    /** The handler collecting the partial index, or {@code null} if the file isn't scanned incrementally */
+    private QcMLScanHandler handler;
+    /** The encoding of the qcML file, or {@code null} if it hasn't been detected yet */
+    private Charset charset;
+    /** Flag indicating whether the scan has ended, successfully or not */
+    private boolean finished;
+
+    /** The number of bytes of the qcML file that have been indexed */
+    private volatile long bytesProcessed;
+
+    /**
+     * Creates an IndexBuild for the given qcML file, which starts when it is run.
+     *
+     * @param file  The qcML file for which the index is created.
+     * @param configuration  The {@link IndexConfiguration} specifying how the index is created
+     */
+    IndexBuild(File file, IndexConfiguration configuration) {
+        this(file, configuration, new Build());
+    }
+
+    private IndexBuild(File file, IndexConfiguration configuration, Build build) {
+        super(build);
+        build.owner = this;
+        this.qcmlFile = file;
+        this.configuration = configuration;
+        this.length = file.length();
+    }
+
+    /**
+     * Returns the qcML file that is indexed.
+     *
+     * @return The qcML file that is indexed
+     */
+    public File getFile() {
+        return qcmlFile;
+    }
+
+    /**
+     * Returns the number of bytes of the qcML file that have been indexed so far.
+     *
+     * @return The number of bytes that have been indexed
+     */
+    public long getBytesProcessed() {
+        return bytesProcessed;
+    }
+
+    /**
+     * Returns the number of bytes of the qcML file that need to be indexed.
+     *
+     * @return The size of the qcML file
+     */
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the fraction of the qcML file that has been indexed so far.
+     *
+     * @return The fraction of bytes that have been indexed, between 0 and 1
+     */
+    public double getProgress() {
+        return length > 0 ? Math.min(1.0, (double) bytesProcessed / length) : (isDone() ? 1.0 : 0.0);
+    }
+
+    /**
+     * Looks up the location of the element with the given ID, waiting until the part of the file containing it has been indexed.
+     *
+     * If the element has already been indexed, its location is returned immediately, even if the remainder of the file is still being indexed.
+     * Otherwise this waits until the element is encountered or until the index is complete.
+     *
+     * @param cls  The class type of the requested element, i.e. {@link inspector.jqcml.model.QualityAssessment} or {@link inspector.jqcml.model.Cv}
+     * @param id  The ID of the requested element
+     * @return The offset range of the requested element, or {@code null} if the qcML file doesn't contain such an element
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     * @throws ExecutionException if the creation of the index failed
+     * @throws CancellationException if the creation of the index was cancelled
+     */
+    public IndexElement getIndexElement(@SuppressWarnings("rawtypes") Class cls, String id) throws InterruptedException, ExecutionException {
+        synchronized(lock) {
+            while(!finished) {
+                IndexElement element = getIndexedElement(cls, id);
+                if(element != null) {
+                    return element;
+                }
+                lock.wait();
+            }
+        }
+
+        Map<String, IndexElement> mapping = get().getIDMapping(cls);
+        return mapping != null ? mapping.get(id) : null;
+    }
+
+    /**
+     * Reads the XML snippet of the element with the given ID, waiting until the part of the file containing it has been indexed.
+     *
+     * @param cls  The class type of the requested element, i.e. {@link inspector.jqcml.model.QualityAssessment} or {@link inspector.jqcml.model.Cv}
+     * @param id  The ID of the requested element
+     * @return The XML snippet of the requested element, or {@code null} if the qcML file doesn't contain such an element
+     * @throws InterruptedException if the current thread was interrupted while waiting
+     * @throws ExecutionException if the creation of the index failed
+     * @throws CancellationException if the creation of the index was cancelled
+     * @see #getIndexElement(Class, String)
+     */
+    public String getXMLSnippet(@SuppressWarnings("rawtypes") Class cls, String id) throws InterruptedException, ExecutionException {
+        IndexElement element = getIndexElement(cls, id);
+        if(element == null) {
+            return null;
+        }
+
+        Charset snippetCharset;
+        synchronized(lock) {
+            snippetCharset = finished ? null : charset;
+        }
+        if(snippetCharset == null) {
+            // the index is complete
+            return get().readXML(element);
+        }
+
+        try(RandomAccessFile file = new RandomAccessFile(qcmlFile, "r")) {
+            byte[] bytes = new byte[(int) (element.getStop() - element.getStart())];
+            file.seek(element.getStart());
+            file.readFully(bytes);
+            return new String(bytes, snippetCharset);
+        } catch(IOException e) {
+            LOGGER.error("Could not extract XML from file <{}>: ", qcmlFile, e);
+            throw new IllegalArgumentException("Could not extract XML from file: " + qcmlFile);
+        }
+    }
+
+    /**
+     * Gives the already indexed element with the given ID, should be called while holding the lock.
+     */
+    @SuppressWarnings("rawtypes")
+    private IndexElement getIndexedElement(Class cls, String id) {
+        if(handler == null) {
+            return null;
+        }
+        Map<String, IndexElement> mapping = handler.getIDMappings().get(cls);
+        return mapping != null ? mapping.get(id) : null;
+    }
+
+    @Override
+    protected void done() {
+        // wake up the early lookups, which continue with the final index (or its failure)
+        synchronized(lock) {
+            finished = true;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Creates the QcMLIndexer, by scanning the qcML file incrementally if possible.
+     *
+     * @return The created QcMLIndexer
+     * @throws IOException
+     */
+    private QcMLIndexer build() throws IOException {
+        IndexFile indexFile = configuration.isPersistent() ? QcMLIndexer.readIndexFile(qcmlFile, configuration) : null;
+        if(indexFile == null && !GzipFile.isGzip(qcmlFile)) {
+            indexFile = scan();
+            if(indexFile != null && configuration.isPersistent()) {
+                indexFile.write(qcmlFile);
+            }
+        }
+        QcMLIndexer indexer = new QcMLIndexer(qcmlFile, configuration, indexFile);
+        bytesProcessed = length;
+        return indexer;
+    }
+
+    /**
+     * Scans the qcML file block by block, so that the partial index can be consulted in between.
+     *
+     * @return The contents of the created index, or {@code null} if the encoding of the file isn't supported by the byte scanner
+     * @throws IOException
+     */
+    private IndexFile scan() throws IOException {
+        LOGGER.info("Create ID mappings by scanning file <{}> in the background", qcmlFile.getAbsolutePath());
+
+        // fingerprint the file prior to indexing, so a concurrent modification invalidates the index
+        FileFingerprint fingerprint = FileFingerprint.of(qcmlFile);
+
+        QcMLScanHandler scanHandler = new QcMLScanHandler(configuration.isParameterIndex(), configuration.getMetaDataAccessions());
+        scanHandler.setMemoryBudget(configuration.getMemoryBudget());
+        InputStream fileIn = new FileInputStream(qcmlFile);
+        ScanningInputStream in = new ScanningInputStream(fileIn, scanHandler);
+        try {
+            synchronized(lock) {
+                handler = scanHandler;
+            }
+            byte[] buffer = new byte[XmlScanner.BUFFER_SIZE];
+            int read;
+            do {
+                if(isCancelled() || Thread.currentThread().isInterrupted()) {
+                    LOGGER.info("Creation of the index for file <{}> cancelled", qcmlFile.getAbsolutePath());
+                    throw new CancellationException("Creation of the index for file " + qcmlFile.getAbsolutePath() + " cancelled");
+                }
+                synchronized(lock) {
+                    read = in.read(buffer, 0, buffer.length);
+                    if(read > 0) {
+                        bytesProcessed += read;
+                        if(charset == null) {
+                            charset = QcMLIndexer.toCharset(in.getEncoding());
+                        }
+                    }
+                    lock.notifyAll();
+                }
+            } while(read != -1);
+            in.close();
+        } finally {
+            fileIn.close();
+        }
+
+        if(!in.isScanned()) {
+            LOGGER.info("Encoding <{}> not supported by the byte scanner, create the index as usual", in.getEncoding());
+            synchronized(lock) {
+                handler = null;
+            }
+            return null;
+        }
+
+        return new IndexFile(fingerprint, in.getEncoding(), scanHandler.getIDMappings(),
+                scanHandler.getParameterMappings(), scanHandler.getMetaDataIndex());
+    }
+
+    /**
+     * Runs the build of the owning IndexBuild.
+     */
+    private static class Build implements Callable<QcMLIndexer> {
+
+        private IndexBuild owner;
+
+        @Override
+        public QcMLIndexer call() throws IOException {
+            return owner.build();
+        }
+    }
+}
@@ -0,0 +1,413 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.google.common.base.MoreObjects;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Function;
+
+/**
+ * A cache of the indexes of multiple qcML files, which are kept open so they can be reused.
+ *
+ * The cache is bounded by the number of indexes and by the total memory used by their ID mappings (see {@link QcMLIndexer#estimateMemory()}).
+ * When either limit is exceeded, the least recently used indexes are evicted and closed.
+ * The most recently added index is never evicted, even if it exceeds the memory limit by itself.
+ *
+ * Indexes that are looked up through {@link #acquire(File)} are retained (see {@link QcMLIndexer#retain()}),
+ * so an index that is evicted while it's still in use only releases its open files once all its users have released it.
+ * Indexes that aren't cached can be created through {@link #acquire(File, Function)}, in which case each index is created
+ * only once, even if it's requested by multiple threads concurrently, without blocking lookups of other indexes.
+ *
+ * The number of hits, misses and evictions are recorded, so the limits can be tuned to the workload.
+ * The cache is thread-safe.
+ */
+public class IndexCache implements Closeable {
+
+    private static final Logger LOGGER = LogManager.getLogger(IndexCache.class);
+
+    /** The default maximum number of cached indexes */
+    public static final int DEFAULT_MAX_ENTRIES = 4;
+    /** The default maximum memory used by the cached indexes, in bytes */
+    public static final long DEFAULT_MAX_MEMORY = 256L << 20;
+
+    /** The maximum number of cached indexes */
+    private final int maxEntries;
+    /** The maximum memory used by the cached indexes, in bytes, or 0 if unlimited */
+    private final long maxMemory;
+
+    /** The cached indexes by their (absolute) qcML file, in the order in which they were last used */
+    private final LinkedHashMap<File, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /** The estimated memory used by the cached indexes */
+    private long memory;
+    /** The indexes that are being created, by their (absolute) qcML file */
+    private final Map<File, FutureTask<QcMLIndexer>> pending = new HashMap<>();
+
+    /** The number of lookups of a cached index */
+    private long hitCount;
+    /** The number of lookups of an index that wasn't cached */
+    private long missCount;
+    /** The number of indexes that have been evicted to stay within the limits */
+    private long evictionCount;
+
+    /**
+     * Creates an IndexCache with the default limits.
+     */
+    public IndexCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_MEMORY);
+    }
+
+    /**
+     * Creates an IndexCache with the given limits.
+     *
+     * @param maxEntries  the maximum number of cached indexes, at least 1
+     * @param maxMemory  the maximum memory used by the cached indexes in bytes, or 0 for no limit
+     */
+    public IndexCache(int maxEntries, long maxMemory) {
+        if(maxEntries < 1) {
+            LOGGER.error("The maximum number of cached indexes should be at least 1: {}", maxEntries);
+            throw new IllegalArgumentException("The maximum number of cached indexes should be at least 1: " + maxEntries);
+        }
+        if(maxMemory < 0) {
+            LOGGER.error("The maximum memory of the cached indexes is not allowed to be negative: {}", maxMemory);
+            throw new IllegalArgumentException("The maximum memory of the cached indexes is not allowed to be negative: " + maxMemory);
+        }
+        this.maxEntries = maxEntries;
+        this.maxMemory = maxMemory;
+    }
+
+    /**
+     * Returns the maximum number of cached indexes.
+     *
+     * @return the maximum number of cached indexes
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Returns the maximum memory used by the cached indexes.
+     *
+     * @return the maximum memory in bytes, or 0 if unlimited
+     */
+    public long getMaxMemory() {
+        return maxMemory;
+    }
+
+    /**
+     * Looks up the cached index of the given qcML file, and marks it as the most recently used.
+     *
+     * @param file  the qcML file
+     * @return the cached index of the qcML file, or {@code null} if it isn't cached
+     */
+    public synchronized QcMLIndexer get(File file) {
+        Entry entry = entries.get(file.getAbsoluteFile());
+        if(entry == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.index;
+    }
+
+    /**
+     * Looks up and retains the cached index of the given qcML file, and marks it as the most recently used.
+     *
+     * The index is retained before it can be evicted by another thread, and should be released by the caller after use (see {@link QcMLIndexer#release()}).
+     *
+     * @param file  the qcML file
+     * @return the retained index of the qcML file, or {@code null} if it isn't cached
+     */
+    public synchronized QcMLIndexer acquire(File file) {
+        Entry entry = entries.get(file.getAbsoluteFile());
+        if(entry == null || !entry.index.retain()) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        return entry.index;
+    }
+
+    /**
+     * Looks up and retains the cached index of the given qcML file, or creates and caches the index if it isn't cached.
+     *
+     * The index is created without holding the lock on the cache, so other indexes can be looked up in the meantime.
+     * Concurrent requests for the same qcML file wait until its index has been created, rather than creating it again.
+     * The returned index should be released by the caller after use (see {@link QcMLIndexer#release()}).
+     *
+     * @param file  the qcML file
+     * @param loader  the function used to create the index of the qcML file if it isn't cached
+     * @return the retained index of the qcML file
+     */
+    public QcMLIndexer acquire(File file, Function<File, QcMLIndexer> loader) {
+        final File key = file.getAbsoluteFile();
+        while(true) {
+            FutureTask<QcMLIndexer> build;
+            boolean owner = false;
+            synchronized(this) {
+                Entry entry = entries.get(key);
+                if(entry != null && entry.index.retain()) {
+                    hitCount++;
+                    return entry.index;
+                }
+                missCount++;
+                build = pending.get(key);
+                if(build == null) {
+                    build = new FutureTask<>(() -> loader.apply(key));
+                    pending.put(key, build);
+                    owner = true;
+                }
+            }
+
+            if(owner) {
+                // create the index outside the lock
+                build.run();
+                QcMLIndexer index;
+                try {
+                    index = await(build);
+                    if(index == null) {
+                        LOGGER.error("The created index of qcML file <{}> is not allowed to be <null>", key.getPath());
+                        throw new NullPointerException("The created index is not allowed to be <null>");
+                    }
+                } catch(RuntimeException | Error e) {
+                    synchronized(this) {
+                        pending.remove(key);
+                    }
+                    throw e;
+                }
+                index.retain();
+                store(key, index, build);
+                return index;
+            }
+
+            // wait for the index that is created by another thread,
+            // unless it has been evicted and closed before it could be retained
+            QcMLIndexer index = await(build);
+            if(index.retain()) {
+                return index;
+            }
+        }
+    }
+
+    /**
+     * Waits until the given index has been created.
+     *
+     * @param build  the task creating the index
+     * @return the created index
+     */
+    private QcMLIndexer await(FutureTask<QcMLIndexer> build) {
+        try {
+            return build.get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.error("Interrupted while waiting for the index to be created");
+            throw new IllegalStateException("Interrupted while waiting for the index to be created");
+        } catch(ExecutionException e) {
+            if(e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if(e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            LOGGER.error("Could not create the index: ", e.getCause());
+            throw new IllegalStateException("Could not create the index: " + e.getCause());
+        }
+    }
+
+    /**
+     * Adds the index of the given qcML file to the cache, or updates its memory usage if it's cached already.
+     *
+     * A different index that was cached for the same qcML file is replaced and closed.
+     * If the limits of the cache are exceeded, the least recently used indexes are evicted and closed.
+     * Indexes that are still retained by a user are only released when the user releases them.
+     *
+     * @param file  the qcML file
+     * @param index  the index of the qcML file
+     */
+    public void put(File file, QcMLIndexer index) {
+        if(index == null) {
+            LOGGER.error("The cached index is not allowed to be <null>");
+            throw new NullPointerException("The cached index is not allowed to be <null>");
+        }
+
+        store(file.getAbsoluteFile(), index, null);
+    }
+
+    /**
+     * Adds the index of the given qcML file to the cache, evicting other indexes if required.
+     *
+     * @param key  the absolute qcML file
+     * @param index  the index of the qcML file
+     * @param build  the task that created the index, which is no longer pending once the index has been added, or {@code null}
+     */
+    private void store(File key, QcMLIndexer index, FutureTask<QcMLIndexer> build) {
+        long estimate = index.estimateMemory();
+        List<QcMLIndexer> closed = new ArrayList<>();
+        synchronized(this) {
+            if(build != null) {
+                pending.remove(key, build);
+            }
+            Entry previous = entries.put(key, new Entry(index, estimate));
+            if(previous != null) {
+                memory -= previous.memory;
+                if(previous.index != index) {
+                    closed.add(previous.index);
+                }
+            }
+            memory += estimate;
+
+            // evict the least recently used indexes, but never the added index
+            for(Iterator<Map.Entry<File, Entry>> it = entries.entrySet().iterator();
+                    it.hasNext() && entries.size() > 1 && (entries.size() > maxEntries || (maxMemory > 0 && memory > maxMemory)); ) {
+                Map.Entry<File, Entry> eldest = it.next();
+                LOGGER.info("Evict the index of qcML file <{}> from the cache", eldest.getKey().getPath());
+                it.remove();
+                memory -= eldest.getValue().memory;
+                evictionCount++;
+                closed.add(eldest.getValue().index);
+            }
+        }
+
+        // close outside the lock, the files of an index that is still retained are released by its last user
+        for(QcMLIndexer evicted : closed) {
+            evicted.close();
+        }
+    }
+
+    /**
+     * Removes the index of the given qcML file from the cache, and closes it.
+     *
+     * @param file  the qcML file
+     */
+    public void remove(File file) {
+        Entry entry;
+        synchronized(this) {
+            entry = entries.remove(file.getAbsoluteFile());
+            if(entry != null) {
+                memory -= entry.memory;
+            }
+        }
+        if(entry != null) {
+            entry.index.close();
+        }
+    }
+
+    /**
+     * Removes all indexes from the cache, and closes them.
+     */
+    public void clear() {
+        List<Entry> removed;
+        synchronized(this) {
+            removed = new ArrayList<>(entries.values());
+            entries.clear();
+            memory = 0;
+        }
+        for(Entry entry : removed) {
+            entry.index.close();
+        }
+    }
+
+    /**
+     * Closes all cached indexes. The cache can still be used afterwards.
+     */
+    @Override
+    public void close() {
+        clear();
+    }
+
+    /**
+     * Returns the number of cached indexes.
+     *
+     * @return the number of cached indexes
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the estimated memory used by the cached indexes.
+     *
+     * @return the estimated memory used by the ID mappings of the cached indexes, in bytes
+     */
+    public synchronized long getMemory() {
+        return memory;
+    }
+
+    /**
+     * Returns the number of lookups that found a cached index.
+     *
+     * @return the number of cache hits
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Returns the number of lookups that didn't find a cached index.
+     *
+     * @return the number of cache misses
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Returns the number of indexes that have been evicted to stay within the limits of the cache.
+     *
+     * Indexes that have been removed explicitly or replaced aren't counted.
+     *
+     * @return the number of evictions
+     */
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return MoreObjects.toStringHelper(this).add("maxEntries", maxEntries).add("maxMemory", maxMemory)
+                .add("size", entries.size()).add("memory", memory)
+                .add("hitCount", hitCount).add("missCount", missCount).add("evictionCount", evictionCount).toString();
+    }
+
+    /**
+     * A cached index and its estimated memory usage.
+     */
+    private static class Entry {
+
+        private final QcMLIndexer index;
+        private final long memory;
+
+        Entry(QcMLIndexer index, long memory) {
+            this.index = index;
+            this.memory = memory;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.google.common.base.MoreObjects;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Settings that determine how a {@link QcMLIndexer} creates and stores the index for a qcML file.
+ *
+ * The default configuration creates an in-memory index for each qcML file that is opened.
+ */
+public class IndexConfiguration {
+
+    private static final Logger LOGGER = LogManager.getLogger(IndexConfiguration.class);
+
+    /** Flag indicating whether the index is stored in a sidecar file next to the qcML file */
+    private boolean persistent;
+    /** The engine used to locate the indexed elements */
+    private IndexEngine engine;
+    /** Flag indicating whether XML snippets are read from a memory mapping of the qcML file */
+    private boolean memoryMapped;
+    /** The number of threads used by the {@link IndexEngine#PARALLEL_BYTE_SCANNER} */
+    private int parallelism;
+    /** Flag indicating whether the parameters within each quality assessment are indexed as well */
+    private boolean parameterIndex;
+    /** Flag indicating whether qcML files are validated while they are indexed */
+    private boolean validating;
+    /** The accession numbers of the metaDataParameters whose values are indexed */
+    private Set<String> metaDataAccessions;
+    /** The maximum number of bytes used by the in-memory ID mapping of each class type, or 0 if unlimited */
+    private long memoryBudget;
+
+    /**
+     * Creates an IndexConfiguration with the default settings.
+     */
+    public IndexConfiguration() {
+        persistent = false;
+        engine = IndexEngine.XXINDEX;
+        memoryMapped = false;
+        parallelism = Runtime.getRuntime().availableProcessors();
+        parameterIndex = false;
+        validating = false;
+        metaDataAccessions = Collections.emptySet();
+        memoryBudget = 0;
+    }
+
+    /**
+     * Indicates whether the index is stored in a sidecar file next to the qcML file.
+     *
+     * @return true if the index is stored in, and loaded from, a sidecar file
+     */
+    public boolean isPersistent() {
+        return persistent;
+    }
+
+    /**
+     * Sets whether the index is stored in a sidecar file next to the qcML file.
+     *
+     * If enabled, the index is loaded from the sidecar file when the qcML file is opened again,
+     * as long as the qcML file hasn't changed in the mean time.
+     *
+     * @param persistent  true if the index should be stored in, and loaded from, a sidecar file
+     */
+    public void setPersistent(boolean persistent) {
+        this.persistent = persistent;
+    }
+
+    /**
+     * Returns the engine used to locate the indexed elements in the qcML file.
+     *
+     * @return the {@link IndexEngine} used to create the index
+     */
+    public IndexEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Sets the engine used to locate the indexed elements in the qcML file.
+     *
+     * If the {@link IndexEngine#BYTE_SCANNER} is requested for a file with an encoding it doesn't support,
+     * the {@link IndexEngine#XXINDEX} is used instead.
+     *
+     * @param engine  the {@link IndexEngine} used to create the index, not {@code null}
+     */
+    public void setEngine(IndexEngine engine) {
+        if(engine == null) {
+            LOGGER.error("The index engine is not allowed to be <null>");
+            throw new NullPointerException("The index engine is not allowed to be <null>");
+        }
+        this.engine = engine;
+    }
+
+    /**
+     * Indicates whether XML snippets are read from a memory mapping of the qcML file.
+     *
+     * @return true if XML snippets are read from a memory mapping of the qcML file
+     */
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
+    /**
+     * Sets whether XML snippets are read from a memory mapping of the qcML file.
+     *
+     * If enabled, the qcML file is mapped into memory once and the XML snippets are decoded directly from the mapping,
+     * instead of opening the file each time an XML snippet is read.
+     * While mapped, the qcML file shouldn't be modified.
+     *
+     * @param memoryMapped  true if XML snippets should be read from a memory mapping of the qcML file
+     */
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+    }
+
+    /**
+     * Returns the number of threads used by the {@link IndexEngine#PARALLEL_BYTE_SCANNER}.
+     *
+     * @return the number of threads used to create the index in parallel
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of threads used by the {@link IndexEngine#PARALLEL_BYTE_SCANNER}.
+     *
+     * By default the number of available processors is used.
+     *
+     * @param parallelism  the number of threads used to create the index in parallel, should be strictly positive
+     */
+    public void setParallelism(int parallelism) {
+        if(parallelism <= 0) {
+            LOGGER.error("The parallelism should be strictly positive: {}", parallelism);
+            throw new IllegalArgumentException("The parallelism should be strictly positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Indicates whether the parameters within each quality assessment are indexed as well.
+     *
+     * @return true if a secondary index of the parameters is created
+     */
+    public boolean isParameterIndex() {
+        return parameterIndex;
+    }
+
+    /**
+     * Sets whether the parameters within each quality assessment are indexed as well.
+     *
+     * If enabled, a secondary index maps the metaDataParameters, qualityParameters and attachments within each runQuality and setQuality
+     * by their accession number, so individual parameters can be read without reading the full quality assessment.
+     *
+     * @param parameterIndex  true if a secondary index of the parameters should be created
+     */
+    public void setParameterIndex(boolean parameterIndex) {
+        this.parameterIndex = parameterIndex;
+    }
+
+    /**
+     * Indicates whether qcML files are validated while they are indexed.
+     *
+     * @return true if qcML files are validated and indexed in a single pass
+     */
+    public boolean isValidating() {
+        return validating;
+    }
+
+    /**
+     * Sets whether qcML files are validated while they are indexed.
+     *
+     * If enabled, a {@link inspector.jqcml.io.xml.QcMLFileReader} validates each qcML file against the qcML XML schema
+     * in the same pass in which the index is created (see {@link QcMLIndexer#QcMLIndexer(java.io.File, IndexConfiguration, javax.xml.validation.Schema)}),
+     * and remembers the result of the validation as long as the file isn't modified.
+     *
+     * @param validating  true if qcML files should be validated and indexed in a single pass
+     */
+    public void setValidating(boolean validating) {
+        this.validating = validating;
+    }
+
+    /**
+     * Returns the accession numbers of the metaDataParameters whose values are indexed.
+     *
+     * @return the indexed metaDataParameter accession numbers, empty if no metadata is indexed
+     */
+    public Set<String> getMetaDataAccessions() {
+        return metaDataAccessions;
+    }
+
+    /**
+     * Sets the accession numbers of the metaDataParameters whose values are indexed.
+     *
+     * The values of these metaDataParameters are recorded for each runQuality and setQuality while the qcML file is indexed (see {@link MetaDataIndex}),
+     * so the quality assessments can be filtered on their metadata without unmarshalling them.
+     *
+     * @param metaDataAccessions  the accession numbers of the metaDataParameters whose values should be indexed, not {@code null}
+     */
+    public void setMetaDataAccessions(Set<String> metaDataAccessions) {
+        if(metaDataAccessions == null) {
+            LOGGER.error("The metaDataParameter accessions are not allowed to be <null>");
+            throw new NullPointerException("The metaDataParameter accessions are not allowed to be <null>");
+        }
+        this.metaDataAccessions = Collections.unmodifiableSet(new TreeSet<>(metaDataAccessions));
+    }
+
+    /**
+     * Returns the maximum number of bytes used by the in-memory ID mapping of each class type.
+     *
+     * @return the memory budget of the ID mappings in bytes, or 0 if the ID mappings are kept in memory completely
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Sets the maximum number of bytes used by the in-memory ID mapping of each class type.
+     *
+     * If an ID mapping exceeds this budget, the excess entries are spilled to sorted temporary files (see {@link SpillingIdMapping}),
+     * from which they are read back when they are looked up or iterated.
+     * A small sample of the spilled IDs, a Bloom filter, and the most recently looked up entries are retained in memory.
+     * By default the ID mappings are kept in memory completely.
+     *
+     * @param memoryBudget  the memory budget of the ID mappings in bytes, or 0 to keep the ID mappings in memory completely
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        if(memoryBudget < 0) {
+            LOGGER.error("The memory budget should not be negative: {}", memoryBudget);
+            throw new IllegalArgumentException("The memory budget should not be negative: " + memoryBudget);
+        }
+        this.memoryBudget = memoryBudget;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this).add("persistent", persistent).add("engine", engine)
+                .add("memoryMapped", memoryMapped).add("parallelism", parallelism)
+                .add("parameterIndex", parameterIndex).add("validating", validating)
+                .add("metaDataAccessions", metaDataAccessions).add("memoryBudget", memoryBudget).toString();
+    }
+}
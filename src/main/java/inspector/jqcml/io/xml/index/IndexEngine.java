@@ -0,0 +1,34 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * The engine used by a {@link QcMLIndexer} to locate the indexed elements in a qcML file.
+ */
+public enum IndexEngine {
+
+    /** Creates an XXIndex and subsequently extracts the ID attribute from each indexed start tag */
+    XXINDEX,
+    /** Scans the raw bytes of the qcML file once, recording the offsets and ID attributes in the same pass */
+    BYTE_SCANNER,
+    /** Scans chunks of the qcML file in parallel, resulting in the same index as the {@link #BYTE_SCANNER} */
+    PARALLEL_BYTE_SCANNER
+}
@@ -0,0 +1,592 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import inspector.jqcml.model.AttachmentParameter;
+import inspector.jqcml.model.Cv;
+import inspector.jqcml.model.MetaDataParameter;
+import inspector.jqcml.model.QualityAssessment;
+import inspector.jqcml.model.QualityParameter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import psidev.psi.tools.xxindex.index.ByteRange;
+import psidev.psi.tools.xxindex.index.IndexElement;
+
+import java.io.*;
+import java.nio.channels.FileLock;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A sidecar file storing a {@link QcMLIndexer} index next to the indexed qcML file.
+ *
+ * The sidecar file contains a fingerprint of the indexed qcML file, which is used to detect whether the index is still up to date.
+ * When data has been appended to the qcML file, the index of the appended data is appended to the sidecar file as a separate record,
+ * and the fingerprint and the Bloom filter at the start of the sidecar file are updated in place, instead of rewriting the full index.
+ */
+class IndexFile {
+
+    private static final Logger LOGGER = LogManager.getLogger(IndexFile.class);
+
+    /** The extension that is appended to the qcML file name to obtain the sidecar file name */
+    static final String EXTENSION = ".idx";
+
+    /** Magic number identifying a jqcML index file */
+    private static final int MAGIC = 0x6A71494E;
+    /** The version of the index file format */
+    static final int VERSION = 8;
+
+    /** Tag identifying the {@link QualityAssessment} mappings */
+    private static final byte TAG_QUALITY_ASSESSMENT = 'Q';
+    /** Tag identifying the {@link Cv} mappings */
+    private static final byte TAG_CV = 'C';
+    /** Tag identifying the {@link MetaDataParameter} mappings */
+    private static final byte TAG_META_DATA_PARAMETER = 'M';
+    /** Tag identifying the {@link QualityParameter} mappings */
+    private static final byte TAG_QUALITY_PARAMETER = 'P';
+    /** Tag identifying the {@link AttachmentParameter} mappings */
+    private static final byte TAG_ATTACHMENT_PARAMETER = 'A';
+    /** Tag identifying the {@link AttachmentBinary} mappings */
+    private static final byte TAG_ATTACHMENT_BINARY = 'B';
+    /** Tag identifying the {@link AttachmentTable} mappings */
+    private static final byte TAG_ATTACHMENT_TABLE = 'T';
+    /** Tag identifying the {@link SetQuality} mappings */
+    private static final byte TAG_SET_QUALITY = 'S';
+
+    /** The fingerprint of the indexed qcML file */
+    private final FileFingerprint fingerprint;
+    /** The encoding of the indexed qcML file, can be {@code null} if unknown */
+    private final String encoding;
+    /** Bloom filter over the IDs in the ID mappings */
+    private final IdBloomFilter filter;
+    /** Mapping between XML elements and their index in the qcML file */
+    @SuppressWarnings("rawtypes")
+    private final Map<Class, Map<String, IndexElement>> idMap;
+    /** Mapping between parameters and their index in the qcML file, can be {@code null} if the parameters aren't indexed */
+    @SuppressWarnings("rawtypes")
+    private final Map<Class, Map<String, Map<String, IndexElement>>> parameterMap;
+    /** The values of the selected metaDataParameters, can be {@code null} if no metadata is indexed */
+    private final MetaDataIndex metaDataIndex;
+
+    /**
+     * Creates an IndexFile for the given index contents.
+     *
+     * @param fingerprint  the fingerprint of the indexed qcML file
+     * @param encoding  the encoding of the indexed qcML file, can be {@code null} if unknown
+     * @param idMap  the mapping between XML elements and their index in the qcML file
+     * @param parameterMap  the mapping between parameters and their index in the qcML file, can be {@code null} if the parameters aren't indexed
+     * @param metaDataIndex  the values of the selected metaDataParameters, can be {@code null} if no metadata is indexed
+     */
+    @SuppressWarnings("rawtypes")
+    IndexFile(FileFingerprint fingerprint, String encoding, Map<Class, Map<String, IndexElement>> idMap,
+              Map<Class, Map<String, Map<String, IndexElement>>> parameterMap, MetaDataIndex metaDataIndex) {
+        this(fingerprint, encoding, IdBloomFilter.of(idMap), idMap, parameterMap, metaDataIndex);
+    }
+
+    /**
+     * Creates an IndexFile for the given index contents and Bloom filter.
+     *
+     * @param fingerprint  the fingerprint of the indexed qcML file
+     * @param encoding  the encoding of the indexed qcML file, can be {@code null} if unknown
+     * @param filter  the Bloom filter over the IDs in the ID mappings
+     * @param idMap  the mapping between XML elements and their index in the qcML file
+     * @param parameterMap  the mapping between parameters and their index in the qcML file, can be {@code null} if the parameters aren't indexed
+     * @param metaDataIndex  the values of the selected metaDataParameters, can be {@code null} if no metadata is indexed
+     */
+    @SuppressWarnings("rawtypes")
+    IndexFile(FileFingerprint fingerprint, String encoding, IdBloomFilter filter, Map<Class, Map<String, IndexElement>> idMap,
+              Map<Class, Map<String, Map<String, IndexElement>>> parameterMap, MetaDataIndex metaDataIndex) {
+        this.fingerprint = fingerprint;
+        this.encoding = encoding;
+        this.filter = filter;
+        this.idMap = idMap;
+        this.parameterMap = parameterMap;
+        this.metaDataIndex = metaDataIndex;
+    }
+
+    /**
+     * Returns the sidecar file in which the index for the given qcML file is stored.
+     *
+     * @param qcmlFile  the indexed qcML file
+     * @return the sidecar file for the given qcML file
+     */
+    static File getSidecar(File qcmlFile) {
+        return new File(qcmlFile.getPath() + EXTENSION);
+    }
+
+    FileFingerprint getFingerprint() {
+        return fingerprint;
+    }
+
+    String getEncoding() {
+        return encoding;
+    }
+
+    IdBloomFilter getFilter() {
+        return filter;
+    }
+
+    @SuppressWarnings("rawtypes")
+    Map<Class, Map<String, IndexElement>> getIDMappings() {
+        return idMap;
+    }
+
+    @SuppressWarnings("rawtypes")
+    Map<Class, Map<String, Map<String, IndexElement>>> getParameterMappings() {
+        return parameterMap;
+    }
+
+    MetaDataIndex getMetaDataIndex() {
+        return metaDataIndex;
+    }
+
+    /**
+     * Creates a copy of this index, whose mappings can be modified independently of this index.
+     *
+     * @return a copy of this index
+     */
+    @SuppressWarnings("rawtypes")
+    IndexFile copy() {
+        Map<Class, Map<String, IndexElement>> idMapCopy = new HashMap<>();
+        for(Map.Entry<Class, Map<String, IndexElement>> classEntry : idMap.entrySet()) {
+            idMapCopy.put(classEntry.getKey(), new CompactIdMapping(classEntry.getValue()));
+        }
+
+        Map<Class, Map<String, Map<String, IndexElement>>> parameterMapCopy = null;
+        if(parameterMap != null) {
+            parameterMapCopy = new HashMap<>();
+            for(Map.Entry<Class, Map<String, Map<String, IndexElement>>> classEntry : parameterMap.entrySet()) {
+                Map<String, Map<String, IndexElement>> qaMappings = new HashMap<>();
+                for(Map.Entry<String, Map<String, IndexElement>> qaEntry : classEntry.getValue().entrySet()) {
+                    qaMappings.put(qaEntry.getKey(), new CompactIdMapping(qaEntry.getValue()));
+                }
+                parameterMapCopy.put(classEntry.getKey(), qaMappings);
+            }
+        }
+
+        return new IndexFile(fingerprint, encoding, filter.copy(), idMapCopy, parameterMapCopy, metaDataIndex != null ? metaDataIndex.copy() : null);
+    }
+
+    /**
+     * Reads the index for the given qcML file from its sidecar file.
+     *
+     * The records of the appended data are applied to the stored index, until it matches the fingerprint at the start of the sidecar file.
+     *
+     * @param qcmlFile  the indexed qcML file
+     * @return the index stored in the sidecar file if it exists and is up to date with the qcML file, {@code null} otherwise
+     */
+    @SuppressWarnings("rawtypes")
+    static IndexFile read(File qcmlFile) {
+        File sidecar = getSidecar(qcmlFile);
+        if(!sidecar.isFile()) {
+            return null;
+        }
+
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(sidecar)))) {
+            if(in.readInt() != MAGIC || in.readInt() != VERSION) {
+                LOGGER.info("Ignore index file <{}> with an unknown format", sidecar.getAbsolutePath());
+                return null;
+            }
+
+            // verify that the qcML file hasn't been changed since it was indexed
+            FileFingerprint current = FileFingerprint.read(in);
+            if(!current.equals(FileFingerprint.of(qcmlFile))) {
+                LOGGER.info("Ignore outdated index file <{}>", sidecar.getAbsolutePath());
+                return null;
+            }
+
+            IndexFile indexFile = readFrom(in);
+            FileFingerprint fingerprint = indexFile.getFingerprint();
+            while(!fingerprint.equals(current)) {
+                // apply the next record of appended data, which should directly follow the data read so far
+                if(!FileFingerprint.read(in).equals(fingerprint)) {
+                    LOGGER.info("Ignore index file <{}> with an inconsistent record of appended data", sidecar.getAbsolutePath());
+                    return null;
+                }
+                fingerprint = FileFingerprint.read(in);
+                long checkpoint = in.readLong();
+                IndexFile appended = readMappings(in, fingerprint, indexFile.getEncoding(), indexFile.getFilter());
+                for(Map<String, IndexElement> mapping : indexFile.getIDMappings().values()) {
+                    removeAfter(mapping, checkpoint);
+                }
+                for(Map.Entry<Class, Map<String, IndexElement>> classEntry : appended.getIDMappings().entrySet()) {
+                    Map<String, IndexElement> mapping = indexFile.getIDMappings().get(classEntry.getKey());
+                    if(mapping == null) {
+                        indexFile.getIDMappings().put(classEntry.getKey(), classEntry.getValue());
+                    } else {
+                        mapping.putAll(classEntry.getValue());
+                    }
+                }
+                if(indexFile.getParameterMappings() != null && appended.getParameterMappings() != null) {
+                    for(Map.Entry<Class, Map<String, Map<String, IndexElement>>> classEntry : appended.getParameterMappings().entrySet()) {
+                        Map<String, Map<String, IndexElement>> qaMappings = indexFile.getParameterMappings().get(classEntry.getKey());
+                        if(qaMappings == null) {
+                            indexFile.getParameterMappings().put(classEntry.getKey(), classEntry.getValue());
+                        } else {
+                            qaMappings.putAll(classEntry.getValue());
+                        }
+                    }
+                }
+                if(indexFile.getMetaDataIndex() != null && appended.getMetaDataIndex() != null) {
+                    indexFile.getMetaDataIndex().putAll(appended.getMetaDataIndex());
+                }
+            }
+
+            return new IndexFile(current, indexFile.getEncoding(), indexFile.getFilter(), indexFile.getIDMappings(),
+                    indexFile.getParameterMappings(), indexFile.getMetaDataIndex());
+
+        } catch(IOException | IllegalStateException e) {
+            LOGGER.warn("Could not read index file <{}>: {}", sidecar.getAbsolutePath(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Reads the Bloom filter over the IDs of the index for the given qcML file from its sidecar file, without reading the ID mappings.
+     *
+     * @param qcmlFile  the indexed qcML file
+     * @return the Bloom filter stored in the sidecar file if it exists and is up to date with the qcML file, {@code null} otherwise
+     */
+    static IdBloomFilter readFilter(File qcmlFile) {
+        File sidecar = getSidecar(qcmlFile);
+        if(!sidecar.isFile()) {
+            return null;
+        }
+
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(sidecar)))) {
+            if(in.readInt() != MAGIC || in.readInt() != VERSION || !FileFingerprint.read(in).equals(FileFingerprint.of(qcmlFile))) {
+                return null;
+            }
+            // skip the fingerprint and the encoding of the stored index, the Bloom filter is kept up to date with the appended data
+            FileFingerprint.read(in);
+            in.readUTF();
+            return IdBloomFilter.read(in);
+
+        } catch(IOException e) {
+            LOGGER.warn("Could not read index file <{}>: {}", sidecar.getAbsolutePath(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes this index to the sidecar file of the given qcML file.
+     *
+     * The index is first written to a uniquely named temporary file, which subsequently replaces the sidecar file,
+     * so that concurrent readers never encounter a partially written index and concurrent writers don't interfere.
+     *
+     * @param qcmlFile  the indexed qcML file
+     * @return true if the index was written successfully, false otherwise
+     */
+    boolean write(File qcmlFile) {
+        File sidecar = getSidecar(qcmlFile);
+        File temp = null;
+
+        try {
+            temp = createTempFile(sidecar);
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                fingerprint.write(out);
+                writeTo(out);
+            }
+
+            replace(temp, sidecar);
+            LOGGER.info("Index written to <{}>", sidecar.getAbsolutePath());
+
+            return true;
+
+        } catch(IOException e) {
+            LOGGER.warn("Could not write index file <{}>: {}", sidecar.getAbsolutePath(), e);
+            if(temp != null) {
+                temp.delete();
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Appends the index of the data appended to the qcML file to its sidecar file, which should contain the index preceding the appended data.
+     *
+     * The record of the appended data is written first, then the Bloom filter is updated in place,
+     * and finally the fingerprint at the start of the sidecar file, so an interrupted update merely invalidates the sidecar file.
+     * The sidecar file is locked while it's updated, so concurrent writers don't interfere.
+     *
+     * @param qcmlFile  the indexed qcML file
+     * @param previous  the fingerprint of the qcML file before the data was appended
+     * @param checkpoint  the offset from which the appended data was indexed, the stored elements located after it are replaced by the appended index
+     * @param appended  the index of the appended data, including the fingerprint of the qcML file after the data was appended
+     * @param filter  the Bloom filter over all IDs, which has been extended with the appended IDs and has the same size as the stored filter
+     * @return true if the index was appended successfully, false if the sidecar file needs to be written in full
+     */
+    static boolean append(File qcmlFile, FileFingerprint previous, long checkpoint, IndexFile appended, IdBloomFilter filter) {
+        File sidecar = getSidecar(qcmlFile);
+        if(!sidecar.isFile()) {
+            return false;
+        }
+
+        try(RandomAccessFile raf = new RandomAccessFile(sidecar, "rw");
+            FileLock lock = raf.getChannel().lock()) {
+            // verify that the sidecar file contains the index preceding the appended data
+            if(raf.readInt() != MAGIC || raf.readInt() != VERSION) {
+                return false;
+            }
+            long fingerprintOffset = raf.getFilePointer();
+            if(!FileFingerprint.read(raf).equals(previous)) {
+                return false;
+            }
+            FileFingerprint.read(raf);
+            raf.readUTF();
+            if(raf.readInt() != filter.getNumberOfWords()) {
+                return false;
+            }
+            long filterOffset = raf.getFilePointer();
+
+            // append the record
+            ByteArrayOutputStream record = new ByteArrayOutputStream();
+            try(DataOutputStream out = new DataOutputStream(record)) {
+                previous.write(out);
+                appended.getFingerprint().write(out);
+                out.writeLong(checkpoint);
+                appended.writeMappings(out);
+            }
+            raf.seek(raf.length());
+            raf.write(record.toByteArray());
+
+            // update the Bloom filter and the fingerprint
+            ByteArrayOutputStream bits = new ByteArrayOutputStream();
+            try(DataOutputStream out = new DataOutputStream(bits)) {
+                filter.write(out);
+            }
+            raf.seek(filterOffset);
+            raf.write(bits.toByteArray(), 4, bits.size() - 4);
+            raf.getChannel().force(false);
+            raf.seek(fingerprintOffset);
+            appended.getFingerprint().write(raf);
+            LOGGER.info("Appended index written to <{}>", sidecar.getAbsolutePath());
+
+            return true;
+
+        } catch(IOException | IllegalStateException e) {
+            LOGGER.warn("Could not append to index file <{}>: {}", sidecar.getAbsolutePath(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Creates a uniquely named temporary file in the same directory as the given file, to which its new contents can be written.
+     *
+     * @param target  the file that will be replaced by the temporary file
+     * @return the created temporary file
+     * @throws IOException if the temporary file could not be created
+     */
+    static File createTempFile(File target) throws IOException {
+        File dir = target.getAbsoluteFile().getParentFile();
+        return File.createTempFile(target.getName() + ".", ".tmp", dir);
+    }
+
+    /**
+     * Replaces the given file by the given temporary file, atomically if supported by the file system.
+     *
+     * @param temp  the temporary file containing the new contents
+     * @param target  the file that is replaced
+     * @throws IOException if the file could not be replaced
+     */
+    static void replace(File temp, File target) throws IOException {
+        try {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch(AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Reads index contents previously written by {@link #writeTo(DataOutput)}.
+     *
+     * @param in  the input from which the index contents are read
+     * @return the index read from the given input
+     * @throws IOException if the index could not be read
+     */
+    static IndexFile readFrom(DataInput in) throws IOException {
+        FileFingerprint fingerprint = FileFingerprint.read(in);
+        String encoding = in.readUTF();
+        IdBloomFilter filter = IdBloomFilter.read(in);
+        return readMappings(in, fingerprint, encoding.isEmpty() ? null : encoding, filter);
+    }
+
+    /**
+     * Reads the mappings previously written by {@link #writeMappings(DataOutput)}.
+     */
+    @SuppressWarnings("rawtypes")
+    private static IndexFile readMappings(DataInput in, FileFingerprint fingerprint, String encoding, IdBloomFilter filter) throws IOException {
+        Map<Class, Map<String, IndexElement>> idMap = new HashMap<>();
+        int nrOfClasses = in.readInt();
+        for(int i = 0; i < nrOfClasses; i++) {
+            Class cls = tagToClass(in.readByte());
+            idMap.put(cls, readMapping(in));
+        }
+
+        Map<Class, Map<String, Map<String, IndexElement>>> parameterMap = null;
+        if(in.readBoolean()) {
+            parameterMap = new HashMap<>();
+            int nrOfParameterClasses = in.readInt();
+            for(int i = 0; i < nrOfParameterClasses; i++) {
+                Class cls = tagToClass(in.readByte());
+                int nrOfQualityAssessments = in.readInt();
+                Map<String, Map<String, IndexElement>> qaMappings = new HashMap<>();
+                for(int j = 0; j < nrOfQualityAssessments; j++) {
+                    String qaId = in.readUTF();
+                    qaMappings.put(qaId, readMapping(in));
+                }
+                parameterMap.put(cls, qaMappings);
+            }
+        }
+
+        MetaDataIndex metaDataIndex = in.readBoolean() ? MetaDataIndex.read(in) : null;
+
+        return new IndexFile(fingerprint, encoding, filter, idMap, parameterMap, metaDataIndex);
+    }
+
+    /**
+     * Writes the index contents, without the file header, to the given output.
+     *
+     * @param out  the output to which the index contents are written
+     * @throws IOException if the index could not be written
+     */
+    void writeTo(DataOutput out) throws IOException {
+        fingerprint.write(out);
+        out.writeUTF(encoding != null ? encoding : "");
+        filter.write(out);
+        writeMappings(out);
+    }
+
+    /**
+     * Writes the ID mappings, the parameter mappings, and the metadata index to the given output.
+     */
+    @SuppressWarnings("rawtypes")
+    private void writeMappings(DataOutput out) throws IOException {
+        out.writeInt(idMap.size());
+        for(Map.Entry<Class, Map<String, IndexElement>> classEntry : idMap.entrySet()) {
+            out.writeByte(classToTag(classEntry.getKey()));
+            writeMapping(out, classEntry.getValue());
+        }
+
+        out.writeBoolean(parameterMap != null);
+        if(parameterMap != null) {
+            out.writeInt(parameterMap.size());
+            for(Map.Entry<Class, Map<String, Map<String, IndexElement>>> classEntry : parameterMap.entrySet()) {
+                out.writeByte(classToTag(classEntry.getKey()));
+                out.writeInt(classEntry.getValue().size());
+                for(Map.Entry<String, Map<String, IndexElement>> qaEntry : classEntry.getValue().entrySet()) {
+                    out.writeUTF(qaEntry.getKey());
+                    writeMapping(out, qaEntry.getValue());
+                }
+            }
+        }
+
+        out.writeBoolean(metaDataIndex != null);
+        if(metaDataIndex != null) {
+            metaDataIndex.write(out);
+        }
+    }
+
+    /**
+     * Removes the elements located after the given checkpoint from the given mapping, these are indexed again in the appended data.
+     */
+    private static void removeAfter(Map<String, IndexElement> mapping, long checkpoint) {
+        for(Iterator<IndexElement> it = mapping.values().iterator(); it.hasNext(); ) {
+            if(it.next().getStop() > checkpoint) {
+                it.remove();
+            }
+        }
+    }
+
+    private static Map<String, IndexElement> readMapping(DataInput in) throws IOException {
+        int nrOfElements = in.readInt();
+        Map<String, IndexElement> mapping = new CompactIdMapping(nrOfElements);
+        for(int i = 0; i < nrOfElements; i++) {
+            String id = in.readUTF();
+            long start = in.readLong();
+            long stop = in.readLong();
+            mapping.put(id, new ByteRange(start, stop));
+        }
+        return mapping;
+    }
+
+    private static void writeMapping(DataOutput out, Map<String, IndexElement> mapping) throws IOException {
+        out.writeInt(mapping.size());
+        for(Map.Entry<String, IndexElement> entry : mapping.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue().getStart());
+            out.writeLong(entry.getValue().getStop());
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static byte classToTag(Class cls) {
+        if(cls == QualityAssessment.class) {
+            return TAG_QUALITY_ASSESSMENT;
+        } else if(cls == Cv.class) {
+            return TAG_CV;
+        } else if(cls == MetaDataParameter.class) {
+            return TAG_META_DATA_PARAMETER;
+        } else if(cls == QualityParameter.class) {
+            return TAG_QUALITY_PARAMETER;
+        } else if(cls == AttachmentParameter.class) {
+            return TAG_ATTACHMENT_PARAMETER;
+        } else if(cls == AttachmentBinary.class) {
+            return TAG_ATTACHMENT_BINARY;
+        } else if(cls == AttachmentTable.class) {
+            return TAG_ATTACHMENT_TABLE;
+        } else if(cls == SetQuality.class) {
+            return TAG_SET_QUALITY;
+        } else {
+            throw new IllegalStateException("Unknown indexed class: " + cls);
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static Class tagToClass(byte tag) {
+        switch(tag) {
+            case TAG_QUALITY_ASSESSMENT:
+                return QualityAssessment.class;
+            case TAG_CV:
+                return Cv.class;
+            case TAG_META_DATA_PARAMETER:
+                return MetaDataParameter.class;
+            case TAG_QUALITY_PARAMETER:
+                return QualityParameter.class;
+            case TAG_ATTACHMENT_PARAMETER:
+                return AttachmentParameter.class;
+            case TAG_ATTACHMENT_BINARY:
+                return AttachmentBinary.class;
+            case TAG_ATTACHMENT_TABLE:
+                return AttachmentTable.class;
+            case TAG_SET_QUALITY:
+                return SetQuality.class;
+            default:
+                throw new IllegalStateException("Unknown index tag: " + tag);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A read-only memory mapping of a complete file.
+ *
+ * Because a single {@link MappedByteBuffer} is limited to 2 GB, the file is mapped in consecutive segments.
+ * Byte ranges within a single segment are served as slices of the mapping without copying,
+ * byte ranges crossing a segment boundary are copied.
+ */
+class MappedFile {
+
+    /** The maximum size of a single mapped segment */
+    static final int SEGMENT_SIZE = 1 << 30;
+
+    /** The size of the mapped file */
+    private final long length;
+
+    /** The mapped segments of the file */
+    private final MappedByteBuffer[] segments;
+
+    /**
+     * Maps the given file into memory.
+     *
+     * @param file  the file that is mapped
+     * @throws IOException
+     */
+    MappedFile(File file) throws IOException {
+        this(file, SEGMENT_SIZE);
+    }
+
+    /**
+     * Maps the given file into memory using segments of the given size.
+     *
+     * @param file  the file that is mapped
+     * @param segmentSize  the maximum size of a single mapped segment
+     * @throws IOException
+     */
+    MappedFile(File file, int segmentSize) throws IOException {
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            length = channel.size();
+            segments = new MappedByteBuffer[(int) ((length + segmentSize - 1) / segmentSize)];
+            for(int i = 0; i < segments.length; i++) {
+                long position = (long) i * segmentSize;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(segmentSize, length - position));
+            }
+        }
+    }
+
+    /**
+     * Returns the size of the mapped file.
+     *
+     * @return the size of the mapped file in bytes
+     */
+    long length() {
+        return length;
+    }
+
+    /**
+     * Returns the given byte range of the file.
+     *
+     * The returned buffer is read-only and positioned at the start of the byte range.
+     *
+     * @param start  the offset of the first byte of the range (inclusive)
+     * @param stop  the offset of the end of the range (exclusive)
+     * @return a buffer containing the bytes of the given range
+     */
+    ByteBuffer slice(long start, long stop) {
+        if(start < 0 || stop > length || start > stop) {
+            throw new IndexOutOfBoundsException("Invalid byte range [" + start + ", " + stop + "[ for a file of " + length + " bytes");
+        }
+        if(stop - start > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Byte range [" + start + ", " + stop + "[ is too large");
+        }
+
+        if(segments.length == 0) {
+            return ByteBuffer.allocate(0).asReadOnlyBuffer();
+        }
+
+        long segmentSize = segments[0].capacity();
+        int segment = (int) (start / segmentSize);
+        int offset = (int) (start % segmentSize);
+        int size = (int) (stop - start);
+
+        if(offset + size <= segments[segment].capacity()) {
+            // the byte range is contained within a single segment
+            ByteBuffer buffer = segments[segment].duplicate();
+            buffer.position(offset).limit(offset + size);
+            return buffer.slice().asReadOnlyBuffer();
+        } else {
+            // the byte range crosses a segment boundary
+            ByteBuffer copy = ByteBuffer.allocate(size);
+            while(copy.hasRemaining()) {
+                ByteBuffer buffer = segments[segment++].duplicate();
+                buffer.position(offset).limit(Math.min(buffer.capacity(), offset + copy.remaining()));
+                copy.put(buffer);
+                offset = 0;
+            }
+            copy.flip();
+            return copy.asReadOnlyBuffer();
+        }
+    }
+
+    /**
+     * Decodes the given byte range of the file.
+     *
+     * @param start  the offset of the first byte of the range (inclusive)
+     * @param stop  the offset of the end of the range (exclusive)
+     * @param charset  the encoding of the file
+     * @return the decoded byte range
+     */
+    String readString(long start, long stop, Charset charset) {
+        return charset.decode(slice(start, stop)).toString();
+    }
+}
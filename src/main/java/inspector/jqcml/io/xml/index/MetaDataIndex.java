@@ -0,0 +1,272 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.google.common.base.MoreObjects;
+import com.google.common.base.Predicate;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The values of selected metaDataParameters of each runQuality and setQuality in a qcML file, recorded while the file is indexed.
+ *
+ * The metaDataParameters are selected by their accession number (see {@link IndexConfiguration#setMetaDataAccessions(Set)}).
+ * This allows to select the quality assessments based on their metadata, such as the instrument or the acquisition date,
+ * without unmarshalling them.
+ *
+ * If a quality assessment contains multiple metaDataParameters with the same accession number, only the value of the first one is recorded.
+ * The quality assessment IDs are returned in the order in which the quality assessments occur in the qcML file.
+ */
+public class MetaDataIndex {
+
+    private static final Logger LOGGER = LogManager.getLogger(MetaDataIndex.class);
+
+    /** The accession numbers of the indexed metaDataParameters */
+    private final Set<String> accessions;
+    /** The values of the indexed metaDataParameters by accession number and quality assessment ID */
+    private final Map<String, Map<String, String>> values;
+
+    /**
+     * Creates an empty MetaDataIndex for the given accession numbers.
+     *
+     * @param accessions  the accession numbers of the metaDataParameters that are indexed
+     */
+    MetaDataIndex(Set<String> accessions) {
+        this.accessions = Collections.unmodifiableSet(new TreeSet<>(accessions));
+        this.values = new HashMap<>();
+        for(String accession : accessions) {
+            values.put(accession, new LinkedHashMap<String, String>());
+        }
+    }
+
+    private MetaDataIndex(Set<String> accessions, Map<String, Map<String, String>> values) {
+        this.accessions = accessions;
+        this.values = values;
+    }
+
+    /**
+     * Records the value of a metaDataParameter, if its accession number is indexed.
+     *
+     * @param qaId  the ID of the quality assessment containing the metaDataParameter
+     * @param accession  the accession number of the metaDataParameter
+     * @param value  the value of the metaDataParameter, or {@code null} if it doesn't have a value
+     */
+    void put(String qaId, String accession, String value) {
+        Map<String, String> qaValues = values.get(accession);
+        if(qaValues != null && value != null && !qaValues.containsKey(qaId)) {
+            qaValues.put(qaId, value);
+        }
+    }
+
+    /**
+     * Returns the accession numbers of the indexed metaDataParameters.
+     *
+     * @return the indexed accession numbers
+     */
+    public Set<String> getAccessions() {
+        return accessions;
+    }
+
+    /**
+     * Indicates whether the metaDataParameters with the given accession number are indexed.
+     *
+     * @param accession  the accession number of the metaDataParameter
+     * @return true if the values of the metaDataParameters with the given accession number are recorded
+     */
+    public boolean isIndexed(String accession) {
+        return accessions.contains(accession);
+    }
+
+    /**
+     * Returns the value of the metaDataParameter with the given accession number in the given quality assessment.
+     *
+     * @param qaId  the ID of the runQuality or setQuality
+     * @param accession  the accession number of the metaDataParameter, should be indexed
+     * @return the value of the metaDataParameter, or {@code null} if the quality assessment doesn't contain a metaDataParameter with a value for the given accession number
+     */
+    public String getValue(String qaId, String accession) {
+        return getValues(accession).get(qaId);
+    }
+
+    /**
+     * Returns the values of the metaDataParameters with the given accession number.
+     *
+     * @param accession  the accession number of the metaDataParameter, should be indexed
+     * @return an unmodifiable mapping from the ID of each quality assessment containing such a metaDataParameter to its value
+     */
+    public Map<String, String> getValues(String accession) {
+        Map<String, String> qaValues = values.get(accession);
+        if(qaValues == null) {
+            LOGGER.error("The metaDataParameter accession <{}> is not indexed", accession);
+            throw new IllegalArgumentException("The metaDataParameter accession is not indexed: " + accession);
+        }
+        return Collections.unmodifiableMap(qaValues);
+    }
+
+    /**
+     * Returns the IDs of the quality assessments containing a metaDataParameter with the given accession number and value.
+     *
+     * @param accession  the accession number of the metaDataParameter, should be indexed
+     * @param value  the requested value of the metaDataParameter
+     * @return the IDs of the quality assessments whose metaDataParameter has the given value
+     */
+    public List<String> getQualityAssessmentIds(String accession, String value) {
+        if(value == null) {
+            LOGGER.error("The metaDataParameter value is not allowed to be <null>");
+            throw new NullPointerException("The metaDataParameter value is not allowed to be <null>");
+        }
+
+        List<String> result = new ArrayList<>();
+        for(Map.Entry<String, String> entry : getValues(accession).entrySet()) {
+            if(value.equals(entry.getValue())) {
+                result.add(entry.getKey());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the IDs of the quality assessments containing a metaDataParameter with the given accession number whose value satisfies the given predicate.
+     *
+     * @param accession  the accession number of the metaDataParameter, should be indexed
+     * @param predicate  the condition the value of the metaDataParameter should satisfy
+     * @return the IDs of the quality assessments whose metaDataParameter satisfies the given predicate
+     */
+    public List<String> getQualityAssessmentIds(String accession, Predicate<String> predicate) {
+        if(predicate == null) {
+            LOGGER.error("The predicate is not allowed to be <null>");
+            throw new NullPointerException("The predicate is not allowed to be <null>");
+        }
+
+        List<String> result = new ArrayList<>();
+        for(Map.Entry<String, String> entry : getValues(accession).entrySet()) {
+            if(predicate.apply(entry.getValue())) {
+                result.add(entry.getKey());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Creates a copy of this index, which can be modified independently of this index.
+     *
+     * @return a copy of this index
+     */
+    MetaDataIndex copy() {
+        MetaDataIndex copy = new MetaDataIndex(accessions);
+        for(Map.Entry<String, Map<String, String>> entry : values.entrySet()) {
+            copy.values.get(entry.getKey()).putAll(entry.getValue());
+        }
+        return copy;
+    }
+
+    /**
+     * Creates a new index that is extended with the values recorded for the data appended to the qcML file.
+     *
+     * The values of this index are shared with the extended index instead of being copied, so neither index should be modified afterwards.
+     *
+     * @param appended  the index of the appended data, recorded for the same accession numbers
+     * @return the extended index
+     */
+    MetaDataIndex append(MetaDataIndex appended) {
+        Map<String, Map<String, String>> extended = new HashMap<>();
+        for(Map.Entry<String, Map<String, String>> entry : values.entrySet()) {
+            Map<String, String> appendedValues = appended.values.get(entry.getKey());
+            extended.put(entry.getKey(), AppendedMap.<String>of(entry.getValue(), LinkedHashMap::new)
+                    .append(appendedValues != null ? appendedValues : Collections.<String, String>emptyMap(), Long.MAX_VALUE));
+        }
+        return new MetaDataIndex(accessions, extended);
+    }
+
+    /**
+     * Records the values of the given index that aren't recorded in this index yet.
+     *
+     * @param other  the index whose values are added, recorded for the same accession numbers
+     */
+    void putAll(MetaDataIndex other) {
+        for(Map.Entry<String, Map<String, String>> entry : other.values.entrySet()) {
+            for(Map.Entry<String, String> qaEntry : entry.getValue().entrySet()) {
+                put(qaEntry.getKey(), entry.getKey(), qaEntry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Reads a MetaDataIndex previously written by {@link #write(DataOutput)}.
+     *
+     * @param in  the input from which the index is read
+     * @return the MetaDataIndex read from the given input
+     * @throws IOException if the index could not be read
+     */
+    static MetaDataIndex read(DataInput in) throws IOException {
+        int nrOfAccessions = in.readInt();
+        Map<String, Map<String, String>> values = new LinkedHashMap<>();
+        for(int i = 0; i < nrOfAccessions; i++) {
+            String accession = in.readUTF();
+            int nrOfValues = in.readInt();
+            Map<String, String> qaValues = new LinkedHashMap<>();
+            for(int j = 0; j < nrOfValues; j++) {
+                String qaId = in.readUTF();
+                qaValues.put(qaId, in.readUTF());
+            }
+            values.put(accession, qaValues);
+        }
+
+        MetaDataIndex index = new MetaDataIndex(values.keySet());
+        index.values.putAll(values);
+        return index;
+    }
+
+    /**
+     * Writes this index to the given output.
+     *
+     * @param out  the output to which the index is written
+     * @throws IOException if the index could not be written
+     */
+    void write(DataOutput out) throws IOException {
+        out.writeInt(values.size());
+        for(Map.Entry<String, Map<String, String>> entry : values.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for(Map.Entry<String, String> qaEntry : entry.getValue().entrySet()) {
+                out.writeUTF(qaEntry.getKey());
+                out.writeUTF(qaEntry.getValue());
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this).add("accessions", accessions).toString();
+    }
+}
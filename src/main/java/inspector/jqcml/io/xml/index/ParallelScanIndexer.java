@@ -0,0 +1,266 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Creates the ID mappings for a qcML file by scanning chunks of the file in parallel.
+ *
+ * The file is split into byte ranges, which are scanned independently on a fork/join pool.
+ * Subsequently the element boundaries found in each chunk are merged in document order.
+ *
+ * Chunks start directly after a closing angle bracket, which is almost always the end of some markup.
+ * If a chunk turns out to start within markup after all (e.g. within a comment), it is rescanned sequentially
+ * as a continuation of the previous chunk, so the result is always identical to a sequential scan.
+ */
+class ParallelScanIndexer {
+
+    private static final Logger LOGGER = LogManager.getLogger(ParallelScanIndexer.class);
+
+    /** The minimal size of a chunk that is scanned as a whole */
+    static final long MIN_CHUNK_SIZE = 8 << 20;
+
+    /** The size of the blocks that are read to find the start of a chunk */
+    private static final int ALIGN_BUFFER_SIZE = 8192;
+
+    private final File file;
+    private final Charset charset;
+    private final int parallelism;
+    private final long chunkSize;
+    private final boolean indexParameters;
+    private final Set<String> metaDataAccessions;
+
+    /**
+     * Creates a ParallelScanIndexer for the given file.
+     *
+     * @param file  the qcML file to index
+     * @param charset  the encoding of the qcML file, should be supported by the {@link XmlScanner}
+     * @param parallelism  the number of threads used to scan the file
+     * @param indexParameters  flag indicating whether the parameters of the quality assessments are recorded
+     * @param metaDataAccessions  the accession numbers of the metaDataParameters whose values are recorded
+     */
+    ParallelScanIndexer(File file, Charset charset, int parallelism, boolean indexParameters, Set<String> metaDataAccessions) {
+        this(file, charset, parallelism, Math.max(MIN_CHUNK_SIZE, file.length() / (4L * parallelism) + 1), indexParameters, metaDataAccessions);
+    }
+
+    /**
+     * Creates a ParallelScanIndexer for the given file that uses chunks of the given size.
+     *
+     * @param file  the qcML file to index
+     * @param charset  the encoding of the qcML file, should be supported by the {@link XmlScanner}
+     * @param parallelism  the number of threads used to scan the file
+     * @param chunkSize  the maximum (nominal) size of a chunk
+     * @param indexParameters  flag indicating whether the parameters of the quality assessments are recorded
+     */
+    ParallelScanIndexer(File file, Charset charset, int parallelism, long chunkSize, boolean indexParameters) {
+        this(file, charset, parallelism, chunkSize, indexParameters, Collections.<String>emptySet());
+    }
+
+    /**
+     * Creates a ParallelScanIndexer for the given file that uses chunks of the given size.
+     *
+     * @param file  the qcML file to index
+     * @param charset  the encoding of the qcML file, should be supported by the {@link XmlScanner}
+     * @param parallelism  the number of threads used to scan the file
+     * @param chunkSize  the maximum (nominal) size of a chunk
+     * @param indexParameters  flag indicating whether the parameters of the quality assessments are recorded
+     * @param metaDataAccessions  the accession numbers of the metaDataParameters whose values are recorded
+     */
+    ParallelScanIndexer(File file, Charset charset, int parallelism, long chunkSize, boolean indexParameters, Set<String> metaDataAccessions) {
+        this.file = file;
+        this.charset = charset;
+        this.parallelism = parallelism;
+        this.chunkSize = chunkSize;
+        this.indexParameters = indexParameters;
+        this.metaDataAccessions = metaDataAccessions;
+    }
+
+    /**
+     * Creates the ID mappings for all indexed XML elements.
+     *
+     * @return the handler containing the ID mappings, identical to the result of a sequential scan
+     * @throws IOException
+     */
+    QcMLScanHandler scan() throws IOException {
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long length = channel.size();
+
+            // scan all chunks in parallel
+            List<ChunkScan> chunks;
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                chunks = pool.invoke(new ChunkTask(channel, length, 0, length, new QcMLScanHandler(indexParameters, metaDataAccessions).getIndexedNames()));
+            } catch(ScanException e) {
+                // the exception might have been wrapped when rethrown in this thread
+                Throwable cause = e;
+                while(!(cause instanceof IOException) && cause.getCause() != null) {
+                    cause = cause.getCause();
+                }
+                if(cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else {
+                    throw e;
+                }
+            } finally {
+                pool.shutdown();
+            }
+            LOGGER.info("Scanned {} chunks using {} threads", chunks.size(), parallelism);
+
+            // merge the chunks in document order
+            QcMLScanHandler handler = new QcMLScanHandler(indexParameters, metaDataAccessions);
+            ChunkScan current = null;
+            int base = 0;
+            int rescanned = 0;
+            for(ChunkScan chunk : chunks) {
+                int chunkBase = current == null ? 0 : base + current.getDepth();
+                if(current != null && (!current.isInText() || !chunk.isComplete(chunkBase))) {
+                    // the independent scan of this chunk is invalid, continue the scan of the previous chunk instead
+                    current.feed(channel, chunk.getStart(), chunk.getStop());
+                    rescanned++;
+                } else if(!chunk.isComplete(chunkBase)) {
+                    // the independent scan of the first chunk is invalid, rescan it
+                    current = new ChunkScan(charset, chunk.getStart(), chunk.getStop(), handler.getIndexedNames());
+                    current.replay(handler, chunkBase);
+                    current.scan(channel);
+                    base = chunkBase;
+                    rescanned++;
+                } else {
+                    chunk.replay(handler, chunkBase);
+                    current = chunk;
+                    base = chunkBase;
+                }
+            }
+            if(rescanned > 0) {
+                LOGGER.debug("Rescanned {} chunks sequentially", rescanned);
+            }
+
+            return handler;
+        }
+    }
+
+    /**
+     * Returns the offset directly after the first closing angle bracket at or after the given offset.
+     *
+     * @param channel  the scanned file
+     * @param length  the size of the scanned file
+     * @param offset  the offset from which to search
+     * @return the offset directly after the first closing angle bracket, or the size of the file if there is none
+     * @throws IOException
+     */
+    private static long align(FileChannel channel, long length, long offset) throws IOException {
+        if(offset == 0 || offset >= length) {
+            return Math.min(offset, length);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(ALIGN_BUFFER_SIZE);
+        long position = offset;
+        while(position < length) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if(read <= 0) {
+                break;
+            }
+            for(int i = 0; i < read; i++) {
+                if(buffer.get(i) == '>') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return length;
+    }
+
+    /**
+     * Scans a range of the file, splitting it into multiple chunks if it is too large.
+     */
+    private class ChunkTask extends RecursiveTask<List<ChunkScan>> {
+
+        private final FileChannel channel;
+        private final long length;
+        /** The nominal start of the range, the actual start is the next closing angle bracket */
+        private final long from;
+        /** The nominal end of the range, the actual end is the next closing angle bracket */
+        private final long to;
+        /** The local names of the elements that can be part of the path of an indexed element */
+        private final Set<String> indexedNames;
+
+        ChunkTask(FileChannel channel, long length, long from, long to, Set<String> indexedNames) {
+            this.channel = channel;
+            this.length = length;
+            this.from = from;
+            this.to = to;
+            this.indexedNames = indexedNames;
+        }
+
+        @Override
+        protected List<ChunkScan> compute() {
+            if(to - from > chunkSize) {
+                long middle = from + (to - from) / 2;
+                ChunkTask left = new ChunkTask(channel, length, from, middle, indexedNames);
+                ChunkTask right = new ChunkTask(channel, length, middle, to, indexedNames);
+                right.fork();
+                List<ChunkScan> result = new ArrayList<>(left.compute());
+                result.addAll(right.join());
+                return result;
+            } else {
+                try {
+                    long start = align(channel, length, from);
+                    long stop = Math.max(start, align(channel, length, to));
+                    ChunkScan chunk = new ChunkScan(charset, start, stop, indexedNames);
+                    chunk.scan(channel);
+
+                    List<ChunkScan> result = new ArrayList<>();
+                    result.add(chunk);
+                    return result;
+                } catch(IOException e) {
+                    throw new ScanException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Wraps an {@link IOException} that occurred while scanning a chunk.
+     */
+    private static class ScanException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        ScanException(IOException cause) {
+            super(cause);
+        }
+    }
+}
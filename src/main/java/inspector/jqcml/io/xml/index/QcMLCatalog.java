@@ -0,0 +1,673 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import inspector.jqcml.model.Cv;
+import inspector.jqcml.model.QualityAssessment;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import psidev.psi.tools.xxindex.index.IndexElement;
+
+import java.io.*;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A catalog of the indexes of all qcML files within a directory tree.
+ *
+ * The catalog records for each qcML file its fingerprint and the offsets of its runQualitys, setQualitys and Cv's,
+ * so the file containing a specific element can be found without having to index each individual file.
+ * The catalog is stored in a single file in the root directory, and is updated incrementally:
+ * only qcML files that have been added or changed since the previous update are indexed.
+ *
+ * Only a summary of each qcML file is kept in memory, consisting of its fingerprint and a Bloom filter over its IDs.
+ * The full index of a qcML file is read from the catalog file when required,
+ * so lookups only need to load the indexes of the few qcML files that might contain the requested ID.
+ */
+public class QcMLCatalog {
+
+    private static final Logger LOGGER = LogManager.getLogger(QcMLCatalog.class);
+
+    /** The name of the file in the root directory in which the catalog is stored */
+    public static final String CATALOG_FILE_NAME = ".jqcml-catalog";
+    /** The extension of the qcML files that are included in the catalog (case-insensitive) */
+    private static final String QCML_EXTENSION = ".qcml";
+    /** The extension of the gzip-compressed qcML files that are included in the catalog (case-insensitive) */
+    private static final String QCML_GZIP_EXTENSION = ".qcml.gz";
+
+    /** Magic number identifying a jqcML catalog file */
+    private static final int MAGIC = 0x6A714354;
+    /** The version of the catalog file format */
+    private static final int VERSION = 3;
+    /** The size of the catalog file header, preceding the summaries */
+    private static final int HEADER_SIZE = 16;
+    /** The maximum number of full indexes that are kept in memory after they have been loaded from the catalog file */
+    private static final int MAX_LOADED = 16;
+
+    /** The root directory of the qcML files in the catalog */
+    private final File directory;
+    /** The settings used to create the index for each qcML file */
+    private final IndexConfiguration configuration;
+
+    /** The summary of each qcML file in the catalog by its path relative to the root directory */
+    private final Map<String, Entry> entries;
+    /** The offset of the section containing the full indexes in the catalog file */
+    private long indexOffset;
+    /** The number of times the catalog file has been written, to detect whether it has been replaced while an index was being loaded */
+    private long generation;
+    /** The most recently used full indexes that have been loaded from the catalog file, by their catalog entry */
+    private final Map<Entry, IndexFile> loaded = new LinkedHashMap<Entry, IndexFile>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Entry, IndexFile> eldest) {
+            return size() > MAX_LOADED;
+        }
+    };
+    /** Flag indicating whether the catalog contains entries which haven't been stored yet */
+    private boolean unsaved;
+
+    /**
+     * Creates a catalog for the qcML files within the given directory tree.
+     *
+     * @param directory  The root directory of the qcML files
+     */
+    public QcMLCatalog(File directory) {
+        this(directory, new IndexConfiguration());
+    }
+
+    /**
+     * Creates a catalog for the qcML files within the given directory tree.
+     *
+     * A previously stored catalog is reused, and subsequently updated for all qcML files that have been added, changed, or removed.
+     *
+     * @param directory  The root directory of the qcML files
+     * @param configuration  The {@link IndexConfiguration} specifying how each qcML file is indexed
+     */
+    public QcMLCatalog(File directory, IndexConfiguration configuration) {
+        if(directory == null) {
+            LOGGER.error("The catalog directory is not allowed to be <null>");
+            throw new NullPointerException("The catalog directory is not allowed to be <null>");
+        } else if(!directory.isDirectory()) {
+            LOGGER.error("The catalog directory <{}> does not exist", directory.getAbsolutePath());
+            throw new IllegalArgumentException("The catalog directory does not exist: " + directory.getAbsolutePath());
+        }
+
+        this.directory = directory;
+        this.configuration = configuration;
+
+        entries = read();
+        update();
+    }
+
+    /**
+     * Returns the file in which the catalog for the given directory is stored.
+     *
+     * @param directory  The root directory of the qcML files in the catalog
+     * @return The catalog file for the given directory
+     */
+    public static File getCatalogFile(File directory) {
+        return new File(directory, CATALOG_FILE_NAME);
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public IndexConfiguration getConfiguration() {
+        return configuration;
+    }
+
+    /**
+     * Returns all qcML files in the catalog.
+     *
+     * @return A list of all qcML files in the catalog, sorted by their path
+     */
+    public synchronized List<File> getFiles() {
+        List<File> files = new ArrayList<>(entries.size());
+        for(String path : entries.keySet()) {
+            files.add(toFile(path));
+        }
+        return files;
+    }
+
+    /**
+     * Returns the qcML files containing the element of the given type with the given ID.
+     *
+     * Only the indexes of the qcML files whose Bloom filter indicates they might contain the ID are loaded.
+     * The indexes are loaded without holding the lock on the catalog, and the most recently used indexes are kept in memory.
+     *
+     * @param cls  The class type of the requested element, either {@link QualityAssessment} or {@link Cv}
+     * @param id  The ID of the requested element
+     * @return A list of the qcML files containing the requested element, sorted by their path
+     */
+    public List<File> find(@SuppressWarnings("rawtypes") Class cls, String id) {
+        Map<String, Entry> candidates = new TreeMap<>();
+        synchronized(this) {
+            for(Map.Entry<String, Entry> entry : entries.entrySet()) {
+                if(entry.getValue().filter.mightContain(id)) {
+                    candidates.put(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+
+        List<File> files = new ArrayList<>();
+        for(Map.Entry<String, Entry> entry : candidates.entrySet()) {
+            IndexFile index = load(entry.getKey(), entry.getValue());
+            Map<String, IndexElement> mapping = index != null ? index.getIDMappings().get(cls) : null;
+            if(mapping != null && mapping.containsKey(id)) {
+                files.add(toFile(entry.getKey()));
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Returns the catalog index mapping for the given qcML file.
+     *
+     * @param file  The qcML file for which the mapping is requested
+     * @param cls  The class type of the elements in the requested mapping
+     * @return The mapping between the element IDs and their index in the qcML file, or {@code null} if the file isn't part of the catalog
+     */
+    public Map<String, IndexElement> getIDMapping(File file, @SuppressWarnings("rawtypes") Class cls) {
+        String path = toPath(file);
+        Entry entry;
+        synchronized(this) {
+            entry = entries.get(path);
+        }
+        if(entry == null) {
+            return null;
+        }
+        IndexFile index = load(path, entry);
+        if(index == null) {
+            return null;
+        }
+        Map<String, IndexElement> mapping = index.getIDMappings().get(cls);
+        return mapping != null ? Collections.unmodifiableMap(mapping) : Collections.<String, IndexElement>emptyMap();
+    }
+
+    /**
+     * Creates an indexer for the given qcML file from the catalog.
+     *
+     * If the qcML file has been modified since the catalog was updated, the file is indexed anew.
+     * The file is indexed without holding the lock on the catalog, so other files can be looked up in the meantime.
+     *
+     * @param file  The qcML file for which an indexer is created
+     * @return An indexer for the given qcML file, or {@code null} if the file isn't part of the catalog
+     */
+    public QcMLIndexer getIndexer(File file) {
+        String path = toPath(file);
+        Entry entry;
+        synchronized(this) {
+            entry = entries.get(path);
+        }
+        if(entry == null) {
+            return null;
+        }
+
+        try {
+            if(!entry.fingerprint.equals(FileFingerprint.of(file))) {
+                LOGGER.info("Update the catalog entry for modified qcML file <{}>", file.getAbsolutePath());
+                QcMLIndexer indexer = new QcMLIndexer(file, configuration);
+                IndexFile updated = indexer.toIndexFile().copy();
+                synchronized(this) {
+                    // unless the entry has been updated by another thread in the meantime
+                    if(entries.get(path) == entry) {
+                        entries.put(path, new Entry(updated));
+                        unsaved = true;
+                    }
+                }
+                return indexer;
+            }
+        } catch(IOException e) {
+            LOGGER.error("Could not read qcML file <{}>: {}", file.getAbsolutePath(), e);
+            throw new IllegalStateException("Could not read qcML file: " + file.getAbsolutePath());
+        }
+
+        // the index of an unsaved entry and the loaded indexes are shared, so they shouldn't be modified by the indexer
+        IndexFile indexFile;
+        synchronized(this) {
+            indexFile = entry.index != null ? entry.index.copy() : null;
+        }
+        if(indexFile == null) {
+            indexFile = read(path, entry);
+            if(indexFile == null) {
+                return null;
+            }
+        }
+        return new QcMLIndexer(file, configuration, indexFile);
+    }
+
+    /**
+     * Updates the catalog for all qcML files within the directory tree that have been added, changed, or removed.
+     *
+     * Only the added and changed qcML files are indexed. If the catalog has been modified, it is stored anew.
+     *
+     * @return True if the catalog has been modified, false if it was still up to date
+     */
+    public synchronized boolean update() {
+        // find all qcML files and determine whether they are up to date in the catalog
+        final Map<String, File> modified = new TreeMap<>();
+        final List<String> present = new ArrayList<>();
+        try {
+            Files.walkFileTree(directory.toPath(), new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    String name = file.getFileName().toString().toLowerCase();
+                    if(attrs.isRegularFile() && (name.endsWith(QCML_EXTENSION) || name.endsWith(QCML_GZIP_EXTENSION))) {
+                        String path = toPath(file.toFile());
+                        present.add(path);
+                        Entry entry = entries.get(path);
+                        if(entry == null || !isUpToDate(entry, file.toFile())) {
+                            modified.put(path, file.toFile());
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    LOGGER.warn("Skip inaccessible file <{}>: {}", file, e);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch(IOException e) {
+            LOGGER.error("Could not list the qcML files in directory <{}>: {}", directory.getAbsolutePath(), e);
+            throw new IllegalStateException("Could not list the qcML files in directory: " + directory.getAbsolutePath());
+        }
+
+        // remove the qcML files that no longer exist
+        boolean changed = entries.keySet().retainAll(present);
+
+        // index the new and modified qcML files
+        if(!modified.isEmpty()) {
+            LOGGER.info("Index {} new or modified qcML files in directory <{}>", modified.size(), directory.getAbsolutePath());
+            for(Map.Entry<String, IndexFile> entry : index(modified).entrySet()) {
+                entries.put(entry.getKey(), new Entry(entry.getValue()));
+            }
+            changed = true;
+        }
+
+        if(changed || unsaved) {
+            write();
+        }
+
+        return changed;
+    }
+
+    /**
+     * Verifies whether the catalog entry for the given qcML file is up to date.
+     *
+     * Only the cheap fingerprint properties are compared, unless they indicate the file might have been changed.
+     */
+    private static boolean isUpToDate(Entry entry, File file) throws IOException {
+        FileFingerprint fingerprint = entry.fingerprint;
+        if(fingerprint.getLength() == file.length() && fingerprint.getLastModified() == file.lastModified()) {
+            return true;
+        }
+        return fingerprint.equals(FileFingerprint.of(file));
+    }
+
+    /**
+     * Indexes the given qcML files in parallel.
+     *
+     * @param files  The qcML files to be indexed, by their path relative to the root directory
+     * @return The index of each qcML file that could be indexed, by its path relative to the root directory
+     */
+    private Map<String, IndexFile> index(Map<String, File> files) {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(configuration.getParallelism(), files.size()));
+        try {
+            Map<String, Future<IndexFile>> futures = new TreeMap<>();
+            for(final Map.Entry<String, File> entry : files.entrySet()) {
+                futures.put(entry.getKey(), executor.submit(new Callable<IndexFile>() {
+                    @Override
+                    public IndexFile call() {
+                        // copy the index, so the indexer can release its spilled ID mappings and open files
+                        QcMLIndexer indexer = new QcMLIndexer(entry.getValue(), configuration);
+                        try {
+                            return indexer.toIndexFile().copy();
+                        } finally {
+                            indexer.close();
+                        }
+                    }
+                }));
+            }
+
+            Map<String, IndexFile> result = new TreeMap<>();
+            for(Map.Entry<String, Future<IndexFile>> entry : futures.entrySet()) {
+                try {
+                    result.put(entry.getKey(), entry.getValue().get());
+                } catch(ExecutionException e) {
+                    // invalid qcML files are not included in the catalog
+                    LOGGER.warn("Skip qcML file <{}> that could not be indexed: {}", files.get(entry.getKey()).getAbsolutePath(), e.getCause());
+                }
+            }
+            return result;
+
+        } catch(InterruptedException e) {
+            LOGGER.error("Interrupted while indexing the qcML files in directory <{}>", directory.getAbsolutePath());
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while indexing the qcML files in directory: " + directory.getAbsolutePath());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Converts the given file to its path relative to the root directory, using '/' as separator.
+     */
+    private String toPath(File file) {
+        return directory.getAbsoluteFile().toPath().relativize(file.getAbsoluteFile().toPath()).toString().replace(File.separatorChar, '/');
+    }
+
+    private File toFile(String path) {
+        return new File(directory, path.replace('/', File.separatorChar));
+    }
+
+    /**
+     * Loads the full index of the given catalog entry, or reuses it if it has been loaded recently.
+     *
+     * The returned index is shared, and shouldn't be modified.
+     *
+     * @param path  The path of the qcML file relative to the root directory
+     * @param entry  The catalog entry of the qcML file
+     * @return The full index of the qcML file, or {@code null} if the file has been removed from the catalog in the meantime
+     */
+    private IndexFile load(String path, Entry entry) {
+        synchronized(this) {
+            IndexFile index = entry.index != null ? entry.index : loaded.get(entry);
+            if(index != null) {
+                return index;
+            }
+        }
+
+        IndexFile index = read(path, entry);
+        synchronized(this) {
+            // unless the entry has been updated by another thread in the meantime
+            if(index != null && entries.get(path) == entry) {
+                loaded.put(entry, index);
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Reads the full index of the given catalog entry from the catalog file.
+     *
+     * The index is read without holding the lock on the catalog. If the catalog file is replaced before it could be opened, it's opened anew.
+     * If the entry has been updated by another thread in the meantime, the current entry of the qcML file is read instead.
+     *
+     * @param path  The path of the qcML file relative to the root directory
+     * @param entry  The catalog entry of the qcML file
+     * @return The full index of the qcML file, or {@code null} if the file has been removed from the catalog in the meantime
+     */
+    private IndexFile read(String path, Entry entry) {
+        File catalogFile = getCatalogFile(directory);
+        try {
+            while(true) {
+                long position;
+                int length;
+                long readGeneration;
+                synchronized(this) {
+                    // a removed or replaced entry no longer refers to the stored catalog file
+                    entry = entries.get(path);
+                    if(entry == null) {
+                        return null;
+                    } else if(entry.index != null) {
+                        return entry.index.copy();
+                    }
+                    position = indexOffset + entry.offset;
+                    length = entry.length;
+                    readGeneration = generation;
+                }
+
+                try(RandomAccessFile raf = new RandomAccessFile(catalogFile, "r")) {
+                    // the catalog file is only replaced while holding the lock, so the opened file remains valid afterwards
+                    synchronized(this) {
+                        if(readGeneration != generation) {
+                            continue;
+                        }
+                    }
+                    byte[] bytes = new byte[length];
+                    raf.seek(position);
+                    raf.readFully(bytes);
+                    return IndexFile.readFrom(new DataInputStream(new ByteArrayInputStream(bytes)));
+                }
+            }
+        } catch(IOException | IllegalStateException e) {
+            LOGGER.error("Could not read the index of <{}> from catalog file <{}>: {}", path, catalogFile.getAbsolutePath(), e);
+            throw new IllegalStateException("Could not read the index of " + path + " from catalog file: " + catalogFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Reads the summaries of the previously stored catalog.
+     *
+     * @return The entries of the stored catalog, or an empty catalog if no valid catalog was stored
+     */
+    private Map<String, Entry> read() {
+        Map<String, Entry> result = new TreeMap<>();
+
+        File catalogFile = getCatalogFile(directory);
+        if(!catalogFile.isFile()) {
+            return result;
+        }
+
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(catalogFile)))) {
+            if(in.readInt() != MAGIC || in.readInt() != VERSION || in.readInt() != IndexFile.VERSION) {
+                LOGGER.info("Ignore catalog file <{}> with an unknown format", catalogFile.getAbsolutePath());
+                return result;
+            }
+            indexOffset = HEADER_SIZE + in.readInt();
+
+            int nrOfEntries = in.readInt();
+            for(int i = 0; i < nrOfEntries; i++) {
+                String path = in.readUTF();
+                FileFingerprint fingerprint = FileFingerprint.read(in);
+                IdBloomFilter filter = IdBloomFilter.read(in);
+                boolean parameterIndex = in.readBoolean();
+                Set<String> metaDataAccessions = new TreeSet<>();
+                int nrOfAccessions = in.readInt();
+                for(int j = 0; j < nrOfAccessions; j++) {
+                    metaDataAccessions.add(in.readUTF());
+                }
+                Entry entry = new Entry(fingerprint, filter, parameterIndex, metaDataAccessions, in.readLong(), in.readInt());
+                // ignore entries without parameter index or metadata index if required, so the qcML files are indexed anew
+                if(configuration.isParameterIndex() && !entry.parameterIndex) {
+                    LOGGER.info("Ignore catalog entry <{}> without parameter index", path);
+                } else if(!entry.metaDataAccessions.containsAll(configuration.getMetaDataAccessions())) {
+                    LOGGER.info("Ignore catalog entry <{}> without metadata index for accessions {}", path, configuration.getMetaDataAccessions());
+                } else {
+                    result.put(path, entry);
+                }
+            }
+            LOGGER.info("Load catalog from <{}>", catalogFile.getAbsolutePath());
+
+            return result;
+
+        } catch(IOException e) {
+            LOGGER.warn("Could not read catalog file <{}>: {}", catalogFile.getAbsolutePath(), e);
+            return new TreeMap<>();
+        }
+    }
+
+    /**
+     * Stores the catalog in the root directory.
+     *
+     * The catalog file consists of the summaries of all qcML files, followed by their full indexes.
+     * The full indexes of the entries that were stored previously are copied from the current catalog file.
+     *
+     * The catalog is first written to a uniquely named temporary file, which subsequently replaces the catalog file,
+     * so that concurrent readers never encounter a partially written catalog and concurrent writers don't interfere.
+     */
+    private void write() {
+        File catalogFile = getCatalogFile(directory);
+        File temp = null;
+
+        try {
+            temp = IndexFile.createTempFile(catalogFile);
+
+            // serialize the new indexes
+            Map<String, byte[]> newIndexes = new HashMap<>();
+            for(Map.Entry<String, Entry> entry : entries.entrySet()) {
+                if(entry.getValue().index != null) {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    try(DataOutputStream out = new DataOutputStream(bytes)) {
+                        entry.getValue().index.writeTo(out);
+                    }
+                    newIndexes.put(entry.getKey(), bytes.toByteArray());
+                }
+            }
+
+            // serialize the summaries, including the location of the full indexes
+            Map<String, Long> offsets = new HashMap<>();
+            ByteArrayOutputStream summaryBytes = new ByteArrayOutputStream();
+            try(DataOutputStream summary = new DataOutputStream(summaryBytes)) {
+                summary.writeInt(entries.size());
+                long offset = 0;
+                for(Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    byte[] index = newIndexes.get(entry.getKey());
+                    int length = index != null ? index.length : entry.getValue().length;
+                    summary.writeUTF(entry.getKey());
+                    entry.getValue().fingerprint.write(summary);
+                    entry.getValue().filter.write(summary);
+                    summary.writeBoolean(entry.getValue().parameterIndex);
+                    summary.writeInt(entry.getValue().metaDataAccessions.size());
+                    for(String accession : entry.getValue().metaDataAccessions) {
+                        summary.writeUTF(accession);
+                    }
+                    summary.writeLong(offset);
+                    summary.writeInt(length);
+                    offsets.put(entry.getKey(), offset);
+                    offset += length;
+                }
+            }
+
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+                RandomAccessFile previous = catalogFile.isFile() ? new RandomAccessFile(catalogFile, "r") : null) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(IndexFile.VERSION);
+                out.writeInt(summaryBytes.size());
+                summaryBytes.writeTo(out);
+
+                for(Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    byte[] index = newIndexes.get(entry.getKey());
+                    if(index == null) {
+                        // copy the previously stored index
+                        if(previous == null) {
+                            throw new FileNotFoundException("Catalog file removed: " + catalogFile.getAbsolutePath());
+                        }
+                        index = new byte[entry.getValue().length];
+                        previous.seek(indexOffset + entry.getValue().offset);
+                        previous.readFully(index);
+                    }
+                    out.write(index);
+                }
+            }
+
+            IndexFile.replace(temp, catalogFile);
+            generation++;
+            LOGGER.info("Catalog written to <{}>", catalogFile.getAbsolutePath());
+
+            // the full indexes can now be read from the catalog file
+            indexOffset = HEADER_SIZE + summaryBytes.size();
+            for(Map.Entry<String, Entry> entry : entries.entrySet()) {
+                byte[] index = newIndexes.get(entry.getKey());
+                entry.getValue().stored(offsets.get(entry.getKey()), index != null ? index.length : entry.getValue().length);
+            }
+            unsaved = false;
+
+        } catch(IOException e) {
+            LOGGER.warn("Could not write catalog file <{}>: {}", catalogFile.getAbsolutePath(), e);
+            if(temp != null) {
+                temp.delete();
+            }
+            unsaved = true;
+        }
+    }
+
+    /**
+     * The summary of a qcML file in the catalog, from which the full index can be loaded.
+     */
+    private static class Entry {
+
+        private final FileFingerprint fingerprint;
+        /** Bloom filter over the IDs in the index */
+        private final IdBloomFilter filter;
+        /** Flag indicating whether the index includes the parameters */
+        private final boolean parameterIndex;
+        /** The accession numbers of the metaDataParameters whose values are included in the index */
+        private final Set<String> metaDataAccessions;
+
+        /** The offset of the index in the catalog file, relative to the start of the index section */
+        private long offset;
+        /** The number of bytes of the index in the catalog file */
+        private int length;
+        /** The index if it hasn't been stored in the catalog file yet, {@code null} otherwise */
+        private IndexFile index;
+
+        /**
+         * Creates an Entry for an index that hasn't been stored yet.
+         */
+        Entry(IndexFile index) {
+            this(index.getFingerprint(), index.getFilter(), index.getParameterMappings() != null,
+                    index.getMetaDataIndex() != null ? index.getMetaDataIndex().getAccessions() : Collections.<String>emptySet(), -1, 0);
+            this.index = index;
+        }
+
+        /**
+         * Creates an Entry for an index that is stored in the catalog file.
+         */
+        Entry(FileFingerprint fingerprint, IdBloomFilter filter, boolean parameterIndex, Set<String> metaDataAccessions, long offset, int length) {
+            this.fingerprint = fingerprint;
+            this.filter = filter;
+            this.parameterIndex = parameterIndex;
+            this.metaDataAccessions = metaDataAccessions;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        /**
+         * Records that the index has been stored in the catalog file at the given location.
+         */
+        void stored(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+            index = null;
+        }
+    }
+}
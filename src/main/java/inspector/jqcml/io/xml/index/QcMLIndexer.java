@@ -20,19 +20,45 @@ package inspector.jqcml.io.xml.index;
  * #L%
  */
 
+import inspector.jqcml.model.AttachmentParameter;
 import inspector.jqcml.model.Cv;
+import inspector.jqcml.model.MetaDataParameter;
 import inspector.jqcml.model.QualityAssessment;
+import inspector.jqcml.model.QualityParameter;
+import org.apache.commons.codec.binary.Base64OutputStream;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
 import psidev.psi.tools.xxindex.SimpleXmlElementExtractor;
 import psidev.psi.tools.xxindex.StandardXpathAccess;
 import psidev.psi.tools.xxindex.XmlElementExtractor;
+import psidev.psi.tools.xxindex.index.ByteRange;
 import psidev.psi.tools.xxindex.index.IndexElement;
-import psidev.psi.tools.xxindex.index.XpathIndex;
 
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.Schema;
+import javax.xml.validation.Validator;
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -43,177 +69,1725 @@ import java.util.regex.Pattern;
  *  - runQuality
  *  - setQuality
  *  - cv
+ *
+ * Optionally, a secondary index records the offsets of the parameters within each runQuality and setQuality by their accession number:
+ *  - metaDataParameter
+ *  - qualityParameter
+ *  - attachment
+ *  - binary (within an attachment, by the accession number of the attachment)
+ *  - table (within an attachment, by the accession number of the attachment), whose rows are indexed when the table is first read
+ *
+ * Optionally, the values of selected metaDataParameters are recorded for each runQuality and setQuality in a {@link MetaDataIndex}.
+ *
+ * A gzip-compressed qcML file can be indexed as well, in which case the offsets refer to the decompressed data.
+ * Elements can only be retrieved efficiently if the file is block-compressed (see {@link BlockCompressedOutputStream}),
+ * otherwise each retrieval requires decompressing the file up to the requested element.
+ *
+ * XML snippets are read from a small pool of open file channels, which should be released by closing the index.
+ * An index that is shared can be retained by each of its users (see {@link #retain()}), in which case closing it
+ * only releases the open files once all users have released it. A closed index can't reopen the qcML file afterwards.
  */
-public class QcMLIndexer {
+public class QcMLIndexer implements Closeable {
 
     private static final Logger LOGGER = LogManager.getLogger(QcMLIndexer.class);
 
     /** A pattern for extracting an ID attribute from an XML element */
     private static final Pattern ID_PATTERN = Pattern.compile("\\sid\\s*=\\s*['\"]([^'\"]*)['\"]", Pattern.CASE_INSENSITIVE);
+    /** The initial number of bytes read to extract the start tag of an XML element */
+    private static final int START_TAG_PEEK = 256;
+    /** A pattern for extracting an accession attribute from an XML element */
+    private static final Pattern ACCESSION_PATTERN = Pattern.compile("\\saccession\\s*=\\s*['\"]([^'\"]*)['\"]");
+    /** A pattern for extracting a value attribute from an XML element */
+    private static final Pattern VALUE_PATTERN = Pattern.compile("\\svalue\\s*=\\s*['\"]([^'\"]*)['\"]");
 
     /** Set containing the XPath node expressions of all elements that should be indexed */
     private static final Set<String> INDEXED_XPATHS = getIndexedXPaths();
+    /** Set containing the XPath node expressions of all parameters that should be indexed in the secondary index */
+    private static final Set<String> PARAMETER_XPATHS = getParameterXPaths();
+    /** Set containing the XPath node expressions of the binary elements of the attachments that should be indexed in the secondary index */
+    private static final Set<String> BINARY_XPATHS = Collections.unmodifiableSet(
+            new HashSet<>(Arrays.asList("/qcML/runQuality/attachment/binary", "/qcML/setQuality/attachment/binary")));
+    /** Set containing the XPath node expressions of the table elements of the attachments that should be indexed in the secondary index */
+    private static final Set<String> TABLE_XPATHS = Collections.unmodifiableSet(
+            new HashSet<>(Arrays.asList("/qcML/runQuality/attachment/table", "/qcML/setQuality/attachment/table")));
+    /** Set containing the XPath node expressions of the metaDataParameters whose values can be indexed */
+    private static final Set<String> META_DATA_XPATHS = Collections.unmodifiableSet(
+            new HashSet<>(Arrays.asList("/qcML/runQuality/metaDataParameter", "/qcML/setQuality/metaDataParameter")));
+
+    /** The number of tables whose row index is retained */
+    private static final int TABLE_ROW_INDEX_CACHE_SIZE = 16;
+
+    /** The number of bytes that are read at once when decoding a binary attachment */
+    private static final int BINARY_BUFFER_SIZE = 64 * 1024;
+
+    /** Orders the entries of an ID mapping by the offset of the XML elements in the qcML file */
+    private static final Comparator<Map.Entry<String, IndexElement>> OFFSET_ORDER = new Comparator<Map.Entry<String, IndexElement>>() {
+        @Override
+        public int compare(Map.Entry<String, IndexElement> o1, Map.Entry<String, IndexElement> o2) {
+            return Long.compare(o1.getValue().getStart(), o2.getValue().getStart());
+        }
+    };
+
+    /** The number of bytes preceding the checkpoint that are verified before the index is extended */
+    private static final int CHECKPOINT_WINDOW = 4096;
 
     /** The qcML file that is indexed */
     private File qcmlFile;
 
-    private StandardXpathAccess access;
-    private XmlElementExtractor xmlExtractor;
-    private XpathIndex index;
+    /** The settings used to create the index */
+    private IndexConfiguration configuration;
+    /** The fingerprint of the qcML file when it was (last) indexed */
+    private volatile FileFingerprint fingerprint;
+    /** The encoding of the qcML file, or {@code null} if no encoding was detected */
+    private volatile String encoding;
+    /** The offset directly after the last indexed quality assessment, or -1 if no quality assessments were indexed */
+    private long checkpoint;
+    /** The checksum over the start of the qcML file, up to the checkpoint */
+    private long headerChecksum;
+    /** The checksum over the bytes preceding the checkpoint */
+    private long checkpointChecksum;
+
+    private volatile XmlElementExtractor xmlExtractor;
+
+    /** Flag indicating whether XML snippets are read from a memory mapping of the qcML file */
+    private boolean memoryMapped;
+    /** The gzip-compressed qcML file, {@code null} if the qcML file isn't compressed */
+    private volatile GzipFile gzipFile;
+    /** The encoding of the qcML file, {@code null} if not supported */
+    private volatile Charset charset;
+    /** The memory mapping of the qcML file, lazily created when the first XML snippet is read */
+    private MappedFile mappedFile;
+    /** The open channels of the qcML file, lazily created when the first XML snippet is read */
+    private FileChannelPool channelPool;
+    /** The number of users that have retained the index and haven't released it yet */
+    private int references;
+    /** Flag indicating whether the index has been closed */
+    private boolean closed;
+    /** The spilled ID mappings that have been replaced by an update while the index was retained, closed once it's released */
+    private final List<SpillingIdMapping> retiredMappings = new ArrayList<>();
+    /** The Bloom filter over the IDs in the ID mappings, which is extended when data is appended, {@code null} until it's first required */
+    private IdBloomFilter filter;
+
+    /** Flag indicating whether the qcML file was validated while it was indexed */
+    private boolean validated;
+    /** The first error encountered while validating the qcML file, {@code null} if the file is valid or wasn't validated */
+    private SAXException validationError;
+
+    /** Mapping between XML elements and their index in the qcML file */
+    @SuppressWarnings("rawtypes")
+    private volatile Map<Class, Map<String, IndexElement>> idMap;
+    /** Mapping between parameters and their index in the qcML file by quality assessment ID and accession number, {@code null} if not indexed */
+    @SuppressWarnings("rawtypes")
+    private volatile Map<Class, Map<String, Map<String, IndexElement>>> parameterMap;
+    /** The values of the selected metaDataParameters, {@code null} if no metadata is indexed */
+    private volatile MetaDataIndex metaDataIndex;
+    /** The unmarshalled Cv's by their ID, {@code null} until they are first requested */
+    private volatile Map<String, Cv> cvCache;
+
+    /** The row indexes of the most recently read tables, by the start offset of the table element */
+    private final Map<Long, TableRowIndex> tableRowIndexes = new LinkedHashMap<Long, TableRowIndex>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, TableRowIndex> eldest) {
+            return size() > TABLE_ROW_INDEX_CACHE_SIZE;
+        }
+    };
+
+    /**
+     * Creates an XXIndex containing offsets for all runQualitys, setQualitys and Cv's.
+     *
+     * @param file  The qcML file for which the index is created.
+     */
+    public QcMLIndexer(File file) {
+        this(file, new IndexConfiguration());
+    }
+
+    /**
+     * Creates an index containing offsets for all runQualitys, setQualitys and Cv's.
+     *
+     * If the given configuration specifies a persistent index, a previously stored index is reused if the file hasn't changed.
+     * Otherwise a new index is created using the configured {@link IndexEngine} (and stored if required).
+     *
+     * @param file  The qcML file for which the index is created.
+     * @param configuration  The {@link IndexConfiguration} specifying how the index is created
+     */
+    public QcMLIndexer(File file, IndexConfiguration configuration) {
+        this(file, configuration, configuration.isPersistent() ? readIndexFile(file, configuration) : null);
+    }
+
+    /**
+     * Creates an index containing offsets for all runQualitys, setQualitys and Cv's, while validating the qcML file against the given schema.
+     *
+     * The validation, the detection of the encoding, and the creation of the index all happen in a single pass over the qcML file.
+     * This pass uses the byte scanner regardless of the configured {@link IndexEngine}.
+     * Only if the encoding isn't supported by the byte scanner or the file isn't well-formed XML,
+     * the index is created separately using the configured IndexEngine.
+     *
+     * A previously stored index is never reused, because the qcML file needs to be read to validate it anyway.
+     * The result of the validation is available through {@link #isValidated()} and {@link #getValidationError()}.
+     *
+     * @param file  The qcML file for which the index is created.
+     * @param configuration  The {@link IndexConfiguration} specifying how the index is created
+     * @param schema  The {@link Schema} against which the qcML file is validated
+     */
+    public QcMLIndexer(File file, IndexConfiguration configuration, Schema schema) {
+        this(file, configuration, null, schema);
+    }
+
+    /**
+     * Creates an index for the given qcML file from the given index contents.
+     *
+     * The index contents should be up to date with the qcML file.
+     * If no index contents are given, a new index is created using the configured {@link IndexEngine} (and stored if required).
+     *
+     * @param file  The qcML file for which the index is created.
+     * @param configuration  The {@link IndexConfiguration} specifying how the index is created
+     * @param indexFile  The previously created index contents, or {@code null} to create a new index
+     */
+    QcMLIndexer(File file, IndexConfiguration configuration, IndexFile indexFile) {
+        this(file, configuration, indexFile, null);
+    }
+
+    /**
+     * Creates an index for the given qcML file from the given index contents, or by indexing the qcML file.
+     *
+     * @param file  The qcML file for which the index is created.
+     * @param configuration  The {@link IndexConfiguration} specifying how the index is created
+     * @param indexFile  The previously created index contents, or {@code null} to create a new index
+     * @param schema  The {@link Schema} against which the qcML file is validated while a new index is created, or {@code null} to skip validation
+     */
+    private QcMLIndexer(File file, IndexConfiguration configuration, IndexFile indexFile, Schema schema) {
+        qcmlFile = file;
+        this.configuration = configuration;
+        memoryMapped = configuration.isMemoryMapped();
+
+        // create an XML element extractor
+        xmlExtractor = new SimpleXmlElementExtractor();
+
+        if(indexFile != null) {
+            if(indexFile.getEncoding() != null) {
+                xmlExtractor.setEncoding(indexFile.getEncoding());
+            }
+            idMap = indexFile.getIDMappings();
+            parameterMap = indexFile.getParameterMappings();
+            metaDataIndex = indexFile.getMetaDataIndex();
+            fingerprint = indexFile.getFingerprint();
+            encoding = indexFile.getEncoding();
+            charset = toCharset(encoding);
+            filter = indexFile.getFilter();
+        }
+
+        try {
+            gzipFile = openGzipFile(qcmlFile);
+
+            if(indexFile == null) {
+                // fingerprint the file prior to indexing, so a concurrent modification invalidates the index
+                fingerprint = FileFingerprint.of(qcmlFile);
+
+                encoding = schema != null ? createValidatedIndex(configuration, schema) : createIndex(configuration);
+                charset = toCharset(encoding);
+
+                if(configuration.isPersistent()) {
+                    writeIndexFile();
+                }
+            }
+
+            applyMemoryBudget(idMap);
+            updateCheckpoint();
+        } catch (IOException e) {
+            LOGGER.error("Could not generate an index for qcML file <{}>: {}", qcmlFile.getAbsolutePath(), e);
+            throw new IllegalStateException("Could not generate an index for qcML file: " + qcmlFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Starts creating an index for the given qcML file in the background.
+     *
+     * The returned {@link IndexBuild} reports the progress of the index creation, can be used to look up elements
+     * before the index is complete, and can be cancelled.
+     * Its result is the same QcMLIndexer as would be created by {@link #QcMLIndexer(File, IndexConfiguration)}.
+     *
+     * @param file  The qcML file for which the index is created.
+     * @param configuration  The {@link IndexConfiguration} specifying how the index is created
+     * @param executor  The {@link Executor} that runs the index creation
+     * @return The {@link IndexBuild} that results in the created QcMLIndexer
+     */
+    public static IndexBuild createAsync(File file, IndexConfiguration configuration, Executor executor) {
+        if(file == null) {
+            LOGGER.error("The qcML file is not allowed to be <null>");
+            throw new NullPointerException("The qcML file is not allowed to be <null>");
+        }
+        IndexBuild build = new IndexBuild(file, configuration);
+        executor.execute(build);
+        return build;
+    }
+
+    /**
+     * Starts creating an index for the given qcML file in a new background thread.
+     *
+     * @param file  The qcML file for which the index is created.
+     * @param configuration  The {@link IndexConfiguration} specifying how the index is created
+     * @return The {@link IndexBuild} that results in the created QcMLIndexer
+     * @see #createAsync(File, IndexConfiguration, Executor)
+     */
+    public static IndexBuild createAsync(File file, IndexConfiguration configuration) {
+        return createAsync(file, configuration, new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                Thread thread = new Thread(command, "jqcml-index");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        });
+    }
+
+    /**
+     * Opens the given file as a gzip-compressed file if applicable.
+     *
+     * @param file  The qcML file
+     * @return The {@link GzipFile} to read the decompressed data, or {@code null} if the file isn't gzip-compressed
+     * @throws IOException
+     */
+    private static GzipFile openGzipFile(File file) throws IOException {
+        if(GzipFile.isGzip(file)) {
+            LOGGER.info("Read compressed qcML file <{}>", file.getAbsolutePath());
+            return new GzipFile(file);
+        }
+        return null;
+    }
+
+    /**
+     * Reads a previously stored index for the given qcML file.
+     *
+     * @param file  The qcML file for which the index was stored
+     * @param configuration  The {@link IndexConfiguration} specifying how the index is created
+     * @return The stored index if it is up to date and contains all required mappings, {@code null} otherwise
+     */
+    static IndexFile readIndexFile(File file, IndexConfiguration configuration) {
+        IndexFile indexFile = IndexFile.read(file);
+        if(indexFile != null && configuration.isParameterIndex() && indexFile.getParameterMappings() == null) {
+            LOGGER.info("Ignore index file <{}> without parameter index", IndexFile.getSidecar(file).getAbsolutePath());
+            indexFile = null;
+        }
+        Set<String> accessions = configuration.getMetaDataAccessions();
+        if(indexFile != null && !accessions.isEmpty() && (indexFile.getMetaDataIndex() == null
+                || !indexFile.getMetaDataIndex().getAccessions().containsAll(accessions))) {
+            LOGGER.info("Ignore index file <{}> without metadata index for accessions {}", IndexFile.getSidecar(file).getAbsolutePath(), accessions);
+            indexFile = null;
+        }
+        if(indexFile != null) {
+            LOGGER.info("Load index from <{}>", IndexFile.getSidecar(file).getAbsolutePath());
+        }
+        return indexFile;
+    }
+
+    /**
+     * Checks whether the given qcML file might contain an element with the given ID, without loading its full index.
+     *
+     * The check uses the Bloom filter stored in the persistent index of the qcML file (see {@link IndexConfiguration#setPersistent(boolean)}),
+     * and thus never gives a false negative but can give a false positive.
+     *
+     * @param file  The qcML file that is checked
+     * @param id  The ID of a runQuality, setQuality, Cv, or (if indexed) qualityParameter
+     * @return False if the qcML file definitely doesn't contain an element with the given ID,
+     *         true if it might contain such an element or if no up-to-date persistent index is available
+     */
+    public static boolean mightContain(File file, String id) {
+        IdBloomFilter filter = IndexFile.readFilter(file);
+        return filter == null || filter.mightContain(id);
+    }
+
+    /**
+     * Returns the contents of this index, which can be stored and subsequently reused.
+     *
+     * @return The contents of this index
+     */
+    synchronized IndexFile toIndexFile() {
+        if(filter == null) {
+            filter = IdBloomFilter.of(idMap);
+        }
+        return new IndexFile(fingerprint, encoding, filter.copy(), idMap, parameterMap, metaDataIndex);
+    }
+
+    /**
+     * Writes the full index to the sidecar file of the qcML file.
+     *
+     * The Bloom filter is created anew, with room for the IDs of the data that is subsequently appended to the qcML file,
+     * so the index of the appended data can be appended to the sidecar file (see {@link IndexFile#append}).
+     */
+    private void writeIndexFile() {
+        filter = IdBloomFilter.of(idMap, 2);
+        toIndexFile().write(qcmlFile);
+    }
+
+    /**
+     * Updates the index if the qcML file has been modified since it was indexed.
+     *
+     * If data has been appended to the qcML file, only the new data is indexed:
+     * the existing index is extended starting from the end of the last indexed runQuality or setQuality.
+     * This requires that the data preceding that point is unchanged, and that the encoding of the file is supported by the byte scanner.
+     * Otherwise the full file is indexed anew.
+     *
+     * The updated mappings are created separately and only replace the current mappings once they are complete,
+     * so lookups can continue concurrently with the update.
+     *
+     * @return True if the qcML file was modified and the index has been updated, false if the index was still up to date
+     */
+    public boolean refresh() {
+        // cheap check whether the file has been modified, which doesn't block concurrent lookups
+        FileFingerprint known = fingerprint;
+        if(qcmlFile.length() == known.getLength() && qcmlFile.lastModified() == known.getLastModified()) {
+            return false;
+        }
+        return update();
+    }
+
+    /**
+     * Updates the index for the modified qcML file.
+     *
+     * @return True if the qcML file was modified and the index has been updated, false if the index was still up to date
+     */
+    private synchronized boolean update() {
+        try {
+            FileFingerprint current = FileFingerprint.of(qcmlFile);
+            if(current.equals(fingerprint)) {
+                return false;
+            }
+
+            FileFingerprint previous = fingerprint;
+            long previousCheckpoint = checkpoint;
+            IndexFile appended = null;
+            boolean stored;
+            if(isAppended(current)) {
+                LOGGER.info("Index the data appended to qcML file <{}> from offset {}", qcmlFile.getAbsolutePath(), checkpoint);
+                appended = appendIndex(current);
+                fingerprint = current;
+                updateChecksums();
+                stored = false;
+            } else {
+                LOGGER.info("Recreate the index for modified qcML file <{}>", qcmlFile.getAbsolutePath());
+                adopt(new QcMLIndexer(qcmlFile, configuration, null, null));
+                stored = configuration.isPersistent();
+            }
+
+            // the previous validation doesn't cover the modifications
+            validated = false;
+            validationError = null;
+
+            // the memory mapping doesn't cover the new data
+            mappedFile = null;
+            // the file might have been replaced
+            closeChannels();
+
+            // the tables might have moved
+            tableRowIndexes.clear();
+            // the Cv's might have changed
+            cvCache = null;
+
+            if(configuration.isPersistent() && !stored) {
+                // the sidecar file is written in full once the Bloom filter is full, so its size remains proportional to the index
+                if(appended == null || filter == null || filter.getCapacity() < countIds()
+                        || !IndexFile.append(qcmlFile, previous, previousCheckpoint, appended, filter)) {
+                    writeIndexFile();
+                }
+            }
+
+            return true;
+
+        } catch (IOException e) {
+            LOGGER.error("Could not update the index for qcML file <{}>: {}", qcmlFile.getAbsolutePath(), e);
+            throw new IllegalStateException("Could not update the index for qcML file: " + qcmlFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Checks whether the qcML file has only been modified after the checkpoint, so the existing index can be extended.
+     *
+     * @param current  The current fingerprint of the qcML file
+     * @return True if the index can be extended starting from the checkpoint, false if the full file needs to be indexed anew
+     * @throws IOException
+     */
+    private boolean isAppended(FileFingerprint current) throws IOException {
+        if(checkpoint < 0 || current.getLength() <= checkpoint || current.getLength() < fingerprint.getLength()
+                || charset == null || !XmlScanner.isSupported(charset)) {
+            return false;
+        }
+        // the start of the file, and the data preceding the checkpoint, should be unchanged
+        return FileFingerprint.checksum(qcmlFile, 0, Math.min(checkpoint, FileFingerprint.HEADER_SIZE)) == headerChecksum &&
+                FileFingerprint.checksum(qcmlFile, Math.max(0, checkpoint - CHECKPOINT_WINDOW), checkpoint) == checkpointChecksum;
+    }
+
+    /**
+     * Extends the index with the elements located after the checkpoint.
+     *
+     * The qcML file is scanned starting from the checkpoint into new mappings, which are appended to the current mappings
+     * (see {@link AppendedMap}), so the cost of the update depends on the size of the appended data rather than on the size of the index.
+     * The elements of the current mappings that are located after the checkpoint (such as the Cv's) are scanned anew,
+     * and are excluded from the extended mappings without having to remove them.
+     * The current mappings aren't modified, and are replaced by the extended mappings when they are complete.
+     *
+     * @param current  The current fingerprint of the qcML file
+     * @return The index of the appended data
+     * @throws IOException
+     */
+    @SuppressWarnings("rawtypes")
+    private IndexFile appendIndex(FileFingerprint current) throws IOException {
+        final long memoryBudget = configuration.getMemoryBudget();
+        Map<Class, Map<String, IndexElement>> scannedIdMap = new HashMap<>();
+        Map<Class, Map<String, Map<String, IndexElement>>> scannedParameterMap = parameterMap != null ? new HashMap<Class, Map<String, Map<String, IndexElement>>>() : null;
+        MetaDataIndex scannedMetaDataIndex = metaDataIndex != null ? new MetaDataIndex(metaDataIndex.getAccessions()) : null;
+        Map<Class, Map<String, IndexElement>> updatedIdMap = new HashMap<>();
+        Map<Class, Map<String, Map<String, IndexElement>>> updatedParameterMap = null;
+        long updatedCheckpoint = checkpoint;
+
+        try {
+            // the checkpoint is located directly within the qcML root element
+            QcMLScanHandler handler = new QcMLScanHandler(scannedIdMap, scannedParameterMap, scannedMetaDataIndex);
+            handler.setMemoryBudget(memoryBudget);
+            new XmlScanner(handler, charset, checkpoint, 1).scan(qcmlFile);
+
+            Map<String, IndexElement> qaMapping = scannedIdMap.get(QualityAssessment.class);
+            if(qaMapping != null) {
+                for(IndexElement elem : qaMapping.values()) {
+                    updatedCheckpoint = Math.max(updatedCheckpoint, elem.getStop());
+                }
+            }
+
+            Supplier<Map<String, IndexElement>> factory = () -> memoryBudget > 0 ? new SpillingIdMapping(memoryBudget) : new CompactIdMapping();
+            Set<Class> classes = new HashSet<>(idMap.keySet());
+            classes.addAll(scannedIdMap.keySet());
+            for(Class cls : classes) {
+                Map<String, IndexElement> mapping = idMap.get(cls);
+                Map<String, IndexElement> scanned = scannedIdMap.get(cls);
+                updatedIdMap.put(cls, AppendedMap.ofIdMapping(mapping != null ? mapping : Collections.<String, IndexElement>emptyMap(), checkpoint, factory)
+                        .append(scanned != null ? scanned : Collections.<String, IndexElement>emptyMap(), updatedCheckpoint));
+            }
+
+            // the parameters are located within the quality assessments, so they all precede the checkpoint
+            if(parameterMap != null) {
+                updatedParameterMap = new HashMap<>();
+                Set<Class> parameterClasses = new HashSet<>(parameterMap.keySet());
+                parameterClasses.addAll(scannedParameterMap.keySet());
+                for(Class cls : parameterClasses) {
+                    Map<String, Map<String, IndexElement>> qaMappings = parameterMap.get(cls);
+                    Map<String, Map<String, IndexElement>> scanned = scannedParameterMap.get(cls);
+                    updatedParameterMap.put(cls, AppendedMap.<Map<String, IndexElement>>of(qaMappings != null ? qaMappings : Collections.<String, Map<String, IndexElement>>emptyMap(),
+                            HashMap::new).append(scanned != null ? scanned : Collections.<String, Map<String, IndexElement>>emptyMap(), Long.MAX_VALUE));
+                }
+            }
+        } catch(IOException | RuntimeException e) {
+            // the incomplete extension is discarded
+            Set<SpillingIdMapping> discarded = getSpilledMappings(scannedIdMap);
+            discarded.addAll(getSpilledMappings(updatedIdMap));
+            discarded.removeAll(getSpilledMappings(idMap));
+            for(SpillingIdMapping mapping : discarded) {
+                mapping.close();
+            }
+            throw e;
+        }
+
+        if(filter != null) {
+            for(Map<String, IndexElement> mapping : scannedIdMap.values()) {
+                for(String id : mapping.keySet()) {
+                    filter.add(id);
+                }
+            }
+        }
+
+        Map<Class, Map<String, IndexElement>> previousIdMap = idMap;
+        parameterMap = updatedParameterMap;
+        metaDataIndex = metaDataIndex != null ? metaDataIndex.append(scannedMetaDataIndex) : null;
+        idMap = updatedIdMap;
+        checkpoint = updatedCheckpoint;
+        retire(previousIdMap);
+
+        return new IndexFile(current, encoding, null, scannedIdMap, scannedParameterMap, scannedMetaDataIndex);
+    }
+
+    /**
+     * Takes over the contents of the given index, which has been created anew for the same qcML file.
+     *
+     * @param recreated  The index that was created for the modified qcML file
+     */
+    @SuppressWarnings("rawtypes")
+    private void adopt(QcMLIndexer recreated) {
+        Map<Class, Map<String, IndexElement>> previousIdMap = idMap;
+        gzipFile = recreated.gzipFile;
+        xmlExtractor = recreated.xmlExtractor;
+        encoding = recreated.encoding;
+        charset = recreated.charset;
+        parameterMap = recreated.parameterMap;
+        metaDataIndex = recreated.metaDataIndex;
+        idMap = recreated.idMap;
+        checkpoint = recreated.checkpoint;
+        headerChecksum = recreated.headerChecksum;
+        checkpointChecksum = recreated.checkpointChecksum;
+        fingerprint = recreated.fingerprint;
+        filter = recreated.filter;
+        retire(previousIdMap);
+    }
+
+    /**
+     * Closes the spilled ID mappings that have been replaced by an update of the index.
+     *
+     * If the index is retained, its users might still be using the replaced ID mappings (e.g. while iterating),
+     * so they're only closed once the index has been released by all users.
+     * Spilled ID mappings that are shared with the current ID mappings (see {@link AppendedMap}) remain open.
+     *
+     * @param replaced  The ID mappings that have been replaced
+     */
+    @SuppressWarnings("rawtypes")
+    private synchronized void retire(Map<Class, Map<String, IndexElement>> replaced) {
+        Set<SpillingIdMapping> used = getSpilledMappings(idMap);
+        for(SpillingIdMapping mapping : getSpilledMappings(replaced)) {
+            if(!used.contains(mapping)) {
+                retiredMappings.add(mapping);
+            }
+        }
+        if(references == 0) {
+            closeRetiredMappings();
+        }
+    }
+
+    private synchronized void closeRetiredMappings() {
+        for(SpillingIdMapping mapping : retiredMappings) {
+            mapping.close();
+        }
+        retiredMappings.clear();
+    }
+
+    /**
+     * Returns the spilled ID mappings among the given ID mappings, including the spilled segments of extended ID mappings.
+     *
+     * @param mappings  The ID mappings by class type
+     * @return The spilled ID mappings, compared by identity
+     */
+    @SuppressWarnings("rawtypes")
+    private static Set<SpillingIdMapping> getSpilledMappings(Map<Class, Map<String, IndexElement>> mappings) {
+        Set<SpillingIdMapping> spilled = Collections.newSetFromMap(new IdentityHashMap<SpillingIdMapping, Boolean>());
+        for(Map<String, IndexElement> mapping : getSegments(mappings.values())) {
+            if(mapping instanceof SpillingIdMapping) {
+                spilled.add((SpillingIdMapping) mapping);
+            }
+        }
+        return spilled;
+    }
+
+    /**
+     * Returns the given mappings, with each extended mapping replaced by the mappings of its segments.
+     *
+     * @param mappings  The mappings
+     * @return The mappings that store the elements
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, IndexElement>> getSegments(Collection<Map<String, IndexElement>> mappings) {
+        List<Map<String, IndexElement>> segments = new ArrayList<>();
+        for(Map<String, IndexElement> mapping : mappings) {
+            if(mapping instanceof AppendedMap) {
+                segments.addAll(((AppendedMap<IndexElement>) mapping).getSegments());
+            } else {
+                segments.add(mapping);
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * Counts the IDs in the ID mappings.
+     *
+     * @return The number of IDs
+     */
+    private int countIds() {
+        int nrOfIds = 0;
+        for(Map<String, IndexElement> mapping : idMap.values()) {
+            nrOfIds += mapping.size();
+        }
+        return nrOfIds;
+    }
+
+    /**
+     * Limits the memory used by the ID mappings to the configured memory budget.
+     *
+     * Each ID mapping that exceeds the memory budget is replaced by a {@link SpillingIdMapping}.
+     * This applies to ID mappings that have been created by the XXIndex or the parallel byte scanner, or that have been loaded from a sidecar file,
+     * whereas the sequential byte scanner creates spilling ID mappings directly.
+     *
+     * @param mappings  The ID mappings by class type, whose values are replaced if required
+     */
+    @SuppressWarnings("rawtypes")
+    private void applyMemoryBudget(Map<Class, Map<String, IndexElement>> mappings) {
+        long memoryBudget = configuration.getMemoryBudget();
+        if(memoryBudget > 0) {
+            for(Map.Entry<Class, Map<String, IndexElement>> entry : mappings.entrySet()) {
+                if(entry.getValue() instanceof CompactIdMapping && ((CompactIdMapping) entry.getValue()).estimateMemory() > memoryBudget) {
+                    LOGGER.info("Spill the ID mapping of {} elements exceeding the memory budget", entry.getKey().getSimpleName());
+                    entry.setValue(new SpillingIdMapping(entry.getValue(), memoryBudget));
+                }
+            }
+        }
+    }
+
+    /**
+     * Sets the checkpoint directly after the last indexed quality assessment.
+     *
+     * @throws IOException
+     */
+    private void updateCheckpoint() throws IOException {
+        checkpoint = -1;
+        if(gzipFile != null) {
+            // the compressed data can't be scanned from an arbitrary offset, so a modified file is always indexed anew
+            return;
+        }
+        Map<String, IndexElement> qaMapping = idMap.get(QualityAssessment.class);
+        if(qaMapping != null) {
+            for(IndexElement elem : qaMapping.values()) {
+                checkpoint = Math.max(checkpoint, elem.getStop());
+            }
+        }
+        updateChecksums();
+    }
+
+    /**
+     * Computes the checksums that are used to verify that the data preceding the checkpoint is unchanged.
+     *
+     * @throws IOException
+     */
+    private void updateChecksums() throws IOException {
+        if(checkpoint >= 0) {
+            headerChecksum = FileFingerprint.checksum(qcmlFile, 0, Math.min(checkpoint, FileFingerprint.HEADER_SIZE));
+            checkpointChecksum = FileFingerprint.checksum(qcmlFile, Math.max(0, checkpoint - CHECKPOINT_WINDOW), checkpoint);
+        }
+    }
+
+    /**
+     * Creates an index containing offsets for all runQualitys, setQualitys and Cv's.
+     *
+     * A gzip-compressed qcML file is always indexed by scanning the decompressed data, regardless of the configured {@link IndexEngine}.
+     *
+     * @param configuration  The {@link IndexConfiguration} specifying how the index is created
+     * @return The detected encoding of the qcML file, or {@code null} if no encoding was detected
+     * @throws IOException
+     */
+    private String createIndex(IndexConfiguration configuration) throws IOException {
+        IndexEngine engine = configuration.getEngine();
+        int parallelism = configuration.getParallelism();
+        boolean indexParameters = configuration.isParameterIndex();
+        Set<String> metaDataAccessions = configuration.getMetaDataAccessions();
+
+        if(gzipFile != null) {
+            return scanCompressedIndex(configuration);
+        }
+
+        // detect the encoding of the file
+        String encoding = xmlExtractor.detectFileEncoding(qcmlFile.toURI().toURL());
+        if(encoding != null) {
+            LOGGER.info("XML file encoding: {}", encoding);
+            xmlExtractor.setEncoding(encoding);
+        }
+
+        if(engine == IndexEngine.BYTE_SCANNER || engine == IndexEngine.PARALLEL_BYTE_SCANNER) {
+            Charset charset = toCharset(encoding);
+            if(charset != null && XmlScanner.isSupported(charset)) {
+                if(engine == IndexEngine.PARALLEL_BYTE_SCANNER && parallelism > 1
+                        && qcmlFile.length() >= 2 * ParallelScanIndexer.MIN_CHUNK_SIZE) {
+                    LOGGER.info("Create ID mappings by scanning the file in parallel");
+                    QcMLScanHandler handler = new ParallelScanIndexer(qcmlFile, charset, parallelism, indexParameters, metaDataAccessions).scan();
+                    idMap = handler.getIDMappings();
+                    parameterMap = handler.getParameterMappings();
+                    metaDataIndex = handler.getMetaDataIndex();
+                } else {
+                    scanIndex(charset, configuration);
+                }
+                return encoding;
+            } else {
+                LOGGER.info("Encoding <{}> not supported by the byte scanner, fall back to XXIndex", encoding);
+            }
+        }
+
+        LOGGER.info("Create XXIndex");
+
+        // generate an XXIndex for the QualityAssessments (runQuality & setQuality) and Cv's
+        Set<String> xpaths = new HashSet<>(INDEXED_XPATHS);
+        if(indexParameters) {
+            // and for the parameters within the QualityAssessments
+            xpaths.addAll(PARAMETER_XPATHS);
+            xpaths.addAll(BINARY_XPATHS);
+            xpaths.addAll(TABLE_XPATHS);
+        }
+        if(!metaDataAccessions.isEmpty()) {
+            // and for the metaDataParameters whose values are indexed
+            xpaths.addAll(META_DATA_XPATHS);
+        }
+        StandardXpathAccess access = new StandardXpathAccess(qcmlFile, xpaths);
+
+        // generate ID mappings for all index elements
+        idMap = new HashMap<>();
+        createIDMappings(access);
+        if(indexParameters) {
+            createParameterMappings(access);
+        }
+        metaDataIndex = metaDataAccessions.isEmpty() ? null : createMetaDataIndex(access, metaDataAccessions);
+
+        return encoding;
+    }
+
+    /**
+     * Creates an index containing offsets for all runQualitys, setQualitys and Cv's, while validating the qcML file against the given schema.
+     *
+     * @param configuration  The {@link IndexConfiguration} specifying how the index is created
+     * @param schema  The {@link Schema} against which the qcML file is validated
+     * @return The detected encoding of the qcML file, or {@code null} if no encoding was detected
+     * @throws IOException
+     */
+    private String createValidatedIndex(IndexConfiguration configuration, Schema schema) throws IOException {
+        LOGGER.info("Validate and create ID mappings in a single pass");
+
+        QcMLScanHandler handler = new QcMLScanHandler(configuration.isParameterIndex(), configuration.getMetaDataAccessions());
+        handler.setMemoryBudget(configuration.getMemoryBudget());
+        FirstErrorHandler errorHandler = new FirstErrorHandler();
+        SAXException fatalError = null;
+        ScanningInputStream in = new ScanningInputStream(gzipFile != null ? gzipFile.openStream(0) : new FileInputStream(qcmlFile), handler);
+        try {
+            Validator validator = schema.newValidator();
+            validator.setErrorHandler(errorHandler);
+            validator.validate(new StreamSource(in, qcmlFile.toURI().toString()));
+        } catch(SAXException e) {
+            // fatal error, the file isn't well-formed
+            fatalError = e;
+        } finally {
+            // make sure the remainder of the file is scanned
+            in.close();
+        }
+
+        validated = true;
+        validationError = errorHandler.getFirstError() != null ? errorHandler.getFirstError() : fatalError;
+        if(validationError != null) {
+            LOGGER.info("File <{}> does not contain valid qcML content: {}", qcmlFile.getAbsolutePath(), validationError.getMessage());
+        }
+
+        if(fatalError == null && in.isScanned()) {
+            String encoding = in.getEncoding();
+            if(encoding != null) {
+                LOGGER.info("XML file encoding: {}", encoding);
+                xmlExtractor.setEncoding(encoding);
+            }
+            idMap = handler.getIDMappings();
+            parameterMap = handler.getParameterMappings();
+            metaDataIndex = handler.getMetaDataIndex();
+            return encoding;
+        } else {
+            LOGGER.info("Unable to create ID mappings while validating, index the file separately");
+            return createIndex(configuration);
+        }
+    }
+
+    /**
+     * Creates ID mappings for all indexed XML elements by scanning the qcML file once.
+     *
+     * The offsets and the ID attribute of each indexed element are recorded in the same pass.
+     *
+     * @param charset  The encoding of the qcML file
+     * @param configuration  The {@link IndexConfiguration} specifying which elements are indexed
+     * @throws IOException
+     */
+    private void scanIndex(Charset charset, IndexConfiguration configuration) throws IOException {
+        LOGGER.info("Create ID mappings by scanning the file");
+
+        QcMLScanHandler handler = new QcMLScanHandler(configuration.isParameterIndex(), configuration.getMetaDataAccessions());
+        handler.setMemoryBudget(configuration.getMemoryBudget());
+        new XmlScanner(handler, charset).scan(qcmlFile);
+
+        idMap = handler.getIDMappings();
+        parameterMap = handler.getParameterMappings();
+        metaDataIndex = handler.getMetaDataIndex();
+    }
+
+    /**
+     * Creates ID mappings for all indexed XML elements by scanning the decompressed data of a gzip-compressed qcML file once.
+     *
+     * The offsets in the ID mappings refer to the decompressed data.
+     *
+     * @param configuration  The {@link IndexConfiguration} specifying which elements are indexed
+     * @return The detected encoding of the qcML file, or {@code null} if no encoding was detected
+     * @throws IOException if the file could not be read, or if its encoding isn't supported by the byte scanner
+     */
+    private String scanCompressedIndex(IndexConfiguration configuration) throws IOException {
+        LOGGER.info("Create ID mappings by scanning the decompressed file");
+
+        QcMLScanHandler handler = new QcMLScanHandler(configuration.isParameterIndex(), configuration.getMetaDataAccessions());
+        handler.setMemoryBudget(configuration.getMemoryBudget());
+        ScanningInputStream in = new ScanningInputStream(gzipFile.openStream(0), handler);
+        // closing the stream scans all remaining bytes
+        in.close();
+        if(!in.isScanned()) {
+            throw new IOException("Encoding <" + in.getEncoding() + "> of compressed file " + qcmlFile.getAbsolutePath() + " not supported by the byte scanner");
+        }
+
+        String encoding = in.getEncoding();
+        if(encoding != null) {
+            LOGGER.info("XML file encoding: {}", encoding);
+            xmlExtractor.setEncoding(encoding);
+        }
+        idMap = handler.getIDMappings();
+        parameterMap = handler.getParameterMappings();
+        metaDataIndex = handler.getMetaDataIndex();
+        return encoding;
+    }
+
+    /**
+     * Gives the {@link Charset} for the given encoding.
+     *
+     * @param encoding  The name of the encoding, if {@code null} the XML default UTF-8 is assumed
+     * @return The Charset for the given encoding, or {@code null} if the encoding is not supported
+     */
+    static Charset toCharset(String encoding) {
+        if(encoding == null) {
+            return StandardCharsets.UTF_8;
+        }
+        try {
+            return Charset.forName(encoding);
+        } catch(IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns a set containing all XPath node expressions that need to be stored in the index.
+     *
+     * These node expressions refer to the runQuality, setQuality ({@link QualityAssessment}) and {@link Cv} objects.
+     *
+     * @return A set containing all XPath node expressions that need to be stored in the index
+     */
+    private static Set<String> getIndexedXPaths() {
+        Set<String> xpathsToIndex = new HashSet<>();
+
+        // index all runQuality, setQuality and Cv
+        xpathsToIndex.add("/qcML/runQuality");
+        xpathsToIndex.add("/qcML/setQuality");
+        xpathsToIndex.add("/qcML/cvList/cv");
+
+        // finally make the set unmodifiable
+        xpathsToIndex = Collections.unmodifiableSet(xpathsToIndex);
+
+        return xpathsToIndex;
+    }
+
+    /**
+     * Returns a set containing all XPath node expressions of the parameters that need to be stored in the secondary index.
+     *
+     * These node expressions refer to the {@link MetaDataParameter}, {@link QualityParameter} and {@link AttachmentParameter} objects.
+     *
+     * @return A set containing all XPath node expressions of the parameters that need to be stored in the secondary index
+     */
+    private static Set<String> getParameterXPaths() {
+        Set<String> xpathsToIndex = new HashSet<>();
+
+        // index all parameters of runQuality and setQuality
+        for(String qa : new String[] { "/qcML/runQuality", "/qcML/setQuality" }) {
+            xpathsToIndex.add(qa + "/metaDataParameter");
+            xpathsToIndex.add(qa + "/qualityParameter");
+            xpathsToIndex.add(qa + "/attachment");
+        }
+
+        // finally make the set unmodifiable
+        xpathsToIndex = Collections.unmodifiableSet(xpathsToIndex);
+
+        return xpathsToIndex;
+    }
+
+    /**
+     * Indicates whether the qcML file was validated while it was indexed.
+     *
+     * The validation no longer applies when the index is updated for modifications to the qcML file (see {@link #refresh()}).
+     *
+     * @return True if the current version of the qcML file was validated, false otherwise
+     */
+    public synchronized boolean isValidated() {
+        return validated;
+    }
+
+    /**
+     * Returns the first error that was encountered while validating the qcML file.
+     *
+     * @return The first validation error, or {@code null} if the qcML file is valid or wasn't validated
+     */
+    public synchronized SAXException getValidationError() {
+        return validationError;
+    }
+
+    /**
+     * Returns the ID mappings for the specified class type.
+     *
+     * @param clss  The class type for which the ID mappings are returned
+     * @return The ID mappings for the specified class type
+     */
+    public Map<String, IndexElement> getIDMapping(@SuppressWarnings("rawtypes") Class clss) {
+        return idMap.get(clss);
+    }
+
+    /**
+     * Returns the offsets of the elements of the specified class type, in the order in which they occur in the qcML file.
+     *
+     * The offsets are copied into primitive arrays, so no {@link IndexElement} is created per element.
+     *
+     * @param clss  The class type for which the element offsets are returned
+     * @return The offsets of the elements of the specified class type, empty if the class type isn't indexed
+     */
+    public ElementOffsets getOffsets(@SuppressWarnings("rawtypes") Class clss) {
+        Map<String, IndexElement> mapping = idMap.get(clss);
+        return mapping != null ? ElementOffsets.of(mapping) : ElementOffsets.EMPTY;
+    }
+
+    /**
+     * Returns statistics about the contents of the qcML file, derived solely from this index.
+     *
+     * The setQuality elements are recorded separately while indexing, so no data needs to be read from the qcML file.
+     * The statistics share the current ID mappings, which are replaced rather than modified when the index is refreshed,
+     * so nothing is copied.
+     *
+     * @return The {@link QcMLStatistics} for the current qcML file
+     */
+    public synchronized QcMLStatistics getStatistics() {
+        LOGGER.info("Compute statistics from the index of qcML file <{}>", qcmlFile.getAbsolutePath());
+        return new QcMLStatistics(qcmlFile, fingerprint.getLength(), idMap);
+    }
+
+    /**
+     * Estimates the number of bytes of main memory used by the ID mappings of this index.
+     *
+     * @return The estimated number of bytes used by the ID mappings
+     */
+    @SuppressWarnings("rawtypes")
+    public synchronized long estimateMemory() {
+        List<Map<String, IndexElement>> mappings = getSegments(idMap.values());
+        if(parameterMap != null) {
+            for(Map<String, Map<String, IndexElement>> qaMappings : parameterMap.values()) {
+                mappings.addAll(qaMappings.values());
+            }
+        }
+
+        long memory = 0;
+        for(Map<String, IndexElement> mapping : mappings) {
+            if(mapping instanceof CompactIdMapping) {
+                memory += ((CompactIdMapping) mapping).estimateMemory();
+            } else if(mapping instanceof SpillingIdMapping) {
+                memory += ((SpillingIdMapping) mapping).estimateMemory();
+            }
+        }
+        return memory;
+    }
+
+    /**
+     * Creates ID mappings for all indexed XML elements.
+     *
+     * The indexed XML elements are runQuality, setQuality and Cv, which should all have an ID attribute.
+     * The elements of each class type are ordered by their offset in the qcML file.
+     *
+     * @param access  The XXIndex access to the qcML file
+     * @throws IOException
+     */
+    private void createIDMappings(StandardXpathAccess access) throws IOException {
+        LOGGER.info("Create ID mappings");
+
+        // create ID mappings for all types of indexed elements
+        for(String xpath : INDEXED_XPATHS) {
+            @SuppressWarnings("rawtypes")
+            Class cls = xpathToClass(xpath);
+            List<IndexElement> elements = access.getIndex().getElements(xpath);
+            // create ID mappings for all separate elements
+            for(IndexElement elem : elements) {
+                // get the start tag (including all the attributes, and hence the ID)
+                String xmlSnippet = access.getStartTag(elem);
+                String id = extractIDFromRawXML(xmlSnippet);
+                // combine the XPath expression with the ID to create a unique hash key
+                if(id != null) {
+                    // initialize a HashMap for this class if it doesn't exist yet
+                    if(idMap.get(cls) == null) {
+                        idMap.put(cls, new CompactIdMapping());
+                    }
+                    // store the new mapping
+                    idMap.get(cls).put(id, elem);
+                    // record which quality assessments are setQuality elements
+                    if("/qcML/setQuality".equals(xpath)) {
+                        if(idMap.get(SetQuality.class) == null) {
+                            idMap.put(SetQuality.class, new CompactIdMapping());
+                        }
+                        idMap.get(SetQuality.class).put(id, elem);
+                    }
+                } else {
+                    LOGGER.error("Error initializing ID mappings: No ID attribute found for element: {}", xmlSnippet);
+                    throw new IllegalStateException("Error initializing ID mappings: No ID attribute found for element: " + xmlSnippet);
+                }
+            }
+        }
+
+        // runQuality and setQuality elements are indexed separately, so restore the order in which they occur in the file
+        for(@SuppressWarnings("rawtypes") Map.Entry<Class, Map<String, IndexElement>> entry : idMap.entrySet()) {
+            entry.setValue(sortByOffset(entry.getValue()));
+        }
+    }
+
+    /**
+     * Orders the entries of the given ID mapping by their offset in the qcML file.
+     *
+     * @param mapping  The ID mapping that is ordered
+     * @return A new ID mapping containing the same entries ordered by ascending offset
+     */
+    private static Map<String, IndexElement> sortByOffset(Map<String, IndexElement> mapping) {
+        List<Map.Entry<String, IndexElement>> entries = new ArrayList<>(mapping.entrySet());
+        Collections.sort(entries, OFFSET_ORDER);
+
+        Map<String, IndexElement> sorted = new CompactIdMapping(entries.size());
+        for(Map.Entry<String, IndexElement> entry : entries) {
+            sorted.put(entry.getKey(), entry.getValue());
+        }
+        return sorted;
+    }
+
+    /**
+     * Creates the secondary index for all indexed parameters.
+     *
+     * Each parameter is mapped by its accession number within the enclosing runQuality or setQuality.
+     * Additionally, the qualityParameters are mapped by their ID, so they can be retrieved when referenced by an attachment.
+     *
+     * @param access  The XXIndex access to the qcML file
+     * @throws IOException
+     */
+    private void createParameterMappings(StandardXpathAccess access) throws IOException {
+        LOGGER.info("Create parameter mappings");
+
+        parameterMap = new HashMap<>();
+
+        // sort the QualityAssessments by their offset to find the QualityAssessment enclosing each parameter
+        Map<String, IndexElement> qaMapping = idMap.get(QualityAssessment.class);
+        TreeMap<Long, String> qaByStart = new TreeMap<>();
+        if(qaMapping != null) {
+            for(Map.Entry<String, IndexElement> entry : qaMapping.entrySet()) {
+                qaByStart.put(entry.getValue().getStart(), entry.getKey());
+            }
+        }
+
+        for(String xpath : PARAMETER_XPATHS) {
+            @SuppressWarnings("rawtypes")
+            Class cls = xpathToClass(xpath);
+            for(IndexElement elem : access.getIndex().getElements(xpath)) {
+                // find the enclosing QualityAssessment
+                Map.Entry<Long, String> qa = qaByStart.floorEntry(elem.getStart());
+                if(qa == null || qaMapping.get(qa.getValue()).getStop() < elem.getStop()) {
+                    continue;
+                }
+
+                // get the start tag (including all the attributes, and hence the accession number)
+                String xmlSnippet = access.getStartTag(elem);
+                Matcher match = ACCESSION_PATTERN.matcher(xmlSnippet);
+                if(!match.find()) {
+                    LOGGER.error("Error initializing parameter mappings: No accession attribute found for element: {}", xmlSnippet);
+                    throw new IllegalStateException("Error initializing parameter mappings: No accession attribute found for element: " + xmlSnippet);
+                }
+
+                // initialize the HashMaps for this class and QualityAssessment if they don't exist yet
+                if(parameterMap.get(cls) == null) {
+                    parameterMap.put(cls, new HashMap<String, Map<String, IndexElement>>());
+                }
+                if(parameterMap.get(cls).get(qa.getValue()) == null) {
+                    parameterMap.get(cls).put(qa.getValue(), new CompactIdMapping());
+                }
+                // store the new mapping
+                parameterMap.get(cls).get(qa.getValue()).put(match.group(1), elem);
+
+                // map the qualityParameters by their ID as well
+                if(cls == QualityParameter.class) {
+                    String id = extractIDFromRawXML(xmlSnippet);
+                    if(id == null) {
+                        LOGGER.error("Error initializing ID mappings: No ID attribute found for element: {}", xmlSnippet);
+                        throw new IllegalStateException("Error initializing ID mappings: No ID attribute found for element: " + xmlSnippet);
+                    }
+                    if(idMap.get(cls) == null) {
+                        idMap.put(cls, new CompactIdMapping());
+                    }
+                    idMap.get(cls).put(id, elem);
+                }
+            }
+        }
+
+        createAttachmentContentMappings(access, BINARY_XPATHS, AttachmentBinary.class);
+        createAttachmentContentMappings(access, TABLE_XPATHS, AttachmentTable.class);
+    }
+
+    /**
+     * Adds the binary or table elements of the attachments to the secondary index, by the accession number of their enclosing attachment.
+     *
+     * @param access  The XXIndex access to the qcML file
+     * @param xpaths  The XPath node expressions of the binary or table elements
+     * @param cls  The class type under which the elements are stored in the secondary index, i.e. {@link AttachmentBinary} or {@link AttachmentTable}
+     * @throws IOException
+     */
+    private void createAttachmentContentMappings(StandardXpathAccess access, Set<String> xpaths, @SuppressWarnings("rawtypes") Class cls) throws IOException {
+        // sort the attachments by their offset to find the attachment enclosing each element
+        TreeMap<Long, String[]> attachmentsByStart = new TreeMap<>();
+        Map<String, Map<String, IndexElement>> attachmentMappings = parameterMap.get(AttachmentParameter.class);
+        if(attachmentMappings == null) {
+            return;
+        }
+        for(Map.Entry<String, Map<String, IndexElement>> qaEntry : attachmentMappings.entrySet()) {
+            for(Map.Entry<String, IndexElement> entry : qaEntry.getValue().entrySet()) {
+                attachmentsByStart.put(entry.getValue().getStart(), new String[] { qaEntry.getKey(), entry.getKey() });
+            }
+        }
+
+        for(String xpath : xpaths) {
+            for(IndexElement elem : access.getIndex().getElements(xpath)) {
+                Map.Entry<Long, String[]> attachment = attachmentsByStart.floorEntry(elem.getStart());
+                if(attachment == null) {
+                    continue;
+                }
+                String qaId = attachment.getValue()[0];
+                String accession = attachment.getValue()[1];
+                if(attachmentMappings.get(qaId).get(accession).getStop() < elem.getStop()) {
+                    continue;
+                }
+
+                // initialize the HashMaps for this class and this QualityAssessment if they don't exist yet
+                if(parameterMap.get(cls) == null) {
+                    parameterMap.put(cls, new HashMap<String, Map<String, IndexElement>>());
+                }
+                if(parameterMap.get(cls).get(qaId) == null) {
+                    parameterMap.get(cls).put(qaId, new CompactIdMapping());
+                }
+                // store the new mapping
+                parameterMap.get(cls).get(qaId).put(accession, elem);
+            }
+        }
+    }
+
+    /**
+     * Creates the metadata index from the metaDataParameters with the given accession numbers.
+     *
+     * @param access  The XXIndex access to the qcML file
+     * @param accessions  The accession numbers of the metaDataParameters whose values are indexed
+     * @return The metadata index containing the values of the selected metaDataParameters
+     * @throws IOException
+     */
+    private MetaDataIndex createMetaDataIndex(StandardXpathAccess access, Set<String> accessions) throws IOException {
+        LOGGER.info("Create metadata index");
+
+        MetaDataIndex index = new MetaDataIndex(accessions);
+
+        // sort the QualityAssessments by their offset to find the QualityAssessment enclosing each metaDataParameter
+        Map<String, IndexElement> qaMapping = idMap.get(QualityAssessment.class);
+        TreeMap<Long, String> qaByStart = new TreeMap<>();
+        if(qaMapping != null) {
+            for(Map.Entry<String, IndexElement> entry : qaMapping.entrySet()) {
+                qaByStart.put(entry.getValue().getStart(), entry.getKey());
+            }
+        }
+
+        // retrieve the metaDataParameters in file order, so the values are recorded in the order of the QualityAssessments
+        List<IndexElement> elements = new ArrayList<>();
+        for(String xpath : META_DATA_XPATHS) {
+            elements.addAll(access.getIndex().getElements(xpath));
+        }
+        Collections.sort(elements, new Comparator<IndexElement>() {
+            @Override
+            public int compare(IndexElement o1, IndexElement o2) {
+                return Long.compare(o1.getStart(), o2.getStart());
+            }
+        });
+
+        for(IndexElement elem : elements) {
+            // find the enclosing QualityAssessment
+            Map.Entry<Long, String> qa = qaByStart.floorEntry(elem.getStart());
+            if(qa == null || qaMapping.get(qa.getValue()).getStop() < elem.getStop()) {
+                continue;
+            }
+
+            String xmlSnippet = access.getStartTag(elem);
+            Matcher accession = ACCESSION_PATTERN.matcher(xmlSnippet);
+            if(accession.find() && index.isIndexed(accession.group(1))) {
+                Matcher value = VALUE_PATTERN.matcher(xmlSnippet);
+                index.put(qa.getValue(), accession.group(1), value.find() ? StartTag.unescape(value.group(1)) : null);
+            }
+        }
+
+        return index;
+    }
+
+    /**
+     * Gives the class type based on XPath node expressions.
+     *
+     * @param xpath  The XPath node expression for which we want the class type
+     * @return The class type if it corresponds to an indexed XPath node expression, {@code null} else
+     */
+    private @SuppressWarnings("rawtypes") Class xpathToClass(String xpath) {
+        switch(xpath) {
+            case "/qcML/runQuality":
+                return QualityAssessment.class;
+            case "/qcML/setQuality":
+                return QualityAssessment.class;
+            case "/qcML/cvList/cv":
+                return Cv.class;
+            case "/qcML/runQuality/metaDataParameter":
+            case "/qcML/setQuality/metaDataParameter":
+                return MetaDataParameter.class;
+            case "/qcML/runQuality/qualityParameter":
+            case "/qcML/setQuality/qualityParameter":
+                return QualityParameter.class;
+            case "/qcML/runQuality/attachment":
+            case "/qcML/setQuality/attachment":
+                return AttachmentParameter.class;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Extracts the ID attribute from an XML element.
+     *
+     * @param xml  The opening tag (containing the attributes) from the XML element
+     * @return The ID attribute from the given XML element if found, {@code null} otherwise
+     */
+    private String extractIDFromRawXML(String xml) {
+        Matcher match = ID_PATTERN.matcher(xml);
+        return match.find() ? match.group(1) : null;
+    }
+
+    /**
+     * Returns the XML snippet specified by the given class and ID attribute.
+     *
+     * @param cls  The class to which the XML element will be mapped
+     * @param id  The XML ID attribute of the required element
+     * @return The XML snippet corresponding to the specified class with the specified ID attribute if found, {@code null} otherwise
+     */
+    public String getXMLSnippet(@SuppressWarnings("rawtypes") Class cls, String id) {
+        // check if a mapping for the given class with the given ID exists
+        Map<String, IndexElement> mapping = idMap.get(cls);
+        if(mapping != null) {
+            IndexElement elem = mapping.get(id);
+            return elem != null ? readXML(elem) : null;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the XML element specified by the given class and ID attribute as an {@link InputSource}.
+     *
+     * @param cls  The class to which the XML element will be mapped
+     * @param id  The XML ID attribute of the required element
+     * @return An InputSource reading the XML element corresponding to the specified class with the specified ID attribute if found, {@code null} otherwise
+     * @see #openXML(IndexElement)
+     */
+    public InputSource getXMLSource(@SuppressWarnings("rawtypes") Class cls, String id) {
+        Map<String, IndexElement> mapping = idMap.get(cls);
+        if(mapping != null) {
+            IndexElement elem = mapping.get(id);
+            return elem != null ? openXML(elem) : null;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Returns all {@link Cv}'s in the qcML file by their ID.
+     *
+     * The Cv's are unmarshalled in a single pass over the cvList when they are first requested,
+     * after which the same thread-safe cache is returned to all callers until the index is updated for a modified qcML file.
+     * As such, references to Cv's can be resolved without reading from the qcML file.
+     * Because the Cv's are mutable and shared by all callers, they should be copied before they are exposed to users.
+     *
+     * @param unmarshal  The function used to unmarshal a Cv from its XML element
+     * @return A thread-safe map containing the Cv's in the qcML file by their ID
+     */
+    public Map<String, Cv> getCvCache(Function<InputSource, Cv> unmarshal) {
+        Map<String, Cv> result = cvCache;
+        if(result == null) {
+            synchronized(this) {
+                result = cvCache;
+                if(result == null) {
+                    result = loadCvs(unmarshal);
+                    cvCache = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Unmarshals all {@link Cv}'s in the qcML file.
+     *
+     * @param unmarshal  The function used to unmarshal a Cv from its XML element
+     * @return A thread-safe map containing the Cv's in the qcML file by their ID
+     */
+    private Map<String, Cv> loadCvs(Function<InputSource, Cv> unmarshal) {
+        Map<String, Cv> cvs = new ConcurrentHashMap<>();
+        Map<String, IndexElement> mapping = idMap.get(Cv.class);
+        if(mapping != null && !mapping.isEmpty()) {
+            LOGGER.info("Load the Cv's from qcML file <{}>", qcmlFile.getAbsolutePath());
+            // the Cv's are ordered by their offsets, so the cvList is read only once
+            try(SequentialXmlReader reader = createSequentialReader()) {
+                for(Map.Entry<String, IndexElement> entry : mapping.entrySet()) {
+                    Cv cv = unmarshal.apply(reader.openXML(entry.getValue()));
+                    if(cv != null) {
+                        cvs.put(entry.getKey(), cv);
+                    }
+                }
+            } catch(IOException e) {
+                LOGGER.error("Could not read the Cv's from file <{}>: ", qcmlFile, e);
+                throw new IllegalStateException("Could not read the Cv's from file: " + qcmlFile);
+            }
+        }
+        return cvs;
+    }
+
+    /**
+     * Indicates whether the secondary index of the parameters within each runQuality and setQuality is available.
+     *
+     * @return True if the parameters are indexed, false otherwise
+     */
+    public boolean hasParameterIndex() {
+        return parameterMap != null;
+    }
+
+    /**
+     * Returns the parameter mappings by accession number for the specified class type and quality assessment.
+     *
+     * @param cls  The class type of the parameters, either {@link MetaDataParameter}, {@link QualityParameter} or {@link AttachmentParameter}
+     * @param qaId  The ID of the runQuality or setQuality containing the parameters
+     * @return The parameter mappings by accession number if found, {@code null} otherwise
+     */
+    public Map<String, IndexElement> getParameterMapping(@SuppressWarnings("rawtypes") Class cls, String qaId) {
+        if(parameterMap != null) {
+            Map<String, Map<String, IndexElement>> mapping = parameterMap.get(cls);
+            return mapping != null ? mapping.get(qaId) : null;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the XML snippet of the parameter specified by the given class, quality assessment and accession number.
+     *
+     * @param cls  The class to which the XML element will be mapped
+     * @param qaId  The ID of the runQuality or setQuality containing the parameter
+     * @param accession  The accession number of the required parameter
+     * @return The XML snippet corresponding to the specified parameter if found, {@code null} otherwise
+     */
+    public String getXMLSnippet(@SuppressWarnings("rawtypes") Class cls, String qaId, String accession) {
+        Map<String, IndexElement> mapping = getParameterMapping(cls, qaId);
+        if(mapping != null) {
+            IndexElement elem = mapping.get(accession);
+            return elem != null ? readXML(elem) : null;
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the start tag of the XML element of the parameter specified by the given class, quality assessment and accession number.
+     *
+     * Only the start of the XML element is read, so its attributes can be inspected without reading its (possibly large) content.
+     *
+     * @param cls  The class to which the XML element will be mapped
+     * @param qaId  The ID of the runQuality or setQuality containing the parameter
+     * @param accession  The accession number of the required parameter
+     * @return The start tag of the XML element corresponding to the specified parameter if found, {@code null} otherwise
+     */
+    public String getStartTag(@SuppressWarnings("rawtypes") Class cls, String qaId, String accession) {
+        Map<String, IndexElement> mapping = getParameterMapping(cls, qaId);
+        IndexElement elem = mapping != null ? mapping.get(accession) : null;
+        if(elem == null) {
+            return null;
+        }
+
+        // read an increasingly larger prefix until it contains the end of the start tag
+        long length = Math.min(elem.getStop() - elem.getStart(), Integer.MAX_VALUE);
+        for(long peek = START_TAG_PEEK; ; peek *= 2) {
+            String xmlSnippet = readXML(elem, peek < length ? (int) peek : 0);
+            int end = xmlSnippet.indexOf('>');
+            if(end >= 0) {
+                return xmlSnippet.substring(0, end + 1);
+            } else if(peek >= length) {
+                return xmlSnippet;
+            }
+        }
+    }
+
+    /**
+     * Returns the XML element of the parameter specified by the given class, quality assessment and accession number as an {@link InputSource}.
+     *
+     * @param cls  The class to which the XML element will be mapped
+     * @param qaId  The ID of the runQuality or setQuality containing the parameter
+     * @param accession  The accession number of the required parameter
+     * @return An InputSource reading the XML element corresponding to the specified parameter if found, {@code null} otherwise
+     * @see #openXML(IndexElement)
+     */
+    public InputSource getXMLSource(@SuppressWarnings("rawtypes") Class cls, String qaId, String accession) {
+        Map<String, IndexElement> mapping = getParameterMapping(cls, qaId);
+        if(mapping != null) {
+            IndexElement elem = mapping.get(accession);
+            return elem != null ? openXML(elem) : null;
+        } else {
+            return null;
+        }
+    }
 
-    /** Mapping between XML elements and their index in the qcML file */
-    @SuppressWarnings("rawtypes")
-    private Map<Class, Map<String, IndexElement>> idMap;
+    /**
+     * Returns the values of the metaDataParameters that were selected to be indexed (see {@link IndexConfiguration#setMetaDataAccessions(Set)}).
+     *
+     * @return The {@link MetaDataIndex} of the qcML file, or {@code null} if no metadata is indexed
+     */
+    public synchronized MetaDataIndex getMetaDataIndex() {
+        return metaDataIndex;
+    }
 
     /**
-     * Creates an XXIndex containing offsets for all runQualitys, setQualitys and Cv's.
+     * Returns the offset range of the binary element of the specified attachment.
      *
-     * @param file  The qcML file for which the index is created.
+     * The binary elements are only indexed as part of the secondary index (see {@link IndexConfiguration#setParameterIndex(boolean)}).
+     *
+     * @param qaId  The ID of the runQuality or setQuality containing the attachment
+     * @param accession  The accession number of the attachment
+     * @return The offset range of the binary element of the specified attachment if found, {@code null} otherwise
      */
-    @SuppressWarnings("rawtypes")
-    public QcMLIndexer(File file) {
-        try {
-            LOGGER.info("Create XXIndex");
+    public IndexElement getBinaryRange(String qaId, String accession) {
+        Map<String, IndexElement> mapping = getParameterMapping(AttachmentBinary.class, qaId);
+        return mapping != null ? mapping.get(accession) : null;
+    }
 
-            qcmlFile = file;
+    /**
+     * Decodes the binary data of the specified attachment and writes it to the given stream.
+     *
+     * The base64-encoded data is read from the qcML file and decoded in blocks, so the memory usage doesn't depend on the size of the attachment.
+     * The given stream isn't closed.
+     *
+     * @param qaId  The ID of the runQuality or setQuality containing the attachment
+     * @param accession  The accession number of the attachment
+     * @param out  The stream to which the decoded binary data is written
+     * @return The number of decoded bytes written to the stream, or -1 if the attachment doesn't contain (indexed) binary data
+     */
+    public long writeBinary(String qaId, String accession, OutputStream out) {
+        if(out == null) {
+            LOGGER.error("The output stream is not allowed to be <null>");
+            throw new NullPointerException("The output stream is not allowed to be <null>");
+        }
 
-            // generate an XXIndex for the QualityAssessments (runQuality & setQuality) and Cv's
-            access = new StandardXpathAccess(qcmlFile, INDEXED_XPATHS);
+        IndexElement byteRange = getBinaryRange(qaId, accession);
+        if(byteRange == null) {
+            return -1;
+        }
 
-            // create an XML element extractor
-            xmlExtractor = new SimpleXmlElementExtractor();
-            String encoding = xmlExtractor.detectFileEncoding(qcmlFile.toURI().toURL());
-            if(encoding != null) {
-                LOGGER.info("XML file encoding: {}", encoding);
-                xmlExtractor.setEncoding(encoding);
+        CountingOutputStream counter = new CountingOutputStream(out);
+        try(OutputStream decoder = new Base64OutputStream(counter, false)) {
+            if(charset != null && XmlScanner.isSupported(charset)) {
+                // the base64 characters are single bytes, which can be decoded directly
+                try(InputStream in = openStream(byteRange.getStart())) {
+                    copyBinaryContent(in, byteRange.getStop() - byteRange.getStart(), decoder);
+                }
+            } else {
+                String xmlSnippet = readXML(byteRange);
+                int start = xmlSnippet.indexOf('>') + 1;
+                int stop = xmlSnippet.indexOf('<', start);
+                decoder.write(xmlSnippet.substring(start, stop < 0 ? xmlSnippet.length() : stop).getBytes(StandardCharsets.US_ASCII));
             }
+        } catch(IOException e) {
+            LOGGER.error("Could not decode the binary data of attachment <{}> in <{}> from file <{}>: ", accession, qaId, qcmlFile, e);
+            throw new IllegalStateException("Could not decode the binary data of attachment " + accession + " from file: " + qcmlFile);
+        }
 
-            // get the index
-            index = access.getIndex();
-
-            // generate ID mappings for all index elements
-            idMap = new HashMap<>();
-            createIDMappings();
+        return counter.getCount();
+    }
 
-        } catch (IOException e) {
-            LOGGER.error("Could not generate an index for qcML file <{}>: {}", qcmlFile.getAbsolutePath(), e);
-            throw new IllegalStateException("Could not generate an index for qcML file: " + qcmlFile.getAbsolutePath());
+    /**
+     * Decodes the binary data of the specified attachment and writes it to the given channel.
+     *
+     * @param qaId  The ID of the runQuality or setQuality containing the attachment
+     * @param accession  The accession number of the attachment
+     * @param channel  The channel to which the decoded binary data is written, which isn't closed
+     * @return The number of decoded bytes written to the channel, or -1 if the attachment doesn't contain (indexed) binary data
+     */
+    public long writeBinary(String qaId, String accession, WritableByteChannel channel) {
+        if(channel == null) {
+            LOGGER.error("The output channel is not allowed to be <null>");
+            throw new NullPointerException("The output channel is not allowed to be <null>");
         }
+        return writeBinary(qaId, accession, Channels.newOutputStream(channel));
     }
 
     /**
-     * Returns a set containing all XPath node expressions that need to be stored in the index.
+     * Returns the offset range of the table element of the specified attachment.
      *
-     * These node expressions refer to the runQuality, setQuality ({@link QualityAssessment}) and {@link Cv} objects.
+     * The table elements are only indexed as part of the secondary index (see {@link IndexConfiguration#setParameterIndex(boolean)}).
      *
-     * @return A set containing all XPath node expressions that need to be stored in the index
+     * @param qaId  The ID of the runQuality or setQuality containing the attachment
+     * @param accession  The accession number of the attachment
+     * @return The offset range of the table element of the specified attachment if found, {@code null} otherwise
      */
-    private static Set<String> getIndexedXPaths() {
-        Set<String> xpathsToIndex = new HashSet<>();
-
-        // index all runQuality, setQuality and Cv
-        xpathsToIndex.add("/qcML/runQuality");
-        xpathsToIndex.add("/qcML/setQuality");
-        xpathsToIndex.add("/qcML/cvList/cv");
-
-        // finally make the set unmodifiable
-        xpathsToIndex = Collections.unmodifiableSet(xpathsToIndex);
+    public IndexElement getTableRange(String qaId, String accession) {
+        Map<String, IndexElement> mapping = getParameterMapping(AttachmentTable.class, qaId);
+        return mapping != null ? mapping.get(accession) : null;
+    }
 
-        return xpathsToIndex;
+    /**
+     * Returns the number of rows of the table of the specified attachment.
+     *
+     * @param qaId  The ID of the runQuality or setQuality containing the attachment
+     * @param accession  The accession number of the attachment
+     * @return The number of rows of the table, or -1 if the attachment doesn't contain an (indexed) table
+     */
+    public int getNumberOfTableRows(String qaId, String accession) {
+        TableRowIndex rowIndex = getTableRowIndex(qaId, accession);
+        return rowIndex != null ? rowIndex.getNumberOfRows() : -1;
     }
 
     /**
-     * Returns the ID mappings for the specified class type.
+     * Reads the column names of the table of the specified attachment.
      *
-     * @param clss  The class type for which the ID mappings are returned
-     * @return The ID mappings for the specified class type
+     * @param qaId  The ID of the runQuality or setQuality containing the attachment
+     * @param accession  The accession number of the attachment
+     * @return The column names of the table, or {@code null} if the attachment doesn't contain an (indexed) table
      */
-    public Map<String, IndexElement> getIDMapping(@SuppressWarnings("rawtypes") Class clss) {
-        return idMap.get(clss);
+    public String[] readTableColumns(String qaId, String accession) {
+        TableRowIndex rowIndex = getTableRowIndex(qaId, accession);
+        if(rowIndex == null) {
+            return null;
+        }
+        IndexElement columns = rowIndex.getColumnsRange();
+        return columns != null ? splitTableValues(readBytes(columns)) : new String[0];
     }
 
     /**
-     * Creates ID mappings for all indexed XML elements.
+     * Reads the specified rows of the table of the specified attachment.
      *
-     * The indexed XML elements are runQuality, setQuality and Cv, which should all have an ID attribute.
+     * The first time a table is accessed, the offsets of its rows are determined by scanning the table element.
+     * Subsequently only the requested rows are read from the qcML file.
      *
-     * @throws IOException
+     * @param qaId  The ID of the runQuality or setQuality containing the attachment
+     * @param accession  The accession number of the attachment
+     * @param fromRow  The index of the first requested row (inclusive), starting from 0
+     * @param toRow  The index of the last requested row (exclusive), rows beyond the end of the table are ignored
+     * @return The values of each requested row, or {@code null} if the attachment doesn't contain an (indexed) table
      */
-    private void createIDMappings() throws IOException {
-        LOGGER.info("Create ID mappings");
+    public List<String[]> readTableRows(String qaId, String accession, int fromRow, int toRow) {
+        if(fromRow < 0 || toRow < fromRow) {
+            LOGGER.error("Invalid table row range: [{}, {})", fromRow, toRow);
+            throw new IllegalArgumentException("Invalid table row range: [" + fromRow + ", " + toRow + ")");
+        }
 
-        // create ID mappings for all types of indexed elements
-        for(String xpath : INDEXED_XPATHS) {
-            @SuppressWarnings("rawtypes")
-            Class cls = xpathToClass(xpath);
-            List<IndexElement> elements = index.getElements(xpath);
-            // create ID mappings for all separate elements
-            for(IndexElement elem : elements) {
-                // get the start tag (including all the attributes, and hence the ID)
-                String xmlSnippet = access.getStartTag(elem);
-                String id = extractIDFromRawXML(xmlSnippet);
-                // combine the XPath expression with the ID to create a unique hash key
-                if(id != null) {
-                    // initialize a HashMap for this class if it doesn't exist yet
-                    if(idMap.get(cls) == null) {
-                        idMap.put(cls, new LinkedHashMap<String, IndexElement>());
-                    }
-                    // store the new mapping
-                    idMap.get(cls).put(id, elem);
-                } else {
-                    LOGGER.error("Error initializing ID mappings: No ID attribute found for element: {}", xmlSnippet);
-                    throw new IllegalStateException("Error initializing ID mappings: No ID attribute found for element: " + xmlSnippet);
-                }
-            }
+        TableRowIndex rowIndex = getTableRowIndex(qaId, accession);
+        if(rowIndex == null) {
+            return null;
+        }
+        toRow = Math.min(toRow, rowIndex.getNumberOfRows());
+        List<String[]> rows = new ArrayList<>(Math.max(toRow - fromRow, 0));
+        if(fromRow >= toRow) {
+            return rows;
+        }
+
+        // the requested rows are consecutive, so they are read at once
+        long start = rowIndex.getRowStart(fromRow);
+        ByteBuffer bytes = readBytes(new ByteRange(start, rowIndex.getRowStop(toRow - 1)));
+        for(int row = fromRow; row < toRow; row++) {
+            ByteBuffer rowBytes = bytes.duplicate();
+            rowBytes.limit((int) (rowIndex.getRowStop(row) - start));
+            rowBytes.position((int) (rowIndex.getRowStart(row) - start));
+            rows.add(splitTableValues(rowBytes));
         }
+        return rows;
     }
 
     /**
-     * Gives the class type based on XPath node expressions.
+     * Gives the row index of the table of the specified attachment, which is created the first time it is requested.
      *
-     * @param xpath  The XPath node expression for which we want the class type
-     * @return The class type if it corresponds to an indexed XPath node expression, {@code null} else
+     * @param qaId  The ID of the runQuality or setQuality containing the attachment
+     * @param accession  The accession number of the attachment
+     * @return The row index of the table, or {@code null} if the attachment doesn't contain an (indexed) table
      */
-    private @SuppressWarnings("rawtypes") Class xpathToClass(String xpath) {
-        switch(xpath) {
-            case "/qcML/runQuality":
-                return QualityAssessment.class;
-            case "/qcML/setQuality":
-                return QualityAssessment.class;
-            case "/qcML/cvList/cv":
-                return Cv.class;
-            default:
-                return null;
+    private synchronized TableRowIndex getTableRowIndex(String qaId, String accession) {
+        IndexElement tableRange = getTableRange(qaId, accession);
+        if(tableRange == null) {
+            return null;
+        }
+
+        TableRowIndex rowIndex = tableRowIndexes.get(tableRange.getStart());
+        if(rowIndex == null) {
+            Charset tableCharset = charset != null ? charset : StandardCharsets.UTF_8;
+            if(!XmlScanner.isSupported(tableCharset)) {
+                LOGGER.error("Encoding <{}> not supported to index the rows of a table", tableCharset);
+                throw new IllegalStateException("Encoding <" + tableCharset + "> not supported to index the rows of a table");
+            }
+            try(InputStream in = openStream(tableRange.getStart())) {
+                rowIndex = TableRowIndex.scan(in, tableRange, tableCharset);
+            } catch(IOException e) {
+                LOGGER.error("Could not index the rows of the table of attachment <{}>: ", accession, e);
+                throw new IllegalStateException("Could not index the rows of the table of attachment " + accession + ": " + e);
+            }
+            tableRowIndexes.put(tableRange.getStart(), rowIndex);
         }
+        return rowIndex;
     }
 
     /**
-     * Extracts the ID attribute from an XML element.
+     * Splits the content of a tableColumnTypes or tableRowValues element into its whitespace-separated values.
+     */
+    private String[] splitTableValues(ByteBuffer bytes) {
+        String content = StartTag.unescape((charset != null ? charset : StandardCharsets.UTF_8).decode(bytes).toString()).trim();
+        return content.isEmpty() ? new String[0] : content.split("\\s+");
+    }
+
+    /**
+     * Copies the character content of the specified binary element to the given stream, without its start and end tags.
      *
-     * @param xml  The opening tag (containing the attributes) from the XML element
-     * @return The ID attribute from the given XML element if found, {@code null} otherwise
+     * @param in  The stream positioned at the start of the binary element
+     * @param length  The length of the binary element
+     * @param out  The stream to which the character content is written
+     * @throws IOException
      */
-    private String extractIDFromRawXML(String xml) {
-        Matcher match = ID_PATTERN.matcher(xml);
-        return match.find() ? match.group(1) : null;
+    private static void copyBinaryContent(InputStream in, long length, OutputStream out) throws IOException {
+        byte[] bytes = new byte[BINARY_BUFFER_SIZE];
+        long position = 0;
+        boolean inContent = false;
+        while(position < length) {
+            int read = in.read(bytes, 0, (int) Math.min(bytes.length, length - position));
+            if(read <= 0) {
+                break;
+            }
+            position += read;
+
+            int offset = 0;
+            if(!inContent) {
+                // skip the start tag
+                while(offset < read && bytes[offset] != '>') {
+                    offset++;
+                }
+                if(offset == read) {
+                    continue;
+                }
+                inContent = true;
+                offset++;
+            }
+            // the content ends at the end tag
+            int end = offset;
+            while(end < read && bytes[end] != '<') {
+                end++;
+            }
+            out.write(bytes, offset, end - offset);
+            if(end < read) {
+                break;
+            }
+        }
     }
 
     /**
-     * Returns the XML snippet specified by the given class and ID attribute.
+     * Opens a stream of the (decompressed) qcML file starting at the given offset.
      *
-     * @param cls  The class to which the XML element will be mapped
-     * @param id  The XML ID attribute of the required element
-     * @return The XML snippet corresponding to the specified class with the specified ID attribute if found, {@code null} otherwise
+     * @param offset  The offset of the first byte of the stream
+     * @return A stream of the qcML file starting at the given offset
+     * @throws IOException
      */
-    public String getXMLSnippet(@SuppressWarnings("rawtypes") Class cls, String id) {
-        // check if a mapping for the given class with the given ID exists
-        Map<String, IndexElement> mapping = idMap.get(cls);
-        if(mapping != null) {
-            IndexElement elem = mapping.get(id);
-            return elem != null ? readXML(elem) : null;
-        } else {
-            return null;
+    private InputStream openStream(long offset) throws IOException {
+        if(gzipFile != null) {
+            return gzipFile.openStream(offset);
         }
+        return getChannelPool().openStream(offset);
     }
 
     /**
@@ -250,7 +1824,17 @@ public class QcMLIndexer {
                     // otherwise we will read up to the end of the XML element
                     stop = byteRange.getStop();
                 }
-                return xmlExtractor.readString(byteRange.getStart(), stop, qcmlFile);
+                if(gzipFile != null) {
+                    return new String(gzipFile.read(byteRange.getStart(), stop), charset != null ? charset : StandardCharsets.UTF_8);
+                } else if(charset == null) {
+                    return xmlExtractor.readString(byteRange.getStart(), stop, qcmlFile);
+                } else if(memoryMapped) {
+                    return getMappedFile().readString(byteRange.getStart(), stop, charset);
+                } else {
+                    ByteBuffer buffer = ByteBuffer.allocate((int) (stop - byteRange.getStart()));
+                    int read = getChannelPool().read(buffer, byteRange.getStart());
+                    return new String(buffer.array(), 0, read, charset);
+                }
             } else {
                 LOGGER.error("Invalid <null> IndexElement specified to be read");
                 throw new IllegalArgumentException("Invalid <null> IndexElement specified to be read");
@@ -260,4 +1844,253 @@ public class QcMLIndexer {
             throw new IllegalArgumentException("Could not extract XML from file: " + qcmlFile);
         }
     }
+
+    /**
+     * Returns the XML element specified by the given offset range as an {@link InputSource}, which can be parsed directly.
+     *
+     * The InputSource reads the raw bytes of the XML element, together with the encoding of the qcML file,
+     * so the XML element doesn't need to be decoded to a String first.
+     * If the index is memory mapped, the bytes are read directly from the mapping.
+     * If the encoding of the qcML file isn't supported, the XML element is decoded by the index instead.
+     *
+     * @param byteRange  The offset range for the requested XML element
+     * @return An InputSource reading the XML element specified by the given offset range
+     */
+    public InputSource openXML(IndexElement byteRange) {
+        if(charset == null) {
+            return new InputSource(new StringReader(readXML(byteRange)));
+        }
+
+        InputSource source = new InputSource(new ByteBufferInputStream(readBytes(byteRange)));
+        source.setEncoding(charset.name());
+        return source;
+    }
+
+    /**
+     * Creates a reader to read consecutive XML snippets from the current qcML file.
+     *
+     * The reader is optimized for snippets that are requested in ascending order of their offsets,
+     * such as when iterating over an ID mapping.
+     *
+     * For a gzip-compressed qcML file, the reader streams the decompressed data, so it should be closed after use.
+     *
+     * @return A {@link SequentialXmlReader} for the current qcML file
+     */
+    public SequentialXmlReader createSequentialReader() {
+        if(gzipFile != null) {
+            return new SequentialXmlReader(this, qcmlFile, gzipFile, charset);
+        }
+        return new SequentialXmlReader(this, qcmlFile, null, memoryMapped ? null : charset);
+    }
+
+    /**
+     * Returns the raw bytes of the XML element specified by the given offset range.
+     *
+     * If the index is memory mapped, the returned buffer is a read-only view on the mapping,
+     * so the XML element can be processed without copying or decoding it.
+     * For a gzip-compressed qcML file, the buffer contains the decompressed bytes.
+     *
+     * @param byteRange  The offset range for the requested XML element
+     * @return A buffer containing the raw bytes of the specified XML element
+     */
+    public ByteBuffer readBytes(IndexElement byteRange) {
+        if(byteRange == null) {
+            LOGGER.error("Invalid <null> IndexElement specified to be read");
+            throw new IllegalArgumentException("Invalid <null> IndexElement specified to be read");
+        }
+
+        try {
+            if(gzipFile != null) {
+                return ByteBuffer.wrap(gzipFile.read(byteRange.getStart(), byteRange.getStop())).asReadOnlyBuffer();
+            } else if(memoryMapped) {
+                return getMappedFile().slice(byteRange.getStart(), byteRange.getStop());
+            } else {
+                ByteBuffer buffer = ByteBuffer.allocate((int) (byteRange.getStop() - byteRange.getStart()));
+                getChannelPool().read(buffer, byteRange.getStart());
+                buffer.flip();
+                return buffer.asReadOnlyBuffer();
+            }
+        } catch (IOException e) {
+            LOGGER.error("Could not extract XML from file <{}>: ", qcmlFile, e);
+            throw new IllegalArgumentException("Could not extract XML from file: " + qcmlFile);
+        }
+    }
+
+    /**
+     * Returns the memory mapping of the qcML file, which is created the first time it is requested.
+     *
+     * @return The memory mapping of the qcML file
+     * @throws IOException
+     */
+    private synchronized MappedFile getMappedFile() throws IOException {
+        if(mappedFile == null) {
+            checkOpen();
+            LOGGER.info("Map qcML file <{}> into memory", qcmlFile.getAbsolutePath());
+            mappedFile = new MappedFile(qcmlFile);
+        }
+        return mappedFile;
+    }
+
+    /**
+     * Returns the pool of open channels of the qcML file, which is created the first time it is requested.
+     *
+     * @return The pool of open channels of the qcML file
+     */
+    synchronized FileChannelPool getChannelPool() {
+        if(channelPool == null) {
+            checkOpen();
+            channelPool = new FileChannelPool(qcmlFile);
+        }
+        return channelPool;
+    }
+
+    /**
+     * Closes the pooled channels of the qcML file, channels that are still in use are closed once they are released.
+     */
+    private synchronized void closeChannels() {
+        if(channelPool != null) {
+            try {
+                channelPool.close();
+            } catch(IOException e) {
+                LOGGER.warn("Could not close qcML file <{}>: {}", qcmlFile.getAbsolutePath(), e.getMessage());
+            }
+            channelPool = null;
+        }
+    }
+
+    /**
+     * Verifies that the qcML file can still be opened, i.e. the index hasn't been closed or is still retained by a user.
+     */
+    private void checkOpen() {
+        if(closed && references == 0) {
+            LOGGER.error("The index of qcML file <{}> has been closed", qcmlFile.getAbsolutePath());
+            throw new IllegalStateException("The index of qcML file has been closed: " + qcmlFile.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Retains the index for a user, so its open files aren't released when the index is closed while it's still in use.
+     *
+     * Each successful call should be followed by a call to {@link #release()} when the user no longer uses the index.
+     *
+     * @return True if the index has been retained, false if it has been closed already
+     */
+    public synchronized boolean retain() {
+        if(closed) {
+            return false;
+        }
+        references++;
+        return true;
+    }
+
+    /**
+     * Releases the index for a user that has retained it.
+     *
+     * If the index has been closed and this was its last user, the open files are released.
+     */
+    public synchronized void release() {
+        if(references == 0) {
+            LOGGER.error("The index of qcML file <{}> is released more often than it was retained", qcmlFile.getAbsolutePath());
+            throw new IllegalStateException("The index of qcML file is released more often than it was retained: " + qcmlFile.getAbsolutePath());
+        }
+        references--;
+        if(references == 0) {
+            closeRetiredMappings();
+            if(closed) {
+                releaseFiles();
+            }
+        }
+    }
+
+    /**
+     * Closes the index.
+     *
+     * If the index is still retained by some users, the open files are released once all users have released the index.
+     * Otherwise they are released immediately. Afterwards the index can no longer read from the qcML file,
+     * and the ID mappings that have been spilled to disk can no longer be used.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if(references == 0) {
+            releaseFiles();
+        }
+    }
+
+    /**
+     * Releases the open channels and the memory mapping of the qcML file, and the segment files of the spilled ID mappings.
+     */
+    private synchronized void releaseFiles() {
+        closeChannels();
+        mappedFile = null;
+        closeRetiredMappings();
+        for(SpillingIdMapping mapping : getSpilledMappings(idMap)) {
+            mapping.close();
+        }
+    }
+
+    /**
+     * Counts the bytes written to a stream, without closing the stream when it's closed itself.
+     */
+    private static class CountingOutputStream extends FilterOutputStream {
+
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    /**
+     * Records the first validation error, and only aborts the validation for fatal errors.
+     *
+     * Continuing after non-fatal errors allows the full qcML file to be indexed while it is validated.
+     */
+    private static class FirstErrorHandler implements ErrorHandler {
+
+        private SAXParseException firstError;
+
+        SAXParseException getFirstError() {
+            return firstError;
+        }
+
+        @Override
+        public void warning(SAXParseException exception) {
+            // ignore warnings
+        }
+
+        @Override
+        public void error(SAXParseException exception) {
+            if(firstError == null) {
+                firstError = exception;
+            }
+        }
+
+        @Override
+        public void fatalError(SAXParseException exception) throws SAXException {
+            error(exception);
+            throw exception;
+        }
+    }
 }
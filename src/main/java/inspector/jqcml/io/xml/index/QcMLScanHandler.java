@@ -0,0 +1,325 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import inspector.jqcml.model.AttachmentParameter;
+import inspector.jqcml.model.Cv;
+import inspector.jqcml.model.MetaDataParameter;
+import inspector.jqcml.model.QualityAssessment;
+import inspector.jqcml.model.QualityParameter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import psidev.psi.tools.xxindex.index.ByteRange;
+import psidev.psi.tools.xxindex.index.IndexElement;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Creates the ID mappings for a qcML file from the elements reported by an {@link XmlScanner}.
+ *
+ * The following XML elements are recorded:
+ *  - /qcML/runQuality
+ *  - /qcML/setQuality
+ *  - /qcML/cvList/cv
+ *
+ * Optionally the parameters of the runQuality and setQuality elements are recorded as well, by their accession number:
+ *  - /qcML/runQuality/metaDataParameter
+ *  - /qcML/runQuality/qualityParameter
+ *  - /qcML/runQuality/attachment
+ *  - /qcML/runQuality/attachment/binary (by the accession number of the attachment)
+ *  - /qcML/runQuality/attachment/table (by the accession number of the attachment)
+ *  - (and likewise for /qcML/setQuality)
+ *
+ * Optionally the values of selected metaDataParameters are recorded in a {@link MetaDataIndex}.
+ */
+class QcMLScanHandler implements XmlScanHandler {
+
+    private static final Logger LOGGER = LogManager.getLogger(QcMLScanHandler.class);
+
+    /** The maximum depth of the elements whose name is tracked to determine the path of an element */
+    static final int MAX_TRACKED_DEPTH = 3;
+
+    /** The local names of the elements that can be part of the path of an indexed element */
+    static final Set<String> INDEXED_NAMES = Collections.unmodifiableSet(
+            new HashSet<>(Arrays.asList("qcML", "runQuality", "setQuality", "cvList", "cv")));
+    /** The local names of the elements that can be part of the path of an indexed element, including the parameters */
+    static final Set<String> INDEXED_PARAMETER_NAMES = Collections.unmodifiableSet(
+            new HashSet<>(Arrays.asList("qcML", "runQuality", "setQuality", "cvList", "cv", "metaDataParameter", "qualityParameter", "attachment", "binary", "table")));
+    /** The local names of the elements that can be part of the path of an indexed element, including the metaDataParameters */
+    static final Set<String> INDEXED_META_DATA_NAMES = Collections.unmodifiableSet(
+            new HashSet<>(Arrays.asList("qcML", "runQuality", "setQuality", "cvList", "cv", "metaDataParameter")));
+
+    /** Flag indicating whether the parameters of the quality assessments are recorded */
+    private final boolean indexParameters;
+
+    /** The local names of the currently open elements, up to {@link #MAX_TRACKED_DEPTH} */
+    private final String[] path = new String[MAX_TRACKED_DEPTH + 1];
+
+    /** The start offsets of the currently open indexed elements by depth */
+    private final long[] openStart = new long[MAX_TRACKED_DEPTH + 1];
+    /** The IDs (or accession numbers for parameters) of the currently open indexed elements by depth */
+    private final String[] openId = new String[MAX_TRACKED_DEPTH + 1];
+    /** The ID of the currently open qualityParameter */
+    private String openParameterId;
+
+    /** Mapping between XML elements and their index in the qcML file */
+    @SuppressWarnings("rawtypes")
+    private final Map<Class, Map<String, IndexElement>> idMap;
+    /** Mapping between parameters and their index in the qcML file, by quality assessment ID and accession number */
+    @SuppressWarnings("rawtypes")
+    private final Map<Class, Map<String, Map<String, IndexElement>>> parameterMap;
+    /** The values of the selected metaDataParameters, or {@code null} if no metadata is recorded */
+    private final MetaDataIndex metaDataIndex;
+    /** The memory budget of the ID mapping of each class type, or 0 if unlimited */
+    private long memoryBudget;
+
+    /**
+     * Creates a QcMLScanHandler with empty ID mappings, which doesn't record parameters.
+     */
+    QcMLScanHandler() {
+        this(false);
+    }
+
+    /**
+     * Creates a QcMLScanHandler with empty ID mappings, which doesn't record metadata.
+     *
+     * @param indexParameters  flag indicating whether the parameters of the quality assessments are recorded
+     */
+    QcMLScanHandler(boolean indexParameters) {
+        this(indexParameters, Collections.<String>emptySet());
+    }
+
+    /**
+     * Creates a QcMLScanHandler with empty ID mappings.
+     *
+     * @param indexParameters  flag indicating whether the parameters of the quality assessments are recorded
+     * @param metaDataAccessions  the accession numbers of the metaDataParameters whose values are recorded, empty to not record metadata
+     */
+    QcMLScanHandler(boolean indexParameters, Set<String> metaDataAccessions) {
+        this.indexParameters = indexParameters;
+        idMap = new HashMap<>();
+        parameterMap = indexParameters ? new HashMap<Class, Map<String, Map<String, IndexElement>>>() : null;
+        metaDataIndex = metaDataAccessions.isEmpty() ? null : new MetaDataIndex(metaDataAccessions);
+    }
+
+    /**
+     * Creates a QcMLScanHandler that extends the given ID mappings.
+     *
+     * The scan should resume directly within the qcML root element, i.e. at depth 1.
+     *
+     * @param idMap  the ID mappings to which the scanned elements are added
+     * @param parameterMap  the parameter mappings to which the scanned parameters are added, or {@code null} if parameters aren't recorded
+     * @param metaDataIndex  the metadata index to which the scanned metaDataParameter values are added, or {@code null} if metadata isn't recorded
+     */
+    @SuppressWarnings("rawtypes")
+    QcMLScanHandler(Map<Class, Map<String, IndexElement>> idMap, Map<Class, Map<String, Map<String, IndexElement>>> parameterMap,
+                    MetaDataIndex metaDataIndex) {
+        this.indexParameters = parameterMap != null;
+        this.idMap = idMap;
+        this.parameterMap = parameterMap;
+        this.metaDataIndex = metaDataIndex;
+        path[0] = "qcML";
+    }
+
+    /**
+     * Sets the maximum number of bytes used by the in-memory ID mapping of each class type.
+     *
+     * The ID mappings that are created subsequently spill their excess entries to disk (see {@link SpillingIdMapping}).
+     *
+     * @param memoryBudget  the memory budget of the ID mappings in bytes, or 0 to keep the ID mappings in memory completely
+     */
+    void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * Returns the local names of the elements that can be part of the path of an element recorded by this handler.
+     *
+     * @return the local names of the elements that can be part of the path of a recorded element
+     */
+    Set<String> getIndexedNames() {
+        if(indexParameters) {
+            return INDEXED_PARAMETER_NAMES;
+        } else {
+            return metaDataIndex != null ? INDEXED_META_DATA_NAMES : INDEXED_NAMES;
+        }
+    }
+
+    /**
+     * Returns the ID mappings created from the scanned elements.
+     *
+     * If parameters are recorded, this includes the mapping of the qualityParameters by their ID.
+     *
+     * @return the ID mappings created from the scanned elements
+     */
+    @SuppressWarnings("rawtypes")
+    Map<Class, Map<String, IndexElement>> getIDMappings() {
+        return idMap;
+    }
+
+    /**
+     * Returns the parameter mappings created from the scanned elements.
+     *
+     * @return the parameter mappings by quality assessment ID and accession number, or {@code null} if parameters aren't recorded
+     */
+    @SuppressWarnings("rawtypes")
+    Map<Class, Map<String, Map<String, IndexElement>>> getParameterMappings() {
+        return parameterMap;
+    }
+
+    /**
+     * Returns the values of the selected metaDataParameters.
+     *
+     * @return the metadata index created from the scanned elements, or {@code null} if metadata isn't recorded
+     */
+    MetaDataIndex getMetaDataIndex() {
+        return metaDataIndex;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public void startElement(String name, int depth, long start, long contentStart, StartTag tag) {
+        if(depth < 0 || depth > MAX_TRACKED_DEPTH) {
+            return;
+        }
+
+        path[depth] = name;
+
+        if(depth == 2 && metaDataIndex != null && openId[1] != null && "metaDataParameter".equals(name)) {
+            String accession = tag.getAttribute("accession", false);
+            if(accession != null && metaDataIndex.isIndexed(accession)) {
+                metaDataIndex.put(openId[1], accession, tag.getAttribute("value", false));
+            }
+        }
+
+        Class cls = toClass(depth);
+        if(cls == QualityAssessment.class || cls == Cv.class) {
+            openStart[depth] = start;
+            openId[depth] = getRequiredAttribute(tag, "id", true);
+        } else if(cls == AttachmentBinary.class || cls == AttachmentTable.class) {
+            // the binary or table element is identified by the accession number of the enclosing attachment
+            openStart[depth] = start;
+            openId[depth] = openId[depth - 1];
+        } else if(cls != null) {
+            openStart[depth] = start;
+            openId[depth] = getRequiredAttribute(tag, "accession", false);
+            openParameterId = cls == QualityParameter.class ? getRequiredAttribute(tag, "id", true) : null;
+        } else {
+            openId[depth] = null;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public void endElement(String name, int depth, long contentStop, long stop) {
+        if(depth < 0 || depth > MAX_TRACKED_DEPTH || openId[depth] == null || !name.equals(path[depth])) {
+            return;
+        }
+
+        Class cls = toClass(depth);
+        if(cls == QualityAssessment.class || cls == Cv.class) {
+            ByteRange range = new ByteRange(openStart[depth], stop);
+            store(idMap, cls, openId[depth], range, memoryBudget);
+            if(cls == QualityAssessment.class && "setQuality".equals(name)) {
+                store(idMap, SetQuality.class, openId[depth], range, memoryBudget);
+            }
+        } else if(cls != null) {
+            ByteRange range = new ByteRange(openStart[depth], stop);
+
+            // initialize a HashMap for this class if it doesn't exist yet
+            if(parameterMap.get(cls) == null) {
+                parameterMap.put(cls, new HashMap<String, Map<String, IndexElement>>());
+            }
+            // store the new mapping for the enclosing quality assessment
+            store(parameterMap.get(cls), openId[1], openId[depth], range, 0);
+
+            if(cls == QualityParameter.class) {
+                store(idMap, cls, openParameterId, range, memoryBudget);
+            }
+        }
+        openId[depth] = null;
+    }
+
+    private static <K> void store(Map<K, Map<String, IndexElement>> map, K key, String id, IndexElement range, long memoryBudget) {
+        // initialize a HashMap for this key if it doesn't exist yet
+        if(map.get(key) == null) {
+            map.put(key, memoryBudget > 0 ? new SpillingIdMapping(memoryBudget) : new CompactIdMapping());
+        }
+        // store the new mapping
+        map.get(key).put(id, range);
+    }
+
+    private static String getRequiredAttribute(StartTag tag, String attribute, boolean ignoreCase) {
+        String value = tag.getAttribute(attribute, ignoreCase);
+        if(value == null) {
+            String xmlSnippet = "<" + new String(tag.copyBytes()) + ">";
+            LOGGER.error("Error initializing ID mappings: No {} attribute found for element: {}", attribute, xmlSnippet);
+            throw new IllegalStateException("Error initializing ID mappings: No " + attribute + " attribute found for element: " + xmlSnippet);
+        }
+        return value;
+    }
+
+    /**
+     * Gives the class type of the element at the given depth based on the path of the currently open elements.
+     *
+     * @param depth  the depth of the element
+     * @return the class type if the element corresponds to an indexed element, {@code null} else
+     */
+    @SuppressWarnings("rawtypes")
+    private Class toClass(int depth) {
+        if(!"qcML".equals(path[0])) {
+            return null;
+        }
+        boolean qualityAssessment = "runQuality".equals(path[1]) || "setQuality".equals(path[1]);
+        if(depth == 1 && qualityAssessment) {
+            return QualityAssessment.class;
+        } else if(depth == 2 && "cvList".equals(path[1]) && "cv".equals(path[2])) {
+            return Cv.class;
+        } else if(depth == 3 && qualityAssessment && indexParameters && openId[2] != null && "attachment".equals(path[2])) {
+            switch(path[3]) {
+                case "binary":
+                    return AttachmentBinary.class;
+                case "table":
+                    return AttachmentTable.class;
+                default:
+                    return null;
+            }
+        } else if(depth == 2 && qualityAssessment && indexParameters && openId[1] != null) {
+            switch(path[2]) {
+                case "metaDataParameter":
+                    return MetaDataParameter.class;
+                case "qualityParameter":
+                    return QualityParameter.class;
+                case "attachment":
+                    return AttachmentParameter.class;
+                default:
+                    return null;
+            }
+        } else {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.google.common.base.MoreObjects;
+import inspector.jqcml.model.Cv;
+import inspector.jqcml.model.QualityAssessment;
+import psidev.psi.tools.xxindex.index.IndexElement;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Statistics about the contents of a qcML file, derived solely from its index.
+ *
+ * No XML is unmarshalled to compute the statistics, so they are available regardless of the size of the qcML file.
+ * The statistics are a snapshot of the index at the time they were created, and aren't updated when the qcML file changes.
+ * The snapshot shares the (immutable) ID mappings of the index instead of copying them, so the IDs, sizes and offset ranges are computed on demand.
+ * The number of elements is recorded up front, but the IDs and offset ranges of ID mappings that have been spilled to disk
+ * are only available as long as the index hasn't been closed.
+ *
+ * The sizes and offset ranges are expressed in bytes, and include the start and end tags of the XML elements.
+ * The IDs of the elements are listed in the order in which they occur in the qcML file.
+ */
+public class QcMLStatistics {
+
+    /** The qcML file to which the statistics apply */
+    private final File file;
+    /** The size of the qcML file in bytes */
+    private final long fileSize;
+
+    /** Mapping between XML elements and their offsets in the qcML file, shared with the index */
+    @SuppressWarnings("rawtypes")
+    private final Map<Class, Map<String, IndexElement>> idMap;
+    /** The number of indexed elements by class type */
+    @SuppressWarnings("rawtypes")
+    private final Map<Class, Integer> counts;
+
+    /**
+     * Creates statistics for the given qcML file from the given ID mappings.
+     *
+     * The ID mappings are shared rather than copied, so they shouldn't be modified afterwards.
+     *
+     * @param file  The qcML file to which the statistics apply
+     * @param fileSize  The size of the qcML file in bytes
+     * @param idMap  The ID mappings of the qcML file, including the setQuality elements by {@link SetQuality}
+     */
+    @SuppressWarnings("rawtypes")
+    QcMLStatistics(File file, long fileSize, Map<Class, Map<String, IndexElement>> idMap) {
+        this.file = file;
+        this.fileSize = fileSize;
+        this.idMap = idMap;
+        this.counts = new HashMap<>();
+        for(Map.Entry<Class, Map<String, IndexElement>> entry : idMap.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().size());
+        }
+    }
+
+    /**
+     * Returns the qcML file to which the statistics apply.
+     *
+     * @return The qcML file to which the statistics apply
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the size of the qcML file.
+     *
+     * @return The size of the qcML file in bytes
+     */
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * Returns the number of indexed elements of the specified class type.
+     *
+     * @param cls  The class type of the elements
+     * @return The number of indexed elements of the specified class type
+     */
+    public int getCount(Class<?> cls) {
+        Integer count = counts.get(cls);
+        return count != null ? count : 0;
+    }
+
+    /**
+     * Returns the IDs of the indexed elements of the specified class type.
+     *
+     * @param cls  The class type of the elements
+     * @return An unmodifiable list of the IDs of the indexed elements of the specified class type, in file order
+     */
+    public List<String> getIds(Class<?> cls) {
+        Map<String, IndexElement> mapping = idMap.get(cls);
+        return mapping != null ? Collections.unmodifiableList(new ArrayList<>(mapping.keySet())) : Collections.<String>emptyList();
+    }
+
+    /**
+     * Returns the number of runQuality elements.
+     *
+     * @return The number of runQuality elements
+     */
+    public int getNumberOfRunQualities() {
+        return getCount(QualityAssessment.class) - getCount(SetQuality.class);
+    }
+
+    /**
+     * Returns the number of setQuality elements.
+     *
+     * @return The number of setQuality elements
+     */
+    public int getNumberOfSetQualities() {
+        return getCount(SetQuality.class);
+    }
+
+    /**
+     * Returns the number of Cv's.
+     *
+     * @return The number of Cv's
+     */
+    public int getNumberOfCvs() {
+        return getCount(Cv.class);
+    }
+
+    /**
+     * Returns the IDs of the runQuality elements.
+     *
+     * @return An unmodifiable list of the IDs of the runQuality elements, in file order
+     */
+    public List<String> getRunQualityIds() {
+        return getQualityAssessmentIds(false);
+    }
+
+    /**
+     * Returns the IDs of the setQuality elements.
+     *
+     * @return An unmodifiable list of the IDs of the setQuality elements, in file order
+     */
+    public List<String> getSetQualityIds() {
+        return getQualityAssessmentIds(true);
+    }
+
+    private List<String> getQualityAssessmentIds(boolean isSet) {
+        Map<String, IndexElement> mapping = idMap.get(QualityAssessment.class);
+        if(mapping == null) {
+            return Collections.emptyList();
+        }
+        Map<String, IndexElement> setQualityMapping = idMap.get(SetQuality.class);
+        List<String> ids = new ArrayList<>();
+        for(String id : mapping.keySet()) {
+            if((setQualityMapping != null && setQualityMapping.containsKey(id)) == isSet) {
+                ids.add(id);
+            }
+        }
+        return Collections.unmodifiableList(ids);
+    }
+
+    /**
+     * Returns the offset range of the specified element in the qcML file.
+     *
+     * @param cls  The class type of the element
+     * @param id  The ID of the element
+     * @return The offset range of the specified element, or {@code null} if no such element is indexed
+     */
+    public IndexElement getOffsetRange(Class<?> cls, String id) {
+        Map<String, IndexElement> mapping = idMap.get(cls);
+        return mapping != null ? mapping.get(id) : null;
+    }
+
+    /**
+     * Returns the size of the specified element.
+     *
+     * @param cls  The class type of the element
+     * @param id  The ID of the element
+     * @return The size of the specified element in bytes, or -1 if no such element is indexed
+     */
+    public long getSize(Class<?> cls, String id) {
+        IndexElement elem = getOffsetRange(cls, id);
+        return elem != null ? elem.getStop() - elem.getStart() : -1;
+    }
+
+    /**
+     * Returns the total size of all indexed elements of the specified class type.
+     *
+     * @param cls  The class type of the elements
+     * @return The total size of all indexed elements of the specified class type in bytes
+     */
+    public long getTotalSize(Class<?> cls) {
+        long size = 0;
+        Map<String, IndexElement> mapping = idMap.get(cls);
+        if(mapping != null) {
+            for(IndexElement elem : mapping.values()) {
+                size += elem.getStop() - elem.getStart();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this).add("file", file).add("fileSize", fileSize)
+                .add("runQualities", getNumberOfRunQualities()).add("setQualities", getNumberOfSetQualities())
+                .add("cvs", getNumberOfCvs()).toString();
+    }
+}
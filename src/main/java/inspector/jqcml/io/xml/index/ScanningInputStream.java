@@ -0,0 +1,224 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An {@link InputStream} that feeds all bytes that are read from it to an {@link XmlScanner}.
+ *
+ * This allows to index an XML file while it is being read by another consumer, such as a schema validator.
+ * The encoding of the file is detected from the XML declaration at the start of the stream.
+ * If the encoding isn't supported by the XmlScanner, the bytes are passed through without being scanned.
+ *
+ * When the stream is closed, any bytes that haven't been read yet are scanned first,
+ * so the full file is scanned even if the consumer stops reading early.
+ */
+class ScanningInputStream extends FilterInputStream {
+
+    /** The maximum number of bytes at the start of the stream that are retained to detect the encoding */
+    private static final int PROLOG_SIZE = 1024;
+    /** A pattern for extracting the encoding from an XML declaration */
+    private static final Pattern ENCODING_PATTERN = Pattern.compile("^(?:\\xEF\\xBB\\xBF)?<\\?xml\\s[^>]*?encoding\\s*=\\s*['\"]([A-Za-z][A-Za-z0-9._-]*)['\"]");
+
+    /** The handler that is notified of all encountered elements */
+    private final XmlScanHandler handler;
+
+    /** The bytes at the start of the stream, until the encoding has been detected */
+    private byte[] prolog = new byte[PROLOG_SIZE];
+    /** The number of bytes in {@link #prolog} */
+    private int prologLength;
+
+    /** The detected encoding, or {@code null} if no encoding was declared */
+    private String encoding;
+    /** The scanner to which the bytes are fed, or {@code null} if the encoding hasn't been detected yet or isn't supported */
+    private XmlScanner scanner;
+    /** Flag indicating whether the encoding has been detected */
+    private boolean detected;
+    /** Flag indicating whether the stream has been closed */
+    private boolean closed;
+
+    /**
+     * Creates a ScanningInputStream that feeds the bytes read from the given stream to an XmlScanner.
+     *
+     * @param in  the stream containing the XML file, starting at the first byte of the file
+     * @param handler  the handler that is notified of all encountered elements
+     */
+    ScanningInputStream(InputStream in, XmlScanHandler handler) {
+        super(in);
+        this.handler = handler;
+    }
+
+    /**
+     * Returns the encoding declared in the XML declaration.
+     *
+     * @return the declared encoding, or {@code null} if no encoding was declared
+     */
+    String getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * Indicates whether all bytes have been scanned.
+     *
+     * @return true if the stream has been read completely and its encoding was supported by the XmlScanner
+     */
+    boolean isScanned() {
+        return closed && scanner != null;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if(b != -1) {
+            process(new byte[] { (byte) b }, 0, 1);
+        } else {
+            finishProlog();
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = super.read(b, off, len);
+        if(read > 0) {
+            process(b, off, read);
+        } else if(read == -1) {
+            finishProlog();
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if(n <= 0) {
+            return 0;
+        }
+        // skipped bytes need to be scanned as well
+        byte[] buffer = new byte[(int) Math.min(n, XmlScanner.BUFFER_SIZE)];
+        long skipped = 0;
+        while(skipped < n) {
+            int read = read(buffer, 0, (int) Math.min(buffer.length, n - skipped));
+            if(read == -1) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        // not supported
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    /**
+     * Scans the remaining bytes of the stream and closes it.
+     *
+     * @throws IOException if the remaining bytes could not be read
+     */
+    @Override
+    public void close() throws IOException {
+        if(!closed) {
+            try {
+                byte[] buffer = new byte[XmlScanner.BUFFER_SIZE];
+                while(read(buffer, 0, buffer.length) != -1) {
+                    // scan the remaining bytes
+                }
+            } finally {
+                closed = true;
+                super.close();
+            }
+        }
+    }
+
+    private void process(byte[] b, int off, int len) {
+        if(detected) {
+            if(scanner != null) {
+                scanner.feed(b, off, len);
+            }
+        } else {
+            // retain the start of the stream until the end of the XML declaration is encountered
+            int retained = Math.min(len, prolog.length - prologLength);
+            System.arraycopy(b, off, prolog, prologLength, retained);
+            prologLength += retained;
+            if(prologLength == prolog.length || containsDeclarationEnd()) {
+                finishProlog();
+                if(scanner != null && retained < len) {
+                    scanner.feed(b, off + retained, len - retained);
+                }
+            }
+        }
+    }
+
+    private boolean containsDeclarationEnd() {
+        for(int i = 1; i < prologLength; i++) {
+            if(prolog[i - 1] == '?' && prolog[i] == '>') {
+                return true;
+            }
+        }
+        // no XML declaration at the start of the stream
+        return prologLength > 0 && prolog[0] != '<' && prolog[0] != (byte) 0xEF;
+    }
+
+    /**
+     * Detects the encoding from the retained start of the stream, and feeds the retained bytes to the scanner.
+     */
+    private void finishProlog() {
+        if(detected) {
+            return;
+        }
+        detected = true;
+
+        Matcher matcher = ENCODING_PATTERN.matcher(new String(prolog, 0, prologLength, StandardCharsets.ISO_8859_1));
+        encoding = matcher.find() ? matcher.group(1) : null;
+
+        Charset charset = null;
+        try {
+            charset = encoding != null ? Charset.forName(encoding) : StandardCharsets.UTF_8;
+        } catch(IllegalArgumentException e) {
+            // unsupported encoding, pass the bytes through without scanning them
+        }
+        // byte order marks of the UTF-16 and UTF-32 encodings aren't supported
+        boolean wideBom = prologLength >= 2 && (prolog[0] == 0 || prolog[1] == 0 || (prolog[0] & 0xFF) == 0xFE || (prolog[0] & 0xFF) == 0xFF);
+        if(charset != null && XmlScanner.isSupported(charset) && !wideBom) {
+            scanner = new XmlScanner(handler, charset);
+            scanner.feed(prolog, 0, prologLength);
+        }
+        prolog = null;
+    }
+}
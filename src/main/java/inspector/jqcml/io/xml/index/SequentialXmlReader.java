@@ -0,0 +1,238 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.xml.sax.InputSource;
+import psidev.psi.tools.xxindex.index.IndexElement;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Reads XML snippets from a qcML file through a read-ahead buffer.
+ *
+ * When the snippets are requested in ascending order of their offsets, consecutive snippets are served from the buffer,
+ * so the file is read sequentially in large blocks instead of by a separate seek and read for each snippet.
+ * Snippets preceding the buffer are supported as well, but require the buffer to be refilled.
+ *
+ * For an uncompressed file, the buffer is filled from the pooled channels of the index.
+ * For a gzip-compressed file, the decompressed data is streamed and the stream is kept open between consecutive snippets,
+ * so the reader should be closed after use. A snippet that extends past the end of the buffer is completed by moving its buffered part
+ * to the front of the buffer and continuing to read from the stream.
+ * Snippets preceding the current stream position require the stream to be reopened,
+ * which for a file that isn't block-compressed implies decompressing it again from the start.
+ * The reader is not thread-safe.
+ */
+public class SequentialXmlReader implements Closeable {
+
+    private static final Logger LOGGER = LogManager.getLogger(SequentialXmlReader.class);
+
+    /** The minimum number of bytes that are read at once */
+    static final int BUFFER_SIZE = 1 << 20;
+
+    /** The index used to read the snippets if they can't be decoded by this reader */
+    private final QcMLIndexer index;
+    /** The qcML file from which the snippets are read */
+    private final File qcmlFile;
+    /** The gzip-compressed qcML file, or {@code null} if the qcML file isn't compressed */
+    private final GzipFile gzipFile;
+    /** The encoding of the qcML file, or {@code null} if the snippets are read by the index */
+    private final Charset charset;
+
+    /** The stream of the decompressed data, or {@code null} if no compressed data has been read yet */
+    private InputStream stream;
+    /** The uncompressed offset of the next byte in {@link #stream} */
+    private long streamPosition;
+
+    /** The buffered bytes */
+    private byte[] buffer;
+    /** The offset in the qcML file of the first buffered byte */
+    private long bufferStart;
+    /** The number of buffered bytes */
+    private int bufferLength;
+
+    /**
+     * Creates a SequentialXmlReader for the given qcML file.
+     *
+     * @param index  The index of the qcML file
+     * @param qcmlFile  The qcML file from which the snippets are read
+     * @param gzipFile  The gzip-compressed qcML file, or {@code null} if the qcML file isn't compressed
+     * @param charset  The encoding of the qcML file, or {@code null} to read the snippets through the index
+     */
+    SequentialXmlReader(QcMLIndexer index, File qcmlFile, GzipFile gzipFile, Charset charset) {
+        this.index = index;
+        this.qcmlFile = qcmlFile;
+        this.gzipFile = gzipFile;
+        this.charset = charset;
+    }
+
+    /**
+     * Reads an XML snippet from the qcML file specified by the given offset range.
+     *
+     * @param byteRange  The offset range for the requested XML snippet
+     * @return The XML snippet specified by the given offset range
+     */
+    public String readXML(IndexElement byteRange) {
+        if(charset == null) {
+            return index.readXML(byteRange);
+        }
+
+        int offset = locate(byteRange);
+        return new String(buffer, offset, (int) (byteRange.getStop() - byteRange.getStart()), charset);
+    }
+
+    /**
+     * Returns the XML element specified by the given offset range as an {@link InputSource}, which can be parsed directly.
+     *
+     * The InputSource reads the raw bytes of the XML element from the buffer, together with the encoding of the qcML file,
+     * so the XML element doesn't need to be copied or decoded to a String first.
+     * Because the buffer is reused, the InputSource should be parsed before the next XML element is requested.
+     *
+     * @param byteRange  The offset range for the requested XML element
+     * @return An InputSource reading the XML element specified by the given offset range
+     */
+    public InputSource openXML(IndexElement byteRange) {
+        if(charset == null) {
+            return index.openXML(byteRange);
+        }
+
+        int offset = locate(byteRange);
+        InputSource source = new InputSource(new ByteArrayInputStream(buffer, offset, (int) (byteRange.getStop() - byteRange.getStart())));
+        source.setEncoding(charset.name());
+        return source;
+    }
+
+    /**
+     * Makes sure the given offset range is buffered.
+     *
+     * @param byteRange  The offset range for the requested XML snippet
+     * @return The position in the buffer of the start of the offset range
+     */
+    private int locate(IndexElement byteRange) {
+        if(byteRange == null) {
+            LOGGER.error("Invalid <null> IndexElement specified to be read");
+            throw new IllegalArgumentException("Invalid <null> IndexElement specified to be read");
+        }
+
+        long start = byteRange.getStart();
+        long stop = byteRange.getStop();
+        if(start < 0 || stop < start || stop - start > Integer.MAX_VALUE) {
+            LOGGER.error("Invalid offset range <{}-{}> specified to be read", start, stop);
+            throw new IllegalArgumentException("Invalid offset range specified to be read: " + start + "-" + stop);
+        }
+
+        if(start < bufferStart || stop > bufferStart + bufferLength) {
+            try {
+                fill(start, (int) (stop - start));
+            } catch(IOException e) {
+                LOGGER.error("Could not extract XML from file <{}>: ", qcmlFile, e);
+                throw new IllegalArgumentException("Could not extract XML from file: " + qcmlFile);
+            }
+            if(stop > bufferStart + bufferLength) {
+                LOGGER.error("Could not extract XML from file <{}>: offset range <{}-{}> exceeds the file", qcmlFile, start, stop);
+                throw new IllegalArgumentException("Could not extract XML from file: " + qcmlFile);
+            }
+        }
+
+        return (int) (start - bufferStart);
+    }
+
+    /**
+     * Fills the buffer starting from the given offset.
+     *
+     * @param start  The offset in the qcML file from which the buffer is filled
+     * @param minLength  The minimum number of bytes that should be read
+     * @throws IOException
+     */
+    private void fill(long start, int minLength) throws IOException {
+        // the decompressed bytes following the start offset are retained if the stream continues directly after them
+        int retained = 0;
+        if(stream != null && start >= bufferStart && start < bufferStart + bufferLength && streamPosition == bufferStart + bufferLength) {
+            retained = (int) (bufferStart + bufferLength - start);
+        }
+
+        int capacity = Math.max(BUFFER_SIZE, minLength);
+        byte[] previous = buffer;
+        if(buffer == null || buffer.length < capacity) {
+            buffer = new byte[capacity];
+        }
+        if(retained > 0) {
+            System.arraycopy(previous, (int) (start - bufferStart), buffer, 0, retained);
+        }
+
+        bufferStart = start;
+        bufferLength = retained;
+        if(gzipFile != null) {
+            fillDecompressed();
+            return;
+        }
+        bufferLength = index.getChannelPool().read(ByteBuffer.wrap(buffer), start);
+    }
+
+    /**
+     * Tops up the buffer with the decompressed data following the buffered bytes.
+     *
+     * @throws IOException
+     */
+    private void fillDecompressed() throws IOException {
+        long position = bufferStart + bufferLength;
+        if(stream == null || position < streamPosition) {
+            close();
+            stream = gzipFile.openStream(position);
+            streamPosition = position;
+        }
+        while(streamPosition < position) {
+            long skipped = stream.skip(position - streamPosition);
+            if(skipped <= 0) {
+                return;
+            }
+            streamPosition += skipped;
+        }
+        int read;
+        while(bufferLength < buffer.length && (read = stream.read(buffer, bufferLength, buffer.length - bufferLength)) != -1) {
+            bufferLength += read;
+            streamPosition += read;
+        }
+    }
+
+    /**
+     * Closes the stream of the decompressed data, if any.
+     *
+     * The reader can still be used afterwards, in which case the stream is reopened.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        if(stream != null) {
+            InputStream in = stream;
+            stream = null;
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Identifies the ID mapping of the setQuality elements in the index.
+ *
+ * The setQuality elements are mapped in the same way as all quality assessments, which allows to distinguish them
+ * from the runQuality elements without reading the qcML file.
+ */
+final class SetQuality {
+
+    private SetQuality() {
+        // only used as a key of the ID mappings
+    }
+}
@@ -0,0 +1,616 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import psidev.psi.tools.xxindex.index.ByteRange;
+import psidev.psi.tools.xxindex.index.IndexElement;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A mapping between element IDs and their offsets in an XML file whose memory usage is bounded.
+ *
+ * New entries are added to an in-memory {@link CompactIdMapping}. When this exceeds the memory budget,
+ * its entries are spilled to a temporary segment file and the in-memory mapping is started anew.
+ * Each segment file contains the spilled entries twice: in insertion order, to iterate over them,
+ * and sorted by ID, to look them up.
+ * Only every {@value #SAMPLE_INTERVAL}th ID of the sorted entries and a Bloom filter of each segment are kept in memory,
+ * so a lookup of a spilled entry reads a single small block of a single segment file (apart from the occasional false positive).
+ * The most recently looked up spilled entries are cached in memory.
+ *
+ * The mapping retains the insertion order of the IDs, except that replacing a spilled entry moves it to the end.
+ * Each segment file is deleted as soon as it has been opened for reading, so it doesn't outlive the open channel.
+ * If the file system doesn't allow this, the segment file is deleted when the mapping is cleared or closed.
+ * The mapping should be closed when it's no longer used, to close the segment files; afterwards it can't be used anymore.
+ */
+class SpillingIdMapping extends AbstractMap<String, IndexElement> implements Closeable {
+
+    private static final Logger LOGGER = LogManager.getLogger(SpillingIdMapping.class);
+
+    /** The number of consecutive sorted entries of a segment per ID that is kept in memory */
+    static final int SAMPLE_INTERVAL = 64;
+    /** The number of recently looked up spilled entries that are cached in memory */
+    private static final int CACHE_SIZE = 1024;
+    /** The size of the blocks in which a segment file is read while iterating */
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private static final Comparator<Map.Entry<String, IndexElement>> ID_ORDER = new Comparator<Map.Entry<String, IndexElement>>() {
+        @Override
+        public int compare(Map.Entry<String, IndexElement> o1, Map.Entry<String, IndexElement> o2) {
+            return o1.getKey().compareTo(o2.getKey());
+        }
+    };
+
+    /** The maximum number of bytes used by the in-memory entries */
+    private final long memoryBudget;
+
+    /** The entries that haven't been spilled yet */
+    private CompactIdMapping recent;
+    /** The segment files containing the spilled entries, from old to new */
+    private final List<Segment> segments;
+    /** The number of spilled entries that haven't been removed */
+    private int spilledSize;
+
+    /** The most recently looked up spilled entries */
+    private final Map<String, IndexElement> cache;
+
+    /** The number of structural modifications, to detect concurrent modifications while iterating */
+    private int modCount;
+    /** Flag indicating whether the mapping has been closed */
+    private boolean closed;
+
+    /**
+     * Creates an empty SpillingIdMapping.
+     *
+     * @param memoryBudget  the maximum number of bytes used by the in-memory entries, should be strictly positive
+     */
+    SpillingIdMapping(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+        recent = new CompactIdMapping();
+        segments = new ArrayList<>();
+        cache = new LinkedHashMap<String, IndexElement>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, IndexElement> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        };
+    }
+
+    /**
+     * Creates a SpillingIdMapping containing the entries of the given mapping, in the same order.
+     *
+     * @param mapping  the mapping whose entries are copied
+     * @param memoryBudget  the maximum number of bytes used by the in-memory entries, should be strictly positive
+     */
+    SpillingIdMapping(Map<String, IndexElement> mapping, long memoryBudget) {
+        this(memoryBudget);
+        putAll(mapping);
+    }
+
+    /**
+     * Returns the number of segment files to which entries have been spilled.
+     *
+     * @return the number of segment files
+     */
+    synchronized int getNumberOfSegments() {
+        return segments.size();
+    }
+
+    @Override
+    public synchronized int size() {
+        return recent.size() + spilledSize;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public synchronized IndexElement get(Object key) {
+        checkOpen();
+        if(!(key instanceof String)) {
+            return null;
+        }
+        IndexElement element = recent.get(key);
+        if(element == null && !segments.isEmpty()) {
+            element = cache.get(key);
+            if(element == null) {
+                element = getSpilled((String) key, false);
+                if(element != null) {
+                    cache.put((String) key, element);
+                }
+            }
+            // don't expose the cached element
+            element = element != null ? new ByteRange(element.getStart(), element.getStop()) : null;
+        }
+        return element;
+    }
+
+    @Override
+    public synchronized IndexElement put(String key, IndexElement value) {
+        checkOpen();
+        if(recent.containsKey(key)) {
+            return recent.put(key, value);
+        }
+
+        // a spilled entry is superseded by the new entry
+        IndexElement old = removeSpilled(key);
+        recent.put(key, value);
+        modCount++;
+
+        if(recent.estimateMemory() > memoryBudget) {
+            spill();
+        }
+
+        return old;
+    }
+
+    @Override
+    public synchronized IndexElement remove(Object key) {
+        checkOpen();
+        if(!(key instanceof String)) {
+            return null;
+        }
+        IndexElement old = recent.remove(key);
+        if(old == null) {
+            old = removeSpilled((String) key);
+        }
+        if(old != null) {
+            modCount++;
+        }
+        return old;
+    }
+
+    @Override
+    public synchronized void clear() {
+        recent = new CompactIdMapping();
+        for(Segment segment : segments) {
+            segment.close();
+        }
+        segments.clear();
+        spilledSize = 0;
+        cache.clear();
+        modCount++;
+    }
+
+    /**
+     * Closes and deletes the segment files. The mapping can't be used anymore afterwards.
+     */
+    @Override
+    public synchronized void close() {
+        if(!closed) {
+            clear();
+            closed = true;
+        }
+    }
+
+    private void checkOpen() {
+        if(closed) {
+            LOGGER.error("The spilled ID mapping has been closed");
+            throw new IllegalStateException("The spilled ID mapping has been closed");
+        }
+    }
+
+    @Override
+    public Set<Map.Entry<String, IndexElement>> entrySet() {
+        return new AbstractSet<Map.Entry<String, IndexElement>>() {
+            @Override
+            public int size() {
+                return SpillingIdMapping.this.size();
+            }
+
+            @Override
+            public Iterator<Map.Entry<String, IndexElement>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public void clear() {
+                SpillingIdMapping.this.clear();
+            }
+        };
+    }
+
+    /**
+     * Returns the number of bytes of memory used by this mapping, excluding the object headers and the cached entries.
+     *
+     * @return the number of bytes used by this mapping
+     */
+    synchronized long estimateMemory() {
+        long memory = recent.estimateMemory();
+        for(Segment segment : segments) {
+            memory += segment.estimateMemory();
+        }
+        return memory;
+    }
+
+    /**
+     * Looks up the spilled entry with the given ID.
+     *
+     * @param id  the ID of the requested entry
+     * @param remove  flag indicating whether the entry is removed from the mapping
+     * @return the offsets of the requested entry, or {@code null} if no such entry has been spilled
+     */
+    private IndexElement getSpilled(String id, boolean remove) {
+        // an ID is only contained in a single segment, except for superseded entries which are marked as removed
+        for(int i = segments.size() - 1; i >= 0; i--) {
+            Segment segment = segments.get(i);
+            if(!segment.removed.contains(id)) {
+                IndexElement element = segment.get(id);
+                if(element != null) {
+                    if(remove) {
+                        segment.removed.add(id);
+                        spilledSize--;
+                    }
+                    return element;
+                }
+            }
+        }
+        return null;
+    }
+
+    private IndexElement removeSpilled(String id) {
+        if(segments.isEmpty()) {
+            return null;
+        }
+        cache.remove(id);
+        return getSpilled(id, true);
+    }
+
+    /**
+     * Writes the in-memory entries to a new segment file.
+     */
+    private void spill() {
+        File file = null;
+        try {
+            file = File.createTempFile("jqcml", ".spill");
+            LOGGER.debug("Spill {} ID mappings to <{}>", recent.size(), file.getAbsolutePath());
+
+            segments.add(Segment.write(file, recent));
+            spilledSize += recent.size();
+            recent = new CompactIdMapping();
+        } catch(IOException e) {
+            if(file != null && file.exists() && !file.delete()) {
+                LOGGER.warn("Could not delete <{}>", file.getAbsolutePath());
+            }
+            LOGGER.error("Could not spill the ID mappings to a temporary file: {}", e);
+            throw new IllegalStateException("Could not spill the ID mappings to a temporary file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * A temporary file containing spilled entries.
+     */
+    private static class Segment {
+
+        private final File file;
+        private final FileChannel channel;
+        /** The number of entries in the segment */
+        private final int size;
+        /** The offset of the sorted entries, directly after the entries in insertion order */
+        private final long sortedStart;
+        /** The length of the segment file */
+        private final long end;
+        /** Every {@link #SAMPLE_INTERVAL}th ID of the sorted entries, and its offset in the segment file */
+        private final String[] sampleIds;
+        private final long[] sampleOffsets;
+        /** Bloom filter of the IDs in the segment */
+        private final IdBloomFilter filter;
+        /** The IDs of the entries that have been removed from the mapping */
+        private final Set<String> removed;
+        /** Flag indicating whether the segment file has been deleted already */
+        private boolean deleted;
+
+        private Segment(File file, int size, long sortedStart, long end, String[] sampleIds, long[] sampleOffsets, IdBloomFilter filter) throws IOException {
+            this.file = file;
+            this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            this.size = size;
+            this.sortedStart = sortedStart;
+            this.end = end;
+            this.sampleIds = sampleIds;
+            this.sampleOffsets = sampleOffsets;
+            this.filter = filter;
+            this.removed = new HashSet<>();
+
+            // the open channel can still read the deleted file, which is removed by the file system once the channel is closed
+            deleted = file.delete();
+        }
+
+        /**
+         * Writes the entries of the given mapping to a segment file.
+         *
+         * @param file  the segment file
+         * @param mapping  the entries that are written
+         * @return the segment representing the written file
+         * @throws IOException
+         */
+        static Segment write(File file, Map<String, IndexElement> mapping) throws IOException {
+            List<Map.Entry<String, IndexElement>> entries = new ArrayList<>(mapping.entrySet());
+            IdBloomFilter filter = new IdBloomFilter(entries.size());
+            String[] sampleIds = new String[(entries.size() + SAMPLE_INTERVAL - 1) / SAMPLE_INTERVAL];
+            long[] sampleOffsets = new long[sampleIds.length];
+
+            long offset = 0;
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+                // the entries in insertion order
+                for(Map.Entry<String, IndexElement> entry : entries) {
+                    offset += writeEntry(out, entry);
+                    filter.add(entry.getKey());
+                }
+                long sortedStart = offset;
+
+                // the entries sorted by ID
+                Collections.sort(entries, ID_ORDER);
+                for(int i = 0; i < entries.size(); i++) {
+                    if(i % SAMPLE_INTERVAL == 0) {
+                        sampleIds[i / SAMPLE_INTERVAL] = entries.get(i).getKey();
+                        sampleOffsets[i / SAMPLE_INTERVAL] = offset;
+                    }
+                    offset += writeEntry(out, entries.get(i));
+                }
+
+                out.close();
+                return new Segment(file, entries.size(), sortedStart, offset, sampleIds, sampleOffsets, filter);
+            }
+        }
+
+        private static int writeEntry(DataOutputStream out, Map.Entry<String, IndexElement> entry) throws IOException {
+            byte[] id = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(id.length);
+            out.write(id);
+            out.writeLong(entry.getValue().getStart());
+            out.writeLong(entry.getValue().getStop());
+            return 4 + id.length + 16;
+        }
+
+        /**
+         * Looks up the entry with the given ID in the segment file, regardless of whether it has been removed.
+         *
+         * @param id  the ID of the requested entry
+         * @return the offsets of the requested entry, or {@code null} if the segment doesn't contain the entry
+         */
+        IndexElement get(String id) {
+            if(!filter.mightContain(id)) {
+                return null;
+            }
+            // find the block of sorted entries that might contain the ID
+            int sample = Arrays.binarySearch(sampleIds, id);
+            if(sample < 0) {
+                sample = -sample - 2;
+                if(sample < 0) {
+                    return null;
+                }
+            }
+            long blockEnd = sample + 1 < sampleOffsets.length ? sampleOffsets[sample + 1] : end;
+
+            try {
+                ByteBuffer block = ByteBuffer.allocate((int) (blockEnd - sampleOffsets[sample]));
+                read(block, sampleOffsets[sample]);
+                block.flip();
+                while(block.hasRemaining()) {
+                    String entryId = readId(block);
+                    long start = block.getLong();
+                    long stop = block.getLong();
+                    if(entryId.equals(id)) {
+                        return new ByteRange(start, stop);
+                    }
+                }
+                return null;
+            } catch(IOException e) {
+                LOGGER.error("Could not read the spilled ID mappings from <{}>: {}", file.getAbsolutePath(), e);
+                throw new IllegalStateException("Could not read the spilled ID mappings from: " + file.getAbsolutePath());
+            }
+        }
+
+        private void read(ByteBuffer buffer, long offset) throws IOException {
+            while(buffer.hasRemaining()) {
+                if(channel.read(buffer, offset + buffer.position()) < 0) {
+                    throw new EOFException("Unexpected end of file " + file.getAbsolutePath());
+                }
+            }
+        }
+
+        private static String readId(ByteBuffer buffer) {
+            byte[] id = new byte[buffer.getInt()];
+            buffer.get(id);
+            return new String(id, StandardCharsets.UTF_8);
+        }
+
+        long estimateMemory() {
+            long memory = filter.estimateMemory() + 8L * sampleOffsets.length;
+            for(String id : sampleIds) {
+                memory += 2L * id.length();
+            }
+            return memory;
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch(IOException e) {
+                LOGGER.warn("Could not close <{}>: {}", file.getAbsolutePath(), e);
+            }
+            if(!deleted && !file.delete()) {
+                LOGGER.warn("Could not delete <{}>", file.getAbsolutePath());
+            }
+            deleted = true;
+        }
+
+        /**
+         * Reads the entries of a segment in insertion order.
+         */
+        private class Reader {
+
+            private ByteBuffer block = ByteBuffer.allocate(0);
+            /** The offset of the next byte that will be read from the segment file */
+            private long offset;
+            /** The number of entries that haven't been read yet */
+            private int remaining = size;
+
+            boolean hasNext() {
+                return remaining > 0;
+            }
+
+            Map.Entry<String, IndexElement> next() {
+                try {
+                    ensureAvailable(4);
+                    int length = block.getInt(block.position());
+                    ensureAvailable(4 + length + 16);
+                    String id = readId(block);
+                    IndexElement element = new ByteRange(block.getLong(), block.getLong());
+                    remaining--;
+                    return new SimpleImmutableEntry<>(id, element);
+                } catch(IOException e) {
+                    LOGGER.error("Could not read the spilled ID mappings from <{}>: {}", file.getAbsolutePath(), e);
+                    throw new IllegalStateException("Could not read the spilled ID mappings from: " + file.getAbsolutePath());
+                }
+            }
+
+            private void ensureAvailable(int length) throws IOException {
+                if(block.remaining() < length) {
+                    ByteBuffer refill = ByteBuffer.allocate(Math.max(READ_BUFFER_SIZE, length));
+                    refill.put(block);
+                    int unread = refill.position();
+                    refill.limit((int) Math.min(refill.capacity(), unread + sortedStart - offset));
+                    ByteBuffer target = refill.slice();
+                    read(target, offset);
+                    offset += target.capacity();
+                    refill.position(0);
+                    block = refill;
+                }
+            }
+        }
+    }
+
+    /**
+     * Iterates over the spilled entries followed by the in-memory entries, skipping the removed entries.
+     */
+    private class EntryIterator implements Iterator<Map.Entry<String, IndexElement>> {
+
+        private int expectedModCount = modCount;
+
+        /** The index of the segment that is currently read */
+        private int segmentIndex = -1;
+        private Segment.Reader reader;
+        /** The iterator over the in-memory entries, once all segments have been read */
+        private Iterator<Map.Entry<String, IndexElement>> recentIterator;
+
+        private Map.Entry<String, IndexElement> next;
+        private Segment nextSegment;
+        private Map.Entry<String, IndexElement> current;
+        private Segment currentSegment;
+
+        EntryIterator() {
+            advance();
+        }
+
+        private void advance() {
+            checkOpen();
+            next = null;
+            while(next == null && recentIterator == null) {
+                if(reader != null && reader.hasNext()) {
+                    Map.Entry<String, IndexElement> entry = reader.next();
+                    if(!nextSegment.removed.contains(entry.getKey())) {
+                        next = entry;
+                    }
+                } else if(++segmentIndex < segments.size()) {
+                    nextSegment = segments.get(segmentIndex);
+                    reader = nextSegment.new Reader();
+                } else {
+                    nextSegment = null;
+                    recentIterator = recent.entrySet().iterator();
+                }
+            }
+            if(next == null && recentIterator.hasNext()) {
+                next = recentIterator.next();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<String, IndexElement> next() {
+            if(modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if(next == null) {
+                throw new NoSuchElementException();
+            }
+            current = next;
+            currentSegment = nextSegment;
+            synchronized(SpillingIdMapping.this) {
+                advance();
+            }
+            return current;
+        }
+
+        @Override
+        public void remove() {
+            if(current == null) {
+                throw new IllegalStateException();
+            }
+            if(modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            synchronized(SpillingIdMapping.this) {
+                if(currentSegment != null) {
+                    cache.remove(current.getKey());
+                    currentSegment.removed.add(current.getKey());
+                    spilledSize--;
+                } else {
+                    // removing an in-memory entry doesn't affect the iteration over the subsequent entries
+                    recent.remove(current.getKey());
+                }
+            }
+            current = null;
+        }
+    }
+}
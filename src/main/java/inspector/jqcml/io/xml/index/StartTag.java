@@ -0,0 +1,205 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * A view on the raw bytes of an XML start tag, excluding the enclosing angle brackets.
+ *
+ * Attribute values are only decoded when they are requested.
+ */
+class StartTag {
+
+    /** The encoding used to decode attribute values */
+    private final Charset charset;
+
+    private byte[] bytes;
+    private int length;
+
+    /**
+     * Creates an empty StartTag.
+     *
+     * @param charset  the encoding used to decode attribute values
+     */
+    StartTag(Charset charset) {
+        this.charset = charset;
+    }
+
+    /**
+     * Creates a StartTag for the given raw tag bytes.
+     *
+     * @param charset  the encoding used to decode attribute values
+     * @param bytes  the raw bytes of the start tag, excluding the enclosing angle brackets
+     */
+    StartTag(Charset charset, byte[] bytes) {
+        this(charset);
+        set(bytes, bytes.length);
+    }
+
+    /**
+     * Points this view to the given raw tag bytes.
+     *
+     * @param bytes  buffer containing the raw bytes of the start tag, excluding the enclosing angle brackets
+     * @param length  the number of valid bytes in the buffer
+     */
+    void set(byte[] bytes, int length) {
+        this.bytes = bytes;
+        this.length = length;
+    }
+
+    /**
+     * Returns a copy of the raw tag bytes, which remains valid after this view has been reused.
+     *
+     * @return a copy of the raw tag bytes
+     */
+    byte[] copyBytes() {
+        return Arrays.copyOf(bytes, length);
+    }
+
+    /**
+     * Returns the value of the attribute with the given name.
+     *
+     * @param name  the name of the requested attribute
+     * @param ignoreCase  flag indicating whether the attribute name is matched case-insensitively
+     * @return the (unescaped) attribute value if the attribute is present, {@code null} otherwise
+     */
+    String getAttribute(String name, boolean ignoreCase) {
+        // skip the element name
+        int i = 0;
+        while(i < length && !isWhitespace(bytes[i])) {
+            i++;
+        }
+
+        while(i < length) {
+            // skip the whitespace before the attribute name
+            while(i < length && isWhitespace(bytes[i])) {
+                i++;
+            }
+            // read the attribute name
+            int nameStart = i;
+            while(i < length && bytes[i] != '=' && !isWhitespace(bytes[i])) {
+                i++;
+            }
+            int nameEnd = i;
+            // skip the equals sign
+            while(i < length && (bytes[i] == '=' || isWhitespace(bytes[i]))) {
+                i++;
+            }
+            if(i >= length || (bytes[i] != '"' && bytes[i] != '\'')) {
+                // no (quoted) attribute value
+                return null;
+            }
+            // read the attribute value
+            byte quote = bytes[i++];
+            int valueStart = i;
+            while(i < length && bytes[i] != quote) {
+                i++;
+            }
+            int valueEnd = i++;
+
+            if(matches(name, nameStart, nameEnd, ignoreCase)) {
+                return unescape(new String(bytes, valueStart, valueEnd - valueStart, charset));
+            }
+        }
+
+        return null;
+    }
+
+    private boolean matches(String name, int start, int end, boolean ignoreCase) {
+        if(end - start != name.length()) {
+            return false;
+        }
+        for(int i = 0; i < name.length(); i++) {
+            char c = (char) (bytes[start + i] & 0xFF);
+            char n = name.charAt(i);
+            if(c != n && !(ignoreCase && Character.toLowerCase(c) == Character.toLowerCase(n))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Replaces the predefined XML entities and character references in the given attribute value.
+     *
+     * @param value  the raw attribute value
+     * @return the unescaped attribute value
+     */
+    static String unescape(String value) {
+        int amp = value.indexOf('&');
+        if(amp == -1) {
+            return value;
+        }
+
+        StringBuilder sb = new StringBuilder(value.length());
+        int i = 0;
+        while(amp != -1) {
+            int semicolon = value.indexOf(';', amp);
+            if(semicolon == -1) {
+                break;
+            }
+            sb.append(value, i, amp);
+            String entity = value.substring(amp + 1, semicolon);
+            switch(entity) {
+                case "lt":
+                    sb.append('<');
+                    break;
+                case "gt":
+                    sb.append('>');
+                    break;
+                case "amp":
+                    sb.append('&');
+                    break;
+                case "quot":
+                    sb.append('"');
+                    break;
+                case "apos":
+                    sb.append('\'');
+                    break;
+                default:
+                    try {
+                        if(entity.startsWith("#x")) {
+                            sb.appendCodePoint(Integer.parseInt(entity.substring(2), 16));
+                        } else if(entity.startsWith("#")) {
+                            sb.appendCodePoint(Integer.parseInt(entity.substring(1)));
+                        } else {
+                            // unknown entity, keep it as is
+                            sb.append(value, amp, semicolon + 1);
+                        }
+                    } catch(IllegalArgumentException e) {
+                        // invalid character reference, keep it as is
+                        sb.append(value, amp, semicolon + 1);
+                    }
+            }
+            i = semicolon + 1;
+            amp = value.indexOf('&', i);
+        }
+        sb.append(value, i, value.length());
+
+        return sb.toString();
+    }
+
+    static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+}
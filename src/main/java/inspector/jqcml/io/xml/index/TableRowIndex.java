@@ -0,0 +1,149 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import psidev.psi.tools.xxindex.index.ByteRange;
+import psidev.psi.tools.xxindex.index.IndexElement;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * The offsets of the rows within a single table element of an attachment.
+ *
+ * The offsets delimit the content of the tableColumnTypes element and of each tableRowValues element,
+ * so individual rows can be read from the qcML file without reading the full table.
+ * The row offsets are stored as primitive {@code long} arrays, i.e. 16 bytes per row.
+ */
+class TableRowIndex implements XmlScanHandler {
+
+    /** The initial number of rows for which space is allocated */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /** The content range of the tableColumnTypes element, or {@code null} if absent */
+    private IndexElement columns;
+    /** The start offset of the content of each row */
+    private long[] rowStarts = new long[INITIAL_CAPACITY];
+    /** The stop offset of the content of each row */
+    private long[] rowStops = new long[INITIAL_CAPACITY];
+    /** The number of rows */
+    private int nrOfRows;
+
+    /** The start offset of the content of the currently open element */
+    private long openContentStart = -1;
+
+    private TableRowIndex() {
+        // created by scanning a table element
+    }
+
+    /**
+     * Creates the row index of the table element that is read from the given stream.
+     *
+     * @param in  the stream containing the table element, starting at its start tag
+     * @param tableRange  the offset range of the table element
+     * @param charset  the encoding of the qcML file, should be supported by the {@link XmlScanner}
+     * @return the row index of the table element
+     * @throws IOException if the table element could not be read
+     */
+    static TableRowIndex scan(InputStream in, IndexElement tableRange, Charset charset) throws IOException {
+        TableRowIndex index = new TableRowIndex();
+        XmlScanner scanner = new XmlScanner(index, charset, tableRange.getStart(), 0);
+
+        byte[] buffer = new byte[(int) Math.min(XmlScanner.BUFFER_SIZE, tableRange.getStop() - tableRange.getStart())];
+        long remaining = tableRange.getStop() - tableRange.getStart();
+        while(remaining > 0) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if(read == -1) {
+                throw new IOException("Unexpected end of file within table at offset " + tableRange.getStart());
+            }
+            scanner.feed(buffer, 0, read);
+            remaining -= read;
+        }
+
+        return index;
+    }
+
+    @Override
+    public void startElement(String name, int depth, long start, long contentStart, StartTag tag) {
+        if(depth == 1) {
+            openContentStart = contentStart;
+        }
+    }
+
+    @Override
+    public void endElement(String name, int depth, long contentStop, long stop) {
+        if(depth != 1 || openContentStart < 0) {
+            return;
+        }
+        if("tableRowValues".equals(name)) {
+            if(nrOfRows == rowStarts.length) {
+                rowStarts = Arrays.copyOf(rowStarts, rowStarts.length + (rowStarts.length >> 1));
+                rowStops = Arrays.copyOf(rowStops, rowStops.length + (rowStops.length >> 1));
+            }
+            rowStarts[nrOfRows] = openContentStart;
+            rowStops[nrOfRows] = contentStop;
+            nrOfRows++;
+        } else if("tableColumnTypes".equals(name)) {
+            columns = new ByteRange(openContentStart, contentStop);
+        }
+        openContentStart = -1;
+    }
+
+    /**
+     * Returns the content range of the tableColumnTypes element.
+     *
+     * @return the offset range of the column names, or {@code null} if the table doesn't specify its columns
+     */
+    IndexElement getColumnsRange() {
+        return columns;
+    }
+
+    /**
+     * Returns the number of rows in the table.
+     *
+     * @return the number of tableRowValues elements
+     */
+    int getNumberOfRows() {
+        return nrOfRows;
+    }
+
+    /**
+     * Returns the start offset of the content of the given row.
+     *
+     * @param row  the index of the row, starting from 0
+     * @return the offset directly after the start tag of the row
+     */
+    long getRowStart(int row) {
+        return rowStarts[row];
+    }
+
+    /**
+     * Returns the stop offset of the content of the given row.
+     *
+     * @param row  the index of the row, starting from 0
+     * @return the offset of the end tag of the row
+     */
+    long getRowStop(int row) {
+        return rowStops[row];
+    }
+}
@@ -0,0 +1,52 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+/**
+ * Receives the element boundaries encountered by an {@link XmlScanner}.
+ *
+ * All offsets are absolute byte offsets in the scanned file.
+ */
+interface XmlScanHandler {
+
+    /**
+     * Notifies the start of an XML element.
+     *
+     * @param name  the local name of the element (without namespace prefix)
+     * @param depth  the number of enclosing elements
+     * @param start  the offset of the opening angle bracket of the start tag
+     * @param contentStart  the offset directly after the closing angle bracket of the start tag
+     * @param tag  the raw start tag, only valid for the duration of this call
+     */
+    void startElement(String name, int depth, long start, long contentStart, StartTag tag);
+
+    /**
+     * Notifies the end of an XML element.
+     *
+     * For an empty-element tag this is called directly after {@link #startElement}, with an empty content range.
+     *
+     * @param name  the local name of the element (without namespace prefix)
+     * @param depth  the number of enclosing elements
+     * @param contentStop  the offset of the opening angle bracket of the end tag
+     * @param stop  the offset directly after the closing angle bracket of the end tag
+     */
+    void endElement(String name, int depth, long contentStop, long stop);
+}
@@ -0,0 +1,460 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A minimal XML tokenizer that operates directly on the raw bytes of a file.
+ *
+ * The scanner only recognizes markup: start tags, end tags, comments, CDATA sections, processing instructions and
+ * document type declarations. Character data is skipped without being decoded.
+ * For each element it reports the byte offsets of its boundaries to an {@link XmlScanHandler}.
+ *
+ * The scanner is push-based: the bytes are provided in consecutive blocks through {@link #feed(byte[], int, int)},
+ * so the same scanner can be driven by a file, by a part of a file, or by another consumer of the same bytes.
+ *
+ * Because only the ASCII markup characters are interpreted, the scanner supports all ASCII-compatible encodings
+ * (such as UTF-8 and ISO-8859-1), but not for example UTF-16.
+ */
+class XmlScanner {
+
+    /** The size of the blocks in which a file is read */
+    static final int BUFFER_SIZE = 1 << 20;
+
+    /** The maximum number of bytes of a single tag that are retained */
+    private static final int MAX_TAG_SIZE = 1 << 20;
+
+    private static final int TEXT = 0;
+    private static final int MARKUP = 1;
+    private static final int TAG = 2;
+    private static final int COMMENT = 3;
+    private static final int CDATA = 4;
+    private static final int PROCESSING_INSTRUCTION = 5;
+    private static final int DECLARATION = 6;
+
+    private static final byte[] COMMENT_START = { '!', '-', '-' };
+    private static final byte[] CDATA_START = { '!', '[', 'C', 'D', 'A', 'T', 'A', '[' };
+
+    /** The handler that is notified of all encountered elements */
+    private final XmlScanHandler handler;
+    /** The encoding of the scanned bytes */
+    private final Charset charset;
+    /** Reusable view on the current start tag */
+    private final StartTag startTag;
+
+    /** Cache of decoded element names, to avoid creating a new String for each tag */
+    private final String[] nameCache = new String[64];
+    private final byte[][] nameCacheKeys = new byte[64][];
+
+    /** The current state of the tokenizer */
+    private int state;
+    /** The absolute offset of the next byte that will be fed */
+    private long position;
+    /** The number of currently open elements */
+    private int depth;
+
+    /** The absolute offset of the opening angle bracket of the current markup */
+    private long markupStart;
+    /** The bytes of the current markup, excluding the opening angle bracket */
+    private byte[] tagBuffer = new byte[256];
+    private int tagLength;
+    /** The quote character of the current attribute value, or 0 if outside an attribute value */
+    private byte quote;
+    /** The number of consecutive bytes of the terminator of the current comment, CDATA section or processing instruction */
+    private int terminatorCount;
+    /** The nesting level of square brackets within the current document type declaration */
+    private int declarationNesting;
+
+    /**
+     * Creates an XmlScanner that starts at the beginning of a file.
+     *
+     * @param handler  the handler that is notified of all encountered elements
+     * @param charset  the encoding of the scanned bytes, should be ASCII-compatible
+     */
+    XmlScanner(XmlScanHandler handler, Charset charset) {
+        this(handler, charset, 0, 0);
+    }
+
+    /**
+     * Creates an XmlScanner that starts at the given offset of a file, outside of any markup.
+     *
+     * @param handler  the handler that is notified of all encountered elements
+     * @param charset  the encoding of the scanned bytes, should be ASCII-compatible
+     * @param position  the absolute offset of the first byte that will be fed
+     * @param depth  the number of elements that are open at the given offset
+     */
+    XmlScanner(XmlScanHandler handler, Charset charset, long position, int depth) {
+        this.handler = handler;
+        this.charset = charset;
+        this.startTag = new StartTag(charset);
+        this.state = TEXT;
+        this.position = position;
+        this.depth = depth;
+    }
+
+    /**
+     * Checks whether the given encoding can be processed by an XmlScanner.
+     *
+     * @param charset  the encoding to check
+     * @return true if the XML markup characters are encoded as single ASCII bytes in the given encoding
+     */
+    static boolean isSupported(Charset charset) {
+        String markup = "<>/=\"'!?-[]: \t\r\n";
+        try {
+            ByteBuffer encoded = charset.newEncoder().encode(CharBuffer.wrap(markup));
+            byte[] bytes = new byte[encoded.remaining()];
+            encoded.get(bytes);
+            return Arrays.equals(markup.getBytes(StandardCharsets.US_ASCII), bytes);
+        } catch(UnsupportedOperationException | CharacterCodingException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the absolute offset of the next byte that will be fed.
+     *
+     * @return the absolute offset of the next byte that will be fed
+     */
+    long getPosition() {
+        return position;
+    }
+
+    /**
+     * Returns the number of elements that are currently open.
+     *
+     * @return the number of elements that are currently open
+     */
+    int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Indicates whether the scanner is currently outside of any markup, i.e. in character data.
+     *
+     * @return true if the scanner is positioned in character data
+     */
+    boolean isInText() {
+        return state == TEXT;
+    }
+
+    /**
+     * Scans the given file from the current position up to the end of the file.
+     *
+     * @param file  the file to scan
+     * @throws IOException if the file could not be read
+     */
+    void scan(File file) throws IOException {
+        try(InputStream in = new FileInputStream(file)) {
+            long skip = position;
+            while(skip > 0) {
+                long skipped = in.skip(skip);
+                if(skipped <= 0) {
+                    throw new IOException("Could not skip to offset " + position + " in file " + file.getAbsolutePath());
+                }
+                skip -= skipped;
+            }
+            scan(in);
+        }
+    }
+
+    /**
+     * Scans all bytes from the given stream, which should start at the current position.
+     *
+     * @param in  the stream to scan
+     * @throws IOException if the stream could not be read
+     */
+    void scan(InputStream in) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while((read = in.read(buffer)) != -1) {
+            feed(buffer, 0, read);
+        }
+    }
+
+    /**
+     * Processes the next block of bytes.
+     *
+     * @param buffer  the buffer containing the bytes
+     * @param offset  the offset of the first byte in the buffer
+     * @param length  the number of bytes to process
+     */
+    void feed(byte[] buffer, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        while(i < end) {
+            switch(state) {
+                case TEXT:
+                    // skip character data up to the next markup
+                    while(i < end && buffer[i] != '<') {
+                        i++;
+                    }
+                    if(i < end) {
+                        markupStart = position + (i - offset);
+                        tagLength = 0;
+                        quote = 0;
+                        state = MARKUP;
+                        i++;
+                    }
+                    break;
+                case MARKUP:
+                    // determine the type of markup
+                    append(buffer[i]);
+                    i++;
+                    classifyMarkup(position + (i - offset));
+                    break;
+                case TAG:
+                    int tagStart = i;
+                    while(i < end && (quote != 0 || buffer[i] != '>')) {
+                        if(quote == buffer[i]) {
+                            quote = 0;
+                        } else if(quote == 0 && (buffer[i] == '"' || buffer[i] == '\'')) {
+                            quote = buffer[i];
+                        }
+                        i++;
+                    }
+                    append(buffer, tagStart, i - tagStart);
+                    if(i < end) {
+                        i++;
+                        state = TEXT;
+                        processTag(position + (i - offset));
+                    }
+                    break;
+                case COMMENT:
+                    i = skipToTerminator(buffer, i, end, (byte) '-', 2);
+                    break;
+                case CDATA:
+                    i = skipToTerminator(buffer, i, end, (byte) ']', 2);
+                    break;
+                case PROCESSING_INSTRUCTION:
+                    i = skipToTerminator(buffer, i, end, (byte) '?', 1);
+                    break;
+                case DECLARATION:
+                    while(i < end && state == DECLARATION) {
+                        processDeclarationByte(buffer[i]);
+                        i++;
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown scanner state: " + state);
+            }
+        }
+        position += length;
+    }
+
+    /**
+     * Skips bytes up to and including the terminator of a comment, CDATA section or processing instruction.
+     *
+     * The terminator consists of a number of repetitions of the given byte followed by a closing angle bracket.
+     *
+     * @return the index of the first byte that wasn't processed
+     */
+    private int skipToTerminator(byte[] buffer, int i, int end, byte repeated, int repetitions) {
+        while(i < end) {
+            byte b = buffer[i++];
+            if(b == '>' && terminatorCount >= repetitions) {
+                state = TEXT;
+                return i;
+            } else if(b == repeated) {
+                terminatorCount++;
+            } else {
+                terminatorCount = 0;
+            }
+        }
+        return i;
+    }
+
+    private void processDeclarationByte(byte b) {
+        if(quote != 0) {
+            if(b == quote) {
+                quote = 0;
+            }
+        } else if(b == '"' || b == '\'') {
+            quote = b;
+        } else if(b == '[') {
+            declarationNesting++;
+        } else if(b == ']') {
+            declarationNesting--;
+        } else if(b == '>' && declarationNesting <= 0) {
+            state = TEXT;
+        }
+    }
+
+    /**
+     * Determines the type of the current markup based on the bytes following the opening angle bracket.
+     *
+     * @param next  the absolute offset of the next byte
+     */
+    private void classifyMarkup(long next) {
+        byte first = tagBuffer[0];
+        if(first == '?') {
+            terminatorCount = 0;
+            state = PROCESSING_INSTRUCTION;
+        } else if(first == '!') {
+            if(startsWith(COMMENT_START)) {
+                terminatorCount = 0;
+                state = COMMENT;
+            } else if(startsWith(CDATA_START)) {
+                terminatorCount = 0;
+                state = CDATA;
+            } else if(!isPrefix(COMMENT_START) && !isPrefix(CDATA_START)) {
+                // document type or other declaration
+                declarationNesting = 0;
+                state = DECLARATION;
+                for(int i = 1; i < tagLength && state == DECLARATION; i++) {
+                    processDeclarationByte(tagBuffer[i]);
+                }
+            }
+        } else if(first == '>') {
+            // empty markup
+            state = TEXT;
+        } else {
+            // start tag or end tag
+            if(first == '"' || first == '\'') {
+                quote = first;
+            }
+            state = TAG;
+        }
+    }
+
+    private boolean startsWith(byte[] prefix) {
+        if(tagLength < prefix.length) {
+            return false;
+        }
+        for(int i = 0; i < prefix.length; i++) {
+            if(tagBuffer[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean isPrefix(byte[] markup) {
+        if(tagLength >= markup.length) {
+            return false;
+        }
+        for(int i = 0; i < tagLength; i++) {
+            if(tagBuffer[i] != markup[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void append(byte b) {
+        if(tagLength == tagBuffer.length) {
+            if(tagLength >= MAX_TAG_SIZE) {
+                return;
+            }
+            tagBuffer = Arrays.copyOf(tagBuffer, tagBuffer.length * 2);
+        }
+        tagBuffer[tagLength++] = b;
+    }
+
+    private void append(byte[] buffer, int offset, int length) {
+        int retained = Math.min(length, MAX_TAG_SIZE - tagLength);
+        if(retained <= 0) {
+            return;
+        }
+        if(tagLength + retained > tagBuffer.length) {
+            tagBuffer = Arrays.copyOf(tagBuffer, Math.max(tagBuffer.length * 2, tagLength + retained));
+        }
+        System.arraycopy(buffer, offset, tagBuffer, tagLength, retained);
+        tagLength += retained;
+    }
+
+    /**
+     * Notifies the handler of the start tag or end tag that has just been completed.
+     *
+     * @param stop  the absolute offset directly after the closing angle bracket
+     */
+    private void processTag(long stop) {
+        if(tagBuffer[0] == '/') {
+            depth--;
+            handler.endElement(readName(1), depth, markupStart, stop);
+        } else {
+            // check whether this is an empty-element tag
+            int last = tagLength - 1;
+            while(last > 0 && StartTag.isWhitespace(tagBuffer[last])) {
+                last--;
+            }
+            boolean empty = tagBuffer[last] == '/';
+
+            String name = readName(0);
+            startTag.set(tagBuffer, empty ? last : tagLength);
+            handler.startElement(name, depth, markupStart, stop, startTag);
+            if(empty) {
+                handler.endElement(name, depth, stop, stop);
+            } else {
+                depth++;
+            }
+        }
+    }
+
+    /**
+     * Reads the local name (without namespace prefix) of the current tag.
+     *
+     * @param offset  the offset of the (qualified) name in the tag buffer
+     * @return the local name of the current tag
+     */
+    private String readName(int offset) {
+        int start = offset;
+        int end = offset;
+        while(end < tagLength && !StartTag.isWhitespace(tagBuffer[end]) && tagBuffer[end] != '/') {
+            if(tagBuffer[end] == ':') {
+                start = end + 1;
+            }
+            end++;
+        }
+
+        // check whether the name has been decoded before
+        int hash = 0;
+        for(int i = start; i < end; i++) {
+            hash = 31 * hash + tagBuffer[i];
+        }
+        int slot = hash & (nameCache.length - 1);
+        byte[] key = nameCacheKeys[slot];
+        if(key != null && key.length == end - start) {
+            boolean equal = true;
+            for(int i = 0; i < key.length && equal; i++) {
+                equal = key[i] == tagBuffer[start + i];
+            }
+            if(equal) {
+                return nameCache[slot];
+            }
+        }
+
+        String name = new String(tagBuffer, start, end - start, charset);
+        nameCacheKeys[slot] = Arrays.copyOfRange(tagBuffer, start, end);
+        nameCache[slot] = name;
+
+        return name;
+    }
+}
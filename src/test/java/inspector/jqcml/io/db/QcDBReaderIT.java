@@ -32,6 +32,7 @@ import javax.persistence.EntityManagerFactory;
 import java.io.File;
 import java.net.URISyntaxException;
 import java.util.Iterator;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.*;
 
@@ -138,6 +139,20 @@ public class QcDBReaderIT {
         assertTrue(it.hasNext());
     }
 
+    @Test
+    public void getQualityAssessmentStream_validQcML() {
+        try(Stream<QualityAssessment> stream = reader.getQualityAssessmentStream("CvParameterTest.qcML")) {
+            assertTrue(stream.findAny().isPresent());
+        }
+    }
+
+    @Test
+    public void getCvStream_nonExistingQcML() {
+        try(Stream<Cv> stream = reader.getCvStream("NonExisting.qcML")) {
+            assertFalse(stream.findAny().isPresent());
+        }
+    }
+
     @Test
     public void getQualityAssessmentIterator_nullQcML() {
         Iterator<QualityAssessment> it = reader.getQualityAssessmentIterator(null);
@@ -20,15 +20,41 @@ package inspector.jqcml.io.xml;
  * #L%
  */
 
+import com.google.common.base.Predicate;
+import inspector.jqcml.io.xml.index.BlockCompressedOutputStream;
+import inspector.jqcml.io.xml.index.IndexCache;
+import inspector.jqcml.io.xml.index.IndexConfiguration;
+import inspector.jqcml.io.xml.index.IndexEngine;
+import inspector.jqcml.io.xml.index.QcMLCatalog;
+import inspector.jqcml.io.xml.index.QcMLIndexer;
+import inspector.jqcml.io.xml.index.QcMLStatistics;
+import inspector.jqcml.model.AttachmentParameter;
 import inspector.jqcml.model.Cv;
 import inspector.jqcml.model.QcML;
 import inspector.jqcml.model.QualityAssessment;
+import inspector.jqcml.model.QualityParameter;
+import inspector.jqcml.model.TableAttachment;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.*;
 
@@ -66,6 +92,18 @@ public class QcMLReaderTest {
         assertTrue(reader.validate(loadResource("/CvParameterTest.qcML").getAbsolutePath()));
     }
 
+    @Test
+    public void validate_validating() {
+        IndexConfiguration configuration = new IndexConfiguration();
+        configuration.setValidating(true);
+        QcMLFileReader validatingReader = new QcMLFileReader(configuration);
+
+        assertTrue(validatingReader.validate(loadResource("/CvParameterTest.qcML").getAbsolutePath()));
+        assertNotNull(validatingReader.getQcML(loadResource("/CvParameterTest.qcML").getAbsolutePath()));
+        assertFalse(validatingReader.validate(loadResource("/Invalid.qcML").getAbsolutePath()));
+        assertNull(validatingReader.getQcML(loadResource("/InvalidVersionFormat.qcML").getAbsolutePath()));
+    }
+
     @Test(expected=NullPointerException.class)
     public void getQcML_null() {
         reader.getQcML(null);
@@ -173,6 +211,13 @@ public class QcMLReaderTest {
         assertFalse(it.hasNext());
     }
 
+    @Test
+    public void getCvStream_valid() {
+        try(Stream<Cv> stream = reader.getCvStream(loadResource("/CvParameterTest.qcML").getAbsolutePath())) {
+            assertEquals(2, stream.count());
+        }
+    }
+
     @Test(expected=NullPointerException.class)
     public void getQualityAssessment_nullFile() {
         reader.getQualityAssessment(null, "id");
@@ -245,6 +290,325 @@ public class QcMLReaderTest {
         assertFalse(it.hasNext());
     }
 
+    @Test
+    public void getQualityAssessmentIterator_close() {
+        IndexConfiguration configuration = new IndexConfiguration();
+        configuration.setEngine(IndexEngine.BYTE_SCANNER);
+        IndexCache cache = new IndexCache();
+        File file = loadResource("/CvParameterTest.qcML");
+
+        try(QcMLFileReader cachedReader = new QcMLFileReader(configuration, cache)) {
+            try(CloseableIterator<QualityAssessment> it = cachedReader.getQualityAssessmentIterator(file.getAbsolutePath())) {
+                assertTrue(it.hasNext());
+                it.next();
+            }
+
+            // the index has been released by closing the iterator before it was exhausted
+            QcMLIndexer index = cache.get(file);
+            assertTrue(index.retain());
+            index.release();
+            try {
+                index.release();
+                fail("The index is still retained by the closed iterator");
+            } catch(IllegalStateException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void getQualityAssessmentStream_valid() {
+        String file = loadResource("/CvParameterTest.qcML").getAbsolutePath();
+
+        List<String> ids = new ArrayList<>();
+        for(Iterator<QualityAssessment> it = reader.getQualityAssessmentIterator(file); it.hasNext(); ) {
+            ids.add(it.next().getId());
+        }
+        try(Stream<QualityAssessment> stream = reader.getQualityAssessmentStream(file)) {
+            assertEquals(ids, stream.map(QualityAssessment::getId).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void getQualityAssessmentStream_parallel() {
+        String file = loadResource("/QcMLTest.qcML").getAbsolutePath();
+
+        List<String> ids;
+        int nrOfParameters;
+        try(Stream<QualityAssessment> stream = reader.getQualityAssessmentStream(file)) {
+            List<QualityAssessment> qas = stream.collect(Collectors.toList());
+            ids = qas.stream().map(QualityAssessment::getId).collect(Collectors.toList());
+            nrOfParameters = qas.stream().mapToInt(QualityAssessment::getNumberOfQualityParameters).sum();
+        }
+
+        // the encounter order is retained by the parallel stream
+        try(Stream<QualityAssessment> stream = reader.getQualityAssessmentStream(file).parallel()) {
+            List<QualityAssessment> qas = stream.collect(Collectors.toList());
+            assertEquals(ids, qas.stream().map(QualityAssessment::getId).collect(Collectors.toList()));
+            assertEquals(nrOfParameters, qas.stream().mapToInt(QualityAssessment::getNumberOfQualityParameters).sum());
+        }
+    }
+
+    @Test
+    public void getQualityAssessmentIterator_metaData() {
+        IndexConfiguration configuration = new IndexConfiguration();
+        configuration.setMetaDataAccessions(Collections.singleton("QC:000001"));
+        QcMLFileReader indexedReader = new QcMLFileReader(configuration);
+        String file = loadResource("/QcMLTest.qcML").getAbsolutePath();
+
+        // the indexed metadata and the unmarshalled fallback should give the same quality assessments
+        for(QcMLFileReader r : Arrays.asList(indexedReader, reader)) {
+            Iterator<QualityAssessment> it = r.getQualityAssessmentIterator(file, "QC:000001", "298");
+            assertTrue(it.hasNext());
+            assertEquals("run_1", it.next().getId());
+            assertFalse(it.hasNext());
+
+            List<String> ids = new ArrayList<>();
+            it = r.getQualityAssessmentIterator(file, "QC:000001", new Predicate<String>() {
+                @Override
+                public boolean apply(String value) {
+                    return Integer.parseInt(value) > 850;
+                }
+            });
+            while(it.hasNext()) {
+                ids.add(it.next().getId());
+            }
+            assertEquals(Arrays.asList("run_3", "set_0", "set_1"), ids);
+        }
+    }
+
+    @Test
+    public void getStatistics_indexCache() {
+        IndexConfiguration configuration = new IndexConfiguration();
+        configuration.setEngine(IndexEngine.BYTE_SCANNER);
+        IndexCache cache = new IndexCache(1, 0);
+        String first = loadResource("/QcMLTest.qcML").getAbsolutePath();
+        String second = loadResource("/CvParameterTest.qcML").getAbsolutePath();
+
+        try(QcMLFileReader cachedReader = new QcMLFileReader(configuration, cache)) {
+            assertSame(cache, cachedReader.getIndexCache());
+
+            int firstCount = cachedReader.getStatistics(first).getNumberOfRunQualities();
+            assertEquals(firstCount, cachedReader.getStatistics(first).getNumberOfRunQualities());
+            assertEquals(1, cache.getHitCount());
+            assertEquals(1, cache.getMissCount());
+
+            // alternating files with a single cached index evicts the other file each time
+            int secondCount = cachedReader.getStatistics(second).getNumberOfRunQualities();
+            assertEquals(firstCount, cachedReader.getStatistics(first).getNumberOfRunQualities());
+            assertEquals(secondCount, cachedReader.getStatistics(second).getNumberOfRunQualities());
+            assertEquals(3, cache.getEvictionCount());
+            assertEquals(1, cache.size());
+        }
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void getQualityAssessment_sharedCvCache() {
+        IndexConfiguration configuration = new IndexConfiguration();
+        configuration.setEngine(IndexEngine.BYTE_SCANNER);
+        QcMLFileReader scannerReader = new QcMLFileReader(configuration);
+        String file = loadResource("/CvParameterTest.qcML").getAbsolutePath();
+
+        QualityAssessment first = scannerReader.getQualityAssessment(file, "run_1");
+        QualityAssessment second = scannerReader.getQualityAssessment(file, "run_2");
+
+        // each lookup receives its own copies of the shared Cv's
+        Cv cv = first.getQualityParameter("QC:000000").getCvRef();
+        assertEquals("cv_0", cv.getId());
+        assertEquals(cv, second.getQualityParameter("QC:000000").getCvRef());
+        assertNotSame(cv, second.getQualityParameter("QC:000000").getCvRef());
+        assertNotSame(cv, scannerReader.getQualityParameter(file, "set_1", "QC:000000").getCvRef());
+
+        // modifying a Cv doesn't affect the objects returned by other lookups
+        cv.setVersion("modified");
+        assertNotEquals("modified", scannerReader.getQualityAssessment(file, "run_1").getQualityParameter("QC:000000").getCvRef().getVersion());
+
+        // the objects returned by the same iterator share their Cv's
+        Iterator<QualityAssessment> it = scannerReader.getQualityAssessmentIterator(file);
+        Cv iterated = it.next().getQualityParameter("QC:000000").getCvRef();
+        while(it.hasNext()) {
+            QualityParameter param = it.next().getQualityParameter("QC:000000");
+            if(param != null) {
+                assertSame(iterated, param.getCvRef());
+            }
+        }
+    }
+
+    @Test
+    public void getQualityParameter_indexed() {
+        QcMLFileReader indexedReader = new QcMLFileReader(createParameterIndexConfiguration());
+        String file = loadResource("/CvParameterTest.qcML").getAbsolutePath();
+
+        QualityParameter expected = reader.getQualityAssessment(file, "set_1").getQualityParameter("QC:000001");
+        QualityParameter param = indexedReader.getQualityParameter(file, "set_1", "QC:000001");
+
+        assertEquals(expected.getId(), param.getId());
+        assertEquals(expected.getName(), param.getName());
+        assertEquals(expected.getValue(), param.getValue());
+        assertEquals(expected.getCvRef(), param.getCvRef());
+        assertEquals(expected.getUnitCvRef(), param.getUnitCvRef());
+    }
+
+    @Test
+    public void getQualityParameter_notIndexed() {
+        QualityParameter param = reader.getQualityParameter(loadResource("/CvParameterTest.qcML").getAbsolutePath(), "run_1", "QC:000003");
+
+        assertEquals("qp_3", param.getId());
+        assertEquals("cv_1", param.getCvRef().getId());
+    }
+
+    @Test
+    public void getQualityParameter_nonExisting() {
+        QcMLFileReader indexedReader = new QcMLFileReader(createParameterIndexConfiguration());
+        String file = loadResource("/CvParameterTest.qcML").getAbsolutePath();
+
+        assertNull(indexedReader.getQualityParameter(file, "run_2", "QC:000003"));
+        assertNull(indexedReader.getQualityParameter(file, "non-existing id", "QC:000000"));
+    }
+
+    @Test
+    public void getAttachmentParameter_indexed() {
+        QcMLFileReader indexedReader = new QcMLFileReader(createParameterIndexConfiguration());
+
+        AttachmentParameter param = indexedReader.getAttachmentParameter(loadResource("/CvParameterTest.qcML").getAbsolutePath(), "run_1", "QC:000009");
+
+        assertEquals("ap_1", param.getId());
+        assertEquals("c29tZSBzdHJpbmc=", param.getBinary());
+        assertEquals("cv_1", param.getCvRef().getId());
+        assertEquals("qp_1", param.getQualityParameterRef().getId());
+        assertEquals("cv_0", param.getQualityParameterRef().getCvRef().getId());
+    }
+
+    @Test
+    public void getQualityAssessment_catalog() throws IOException {
+        File dir = Files.createTempDirectory("jqcml").toFile();
+        File file = new File(dir, "NoSet.qcML");
+        Files.copy(loadResource("/NoSet.qcML").toPath(), file.toPath());
+        try {
+            QcMLFileReader catalogReader = new QcMLFileReader(new QcMLCatalog(dir));
+
+            QualityAssessment qa = catalogReader.getQualityAssessment(null, "run_4");
+            assertNotNull(qa);
+            assertEquals("run_4", qa.getId());
+            assertEquals("cv_4", catalogReader.getCv(null, "cv_4").getId());
+
+            assertNull(catalogReader.getQualityAssessment(null, "non-existing id"));
+            assertNull(catalogReader.getCv(null, "non-existing id"));
+        } finally {
+            file.delete();
+            QcMLCatalog.getCatalogFile(dir).delete();
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void getQualityAssessment_compressed() throws IOException {
+        File dir = Files.createTempDirectory("jqcml").toFile();
+        File file = new File(dir, "CvParameterTest.qcML.gz");
+        BlockCompressedOutputStream.compress(loadResource("/CvParameterTest.qcML"), file);
+        try {
+            QualityAssessment qa = reader.getQualityAssessment(file.getAbsolutePath(), "run_1");
+            assertNotNull(qa);
+            assertEquals("run_1", qa.getId());
+            assertEquals(4, qa.getNumberOfQualityParameters());
+            assertTrue(reader.validate(file.getAbsolutePath()));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(11, reader.writeAttachmentBinary(file.getAbsolutePath(), "run_1", "QC:000009", out));
+        } finally {
+            file.delete();
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void getStatistics() {
+        QcMLStatistics statistics = reader.getStatistics(loadResource("/QcMLTest.qcML").getAbsolutePath());
+
+        assertEquals(5, statistics.getNumberOfRunQualities());
+        assertEquals(2, statistics.getNumberOfSetQualities());
+        assertEquals(13, statistics.getNumberOfCvs());
+    }
+
+    @Test
+    public void writeAttachmentBinary() {
+        String file = loadResource("/CvParameterTest.qcML").getAbsolutePath();
+        for(QcMLFileReader attachmentReader : new QcMLFileReader[] { reader, new QcMLFileReader(createParameterIndexConfiguration()) }) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(11, attachmentReader.writeAttachmentBinary(file, "run_1", "QC:000009", out));
+            assertEquals("some string", new String(out.toByteArray(), StandardCharsets.US_ASCII));
+
+            assertEquals(-1, attachmentReader.writeAttachmentBinary(file, "run_1", "non-existing accession", new ByteArrayOutputStream()));
+        }
+    }
+
+    @Test
+    public void getAttachmentTableRows() {
+        String file = loadResource("/TableAttachmentTest.qcML").getAbsolutePath();
+        for(QcMLFileReader tableReader : new QcMLFileReader[] { reader, new QcMLFileReader(createParameterIndexConfiguration()) }) {
+            TableAttachment table = tableReader.getAttachmentTableRows(file, "run_1", "QC:000009", 1, 4);
+            assertEquals(3, table.getColumns().size());
+            assertNull(table.getValue("scan", 0));
+            assertEquals("2", table.getValue("scan", 1).getValue());
+            assertEquals("3000", table.getValue("intensity", 2).getValue());
+            assertEquals("A&B", table.getValue("intensity", 3).getValue());
+            assertNull(table.getValue("scan", 4));
+
+            assertNull(tableReader.getAttachmentTableRows(file, "run_1", "non-existing accession", 0, 1));
+        }
+    }
+
+    @Test
+    public void getQualityAssessment_concurrent() throws InterruptedException, ExecutionException {
+        final String[] files = { loadResource("/QcMLTest.qcML").getAbsolutePath(), loadResource("/CvParameterTest.qcML").getAbsolutePath() };
+        final String[] ids = { "run_1", "run_2", "set_1" };
+        final QcMLFileReader sharedReader = new QcMLFileReader();
+
+        // the expected number of quality parameters by file and ID
+        final int[][] expected = new int[files.length][ids.length];
+        for(int f = 0; f < files.length; f++) {
+            for(int i = 0; i < ids.length; i++) {
+                expected[f][i] = reader.getQualityAssessment(files[f], ids[i]).getNumberOfQualityParameters();
+            }
+        }
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for(int t = 0; t < 8; t++) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    // alternate between the files, so the shared index is switched while it's used by other threads
+                    for(int i = 0; i < 60; i++) {
+                        int f = i % files.length;
+                        int id = i % ids.length;
+                        QualityAssessment qa = sharedReader.getQualityAssessment(files[f], ids[id]);
+                        assertEquals(ids[id], qa.getId());
+                        assertEquals(expected[f][id], qa.getNumberOfQualityParameters());
+                        assertEquals("cv_0", sharedReader.getCv(files[f], "cv_0").getId());
+                    }
+                    return null;
+                }
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        try {
+            for(Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+            sharedReader.close();
+        }
+    }
+
+    private IndexConfiguration createParameterIndexConfiguration() {
+        IndexConfiguration configuration = new IndexConfiguration();
+        configuration.setParameterIndex(true);
+        return configuration;
+    }
+
     private File loadResource(String fileName) {
         try {
             return new File(getClass().getResource(fileName).toURI());
@@ -0,0 +1,104 @@
+package inspector.jqcml.io.xml;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.google.common.io.ByteStreams;
+import inspector.jqcml.io.xml.index.IndexConfiguration;
+import inspector.jqcml.io.xml.index.IndexEngine;
+import inspector.jqcml.io.xml.index.QcMLIndexer;
+import inspector.jqcml.model.QualityAssessment;
+import org.junit.Test;
+import org.xml.sax.InputSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+import static org.junit.Assert.*;
+
+public class QcMLSpliteratorTest {
+
+    @Test
+    public void trySplit() {
+        QcMLIndexer index = createIndex("/QcMLTest.qcML");
+
+        // the snippets are read from the raw bytes of the file
+        List<String> snippets = new ArrayList<>();
+        Spliterator<String> spliterator = new QcMLSpliterator<>(index, QualityAssessment.class, QcMLSpliteratorTest::read);
+        long size = spliterator.estimateSize();
+        while(spliterator.tryAdvance(snippets::add)) {
+            // read all snippets one by one
+        }
+        assertEquals(size, snippets.size());
+        assertEquals(0, spliterator.estimateSize());
+
+        // the splits cover all snippets in order
+        List<String> splitSnippets = new ArrayList<>();
+        spliterator = new QcMLSpliterator<>(index, QualityAssessment.class, QcMLSpliteratorTest::read);
+        Spliterator<String> prefix = spliterator.trySplit();
+        assertNotNull(prefix);
+        assertEquals(size, prefix.estimateSize() + spliterator.estimateSize());
+        prefix.forEachRemaining(splitSnippets::add);
+        spliterator.forEachRemaining(splitSnippets::add);
+        assertEquals(snippets, splitSnippets);
+
+        // a parallel stream retains the encounter order
+        assertEquals(snippets, StreamSupport.stream(new QcMLSpliterator<>(index, QualityAssessment.class, QcMLSpliteratorTest::read), true)
+                .collect(Collectors.toList()));
+    }
+
+    @Test
+    public void trySplit_empty() {
+        Spliterator<String> spliterator = new QcMLSpliterator<>(createIndex("/PlainText.qcML"), QualityAssessment.class, QcMLSpliteratorTest::read);
+
+        assertEquals(0, spliterator.estimateSize());
+        assertNull(spliterator.trySplit());
+        assertFalse(spliterator.tryAdvance(snippet -> fail()));
+    }
+
+    private static String read(InputSource xml) {
+        try {
+            return new String(ByteStreams.toByteArray(xml.getByteStream()), xml.getEncoding());
+        } catch(IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private QcMLIndexer createIndex(String fileName) {
+        IndexConfiguration configuration = new IndexConfiguration();
+        configuration.setEngine(IndexEngine.BYTE_SCANNER);
+        return new QcMLIndexer(loadResource(fileName), configuration);
+    }
+
+    private File loadResource(String fileName) {
+        try {
+            return new File(getClass().getResource(fileName).toURI());
+        } catch(URISyntaxException e) {
+            fail(e.getMessage());
+        }
+        return null;
+    }
+}
@@ -0,0 +1,110 @@
+package inspector.jqcml.io.xml;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import inspector.jqcml.model.Cv;
+import inspector.jqcml.model.QualityAssessment;
+import inspector.jqcml.model.QualityParameter;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class QcMLStreamReaderTest {
+
+    @Test(expected=NullPointerException.class)
+    public void qcMLStreamReader_nullFile() {
+        new QcMLStreamReader(null);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void qcMLStreamReader_nonExistingFile() {
+        new QcMLStreamReader(new File("/NonExisting.qcML"));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void qcMLStreamReader_noXMLFile() {
+        new QcMLStreamReader(loadResource("/PlainText.qcML"));
+    }
+
+    @Test
+    public void nextQualityAssessment() {
+        try(QcMLStreamReader reader = new QcMLStreamReader(loadResource("/QcMLTest.qcML"))) {
+            assertEquals("0.0.8", reader.getVersion());
+
+            List<String> ids = new ArrayList<>();
+            QualityAssessment qa;
+            while((qa = reader.nextQualityAssessment()) != null) {
+                assertEquals(qa.getId().startsWith("set_"), qa.isSet());
+                ids.add(qa.getId());
+
+                // the Cv references are not resolved
+                QualityParameter param = qa.getQualityParameterIterator().next();
+                assertNotNull(param.getCvRefId());
+                assertNull(param.getCvRef());
+            }
+            assertEquals(Arrays.asList("run_0", "run_1", "run_2", "run_3", "run_4", "set_0", "set_1"), ids);
+            assertNull(reader.nextQualityAssessment());
+
+            // the Cv's follow the quality assessments
+            Cv cv = reader.nextCv();
+            assertEquals("cv_0", cv.getId());
+            assertEquals("cv item 0", cv.getFullName());
+        }
+    }
+
+    @Test
+    public void nextCv() {
+        // the quality assessments are skipped
+        try(QcMLStreamReader reader = new QcMLStreamReader(loadResource("/QcMLTest.qcML"))) {
+            int nrOfCvs = 0;
+            while(reader.nextCv() != null) {
+                nrOfCvs++;
+            }
+            assertEquals(13, nrOfCvs);
+            assertNull(reader.nextQualityAssessment());
+        }
+    }
+
+    @Test
+    public void getQualityAssessmentStream() {
+        try(QcMLStreamReader reader = new QcMLStreamReader(loadResource("/CvParameterTest.qcML"))) {
+            assertEquals(Arrays.asList("run_1", "run_2", "set_1"),
+                    reader.getQualityAssessmentStream().map(QualityAssessment::getId).collect(Collectors.toList()));
+            assertEquals(2, reader.getCvStream().count());
+        }
+    }
+
+    private File loadResource(String fileName) {
+        try {
+            return new File(getClass().getResource(fileName).toURI());
+        } catch(URISyntaxException e) {
+            fail(e.getMessage());
+        }
+        return null;
+    }
+}
@@ -0,0 +1,86 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import psidev.psi.tools.xxindex.index.ByteRange;
+import psidev.psi.tools.xxindex.index.IndexElement;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compares the heap usage and lookup throughput of a {@link CompactIdMapping} and a {@link LinkedHashMap} of {@link ByteRange}s.
+ *
+ * Usage: CompactIdMappingBenchmark [number of entries]
+ */
+public class CompactIdMappingBenchmark {
+
+    public static void main(String[] args) {
+        int nrOfEntries = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        System.out.printf("%d entries with IDs of the form run_<number>%n", nrOfEntries);
+
+        long before = usedMemory();
+        Map<String, IndexElement> linked = new LinkedHashMap<>();
+        fill(linked, nrOfEntries);
+        long linkedMemory = usedMemory() - before;
+        report("LinkedHashMap", linked, linkedMemory);
+        linked = null;
+
+        before = usedMemory();
+        CompactIdMapping compact = new CompactIdMapping();
+        fill(compact, nrOfEntries);
+        long compactMemory = usedMemory() - before;
+        report("CompactIdMapping", compact, compactMemory);
+        System.out.printf("%-17s %8.1f bytes/entry (estimated)%n", "", (double) compact.estimateMemory() / nrOfEntries);
+    }
+
+    private static void fill(Map<String, IndexElement> mapping, int nrOfEntries) {
+        for(int i = 0; i < nrOfEntries; i++) {
+            mapping.put("run_" + i, new ByteRange(i * 1000L, i * 1000L + 999));
+        }
+    }
+
+    private static void report(String name, Map<String, IndexElement> mapping, long memory) {
+        // look up each ID once to warm up, and subsequently measure
+        long checksum = lookup(mapping);
+        long start = System.nanoTime();
+        checksum += lookup(mapping);
+        double nanos = (double) (System.nanoTime() - start) / mapping.size();
+
+        System.out.printf("%-17s %8.1f bytes/entry %8.1f ns/lookup (checksum %d)%n", name, (double) memory / mapping.size(), nanos, checksum);
+    }
+
+    private static long lookup(Map<String, IndexElement> mapping) {
+        long checksum = 0;
+        for(int i = 0; i < mapping.size(); i++) {
+            checksum += mapping.get("run_" + i).getStop();
+        }
+        return checksum;
+    }
+
+    private static long usedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        for(int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
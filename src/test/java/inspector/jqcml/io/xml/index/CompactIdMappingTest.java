@@ -0,0 +1,190 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.Test;
+import psidev.psi.tools.xxindex.index.ByteRange;
+import psidev.psi.tools.xxindex.index.IndexElement;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CompactIdMappingTest {
+
+    @Test
+    public void put_get() {
+        CompactIdMapping mapping = new CompactIdMapping();
+
+        assertNull(mapping.put("run_1", new ByteRange(10, 20)));
+        assertNull(mapping.put("été", new ByteRange(30, 40)));
+
+        assertEquals(2, mapping.size());
+        assertEquals(10, mapping.get("run_1").getStart());
+        assertEquals(20, mapping.get("run_1").getStop());
+        assertEquals(30, mapping.get("été").getStart());
+        assertTrue(mapping.containsKey("run_1"));
+        assertFalse(mapping.containsKey("run_2"));
+        assertNull(mapping.get("run_2"));
+        assertNull(mapping.get(1));
+    }
+
+    @Test
+    public void put_replace() {
+        CompactIdMapping mapping = new CompactIdMapping();
+        mapping.put("run_1", new ByteRange(10, 20));
+        mapping.put("run_2", new ByteRange(20, 30));
+
+        IndexElement old = mapping.put("run_1", new ByteRange(40, 50));
+
+        assertEquals(10, old.getStart());
+        assertEquals(2, mapping.size());
+        assertEquals(40, mapping.get("run_1").getStart());
+        // the insertion order is retained
+        assertEquals(Arrays.asList("run_1", "run_2"), new ArrayList<>(mapping.keySet()));
+    }
+
+    @Test
+    public void sameAsLinkedHashMap() {
+        Map<String, IndexElement> expected = new LinkedHashMap<>();
+        CompactIdMapping mapping = new CompactIdMapping();
+        for(int i = 0; i < 10000; i++) {
+            expected.put("run_" + (i * 7919 % 10000), new ByteRange(i, i + 1));
+            mapping.put("run_" + (i * 7919 % 10000), new ByteRange(i, i + 1));
+        }
+
+        assertEquals(expected.size(), mapping.size());
+        Iterator<Map.Entry<String, IndexElement>> it = mapping.entrySet().iterator();
+        for(Map.Entry<String, IndexElement> entry : expected.entrySet()) {
+            Map.Entry<String, IndexElement> other = it.next();
+            assertEquals(entry.getKey(), other.getKey());
+            assertEquals(entry.getValue().getStart(), other.getValue().getStart());
+            assertEquals(entry.getValue().getStop(), mapping.get(entry.getKey()).getStop());
+        }
+        assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void remove() {
+        CompactIdMapping mapping = new CompactIdMapping(2);
+        for(int i = 0; i < 10; i++) {
+            mapping.put("id_" + i, new ByteRange(i, i + 1));
+        }
+
+        assertEquals(3, mapping.remove("id_3").getStart());
+        assertNull(mapping.remove("id_3"));
+        for(Iterator<IndexElement> it = mapping.values().iterator(); it.hasNext(); ) {
+            if(it.next().getStart() >= 5) {
+                it.remove();
+            }
+        }
+
+        assertEquals(4, mapping.size());
+        assertFalse(mapping.containsKey("id_3"));
+        assertFalse(mapping.containsKey("id_7"));
+        assertEquals(2, mapping.get("id_2").getStart());
+
+        // adding entries after removal discards the removed entries
+        for(int i = 10; i < 20; i++) {
+            mapping.put("id_" + i, new ByteRange(i, i + 1));
+        }
+        List<String> ids = new ArrayList<>(mapping.keySet());
+        assertEquals(14, ids.size());
+        assertEquals(Arrays.asList("id_0", "id_1", "id_2", "id_4", "id_10"), ids.subList(0, 5));
+        assertEquals(19, mapping.get("id_19").getStart());
+    }
+
+    @Test
+    public void remove_sameAsLinkedHashMap() {
+        Map<String, IndexElement> expected = new LinkedHashMap<>();
+        CompactIdMapping mapping = new CompactIdMapping();
+        Random random = new Random(42);
+        for(int i = 0; i < 10000; i++) {
+            String id = "run_" + random.nextInt(2000);
+            if(random.nextInt(3) == 0) {
+                assertEquals(expected.remove(id) == null, mapping.remove(id) == null);
+            } else {
+                expected.put(id, new ByteRange(i, i + 1));
+                mapping.put(id, new ByteRange(i, i + 1));
+            }
+        }
+
+        // the hash table remains valid after the removals, without being rebuilt by the lookups
+        assertEquals(expected.size(), mapping.size());
+        for(int i = 0; i < 2000; i++) {
+            IndexElement elem = expected.get("run_" + i);
+            IndexElement other = mapping.get("run_" + i);
+            assertEquals(elem == null, other == null);
+            if(elem != null) {
+                assertEquals(elem.getStart(), other.getStart());
+            }
+        }
+        assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(mapping.keySet()));
+
+        mapping.clear();
+        assertNull(mapping.get("run_1"));
+        mapping.put("run_1", new ByteRange(1, 2));
+        assertEquals(1, mapping.get("run_1").getStart());
+    }
+
+    @Test
+    public void getOffsets() {
+        CompactIdMapping mapping = new CompactIdMapping();
+        mapping.put("run_1", new ByteRange(10, 20));
+        mapping.put("run_2", new ByteRange(20, 30));
+        mapping.put("run_3", new ByteRange(30, 40));
+        mapping.remove("run_2");
+
+        ElementOffsets offsets = mapping.getOffsets();
+        assertEquals(2, offsets.size());
+        assertEquals(10, offsets.getStart(0));
+        assertEquals(40, offsets.getStop(1));
+
+        // the offsets are sorted if they aren't in insertion order
+        mapping.put("run_0", new ByteRange(0, 10));
+        offsets = mapping.getOffsets();
+        assertEquals(3, offsets.size());
+        for(int i = 0; i < offsets.size(); i++) {
+            assertEquals(i == 0 ? 0 : i == 1 ? 10 : 30, offsets.get(i).getStart());
+        }
+        assertEquals(offsets.getStart(2), ElementOffsets.of(new LinkedHashMap<>(mapping)).getStart(2));
+    }
+
+    @Test
+    public void copy() {
+        CompactIdMapping mapping = new CompactIdMapping();
+        mapping.put("cv_0", new ByteRange(0, 10));
+        mapping.put("cv_1", new ByteRange(10, 20));
+
+        CompactIdMapping copy = new CompactIdMapping(mapping);
+        copy.remove("cv_0");
+
+        assertEquals(mapping.keySet(), new CompactIdMapping(mapping).keySet());
+        assertEquals(2, mapping.size());
+        assertEquals(1, copy.size());
+    }
+}
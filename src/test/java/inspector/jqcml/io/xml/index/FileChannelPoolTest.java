@@ -0,0 +1,126 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class FileChannelPoolTest {
+
+    @Test
+    public void read() throws IOException {
+        File file = loadResource("/CvParameterTest.qcML");
+        byte[] bytes = Files.readAllBytes(file.toPath());
+
+        try(FileChannelPool pool = new FileChannelPool(file)) {
+            ByteBuffer buffer = ByteBuffer.allocate(90);
+            assertEquals(90, pool.read(buffer, 10));
+            buffer.flip();
+            assertEquals(ByteBuffer.wrap(bytes, 10, 90), buffer);
+
+            // reading beyond the end of the file
+            buffer = ByteBuffer.allocate(100);
+            assertEquals(50, pool.read(buffer, bytes.length - 50));
+        }
+    }
+
+    @Test
+    public void openStream() throws IOException {
+        File file = loadResource("/CvParameterTest.qcML");
+        byte[] bytes = Files.readAllBytes(file.toPath());
+
+        try(FileChannelPool pool = new FileChannelPool(file);
+            InputStream in = pool.openStream(100)) {
+            assertEquals(bytes[100], (byte) in.read());
+            assertEquals(10, in.skip(10));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[64];
+            int read;
+            while((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            assertEquals(ByteBuffer.wrap(bytes, 111, bytes.length - 111), ByteBuffer.wrap(out.toByteArray()));
+        }
+    }
+
+    @Test
+    public void acquire_reuse() throws IOException {
+        File file = loadResource("/CvParameterTest.qcML");
+
+        FileChannelPool pool = new FileChannelPool(file, 1);
+        FileChannel first = pool.acquire();
+        FileChannel second = pool.acquire();
+        assertNotSame(first, second);
+
+        // only a single channel is retained
+        pool.release(first);
+        pool.release(second);
+        assertTrue(first.isOpen());
+        assertFalse(second.isOpen());
+        assertSame(first, pool.acquire());
+
+        // a closed channel isn't reused
+        first.close();
+        pool.release(first);
+        assertNotSame(first, pool.acquire());
+    }
+
+    @Test
+    public void close() throws IOException {
+        File file = loadResource("/CvParameterTest.qcML");
+
+        FileChannelPool pool = new FileChannelPool(file);
+        FileChannel idle = pool.acquire();
+        FileChannel inUse = pool.acquire();
+        pool.release(idle);
+
+        pool.close();
+        assertFalse(idle.isOpen());
+        assertTrue(inUse.isOpen());
+
+        // channels in use are closed when they are released
+        pool.release(inUse);
+        assertFalse(inUse.isOpen());
+
+        // the pool can still be used
+        assertEquals(10, pool.read(ByteBuffer.allocate(10), 0));
+    }
+
+    private File loadResource(String fileName) {
+        try {
+            return new File(getClass().getResource(fileName).toURI());
+        } catch(URISyntaxException e) {
+            fail(e.getMessage());
+        }
+        return null;
+    }
+}
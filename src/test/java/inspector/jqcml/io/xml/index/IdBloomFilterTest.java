@@ -0,0 +1,80 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class IdBloomFilterTest {
+
+    @Test
+    public void mightContain_noFalseNegatives() {
+        IdBloomFilter filter = new IdBloomFilter(10000);
+        for(int i = 0; i < 10000; i++) {
+            filter.add("run_" + i);
+        }
+
+        for(int i = 0; i < 10000; i++) {
+            assertTrue(filter.mightContain("run_" + i));
+        }
+    }
+
+    @Test
+    public void mightContain_falsePositiveRate() {
+        IdBloomFilter filter = new IdBloomFilter(10000);
+        for(int i = 0; i < 10000; i++) {
+            filter.add("run_" + i);
+        }
+
+        int falsePositives = 0;
+        for(int i = 0; i < 10000; i++) {
+            if(filter.mightContain("set_" + i)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives < 300);
+    }
+
+    @Test
+    public void mightContain_empty() {
+        assertFalse(new IdBloomFilter(0).mightContain("run_1"));
+    }
+
+    @Test
+    public void writeRead() throws IOException {
+        IdBloomFilter filter = new IdBloomFilter(100);
+        filter.add("cv_0");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        filter.write(new DataOutputStream(bytes));
+        IdBloomFilter read = IdBloomFilter.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+        assertTrue(read.mightContain("cv_0"));
+        assertFalse(read.mightContain("cv_1"));
+    }
+}
@@ -0,0 +1,214 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import inspector.jqcml.model.Cv;
+import org.junit.Test;
+
+import java.io.File;
+import java.net.URISyntaxException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class IndexCacheTest {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void indexCache_invalidEntries() {
+        new IndexCache(0, 0);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void put_null() {
+        new IndexCache().put(loadResource("/QcMLTest.qcML"), null);
+    }
+
+    @Test
+    public void get() {
+        File file = loadResource("/QcMLTest.qcML");
+        IndexCache cache = new IndexCache();
+
+        assertNull(cache.get(file));
+        assertEquals(1, cache.getMissCount());
+
+        QcMLIndexer index = new QcMLIndexer(file, createScannerConfiguration());
+        cache.put(file, index);
+        assertSame(index, cache.get(file));
+        assertSame(index, cache.get(new File(file.getPath())));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.size());
+        assertEquals(index.estimateMemory(), cache.getMemory());
+
+        cache.close();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getMemory());
+    }
+
+    @Test
+    public void put_evictEntries() {
+        File first = loadResource("/QcMLTest.qcML");
+        File second = loadResource("/CvParameterTest.qcML");
+        File third = loadResource("/TableAttachmentTest.qcML");
+        IndexCache cache = new IndexCache(2, 0);
+
+        cache.put(first, new QcMLIndexer(first, createScannerConfiguration()));
+        cache.put(second, new QcMLIndexer(second, createScannerConfiguration()));
+        // use the first file, so the second file is the least recently used
+        assertNotNull(cache.get(first));
+
+        cache.put(third, new QcMLIndexer(third, createScannerConfiguration()));
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.get(second));
+        assertNotNull(cache.get(first));
+        assertNotNull(cache.get(third));
+    }
+
+    @Test
+    public void put_evictMemory() {
+        File first = loadResource("/QcMLTest.qcML");
+        File second = loadResource("/CvParameterTest.qcML");
+        QcMLIndexer firstIndex = new QcMLIndexer(first, createScannerConfiguration());
+        QcMLIndexer secondIndex = new QcMLIndexer(second, createScannerConfiguration());
+        IndexCache cache = new IndexCache(10, firstIndex.estimateMemory() + secondIndex.estimateMemory() - 1);
+
+        cache.put(first, firstIndex);
+        cache.put(second, secondIndex);
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.get(first));
+        assertSame(secondIndex, cache.get(second));
+        assertEquals(secondIndex.estimateMemory(), cache.getMemory());
+
+        // the evicted index is closed
+        try {
+            firstIndex.getXMLSnippet(Cv.class, "cv_0");
+            fail("An evicted index shouldn't reopen the qcML file");
+        } catch(IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void acquire_evictRetained() {
+        File first = loadResource("/QcMLTest.qcML");
+        File second = loadResource("/CvParameterTest.qcML");
+        QcMLIndexer firstIndex = new QcMLIndexer(first, createScannerConfiguration());
+        IndexCache cache = new IndexCache(1, 0);
+
+        cache.put(first, firstIndex);
+        assertSame(firstIndex, cache.acquire(first));
+        assertNull(cache.acquire(second));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        // the evicted index remains usable until it's released
+        cache.put(second, new QcMLIndexer(second, createScannerConfiguration()));
+        assertEquals(1, cache.getEvictionCount());
+        assertNotNull(firstIndex.getXMLSnippet(Cv.class, "cv_0"));
+
+        firstIndex.release();
+        try {
+            firstIndex.getXMLSnippet(Cv.class, "cv_0");
+            fail("A released evicted index shouldn't reopen the qcML file");
+        } catch(IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void put_replace() {
+        File file = loadResource("/QcMLTest.qcML");
+        IndexCache cache = new IndexCache(1, 0);
+
+        cache.put(file, new QcMLIndexer(file, createScannerConfiguration()));
+        QcMLIndexer replacement = new QcMLIndexer(file, createScannerConfiguration());
+        cache.put(file, replacement);
+        assertEquals(1, cache.size());
+        assertEquals(0, cache.getEvictionCount());
+        assertSame(replacement, cache.get(file));
+
+        cache.remove(file);
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getMemory());
+    }
+
+    @Test
+    public void acquire_loader() throws Exception {
+        final File first = loadResource("/QcMLTest.qcML");
+        File second = loadResource("/CvParameterTest.qcML");
+        IndexCache cache = new IndexCache();
+        QcMLIndexer secondIndex = new QcMLIndexer(second, createScannerConfiguration());
+        cache.put(second, secondIndex);
+
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch proceed = new CountDownLatch(1);
+        final AtomicInteger builds = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Callable<QcMLIndexer> slowBuild = () -> cache.acquire(first, file -> {
+                builds.incrementAndGet();
+                started.countDown();
+                try {
+                    proceed.await();
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new QcMLIndexer(file, createScannerConfiguration());
+            });
+            Future<QcMLIndexer> building = executor.submit(slowBuild);
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            Future<QcMLIndexer> waiting = executor.submit(slowBuild);
+
+            // a cached index can be acquired while another index is being created
+            assertSame(secondIndex, cache.acquire(second, file -> { throw new AssertionError("The index is cached"); }));
+
+            proceed.countDown();
+            QcMLIndexer firstIndex = building.get(10, TimeUnit.SECONDS);
+            assertSame(firstIndex, waiting.get(10, TimeUnit.SECONDS));
+            assertEquals(1, builds.get());
+            assertSame(firstIndex, cache.get(first));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private IndexConfiguration createScannerConfiguration() {
+        IndexConfiguration configuration = new IndexConfiguration();
+        configuration.setEngine(IndexEngine.BYTE_SCANNER);
+        return configuration;
+    }
+
+    private File loadResource(String fileName) {
+        try {
+            return new File(getClass().getResource(fileName).toURI());
+        } catch(URISyntaxException e) {
+            fail(e.getMessage());
+        }
+        return null;
+    }
+}
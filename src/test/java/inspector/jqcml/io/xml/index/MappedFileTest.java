@@ -0,0 +1,77 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class MappedFileTest {
+
+    @Test
+    public void slice_singleSegment() throws IOException {
+        File file = loadResource("/CvParameterTest.qcML");
+        byte[] bytes = Files.readAllBytes(file.toPath());
+
+        MappedFile mapped = new MappedFile(file);
+
+        assertEquals(bytes.length, mapped.length());
+        assertEquals(ByteBuffer.wrap(bytes, 10, 90), mapped.slice(10, 100));
+        assertEquals(new String(bytes, 10, 90, StandardCharsets.UTF_8), mapped.readString(10, 100, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void slice_multipleSegments() throws IOException {
+        File file = loadResource("/CvParameterTest.qcML");
+        byte[] bytes = Files.readAllBytes(file.toPath());
+
+        MappedFile mapped = new MappedFile(file, 64);
+
+        // within a segment, across a segment boundary, and spanning multiple segments
+        assertEquals(ByteBuffer.wrap(bytes, 70, 50), mapped.slice(70, 120));
+        assertEquals(ByteBuffer.wrap(bytes, 60, 10), mapped.slice(60, 70));
+        assertEquals(ByteBuffer.wrap(bytes, 10, 300), mapped.slice(10, 310));
+        assertEquals(ByteBuffer.wrap(bytes), mapped.slice(0, bytes.length));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void slice_outOfBounds() throws IOException {
+        File file = loadResource("/CvParameterTest.qcML");
+
+        new MappedFile(file).slice(0, file.length() + 1);
+    }
+
+    private File loadResource(String fileName) {
+        try {
+            return new File(getClass().getResource(fileName).toURI());
+        } catch(URISyntaxException e) {
+            fail(e.getMessage());
+        }
+        return null;
+    }
+}
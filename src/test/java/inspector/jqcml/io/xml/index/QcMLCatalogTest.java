@@ -0,0 +1,183 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import inspector.jqcml.model.Cv;
+import inspector.jqcml.model.QualityAssessment;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class QcMLCatalogTest {
+
+    private File dir;
+    private File subDir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("jqcml").toFile();
+        subDir = new File(dir, "sub");
+        subDir.mkdir();
+        Files.copy(loadResource("/CvParameterTest.qcML").toPath(), new File(dir, "CvParameterTest.qcML").toPath());
+        Files.copy(loadResource("/NoSet.qcML").toPath(), new File(subDir, "NoSet.qcML").toPath());
+    }
+
+    @After
+    public void tearDown() {
+        for(File d : new File[] { subDir, dir }) {
+            File[] files = d.listFiles();
+            if(files != null) {
+                for(File f : files) {
+                    f.delete();
+                }
+            }
+            d.delete();
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void create_nonExistingDirectory() {
+        new QcMLCatalog(new File(dir, "NonExisting"));
+    }
+
+    @Test
+    public void find() {
+        QcMLCatalog catalog = new QcMLCatalog(dir, createConfiguration());
+
+        assertEquals(Arrays.asList(new File(dir, "CvParameterTest.qcML"), new File(subDir, "NoSet.qcML")), catalog.getFiles());
+
+        assertEquals(Collections.singletonList(new File(dir, "CvParameterTest.qcML")), catalog.find(QualityAssessment.class, "set_1"));
+        assertEquals(Collections.singletonList(new File(subDir, "NoSet.qcML")), catalog.find(Cv.class, "cv_4"));
+        assertEquals(2, catalog.find(QualityAssessment.class, "run_1").size());
+        assertTrue(catalog.find(QualityAssessment.class, "NonExisting").isEmpty());
+    }
+
+    @Test
+    public void getIndexer_sameAsIndexer() {
+        QcMLCatalog catalog = new QcMLCatalog(dir, createConfiguration());
+        File file = new File(subDir, "NoSet.qcML");
+
+        QcMLIndexer expected = new QcMLIndexer(file, createConfiguration());
+        QcMLIndexer actual = catalog.getIndexer(file);
+
+        for(String id : expected.getIDMapping(QualityAssessment.class).keySet()) {
+            assertEquals(expected.getXMLSnippet(QualityAssessment.class, id), actual.getXMLSnippet(QualityAssessment.class, id));
+        }
+        assertNull(catalog.getIndexer(new File(dir, "NonExisting.qcML")));
+    }
+
+    @Test
+    public void persistent_reusesCatalog() {
+        new QcMLCatalog(dir, createConfiguration());
+        File catalogFile = QcMLCatalog.getCatalogFile(dir);
+        assertTrue(catalogFile.exists());
+        long lastModified = catalogFile.lastModified();
+
+        QcMLCatalog catalog = new QcMLCatalog(dir, createConfiguration());
+
+        // the catalog shouldn't have been rewritten
+        assertEquals(lastModified, catalogFile.lastModified());
+        assertFalse(catalog.update());
+        assertEquals(2, catalog.find(QualityAssessment.class, "run_1").size());
+    }
+
+    @Test
+    public void find_reusesLoadedIndexes() {
+        QcMLCatalog catalog = new QcMLCatalog(dir, createConfiguration());
+        assertEquals(2, catalog.find(QualityAssessment.class, "run_1").size());
+
+        // the loaded indexes are kept in memory instead of being read from the catalog file again
+        assertTrue(QcMLCatalog.getCatalogFile(dir).delete());
+        assertEquals(2, catalog.find(QualityAssessment.class, "run_1").size());
+        assertNotNull(catalog.getIDMapping(new File(dir, "CvParameterTest.qcML"), QualityAssessment.class));
+    }
+
+    @Test
+    public void persistent_metaDataIndex() {
+        new QcMLCatalog(dir, createConfiguration());
+        File qcml = new File(dir, "CvParameterTest.qcML");
+
+        // the stored entries don't include the requested metadata index
+        IndexConfiguration configuration = createConfiguration();
+        configuration.setMetaDataAccessions(Collections.singleton("QC:000000"));
+        QcMLCatalog catalog = new QcMLCatalog(dir, configuration);
+        assertFalse(catalog.update());
+        assertNotNull(catalog.getIndexer(qcml).getMetaDataIndex());
+
+        // the rewritten entries do
+        catalog = new QcMLCatalog(dir, configuration);
+        assertFalse(catalog.update());
+        assertNotNull(catalog.getIndexer(qcml).getMetaDataIndex());
+        assertEquals(2, catalog.find(QualityAssessment.class, "run_1").size());
+    }
+
+    @Test
+    public void update_addedChangedRemoved() throws IOException {
+        QcMLCatalog catalog = new QcMLCatalog(dir, createConfiguration());
+
+        // add a qcML file
+        Files.copy(loadResource("/QcMLTest.qcML").toPath(), new File(subDir, "QcMLTest.qcML").toPath());
+        assertTrue(catalog.update());
+        assertEquals(Collections.singletonList(new File(subDir, "QcMLTest.qcML")), catalog.find(QualityAssessment.class, "set_0"));
+
+        // remove a qcML file
+        assertTrue(new File(dir, "CvParameterTest.qcML").delete());
+        assertTrue(catalog.update());
+        assertTrue(catalog.find(QualityAssessment.class, "set_1").contains(new File(subDir, "QcMLTest.qcML")));
+        assertFalse(catalog.find(QualityAssessment.class, "set_1").contains(new File(dir, "CvParameterTest.qcML")));
+
+        // change a qcML file
+        try(Writer writer = new FileWriter(new File(subDir, "NoSet.qcML"), true)) {
+            writer.write("\n\n");
+        }
+        assertTrue(catalog.update());
+        assertFalse(catalog.update());
+
+        // the stored catalog is up to date
+        assertFalse(new QcMLCatalog(dir, createConfiguration()).update());
+    }
+
+    private IndexConfiguration createConfiguration() {
+        IndexConfiguration configuration = new IndexConfiguration();
+        configuration.setEngine(IndexEngine.BYTE_SCANNER);
+        return configuration;
+    }
+
+    private File loadResource(String fileName) {
+        try {
+            return new File(getClass().getResource(fileName).toURI());
+        } catch(URISyntaxException e) {
+            fail(e.getMessage());
+        }
+        return null;
+    }
+}
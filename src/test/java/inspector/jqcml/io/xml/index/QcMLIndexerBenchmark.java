@@ -0,0 +1,101 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import inspector.jqcml.model.QualityAssessment;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compares the indexing throughput of the different {@link IndexEngine}s on a synthetic qcML file.
+ *
+ * Usage: QcMLIndexerBenchmark [number of runQualitys] [number of iterations]
+ */
+public class QcMLIndexerBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        int nrOfRuns = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        File file = File.createTempFile("benchmark", ".qcML");
+        file.deleteOnExit();
+        generate(file, nrOfRuns);
+        double megabytes = file.length() / (1024.0 * 1024.0);
+        System.out.printf("Synthetic qcML file: %d runQualitys, %.1f MB%n", nrOfRuns, megabytes);
+
+        for(IndexEngine engine : IndexEngine.values()) {
+            IndexConfiguration configuration = new IndexConfiguration();
+            configuration.setEngine(engine);
+            if(engine == IndexEngine.PARALLEL_BYTE_SCANNER && file.length() < 2 * ParallelScanIndexer.MIN_CHUNK_SIZE) {
+                System.out.printf("%-21s skipped, the file is too small to be scanned in parallel%n", engine);
+                continue;
+            }
+
+            // warm up
+            new QcMLIndexer(file, configuration);
+
+            long total = 0;
+            for(int i = 0; i < iterations; i++) {
+                long start = System.nanoTime();
+                QcMLIndexer index = new QcMLIndexer(file, configuration);
+                total += System.nanoTime() - start;
+
+                if(index.getIDMapping(QualityAssessment.class).size() != nrOfRuns) {
+                    throw new IllegalStateException("Incomplete index created by " + engine);
+                }
+            }
+
+            double seconds = total / 1e9 / iterations;
+            System.out.printf("%-21s %8.1f ms %8.1f MB/s%n", engine, seconds * 1000, megabytes / seconds);
+        }
+    }
+
+    /**
+     * Writes a qcML file containing the given number of runQualitys, each with some parameters and a table attachment.
+     */
+    private static void generate(File file, int nrOfRuns) throws IOException {
+        try(Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            writer.write("<qcML xmlns=\"http://www.prime-xs.eu/ms/qcml\" version=\"0.0.8\">\n");
+            for(int i = 0; i < nrOfRuns; i++) {
+                writer.write("    <runQuality ID=\"run_" + i + "\">\n");
+                writer.write("        <metaDataParameter ID=\"mp_" + i + "\" name=\"file name\" value=\"run_" + i + ".raw\" cvRef=\"cv_0\" accession=\"MS:1000577\"/>\n");
+                for(int j = 0; j < 5; j++) {
+                    writer.write("        <qualityParameter ID=\"qp_" + i + "_" + j + "\" name=\"parameter " + j + "\" value=\"" + (i * j) + "\" cvRef=\"cv_0\" accession=\"QC:000000" + j + "\"/>\n");
+                }
+                writer.write("        <attachment ID=\"att_" + i + "\" name=\"table\" cvRef=\"cv_0\" accession=\"QC:0000010\" qualityParameterRef=\"qp_" + i + "_0\">\n");
+                writer.write("            <table>\n");
+                writer.write("                <tableColumnTypes>mz intensity</tableColumnTypes>\n");
+                for(int j = 0; j < 20; j++) {
+                    writer.write("                <tableRowValues>" + (400 + j) + ".123 " + (j * 1000) + "</tableRowValues>\n");
+                }
+                writer.write("            </table>\n");
+                writer.write("        </attachment>\n");
+                writer.write("    </runQuality>\n");
+            }
+            writer.write("    <cvList>\n");
+            writer.write("        <cv ID=\"cv_0\" fullName=\"PSI-MS\" uri=\"http://psidev.cvs.sourceforge.net/psi/psi-ms/mzML/controlledVocabulary/psi-ms.obo\"/>\n");
+            writer.write("    </cvList>\n");
+            writer.write("</qcML>\n");
+        }
+    }
+}
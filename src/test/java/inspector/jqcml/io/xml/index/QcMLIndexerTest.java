@@ -0,0 +1,991 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import com.google.common.base.Predicate;
+import com.google.common.io.ByteStreams;
+import inspector.jqcml.model.AttachmentParameter;
+import inspector.jqcml.model.Cv;
+import inspector.jqcml.model.MetaDataParameter;
+import inspector.jqcml.model.QualityAssessment;
+import inspector.jqcml.model.QualityParameter;
+import org.apache.commons.codec.binary.Base64;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import psidev.psi.tools.xxindex.index.ByteRange;
+import psidev.psi.tools.xxindex.index.IndexElement;
+
+import javax.xml.XMLConstants;
+import javax.xml.validation.Schema;
+import javax.xml.validation.SchemaFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+public class QcMLIndexerTest {
+
+    private File dir;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("jqcml").toFile();
+        file = new File(dir, "CvParameterTest.qcML");
+        Files.copy(loadResource("/CvParameterTest.qcML").toPath(), file.toPath());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if(files != null) {
+            for(File f : files) {
+                f.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Test
+    public void persistent_disabled() {
+        new QcMLIndexer(file);
+
+        assertFalse(IndexFile.getSidecar(file).exists());
+    }
+
+    @Test
+    public void persistent_createsSidecar() {
+        QcMLIndexer index = new QcMLIndexer(file, createPersistentConfiguration());
+
+        assertTrue(IndexFile.getSidecar(file).exists());
+        assertEquals(3, index.getIDMapping(QualityAssessment.class).size());
+        assertEquals(2, index.getIDMapping(Cv.class).size());
+    }
+
+    @Test
+    public void persistent_reusesSidecar() {
+        QcMLIndexer created = new QcMLIndexer(file, createPersistentConfiguration());
+        long lastModified = IndexFile.getSidecar(file).lastModified();
+
+        QcMLIndexer loaded = new QcMLIndexer(file, createPersistentConfiguration());
+
+        // the sidecar shouldn't have been rewritten
+        assertEquals(lastModified, IndexFile.getSidecar(file).lastModified());
+
+        assertSameMapping(created.getIDMapping(QualityAssessment.class), loaded.getIDMapping(QualityAssessment.class));
+        assertSameMapping(created.getIDMapping(Cv.class), loaded.getIDMapping(Cv.class));
+        assertEquals(created.getXMLSnippet(QualityAssessment.class, "run_1"), loaded.getXMLSnippet(QualityAssessment.class, "run_1"));
+    }
+
+    @Test
+    public void persistent_concurrentWrites() throws InterruptedException, ExecutionException {
+        final IndexFile indexFile = new QcMLIndexer(file, createScannerConfiguration()).toIndexFile();
+
+        // concurrent writers use separate temporary files, so none of them fails
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Boolean>> writes = new ArrayList<>();
+        for(int i = 0; i < 16; i++) {
+            writes.add(executor.submit(() -> indexFile.write(file)));
+        }
+        for(Future<Boolean> write : writes) {
+            assertTrue(write.get());
+        }
+        executor.shutdown();
+
+        assertSameMapping(indexFile.getIDMappings().get(QualityAssessment.class), IndexFile.read(file).getIDMappings().get(QualityAssessment.class));
+        assertEquals(0, dir.listFiles((d, name) -> name.endsWith(".tmp")).length);
+    }
+
+    @Test
+    public void persistent_outdatedSidecar() throws IOException {
+        new QcMLIndexer(file, createPersistentConfiguration());
+        FileFingerprint original = IndexFile.read(file).getFingerprint();
+
+        // modify the qcML file
+        try(Writer writer = new FileWriter(file, true)) {
+            writer.write("\n\n");
+        }
+        assertNull(IndexFile.read(file));
+
+        QcMLIndexer index = new QcMLIndexer(file, createPersistentConfiguration());
+
+        assertNotEquals(original, IndexFile.read(file).getFingerprint());
+        assertNotNull(index.getXMLSnippet(Cv.class, "cv_1"));
+    }
+
+    @Test
+    public void persistent_mightContain() {
+        // no persistent index available
+        assertTrue(QcMLIndexer.mightContain(file, "NonExisting"));
+
+        new QcMLIndexer(file, createPersistentConfiguration());
+
+        assertTrue(QcMLIndexer.mightContain(file, "run_1"));
+        assertTrue(QcMLIndexer.mightContain(file, "set_1"));
+        assertTrue(QcMLIndexer.mightContain(file, "cv_0"));
+        assertFalse(QcMLIndexer.mightContain(file, "NonExisting"));
+    }
+
+    @Test
+    public void byteScanner_sameAsXXIndex() {
+        for(String resource : new String[] { "/CvParameterTest.qcML", "/QcMLTest.qcML", "/NoSet.qcML" }) {
+            File qcml = loadResource(resource);
+            QcMLIndexer xxindex = new QcMLIndexer(qcml);
+            QcMLIndexer scanner = new QcMLIndexer(qcml, createScannerConfiguration());
+
+            for(Class<?> cls : new Class<?>[] { QualityAssessment.class, Cv.class }) {
+                Map<String, IndexElement> expected = xxindex.getIDMapping(cls);
+                Map<String, IndexElement> actual = scanner.getIDMapping(cls);
+                if(expected == null) {
+                    assertNull(actual);
+                } else {
+                    assertEquals(expected.keySet(), actual.keySet());
+                    for(String id : expected.keySet()) {
+                        assertEquals(xxindex.getXMLSnippet(cls, id), scanner.getXMLSnippet(cls, id));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void byteScanner_noQcML() {
+        QcMLIndexer index = new QcMLIndexer(loadResource("/PlainText.qcML"), createScannerConfiguration());
+
+        assertNull(index.getIDMapping(QualityAssessment.class));
+        assertNull(index.getIDMapping(Cv.class));
+    }
+
+    @Test
+    public void byteScanner_ignoresNonElementMarkup() throws IOException {
+        File qcml = new File(dir, "Markup.qcML");
+        try(Writer writer = new FileWriter(qcml)) {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            writer.write("<!-- <runQuality ID=\"comment\"> -->\n");
+            writer.write("<qc:qcML xmlns:qc=\"http://www.prime-xs.eu/ms/qcml\" version=\"0.0.8\">\n");
+            writer.write("<qc:runQuality ID='run&amp;1' note=\"a > b\">\n");
+            writer.write("<![CDATA[ </runQuality> <setQuality ID=\"cdata\"> ]]>\n");
+            writer.write("<?pi <runQuality ID=\"pi\"> ?>\n");
+            writer.write("</qc:runQuality>\n");
+            writer.write("<setQuality ID=\"set_1\"/>\n");
+            writer.write("<cvList><cv ID=\"cv_0\"/></cvList>\n");
+            writer.write("</qc:qcML>\n");
+        }
+
+        QcMLIndexer index = new QcMLIndexer(qcml, createScannerConfiguration());
+
+        assertEquals(2, index.getIDMapping(QualityAssessment.class).size());
+        assertTrue(index.getXMLSnippet(QualityAssessment.class, "run&1").endsWith("</qc:runQuality>"));
+        assertEquals("<setQuality ID=\"set_1\"/>", index.getXMLSnippet(QualityAssessment.class, "set_1"));
+        assertEquals("<cv ID=\"cv_0\"/>", index.getXMLSnippet(Cv.class, "cv_0"));
+    }
+
+    @Test
+    public void parallelByteScanner_sameAsSequential() throws IOException {
+        QcMLIndexer sequential = new QcMLIndexer(file, createScannerConfiguration());
+
+        // use tiny chunks so that chunk boundaries fall within all kinds of markup
+        for(long chunkSize = 1; chunkSize <= file.length(); chunkSize += 7) {
+            @SuppressWarnings("rawtypes")
+            Map<Class, Map<String, IndexElement>> parallel =
+                    new ParallelScanIndexer(file, StandardCharsets.UTF_8, 4, chunkSize, false).scan().getIDMappings();
+
+            assertSameMapping(sequential.getIDMapping(QualityAssessment.class), parallel.get(QualityAssessment.class));
+            assertSameMapping(sequential.getIDMapping(Cv.class), parallel.get(Cv.class));
+        }
+    }
+
+    @Test
+    public void memoryBudget_sameAsUnbounded() {
+        QcMLIndexer unbounded = new QcMLIndexer(file, createScannerConfiguration());
+
+        for(IndexEngine engine : IndexEngine.values()) {
+            IndexConfiguration configuration = new IndexConfiguration();
+            configuration.setEngine(engine);
+            configuration.setMemoryBudget(1);
+            QcMLIndexer bounded = new QcMLIndexer(file, configuration);
+
+            assertTrue(bounded.getIDMapping(QualityAssessment.class) instanceof SpillingIdMapping);
+            assertSameMapping(unbounded.getIDMapping(QualityAssessment.class), bounded.getIDMapping(QualityAssessment.class));
+            assertSameMapping(unbounded.getIDMapping(Cv.class), bounded.getIDMapping(Cv.class));
+            assertEquals(unbounded.getXMLSnippet(QualityAssessment.class, "run_1"), bounded.getXMLSnippet(QualityAssessment.class, "run_1"));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void memoryBudget_closeReleasesSpilled() {
+        IndexConfiguration configuration = createScannerConfiguration();
+        configuration.setMemoryBudget(1);
+        QcMLIndexer bounded = new QcMLIndexer(file, configuration);
+        Map<String, IndexElement> spilled = bounded.getIDMapping(QualityAssessment.class);
+        assertTrue(spilled instanceof SpillingIdMapping);
+
+        bounded.close();
+
+        spilled.get("run_1");
+    }
+
+    @Test
+    public void createAsync_sameAsSynchronous() throws InterruptedException, ExecutionException {
+        QcMLIndexer synchronous = new QcMLIndexer(file, createScannerConfiguration());
+
+        IndexBuild build = QcMLIndexer.createAsync(file, createPersistentConfiguration());
+        assertEquals(synchronous.getXMLSnippet(QualityAssessment.class, "run_1"), build.getXMLSnippet(QualityAssessment.class, "run_1"));
+        assertNull(build.getIndexElement(Cv.class, "cv_2"));
+
+        QcMLIndexer asynchronous = build.get();
+        assertEquals(file.length(), build.getBytesProcessed());
+        assertEquals(1.0, build.getProgress(), 0.0);
+        assertSameMapping(synchronous.getIDMapping(QualityAssessment.class), asynchronous.getIDMapping(QualityAssessment.class));
+        assertSameMapping(synchronous.getIDMapping(Cv.class), asynchronous.getIDMapping(Cv.class));
+        assertTrue(IndexFile.getSidecar(file).exists());
+    }
+
+    @Test
+    public void createAsync_cancelled() throws InterruptedException, ExecutionException {
+        IndexBuild build = new IndexBuild(file, createScannerConfiguration());
+        assertTrue(build.cancel(true));
+        build.run();
+
+        assertTrue(build.isDone());
+        assertEquals(0, build.getBytesProcessed());
+        try {
+            build.getIndexElement(QualityAssessment.class, "run_1");
+            fail("Expected the lookup to fail for a cancelled build");
+        } catch(CancellationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void parameterIndex_sameForAllEngines() {
+        for(IndexEngine engine : IndexEngine.values()) {
+            IndexConfiguration configuration = new IndexConfiguration();
+            configuration.setEngine(engine);
+            configuration.setParameterIndex(true);
+            QcMLIndexer index = new QcMLIndexer(file, configuration);
+
+            assertTrue(index.hasParameterIndex());
+            assertEquals(2, index.getParameterMapping(MetaDataParameter.class, "run_1").size());
+            assertEquals(4, index.getParameterMapping(QualityParameter.class, "run_1").size());
+            assertEquals(2, index.getParameterMapping(QualityParameter.class, "set_1").size());
+            assertNull(index.getParameterMapping(AttachmentParameter.class, "run_2"));
+            assertTrue(index.getXMLSnippet(QualityParameter.class, "run_2", "QC:000001").contains("ID=\"qp_1_r1\""));
+            assertTrue(index.getXMLSnippet(AttachmentParameter.class, "run_1", "QC:000009").endsWith("</attachment>"));
+            assertEquals(index.getXMLSnippet(QualityParameter.class, "run_1", "QC:000003"), index.getXMLSnippet(QualityParameter.class, "qp_3"));
+            assertEquals("<binary>c29tZSBzdHJpbmc=</binary>", index.readXML(index.getBinaryRange("run_1", "QC:000009")));
+        }
+    }
+
+    @Test
+    public void getStartTag() {
+        IndexConfiguration configuration = createScannerConfiguration();
+        configuration.setParameterIndex(true);
+        QcMLIndexer index = new QcMLIndexer(file, configuration);
+
+        String attachment = index.getXMLSnippet(AttachmentParameter.class, "run_1", "QC:000009");
+        String startTag = index.getStartTag(AttachmentParameter.class, "run_1", "QC:000009");
+        assertEquals(attachment.substring(0, attachment.indexOf('>') + 1), startTag);
+        assertTrue(startTag.contains("qualityParameterRef="));
+        assertNull(index.getStartTag(AttachmentParameter.class, "run_1", "QC:9999999"));
+        assertNull(index.getStartTag(AttachmentParameter.class, "run_2", "QC:000009"));
+    }
+
+    @Test
+    public void writeBinary() throws IOException {
+        IndexConfiguration configuration = createScannerConfiguration();
+        configuration.setParameterIndex(true);
+        QcMLIndexer index = new QcMLIndexer(loadResource("/NoSet.qcML"), configuration);
+
+        for(Map.Entry<String, IndexElement> entry : index.getParameterMapping(AttachmentParameter.class, "run_0").entrySet()) {
+            String xmlSnippet = index.readXML(entry.getValue());
+            String base64 = xmlSnippet.substring(xmlSnippet.indexOf("<binary>") + "<binary>".length(), xmlSnippet.indexOf("</binary>"));
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertEquals(Base64.decodeBase64(base64).length, index.writeBinary("run_0", entry.getKey(), out));
+            assertArrayEquals(Base64.decodeBase64(base64), out.toByteArray());
+        }
+
+        assertEquals(-1, index.writeBinary("run_0", "non-existing accession", new ByteArrayOutputStream()));
+    }
+
+    @Test
+    public void readTableRows() {
+        IndexConfiguration configuration = createScannerConfiguration();
+        configuration.setParameterIndex(true);
+        QcMLIndexer index = new QcMLIndexer(loadResource("/TableAttachmentTest.qcML"), configuration);
+
+        assertEquals(5, index.getNumberOfTableRows("run_1", "QC:000009"));
+        assertArrayEquals(new String[] { "scan", "rt", "intensity" }, index.readTableColumns("run_1", "QC:000009"));
+
+        List<String[]> rows = index.readTableRows("run_1", "QC:000009", 2, 4);
+        assertEquals(2, rows.size());
+        assertArrayEquals(new String[] { "3", "11.5", "3000" }, rows.get(0));
+        assertArrayEquals(new String[] { "4", "12.0", "A&B" }, rows.get(1));
+
+        // the range is limited to the available rows
+        assertEquals(2, index.readTableRows("run_1", "QC:000009", 3, 10).size());
+        assertEquals(0, index.readTableRows("run_1", "QC:000009", 5, 10).size());
+
+        assertEquals(-1, index.getNumberOfTableRows("run_1", "non-existing accession"));
+        assertNull(index.readTableRows("run_1", "non-existing accession", 0, 1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void readTableRows_invalidRange() {
+        IndexConfiguration configuration = createScannerConfiguration();
+        configuration.setParameterIndex(true);
+        QcMLIndexer index = new QcMLIndexer(loadResource("/TableAttachmentTest.qcML"), configuration);
+
+        index.readTableRows("run_1", "QC:000009", 3, 2);
+    }
+
+    @Test
+    public void metaDataIndex_sameForAllEngines() throws IOException {
+        File qcml = loadResource("/QcMLTest.qcML");
+        Set<String> accessions = new HashSet<>(Arrays.asList("QC:000000", "QC:000001"));
+        List<String> qaIds = Arrays.asList("run_0", "run_1", "run_2", "run_3", "run_4", "set_0", "set_1");
+
+        List<MetaDataIndex> metaDataIndexes = new ArrayList<>();
+        for(IndexEngine engine : IndexEngine.values()) {
+            IndexConfiguration configuration = new IndexConfiguration();
+            configuration.setEngine(engine);
+            configuration.setMetaDataAccessions(accessions);
+            metaDataIndexes.add(new QcMLIndexer(qcml, configuration).getMetaDataIndex());
+        }
+        // use tiny chunks so that chunk boundaries fall within the metaDataParameters
+        metaDataIndexes.add(new ParallelScanIndexer(qcml, StandardCharsets.UTF_8, 4, 97, false, accessions).scan().getMetaDataIndex());
+
+        for(MetaDataIndex metaDataIndex : metaDataIndexes) {
+            assertEquals(accessions, metaDataIndex.getAccessions());
+            assertFalse(metaDataIndex.isIndexed("QC:000002"));
+            assertEquals(qaIds, new ArrayList<>(metaDataIndex.getValues("QC:000000").keySet()));
+            assertEquals("867", metaDataIndex.getValue("run_3", "QC:000000"));
+            assertEquals(Collections.singletonList("set_0"), metaDataIndex.getQualityAssessmentIds("QC:000001", "893"));
+            assertEquals(Arrays.asList("run_2", "run_3", "run_4", "set_0", "set_1"),
+                    metaDataIndex.getQualityAssessmentIds("QC:000001", new Predicate<String>() {
+                        @Override
+                        public boolean apply(String value) {
+                            return Integer.parseInt(value) > 700;
+                        }
+                    }));
+        }
+
+        assertNull(new QcMLIndexer(qcml).getMetaDataIndex());
+    }
+
+    @Test
+    public void metaDataIndex_persistent() {
+        // a stored index without the requested metadata can't be reused
+        new QcMLIndexer(file, createPersistentConfiguration());
+        assertNull(IndexFile.read(file).getMetaDataIndex());
+
+        IndexConfiguration configuration = createPersistentConfiguration();
+        configuration.setMetaDataAccessions(Collections.singleton("QC:000000"));
+        QcMLIndexer created = new QcMLIndexer(file, configuration);
+        QcMLIndexer loaded = new QcMLIndexer(file, configuration);
+
+        assertNotNull(IndexFile.read(file).getMetaDataIndex());
+        assertEquals(created.getMetaDataIndex().getValues("QC:000000"), loaded.getMetaDataIndex().getValues("QC:000000"));
+    }
+
+    @Test
+    public void parameterIndex_persistent() {
+        // a stored index without parameters can't be reused
+        new QcMLIndexer(file, createPersistentConfiguration());
+        assertNull(IndexFile.read(file).getParameterMappings());
+
+        IndexConfiguration configuration = createPersistentConfiguration();
+        configuration.setParameterIndex(true);
+        QcMLIndexer created = new QcMLIndexer(file, configuration);
+        QcMLIndexer loaded = new QcMLIndexer(file, configuration);
+
+        assertNotNull(IndexFile.read(file).getParameterMappings());
+        assertSameMapping(created.getParameterMapping(QualityParameter.class, "run_1"), loaded.getParameterMapping(QualityParameter.class, "run_1"));
+        assertSameMapping(created.getIDMapping(QualityParameter.class), loaded.getIDMapping(QualityParameter.class));
+    }
+
+    @Test
+    public void memoryMapped_sameAsExtractor() {
+        IndexConfiguration configuration = new IndexConfiguration();
+        configuration.setMemoryMapped(true);
+
+        QcMLIndexer extracted = new QcMLIndexer(file);
+        QcMLIndexer mapped = new QcMLIndexer(file, configuration);
+
+        for(Class<?> cls : new Class<?>[] { QualityAssessment.class, Cv.class }) {
+            for(Map.Entry<String, IndexElement> entry : extracted.getIDMapping(cls).entrySet()) {
+                assertEquals(extracted.getXMLSnippet(cls, entry.getKey()), mapped.getXMLSnippet(cls, entry.getKey()));
+                assertEquals(extracted.readXML(entry.getValue(), 10), mapped.readXML(entry.getValue(), 10));
+                assertEquals(extracted.readBytes(entry.getValue()), mapped.readBytes(entry.getValue()));
+            }
+        }
+    }
+
+    @Test
+    public void readXML_afterClose() throws IOException {
+        File qcml = loadResource("/QcMLTest.qcML");
+        byte[] bytes = Files.readAllBytes(qcml.toPath());
+
+        QcMLIndexer index = new QcMLIndexer(qcml, createScannerConfiguration());
+        IndexElement elem = index.getIDMapping(QualityAssessment.class).values().iterator().next();
+        String expected = new String(bytes, (int) elem.getStart(), (int) (elem.getStop() - elem.getStart()), StandardCharsets.UTF_8);
+        assertEquals(expected, index.readXML(elem));
+
+        // a retained index remains usable until it's released
+        assertTrue(index.retain());
+        index.close();
+        assertFalse(index.retain());
+        assertEquals(expected, index.readXML(elem));
+        index.release();
+
+        // the file isn't opened anew after the index has been closed
+        try {
+            index.readXML(elem);
+            fail("A closed index shouldn't reopen the qcML file");
+        } catch(IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void idMapping_ascendingOffsets() {
+        for(IndexConfiguration configuration : new IndexConfiguration[] { new IndexConfiguration(), createScannerConfiguration() }) {
+            QcMLIndexer index = new QcMLIndexer(loadResource("/QcMLTest.qcML"), configuration);
+
+            for(Class<?> cls : new Class<?>[] { QualityAssessment.class, Cv.class }) {
+                long previous = -1;
+                for(IndexElement elem : index.getIDMapping(cls).values()) {
+                    assertTrue(elem.getStart() > previous);
+                    previous = elem.getStart();
+                }
+            }
+        }
+    }
+
+    @Test
+    public void sequentialReader_sameAsReadXML() {
+        QcMLIndexer index = new QcMLIndexer(loadResource("/QcMLTest.qcML"), createScannerConfiguration());
+        SequentialXmlReader reader = index.createSequentialReader();
+
+        List<IndexElement> elements = new ArrayList<>(index.getIDMapping(QualityAssessment.class).values());
+        elements.addAll(index.getIDMapping(Cv.class).values());
+        for(IndexElement elem : elements) {
+            assertEquals(index.readXML(elem), reader.readXML(elem));
+        }
+        // reading backwards requires the buffer to be refilled
+        Collections.reverse(elements);
+        for(IndexElement elem : elements) {
+            assertEquals(index.readXML(elem), reader.readXML(elem));
+        }
+    }
+
+    @Test
+    public void openXML_sameAsReadXML() throws IOException {
+        for(boolean memoryMapped : new boolean[] { false, true }) {
+            IndexConfiguration configuration = createScannerConfiguration();
+            configuration.setMemoryMapped(memoryMapped);
+            QcMLIndexer index = new QcMLIndexer(loadResource("/QcMLTest.qcML"), configuration);
+            SequentialXmlReader reader = index.createSequentialReader();
+
+            for(IndexElement elem : index.getIDMapping(QualityAssessment.class).values()) {
+                assertEquals(index.readXML(elem), read(index.openXML(elem)));
+                assertEquals(index.readXML(elem), read(reader.openXML(elem)));
+            }
+        }
+    }
+
+    @Test
+    public void cvCache_loadedOnce() throws IOException {
+        QcMLIndexer index = new QcMLIndexer(file, createScannerConfiguration());
+        final int[] count = new int[1];
+        Function<InputSource, Cv> unmarshal = xml -> {
+            count[0]++;
+            return new Cv("cv " + count[0], "/path/to/cv", "cv_" + count[0]);
+        };
+
+        Map<String, Cv> cvCache = index.getCvCache(unmarshal);
+        assertEquals(2, cvCache.size());
+        assertTrue(cvCache.containsKey("cv_0"));
+        assertTrue(cvCache.containsKey("cv_1"));
+        assertSame(cvCache, index.getCvCache(unmarshal));
+        assertEquals(2, count[0]);
+
+        // the Cv's are loaded anew after the qcML file has been modified
+        appendRunQuality("run_3");
+        assertTrue(index.refresh());
+        assertNotSame(cvCache, index.getCvCache(unmarshal));
+        assertEquals(4, count[0]);
+    }
+
+    @Test
+    public void statistics() {
+        File qcml = loadResource("/QcMLTest.qcML");
+        QcMLIndexer index = new QcMLIndexer(qcml, createScannerConfiguration());
+        QcMLStatistics statistics = index.getStatistics();
+
+        assertEquals(qcml.length(), statistics.getFileSize());
+        assertEquals(5, statistics.getNumberOfRunQualities());
+        assertEquals(2, statistics.getNumberOfSetQualities());
+        assertEquals(13, statistics.getNumberOfCvs());
+        assertEquals(Arrays.asList("run_0", "run_1", "run_2", "run_3", "run_4"), statistics.getRunQualityIds());
+        assertEquals(Arrays.asList("set_0", "set_1"), statistics.getSetQualityIds());
+        assertEquals("cv_0", statistics.getIds(Cv.class).get(0));
+        assertTrue(statistics.getIds(QualityParameter.class).isEmpty());
+
+        IndexElement elem = index.getIDMapping(QualityAssessment.class).get("set_0");
+        assertEquals(elem.getStart(), statistics.getOffsetRange(QualityAssessment.class, "set_0").getStart());
+        assertEquals(elem.getStop() - elem.getStart(), statistics.getSize(QualityAssessment.class, "set_0"));
+        assertEquals(-1, statistics.getSize(QualityAssessment.class, "non-existing id"));
+
+        long total = 0;
+        for(IndexElement qa : index.getIDMapping(QualityAssessment.class).values()) {
+            total += qa.getStop() - qa.getStart();
+        }
+        assertEquals(total, statistics.getTotalSize(QualityAssessment.class));
+    }
+
+    @Test
+    public void statistics_recordedWhileIndexing() {
+        File qcml = loadResource("/QcMLTest.qcML");
+        List<String> expected = Arrays.asList("set_0", "set_1");
+        for(IndexEngine engine : IndexEngine.values()) {
+            IndexConfiguration configuration = new IndexConfiguration();
+            configuration.setEngine(engine);
+            QcMLIndexer index = new QcMLIndexer(qcml, configuration);
+            // the statistics don't require the qcML file to be read
+            index.close();
+
+            assertEquals(expected, index.getStatistics().getSetQualityIds());
+        }
+
+        // the setQuality elements are stored in the sidecar as well
+        new QcMLIndexer(file, createPersistentConfiguration());
+        QcMLIndexer loaded = new QcMLIndexer(file, createPersistentConfiguration());
+        assertEquals(new QcMLIndexer(file, createScannerConfiguration()).getStatistics().getSetQualityIds(), loaded.getStatistics().getSetQualityIds());
+    }
+
+    @Test
+    public void blockCompressed_sameAsUncompressed() throws IOException {
+        File compressed = new File(dir, "QcMLTest.qcML.gz");
+        BlockCompressedOutputStream.compress(loadResource("/QcMLTest.qcML"), compressed);
+        assertTrue(GzipFile.isGzip(compressed));
+        assertTrue(GzipFile.isBlockCompressed(compressed));
+
+        IndexConfiguration configuration = createScannerConfiguration();
+        configuration.setParameterIndex(true);
+        QcMLIndexer plain = new QcMLIndexer(loadResource("/QcMLTest.qcML"), configuration);
+        QcMLIndexer gzip = new QcMLIndexer(compressed, configuration);
+
+        for(Class<?> cls : new Class<?>[] { QualityAssessment.class, Cv.class }) {
+            assertSameMapping(plain.getIDMapping(cls), gzip.getIDMapping(cls));
+            for(Map.Entry<String, IndexElement> entry : plain.getIDMapping(cls).entrySet()) {
+                assertEquals(plain.getXMLSnippet(cls, entry.getKey()), gzip.getXMLSnippet(cls, entry.getKey()));
+                assertEquals(plain.readXML(entry.getValue(), 10), gzip.readXML(entry.getValue(), 10));
+                assertEquals(plain.readBytes(entry.getValue()), gzip.readBytes(entry.getValue()));
+            }
+        }
+        assertSameMapping(plain.getParameterMapping(QualityParameter.class, "run_0"), gzip.getParameterMapping(QualityParameter.class, "run_0"));
+        assertEquals(plain.getStatistics().getSetQualityIds(), gzip.getStatistics().getSetQualityIds());
+
+        // the virtual offset combines the offset of the compressed block and the offset within the block
+        GzipFile gzipFile = new GzipFile(compressed);
+        assertEquals(loadResource("/QcMLTest.qcML").length(), gzipFile.getLength());
+        assertEquals(0, gzipFile.getVirtualOffset(0));
+        assertEquals(12345, gzipFile.getVirtualOffset(12345) & 0xFFFF);
+    }
+
+    @Test
+    public void gzip_sequentialReader() throws IOException {
+        File compressed = new File(dir, "QcMLTest.qcML.gz");
+        try(OutputStream out = new GZIPOutputStream(new FileOutputStream(compressed))) {
+            Files.copy(loadResource("/QcMLTest.qcML").toPath(), out);
+        }
+        assertTrue(GzipFile.isGzip(compressed));
+        assertFalse(GzipFile.isBlockCompressed(compressed));
+
+        QcMLIndexer plain = new QcMLIndexer(loadResource("/QcMLTest.qcML"), createScannerConfiguration());
+        QcMLIndexer gzip = new QcMLIndexer(compressed, createScannerConfiguration());
+
+        List<IndexElement> elements = new ArrayList<>(plain.getIDMapping(QualityAssessment.class).values());
+        elements.addAll(plain.getIDMapping(Cv.class).values());
+        try(SequentialXmlReader reader = gzip.createSequentialReader()) {
+            for(IndexElement elem : elements) {
+                assertEquals(plain.readXML(elem), reader.readXML(elem));
+            }
+            // reading backwards requires the data to be decompressed anew
+            Collections.reverse(elements);
+            for(IndexElement elem : elements) {
+                assertEquals(plain.readXML(elem), reader.readXML(elem));
+            }
+        }
+    }
+
+    @Test
+    public void gzip_sequentialReaderAcrossBuffer() throws IOException {
+        // the runQuality elements straddle the boundaries of the read-ahead buffer
+        StringBuilder content = new StringBuilder("<qcML>\n");
+        List<IndexElement> elements = new ArrayList<>();
+        for(int i = 0; content.length() < 3 * SequentialXmlReader.BUFFER_SIZE; i++) {
+            int start = content.length();
+            content.append("<runQuality ID=\"run_").append(i).append("\">");
+            for(int j = 0; j < i % 1000; j++) {
+                content.append('x');
+            }
+            content.append("</runQuality>");
+            elements.add(new ByteRange(start, content.length()));
+            content.append('\n');
+        }
+        content.append("</qcML>\n");
+
+        File compressed = new File(dir, "large.qcML.gz");
+        try(OutputStream out = new GZIPOutputStream(new FileOutputStream(compressed))) {
+            out.write(content.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        final AtomicInteger opened = new AtomicInteger();
+        GzipFile gzipFile = new GzipFile(compressed) {
+            @Override
+            public InputStream openStream(long offset) throws IOException {
+                opened.incrementAndGet();
+                return super.openStream(offset);
+            }
+        };
+        assertFalse(gzipFile.isBlockCompressed());
+
+        try(SequentialXmlReader reader = new SequentialXmlReader(null, compressed, gzipFile, StandardCharsets.UTF_8)) {
+            for(IndexElement elem : elements) {
+                assertEquals(content.substring((int) elem.getStart(), (int) elem.getStop()), reader.readXML(elem));
+            }
+        }
+        // the data is decompressed in a single pass
+        assertEquals(1, opened.get());
+    }
+
+    @Test
+    public void validating_sameAsScanner() {
+        File qcml = loadResource("/QcMLTest.qcML");
+        QcMLIndexer scanned = new QcMLIndexer(qcml, createScannerConfiguration());
+        QcMLIndexer validated = new QcMLIndexer(qcml, new IndexConfiguration(), createSchema());
+
+        assertTrue(validated.isValidated());
+        assertNull(validated.getValidationError());
+        assertFalse(scanned.isValidated());
+        for(Class<?> cls : new Class<?>[] { QualityAssessment.class, Cv.class }) {
+            assertSameMapping(scanned.getIDMapping(cls), validated.getIDMapping(cls));
+        }
+    }
+
+    @Test
+    public void validating_invalid() {
+        QcMLIndexer invalid = new QcMLIndexer(loadResource("/InvalidVersionFormat.qcML"), new IndexConfiguration(), createSchema());
+        assertTrue(invalid.isValidated());
+        assertNotNull(invalid.getValidationError());
+        assertEquals(3, invalid.getIDMapping(QualityAssessment.class).size());
+
+        QcMLIndexer plainText = new QcMLIndexer(loadResource("/PlainText.qcML"), createScannerConfiguration(), createSchema());
+        assertTrue(plainText.isValidated());
+        assertNotNull(plainText.getValidationError());
+    }
+
+    @Test
+    public void validating_refreshInvalidates() throws IOException {
+        QcMLIndexer index = new QcMLIndexer(file, new IndexConfiguration(), createSchema());
+        assertTrue(index.isValidated());
+
+        appendRunQuality("run_3");
+        assertTrue(index.refresh());
+        assertFalse(index.isValidated());
+    }
+
+    @Test
+    public void refresh_unmodified() {
+        QcMLIndexer index = new QcMLIndexer(file, createScannerConfiguration());
+
+        assertFalse(index.refresh());
+    }
+
+    @Test
+    public void refresh_appended() throws IOException {
+        IndexConfiguration configuration = createScannerConfiguration();
+        configuration.setParameterIndex(true);
+        QcMLIndexer index = new QcMLIndexer(file, configuration);
+        Map<String, IndexElement> mapping = index.getIDMapping(QualityAssessment.class);
+
+        appendRunQuality("run_3");
+
+        assertTrue(index.refresh());
+        assertFalse(index.refresh());
+
+        // the mapping is extended in a copy, so the previous mapping remains consistent for concurrent lookups
+        assertNotSame(mapping, index.getIDMapping(QualityAssessment.class));
+        assertFalse(mapping.containsKey("run_3"));
+        // the new elements are indexed
+        assertSameMapping(new QcMLIndexer(file, configuration).getIDMapping(QualityAssessment.class), index.getIDMapping(QualityAssessment.class));
+        assertSameMapping(new QcMLIndexer(file, configuration).getIDMapping(Cv.class), index.getIDMapping(Cv.class));
+        assertTrue(index.getXMLSnippet(QualityAssessment.class, "run_3").startsWith("<runQuality ID=\"run_3\">"));
+        assertNotNull(index.getXMLSnippet(QualityParameter.class, "run_3", "MS:1000577"));
+        assertTrue(index.getXMLSnippet(Cv.class, "cv_1").startsWith("<cv "));
+    }
+
+    @Test
+    public void refresh_statisticsSnapshot() throws IOException {
+        QcMLIndexer index = new QcMLIndexer(file, createScannerConfiguration());
+        QcMLStatistics statistics = index.getStatistics();
+        List<String> runQualityIds = statistics.getRunQualityIds();
+
+        appendRunQuality("run_3");
+        assertTrue(index.refresh());
+
+        // the statistics share the previous ID mappings, which aren't modified by the refresh
+        assertEquals(runQualityIds, statistics.getRunQualityIds());
+        assertEquals(runQualityIds.size(), statistics.getNumberOfRunQualities());
+        assertNull(statistics.getOffsetRange(QualityAssessment.class, "run_3"));
+        assertEquals(runQualityIds.size() + 1, index.getStatistics().getNumberOfRunQualities());
+    }
+
+    @Test
+    public void refresh_appendedSpilled() throws IOException {
+        IndexConfiguration configuration = createScannerConfiguration();
+        configuration.setMemoryBudget(1);
+        QcMLIndexer index = new QcMLIndexer(file, configuration);
+        assertTrue(index.retain());
+        Map<String, IndexElement> mapping = index.getIDMapping(QualityAssessment.class);
+
+        appendRunQuality("run_3");
+
+        assertTrue(index.refresh());
+        assertSameMapping(new QcMLIndexer(file, configuration).getIDMapping(QualityAssessment.class), index.getIDMapping(QualityAssessment.class));
+        // the spilled mapping is shared by the extended mapping instead of being copied, so it remains usable after the index is released
+        assertFalse(mapping.containsKey("run_3"));
+        index.release();
+        assertNotNull(mapping.get("run_1"));
+        index.close();
+        try {
+            mapping.get("run_1");
+            fail("The spilled mapping should be closed");
+        } catch(IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void refresh_appendedRepeatedly() throws IOException {
+        QcMLIndexer index = new QcMLIndexer(file, createScannerConfiguration());
+        Map<String, IndexElement> mapping = index.getIDMapping(QualityAssessment.class);
+
+        for(int i = 3; i < 10; i++) {
+            appendRunQuality("run_" + i);
+            assertTrue(index.refresh());
+        }
+
+        QcMLIndexer recreated = new QcMLIndexer(file, createScannerConfiguration());
+        assertSameMapping(recreated.getIDMapping(QualityAssessment.class), index.getIDMapping(QualityAssessment.class));
+        assertSameMapping(recreated.getIDMapping(Cv.class), index.getIDMapping(Cv.class));
+        assertEquals(recreated.getXMLSnippet(Cv.class, "cv_0"), index.getXMLSnippet(Cv.class, "cv_0"));
+        // the previous mappings aren't modified
+        assertFalse(mapping.containsKey("run_3"));
+    }
+
+    @Test
+    public void refresh_concurrentLookups() throws IOException, InterruptedException, ExecutionException {
+        final QcMLIndexer index = new QcMLIndexer(file, createScannerConfiguration());
+        final AtomicBoolean done = new AtomicBoolean();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<Integer>> lookups = new ArrayList<>();
+        for(int t = 0; t < 4; t++) {
+            lookups.add(executor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    int count = 0;
+                    while(!done.get()) {
+                        assertTrue(index.getXMLSnippet(QualityAssessment.class, "run_1").startsWith("<runQuality ID=\"run_1\">"));
+                        for(Map.Entry<String, IndexElement> entry : index.getIDMapping(QualityAssessment.class).entrySet()) {
+                            assertNotNull(entry.getValue());
+                        }
+                        count++;
+                    }
+                    return count;
+                }
+            }));
+        }
+
+        try {
+            for(int i = 3; i < 23; i++) {
+                appendRunQuality("run_" + i);
+                assertTrue(index.refresh());
+            }
+        } finally {
+            done.set(true);
+            executor.shutdown();
+        }
+        for(Future<Integer> lookup : lookups) {
+            assertTrue(lookup.get() > 0);
+        }
+        assertEquals(23, index.getIDMapping(QualityAssessment.class).size());
+    }
+
+    @Test
+    public void refresh_modified() throws IOException {
+        QcMLIndexer index = new QcMLIndexer(file, createScannerConfiguration());
+        Map<String, IndexElement> mapping = index.getIDMapping(QualityAssessment.class);
+
+        // modify the start of the qcML file
+        String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        Files.write(file.toPath(), content.replace("run_1", "run_0").getBytes(StandardCharsets.UTF_8));
+
+        assertTrue(index.refresh());
+
+        assertNotSame(mapping, index.getIDMapping(QualityAssessment.class));
+        assertNull(index.getXMLSnippet(QualityAssessment.class, "run_1"));
+        assertNotNull(index.getXMLSnippet(QualityAssessment.class, "run_0"));
+    }
+
+    @Test
+    public void refresh_persistent() throws IOException {
+        IndexConfiguration configuration = createPersistentConfiguration();
+        configuration.setEngine(IndexEngine.BYTE_SCANNER);
+        QcMLIndexer index = new QcMLIndexer(file, configuration);
+
+        appendRunQuality("run_3");
+        assertNull(IndexFile.read(file));
+
+        assertTrue(index.refresh());
+
+        assertNotNull(IndexFile.read(file));
+        assertTrue(IndexFile.read(file).getIDMappings().get(QualityAssessment.class).containsKey("run_3"));
+    }
+
+    @Test
+    public void refresh_persistentAppendsSidecar() throws IOException {
+        IndexConfiguration configuration = createPersistentConfiguration();
+        configuration.setEngine(IndexEngine.BYTE_SCANNER);
+        QcMLIndexer index = new QcMLIndexer(file, configuration);
+        byte[] stored = Files.readAllBytes(IndexFile.getSidecar(file).toPath());
+
+        appendRunQuality("run_3");
+        assertTrue(index.refresh());
+        appendRunQuality("run_4");
+        assertTrue(index.refresh());
+
+        // the index of the appended data is appended to the sidecar file, instead of rewriting the stored index
+        byte[] appended = Files.readAllBytes(IndexFile.getSidecar(file).toPath());
+        assertTrue(appended.length > stored.length);
+        assertArrayEquals(Arrays.copyOfRange(stored, stored.length / 2, stored.length), Arrays.copyOfRange(appended, stored.length / 2, stored.length));
+
+        IndexFile indexFile = IndexFile.read(file);
+        assertNotNull(indexFile);
+        assertSameMapping(index.getIDMapping(QualityAssessment.class), indexFile.getIDMappings().get(QualityAssessment.class));
+        assertSameMapping(index.getIDMapping(Cv.class), indexFile.getIDMappings().get(Cv.class));
+        assertTrue(QcMLIndexer.mightContain(file, "run_4"));
+    }
+
+    /**
+     * Adds a new runQuality after the existing quality assessments, as is done when a qcML file grows during its creation.
+     */
+    private void appendRunQuality(String id) throws IOException {
+        String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        int cvList = content.indexOf("<cvList>");
+        String runQuality = "<runQuality ID=\"" + id + "\">\n" +
+                "      <qualityParameter name=\"mass spectrometer\" ID=\"" + id + "_qp\" cvRef=\"cv_0\" accession=\"MS:1000577\" />\n" +
+                "   </runQuality>\n   ";
+        // replace the file at once, so that concurrent readers never observe a partially written file
+        File modified = new File(dir, file.getName() + ".tmp");
+        Files.write(modified.toPath(), (content.substring(0, cvList) + runQuality + content.substring(cvList)).getBytes(StandardCharsets.UTF_8));
+        Files.move(modified.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private String read(InputSource xml) throws IOException {
+        return new String(ByteStreams.toByteArray(xml.getByteStream()), xml.getEncoding());
+    }
+
+    private IndexConfiguration createScannerConfiguration() {
+        IndexConfiguration configuration = new IndexConfiguration();
+        configuration.setEngine(IndexEngine.BYTE_SCANNER);
+        return configuration;
+    }
+
+    private Schema createSchema() {
+        try {
+            return SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI).newSchema(getClass().getResource("/qcML_0.0.8.xsd"));
+        } catch(SAXException e) {
+            fail(e.getMessage());
+        }
+        return null;
+    }
+
+    private IndexConfiguration createPersistentConfiguration() {
+        IndexConfiguration configuration = new IndexConfiguration();
+        configuration.setPersistent(true);
+        return configuration;
+    }
+
+    private void assertSameMapping(Map<String, IndexElement> expected, Map<String, IndexElement> actual) {
+        assertEquals(expected.size(), actual.size());
+        Iterator<Map.Entry<String, IndexElement>> actualIt = actual.entrySet().iterator();
+        for(Map.Entry<String, IndexElement> entry : expected.entrySet()) {
+            Map.Entry<String, IndexElement> other = actualIt.next();
+            assertEquals(entry.getKey(), other.getKey());
+            assertEquals(entry.getValue().getStart(), other.getValue().getStart());
+            assertEquals(entry.getValue().getStop(), other.getValue().getStop());
+        }
+    }
+
+    private File loadResource(String fileName) {
+        try {
+            return new File(getClass().getResource(fileName).toURI());
+        } catch(URISyntaxException e) {
+            fail(e.getMessage());
+        }
+        return null;
+    }
+}
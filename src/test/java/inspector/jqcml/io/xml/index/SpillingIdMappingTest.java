@@ -0,0 +1,141 @@
+package inspector.jqcml.io.xml.index;
+
+/*
+ * #%L
+ * jqcML
+ * %%
+ * Copyright (C) 2013 - 2015 InSPECtor
+ * %%
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+
+import org.junit.Test;
+import psidev.psi.tools.xxindex.index.ByteRange;
+import psidev.psi.tools.xxindex.index.IndexElement;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class SpillingIdMappingTest {
+
+    @Test
+    public void sameAsLinkedHashMap() {
+        Map<String, IndexElement> expected = new LinkedHashMap<>();
+        SpillingIdMapping mapping = new SpillingIdMapping(4096);
+        for(int i = 0; i < 10000; i++) {
+            expected.put("run_" + (i * 7919 % 10000), new ByteRange(i, i + 1));
+            mapping.put("run_" + (i * 7919 % 10000), new ByteRange(i, i + 1));
+        }
+
+        assertTrue(mapping.getNumberOfSegments() > 1);
+        assertEquals(expected.size(), mapping.size());
+        Iterator<Map.Entry<String, IndexElement>> it = mapping.entrySet().iterator();
+        for(Map.Entry<String, IndexElement> entry : expected.entrySet()) {
+            Map.Entry<String, IndexElement> other = it.next();
+            assertEquals(entry.getKey(), other.getKey());
+            assertEquals(entry.getValue().getStart(), other.getValue().getStart());
+            assertEquals(entry.getValue().getStop(), mapping.get(entry.getKey()).getStop());
+        }
+        assertFalse(it.hasNext());
+        assertNull(mapping.get("run_10000"));
+        assertNull(mapping.get(1));
+
+        mapping.clear();
+        assertEquals(0, mapping.size());
+        assertEquals(0, mapping.getNumberOfSegments());
+    }
+
+    @Test
+    public void remove() {
+        // spill each entry to a separate segment
+        SpillingIdMapping mapping = new SpillingIdMapping(1);
+        for(int i = 0; i < 10; i++) {
+            mapping.put("id_" + i, new ByteRange(i, i + 1));
+        }
+
+        assertEquals(3, mapping.remove("id_3").getStart());
+        assertNull(mapping.remove("id_3"));
+        for(Iterator<IndexElement> it = mapping.values().iterator(); it.hasNext(); ) {
+            if(it.next().getStart() >= 5) {
+                it.remove();
+            }
+        }
+
+        assertEquals(4, mapping.size());
+        assertFalse(mapping.containsKey("id_3"));
+        assertFalse(mapping.containsKey("id_7"));
+        assertEquals(2, mapping.get("id_2").getStart());
+        assertEquals(Arrays.asList("id_0", "id_1", "id_2", "id_4"), new ArrayList<>(mapping.keySet()));
+    }
+
+    @Test
+    public void put_replaceSpilled() {
+        SpillingIdMapping mapping = new SpillingIdMapping(1);
+        mapping.put("run_1", new ByteRange(10, 20));
+        mapping.put("run_2", new ByteRange(20, 30));
+
+        IndexElement old = mapping.put("run_1", new ByteRange(40, 50));
+
+        assertEquals(10, old.getStart());
+        assertEquals(2, mapping.size());
+        assertEquals(40, mapping.get("run_1").getStart());
+        // the replaced entry moves to the end
+        List<String> ids = new ArrayList<>(mapping.keySet());
+        assertEquals(Arrays.asList("run_2", "run_1"), ids);
+    }
+
+    @Test
+    public void close() {
+        SpillingIdMapping mapping = new SpillingIdMapping(1);
+        for(int i = 0; i < 10; i++) {
+            mapping.put("id_" + i, new ByteRange(i, i + 1));
+        }
+
+        // the segment files are deleted as soon as they have been opened
+        assertTrue(mapping.getNumberOfSegments() > 1);
+        assertEquals(0, getSpillFiles().length);
+        assertEquals(5, mapping.get("id_5").getStart());
+
+        mapping.close();
+        assertEquals(0, mapping.getNumberOfSegments());
+        // closing multiple times has no effect
+        mapping.close();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void get_afterClose() {
+        SpillingIdMapping mapping = new SpillingIdMapping(1);
+        mapping.put("id_1", new ByteRange(1, 2));
+        mapping.close();
+
+        mapping.get("id_1");
+    }
+
+    private File[] getSpillFiles() {
+        return new File(System.getProperty("java.io.tmpdir")).listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith("jqcml") && name.endsWith(".spill");
+            }
+        });
+    }
+}